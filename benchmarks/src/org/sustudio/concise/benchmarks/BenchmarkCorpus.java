@@ -0,0 +1,115 @@
+package org.sustudio.concise.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.corpus.SyntheticCorpusGenerator;
+
+import com.chenlb.mmseg4j.Dictionary;
+
+/**
+ * 產生 benchmark 用的文字和 {@link Workspace}。同樣的參數和 seed 一定產生同樣的內容。
+ * <p>workspace 用 {@link SyntheticCorpusGenerator} 產生：詞彙依 Zipf 分布、標注詞性，
+ * 直接寫入 index，不需要 POS tagger 的模型。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class BenchmarkCorpus {
+
+	private static final String DIC_RESOURCE = "/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-moe.dic";
+
+	/** benchmark 用的詞彙數 */
+	static final int VOCABULARY_SIZE = 20000;
+
+	/**
+	 * @param seed
+	 * @param wordsPerDoc	每份文件的詞數（不含標點）
+	 * @return 產生語料庫用的 {@link SyntheticCorpusGenerator}
+	 */
+	public static SyntheticCorpusGenerator generator(long seed, int wordsPerDoc) {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator(seed);
+		generator.setVocabularySize(VOCABULARY_SIZE);
+		generator.setWordsPerDocument(wordsPerDoc, wordsPerDoc);
+		return generator;
+	}
+
+	/**
+	 * 讓 MMSeg 斷詞用的文字：詞庫中的詞、單字、英文、數字和標點混在一起
+	 * @param seed
+	 * @param numChars	大約的字數
+	 * @return 文字
+	 * @throws IOException
+	 */
+	public static String rawText(long seed, int numChars) throws IOException {
+		List<String> dicWords = new ArrayList<String>();
+		InputStream in = Dictionary.class.getResourceAsStream(DIC_RESOURCE);
+		if (in != null) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.length() > 1 && !line.startsWith("#")) {
+						dicWords.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		String[] extra = { "，", "。", "、", "！", "ABC", "Hello world", "123", "4,567.89", "ＡＢＣ", "１２３",
+						   "www.example.com", " ", "\n", "3個", "VH049PA" };
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(numChars + 16);
+		while (sb.length() < numChars) {
+			int k = random.nextInt(10);
+			if (k < 5 && !dicWords.isEmpty()) {
+				sb.append(dicWords.get(random.nextInt(dicWords.size())));
+			}
+			else if (k < 8) {
+				sb.append((char) (0x4E00 + random.nextInt(3000)));
+			}
+			else {
+				sb.append(extra[random.nextInt(extra.length)]);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 建立（或重複使用先前建立的）workspace，放在系統的暫存目錄
+	 * @param numDocs			語料庫文件數
+	 * @param numReferenceDocs	參照語料庫文件數
+	 * @param wordsPerDoc		每份文件的詞數
+	 * @param seed
+	 * @return workspace 目錄
+	 * @throws Exception
+	 */
+	public static File workspace(int numDocs, int numReferenceDocs, int wordsPerDoc, long seed) throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"),
+							"concise-synthetic-" + numDocs + "-" + numReferenceDocs + "-" + wordsPerDoc + "-" + seed);
+		File complete = new File(dir, ".complete");
+		if (complete.exists()) {
+			return dir;
+		}
+		FileUtils.deleteQuietly(dir);
+
+		Workspace workspace = new Workspace(dir);
+		try {
+			SyntheticCorpusGenerator generator = generator(seed, wordsPerDoc);
+			generator.generate(workspace, numDocs, numReferenceDocs);
+		} finally {
+			workspace.close();
+		}
+		complete.createNewFile();
+		return dir;
+	}
+}
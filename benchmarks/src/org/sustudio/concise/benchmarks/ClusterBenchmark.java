@@ -0,0 +1,50 @@
+package org.sustudio.concise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.sustudio.concise.core.cluster.Cluster;
+import org.sustudio.concise.core.cluster.NgramClusterIterator;
+
+/**
+ * 詞串：{@link NgramClusterIterator} 算出整個語料庫的 n-gram。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+
+	@Param({ "2", "3" })
+	public int n;
+
+	@Param("1")
+	public int numThreads;
+
+	@Benchmark
+	public void ngramClusters(WorkspaceState state, Blackhole blackhole) throws Exception {
+		NgramClusterIterator iterator = new NgramClusterIterator(state.workspace, n, false, 1, numThreads);
+		try {
+			for (Cluster cluster : iterator) {
+				blackhole.consume(cluster);
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.sustudio.concise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sustudio.concise.core.collocation.Collocate;
+import org.sustudio.concise.core.collocation.SurfaceCollocateIterator;
+import org.sustudio.concise.core.collocation.TermVectorCollocateIterator;
+import org.sustudio.concise.core.collocation.TextualCollocateIterator;
+import org.sustudio.concise.core.collocation.TextualCollocateIterator.BOUNDARY;
+import org.sustudio.concise.core.concordance.Conc;
+
+/**
+ * 搭配詞：{@link SurfaceCollocateIterator}、{@link TermVectorCollocateIterator} 和 {@link TextualCollocateIterator}（以句子為範圍）。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollocationBenchmark {
+
+	@Benchmark
+	public void surface(WorkspaceState state, Blackhole blackhole) throws Exception {
+		Conc conc = new Conc(state.workspace, state.queryWord(), false);
+		SurfaceCollocateIterator iterator = null;
+		try {
+			iterator = new SurfaceCollocateIterator(conc);
+			for (Collocate collocate : iterator) {
+				blackhole.consume(collocate);
+			}
+		} finally {
+			if (iterator != null) {
+				iterator.close();
+			}
+			conc.close();
+		}
+	}
+
+	@Benchmark
+	public void termVector(WorkspaceState state, Blackhole blackhole) throws Exception {
+		Conc conc = new Conc(state.workspace, state.queryWord(), false);
+		TermVectorCollocateIterator iterator = null;
+		try {
+			iterator = new TermVectorCollocateIterator(conc);
+			for (Collocate collocate : iterator) {
+				blackhole.consume(collocate);
+			}
+		} finally {
+			if (iterator != null) {
+				iterator.close();
+			}
+			conc.close();
+		}
+	}
+
+	@Benchmark
+	public void textual(WorkspaceState state, Blackhole blackhole) throws Exception {
+		Conc conc = new Conc(state.workspace, state.queryWord(), false);
+		TextualCollocateIterator iterator = null;
+		try {
+			iterator = new TextualCollocateIterator(conc, BOUNDARY.SENTENCE);
+			for (Collocate collocate : iterator) {
+				blackhole.consume(collocate);
+			}
+		} finally {
+			if (iterator != null) {
+				iterator.close();
+			}
+			conc.close();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package org.sustudio.concise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.apache.lucene.search.ScoreDoc;
+import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.concordance.ConcLine;
+import org.sustudio.concise.core.concordance.ConcLineIterator;
+
+/**
+ * 索引典：{@link Conc#hitDocs()} 找出文件，再用 {@link ConcLineIterator} 取出所有的索引行。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcordanceBenchmark {
+
+	@Benchmark
+	public ScoreDoc[] hitDocs(WorkspaceState state) throws Exception {
+		Conc conc = new Conc(state.workspace, state.queryWord(), false);
+		try {
+			return conc.hitDocs();
+		} finally {
+			conc.close();
+		}
+	}
+
+	@Benchmark
+	public void concLines(WorkspaceState state, Blackhole blackhole) throws Exception {
+		Conc conc = new Conc(state.workspace, state.queryWord(), false);
+		try {
+			for (ScoreDoc scoreDoc : conc.hitDocs()) {
+				for (ConcLine line : new ConcLineIterator(conc, scoreDoc)) {
+					blackhole.consume(line);
+				}
+			}
+		} finally {
+			conc.close();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.sustudio.concise.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.corpus.SyntheticCorpusGenerator;
+import org.sustudio.concise.core.corpus.importer.Importer;
+
+/**
+ * {@link Importer#indexFile(File, boolean)} 匯入一份文件的時間。
+ * <p><tt>tokenized=false</tt> 會用 MMSeg 斷詞再標注詞性，需要 {@link CCPrefs#POS_TAGGER_MODEL} 的模型檔。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ImportBenchmark {
+
+	@Param("true")
+	public boolean tokenized;
+
+	@Param("2000")
+	public int wordsPerDoc;
+
+	@Param("1")
+	public long seed;
+
+	private File dir;
+	private File source;
+	private Workspace workspace;
+	private Importer importer;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() throws Exception {
+		dir = new File(System.getProperty("java.io.tmpdir"), "concise-bench-import-" + System.nanoTime());
+		source = new File(dir, "source.txt");
+		if (tokenized) {
+			SyntheticCorpusGenerator generator = BenchmarkCorpus.generator(seed, wordsPerDoc);
+			FileUtils.write(source, generator.getOriginalText(INDEX.DOCUMENT, 0), "UTF-8");
+		}
+		else {
+			FileUtils.write(source, BenchmarkCorpus.rawText(seed, wordsPerDoc * 2), "UTF-8");
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws Exception {
+		workspace = new Workspace(new File(dir, "workspace"));
+		importer = new Importer(workspace);
+		importer.setCopyFiles(false);
+	}
+
+	@Benchmark
+	public void indexFile() throws Exception {
+		importer.indexFile(source, tokenized);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() throws Exception {
+		importer.close();
+		workspace.close();
+		FileUtils.deleteDirectory(new File(dir, "workspace"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws Exception {
+		FileUtils.deleteQuietly(dir);
+	}
+}
@@ -0,0 +1,43 @@
+package org.sustudio.concise.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * 執行 benchmark。和 JMH 的 Main 一樣接受所有參數，沒有指定 <tt>-rf</tt> 時，
+ * 結果以 JSON 寫到 <tt>jmh-result-concise-&lt;版本&gt;.json</tt>，方便比較不同版本。
+ * <pre>java -jar target/benchmarks.jar [JMH 的參數]</pre>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class Main {
+
+	public static void main(String[] args) throws Exception {
+		List<String> argList = new ArrayList<String>(Arrays.asList(args));
+		if (!argList.contains("-rf") && !argList.contains("-h") && !argList.contains("-l")) {
+			String version = Main.class.getPackage().getImplementationVersion();
+			File result = new File("jmh-result-concise-" + (version == null ? "dev" : version) + ".json");
+			argList.add("-rf");
+			argList.add("json");
+			argList.add("-rff");
+			argList.add(result.getPath());
+		}
+		CommandLineOptions options = new CommandLineOptions(argList.toArray(new String[argList.size()]));
+		if (options.shouldHelp()) {
+			options.showHelp();
+			return;
+		}
+		Runner runner = new Runner(options);
+		if (options.shouldList()) {
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
@@ -0,0 +1,51 @@
+package org.sustudio.concise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.sustudio.concise.core.statistics.ca.ConciseCA;
+import org.sustudio.concise.core.statistics.pca.ConcisePCACorr;
+
+/**
+ * 多變量分析：最常出現的 <tt>numWords</tt> 個詞對所有文件的 {@link ConciseCA} 和 {@link ConcisePCACorr}。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultivariateBenchmark {
+
+	@Param("20")
+	public int numWords;
+
+	@Benchmark
+	public void correspondenceAnalysis(WorkspaceState state, Blackhole blackhole) throws Exception {
+		ConciseCA ca = new ConciseCA(state.workspace, false);
+		ca.setWords(state.topWords.subList(0, numWords));
+		blackhole.consume(ca.getRowProjectionData());
+		blackhole.consume(ca.getColProjectionData());
+	}
+
+	@Benchmark
+	public void pcaCorrelation(WorkspaceState state, Blackhole blackhole) throws Exception {
+		ConcisePCACorr pca = new ConcisePCACorr(state.workspace, false);
+		pca.setWords(state.topWords.subList(0, numWords));
+		blackhole.consume(pca.getRowProjectionData());
+		blackhole.consume(pca.getColProjectionData());
+	}
+}
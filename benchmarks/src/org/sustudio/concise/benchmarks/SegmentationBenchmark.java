@@ -0,0 +1,90 @@
+package org.sustudio.concise.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.chenlb.mmseg4j.ComplexSeg;
+import com.chenlb.mmseg4j.Dictionary;
+import com.chenlb.mmseg4j.MMSeg;
+import com.chenlb.mmseg4j.MaxWordSeg;
+import com.chenlb.mmseg4j.Seg;
+import com.chenlb.mmseg4j.SimpleSeg;
+import com.chenlb.mmseg4j.Word;
+
+/**
+ * MMSeg 斷詞的速度，<tt>chars</tt> 是每秒斷幾個字元。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SegmentationBenchmark {
+
+	@Param({ "Simple", "Complex", "MaxWord" })
+	public String seg;
+
+	@Param("1000000")
+	public int numChars;
+
+	@Param("1")
+	public long seed;
+
+	private String text;
+	private Seg segmenter;
+	private MMSeg mmSeg;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long chars;
+		public long tokens;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		text = BenchmarkCorpus.rawText(seed, numChars);
+		Dictionary dic = Dictionary.getInstance();
+		if ("Simple".equals(seg)) {
+			segmenter = new SimpleSeg(dic);
+		}
+		else if ("MaxWord".equals(seg)) {
+			segmenter = new MaxWordSeg(dic);
+		}
+		else {
+			segmenter = new ComplexSeg(dic);
+		}
+		mmSeg = new MMSeg(new StringReader(""), segmenter);
+	}
+
+	@Benchmark
+	public void segment(Counters counters, Blackhole blackhole) throws IOException {
+		mmSeg.reset(new StringReader(text));
+		Word word;
+		while ((word = mmSeg.next()) != null) {
+			blackhole.consume(word);
+			counters.tokens++;
+		}
+		counters.chars += text.length();
+	}
+}
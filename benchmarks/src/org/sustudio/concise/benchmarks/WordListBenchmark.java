@@ -0,0 +1,44 @@
+package org.sustudio.concise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sustudio.concise.core.keyword.Keyword;
+import org.sustudio.concise.core.keyword.KeywordIterator;
+import org.sustudio.concise.core.wordlister.Word;
+import org.sustudio.concise.core.wordlister.WordIterator;
+
+/**
+ * 詞表：{@link WordIterator} 和 {@link KeywordIterator} 讀完整個索引的時間。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WordListBenchmark {
+
+	@Benchmark
+	public void wordIterator(WorkspaceState state, Blackhole blackhole) throws Exception {
+		for (Word word : new WordIterator(state.workspace, false)) {
+			blackhole.consume(word);
+		}
+	}
+
+	@Benchmark
+	public void keywordIterator(WorkspaceState state, Blackhole blackhole) throws Exception {
+		for (Keyword keyword : new KeywordIterator(state.workspace, false)) {
+			blackhole.consume(keyword);
+		}
+	}
+}
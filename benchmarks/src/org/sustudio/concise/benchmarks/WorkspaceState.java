@@ -0,0 +1,82 @@
+package org.sustudio.concise.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.wordlister.Word;
+import org.sustudio.concise.core.wordlister.WordIterator;
+
+/**
+ * 所有分析 benchmark 共用的 workspace，依參數產生一次後就重複使用。
+ *
+ * @author Kuan-ming Su
+ *
+ */
+@State(Scope.Benchmark)
+public class WorkspaceState {
+
+	@Param("1000")
+	public int numDocs;
+
+	@Param("200")
+	public int numReferenceDocs;
+
+	@Param("500")
+	public int wordsPerDoc;
+
+	@Param("1")
+	public long seed;
+
+	public Workspace workspace;
+
+	/** 出現次數最多的詞（依頻率排序） */
+	public List<String> topWords;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File dir = BenchmarkCorpus.workspace(numDocs, numReferenceDocs, wordsPerDoc, seed);
+		workspace = new Workspace(dir);
+
+		List<Word> words = new ArrayList<Word>();
+		for (Word word : new WordIterator(workspace, false)) {
+			words.add(word);
+		}
+		Collections.sort(words, new Comparator<Word>() {
+			@Override
+			public int compare(Word w1, Word w2) {
+				return Long.compare(w2.getTotalTermFreq(), w1.getTotalTermFreq());
+			}
+		});
+		topWords = new ArrayList<String>();
+		for (Word word : words) {
+			if (topWords.size() == 50) {
+				break;
+			}
+			if (Character.isLetterOrDigit(word.getWord().charAt(0))) {
+				topWords.add(word.getWord());
+			}
+		}
+	}
+
+	/**
+	 * @return 最常出現的詞
+	 */
+	public String queryWord() {
+		return topWords.get(0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workspace.close();
+	}
+}
@@ -1,45 +1,33 @@
 package com.chenlb.mmseg4j;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 所有词都记录在第一个字的结点下.
+ * <p>Modified by Kuan-ming Su.<br/>
+ * 词尾不再存成每个结点一个 HashMap 的 KeyTree，而是指向 {@link DoubleArrayTrie} 中第一个字的状态。</p>
  * 
  * @author chenlb 2009-2-20 下午11:30:14
+ * @deprecated 分词改用 {@link Dictionary#matchAll(char[], int, int[])} 等直接查 trie 的方法，只为相容保留
  */
+@Deprecated
 public class CharNode {
 
-	private int freq = -1;	//Degree of Morphemic Freedom of One-Character, 单字才需要
-	private int maxLen = 0;	//wordTail的最长
+	private final int freq;	//Degree of Morphemic Freedom of One-Character, 单字才需要
 
-	private KeyTree ktWordTails = new KeyTree();
-	private int wordNum = 0;
+	private final DoubleArrayTrie trie;
+	private final int state;	//第一个字在 trie 中的状态
 	
-	public CharNode() {
-		
+	CharNode(int freq, DoubleArrayTrie trie, int state) {
+		this.freq = freq;
+		this.trie = trie;
+		this.state = state;
 	}
 	
-	public void addWordTail(char[] wordTail) {
-		ktWordTails.add(wordTail);
-		wordNum++;
-		if(wordTail.length > maxLen) {
-			maxLen = wordTail.length;
-		}
-	}
 	public int getFreq() {
 		return freq;
 	}
 	
-	public void setFreq(int freq) {
-		this.freq = freq;
-	}
-	
-	public int wordNum() {
-		return wordNum;
-	}
-	
 	/**
 	 * @param sen 句子, 一串文本.
 	 * @param offset 词在句子中的位置
@@ -47,8 +35,11 @@ public class CharNode {
 	 * @author chenlb 2009-4-8 下午11:10:30
 	 */
 	public int indexOf(char[] sen, int offset, int tailLen) {
-		//return binarySearch(wordTails, sen, offset+1, tailLen, casc);
-		return ktWordTails.match(sen, offset+1, tailLen) ? 1 : -1;
+		int s = state;
+		for(int i=0; i<tailLen && s != DoubleArrayTrie.NONE; i++) {
+			s = trie.next(s, sen[offset+1+i]);
+		}
+		return tailLen > 0 && s != DoubleArrayTrie.NONE && trie.isWord(s) ? 1 : -1;
 	}
 	
 	/**
@@ -58,7 +49,18 @@ public class CharNode {
 	 * @author chenlb 2009-4-10 下午10:45:51
 	 */
 	public int maxMatch(char[] sen, int wordTailOffset) {
-		return ktWordTails.maxMatch(sen, wordTailOffset);
+		int idx = wordTailOffset - 1;
+		int s = state;
+		for(int i=wordTailOffset; i<sen.length; i++) {
+			s = trie.next(s, sen[i]);
+			if(s == DoubleArrayTrie.NONE) {
+				break;
+			}
+			if(trie.isWord(s)) {
+				idx = i;
+			}
+		}
+		return idx - wordTailOffset + 1;
 	}
 	
 	/**
@@ -67,100 +69,17 @@ public class CharNode {
 	 * @author chenlb 2009-4-12 上午10:01:35
 	 */
 	public ArrayList<Integer> maxMatch(ArrayList<Integer> tailLens, char[] sen, int wordTailOffset) {
-		return ktWordTails.maxMatch(tailLens, sen, wordTailOffset);
-	}
-	
-	public int getMaxLen() {
-		return maxLen;
-	}
-	public void setMaxLen(int maxLen) {
-		this.maxLen = maxLen;
-	}
-	
-	public static class KeyTree {
-		TreeNode head = new TreeNode(' ');
-		
-		public void add(char[] w) {
-			if(w.length < 1) {
-				return;
-			}
-			TreeNode p = head;
-			for(int i=0; i<w.length; i++) {
-				TreeNode n = p.subNode(w[i]);
-				if(n == null) {
-					n = new TreeNode(w[i]);
-					p.born(w[i], n);
-				}
-				p = n;
-			}
-			p.alsoLeaf = true;
-		}
-		
-		/**
-		 * @return 返回匹配最长词的长度, 没有找到返回 0.
-		 */
-		public int maxMatch(char[] sen, int offset) {
-			int idx = offset - 1;
-			TreeNode node = head;
-			for(int i=offset; i<sen.length; i++) {
-				node = node.subNode(sen[i]);
-				if(node != null) {
-					if(node.isAlsoLeaf()) {
-						idx = i; 
-					}
-				} else {
-					break;
-				}
-			}
-			return idx - offset + 1;
-		}
-		
-		public ArrayList<Integer> maxMatch(ArrayList<Integer> tailLens, char[] sen, int offset) {
-			TreeNode node = head;
-			for(int i=offset; i<sen.length; i++) {
-				node = node.subNode(sen[i]);
-				if(node != null) {
-					if(node.isAlsoLeaf()) {
-						tailLens.add(i-offset+1); 
-					}
-				} else {
-					break;
-				}
+		int s = state;
+		for(int i=wordTailOffset; i<sen.length; i++) {
+			s = trie.next(s, sen[i]);
+			if(s == DoubleArrayTrie.NONE) {
+				break;
 			}
-			return tailLens;
-		}
-		
-		public boolean match(char[] sen, int offset, int len) {
-			TreeNode node = head;
-			for(int i=0; i<len; i++) {
-				node = node.subNode(sen[offset+i]);
-				if(node == null) {
-					return false;
-				}
+			if(trie.isWord(s)) {
+				tailLens.add(i-wordTailOffset+1);
 			}
-			return node.isAlsoLeaf();
 		}
+		return tailLens;
 	}
 	
-	private static class TreeNode {
-		@SuppressWarnings("unused")
-		char key;
-		Map<Character, TreeNode> subNodes;
-		boolean alsoLeaf;
-		public TreeNode(char key) {
-			this.key = key;
-			subNodes = new HashMap<Character, TreeNode>();
-		}
-		
-		public void born(char k, TreeNode sub) {
-			subNodes.put(k, sub);
-		}
-		
-		public TreeNode subNode(char k) {
-			return subNodes.get(k);
-		}
-		public boolean isAlsoLeaf() {
-			return alsoLeaf;
-		}
-	}
 }
@@ -22,6 +22,14 @@ public class ComplexSeg extends Seg{
 	
 	private static boolean showChunk = false;
 	
+	/** 记录词尾部允许的长度（Modified by Kuan-ming Su: 用 int[] 代替 ArrayList<Integer>） */
+	private int[][] tailLens = new int[2][16];
+	
+	/** 列举 chunk 时重复使用的空间 (Added by Kuan-ming Su) */
+	private final int[] tailLen = new int[3];
+	private final int[] offsets = new int[3];
+	private final int[] bestTailLen = new int[3];
+	
 	public ComplexSeg(Dictionary dic) {
 		super(dic);
 		otherRules.add(new LargestAvgLenRule());
@@ -29,16 +37,114 @@ public class ComplexSeg extends Seg{
 		otherRules.add(new LargestSumDegreeFreedomRule());
 	}
 	
+	/**
+	 * Modified by Kuan-ming Su.<br/>
+	 * 不再为每个候选 chunk 建立 Chunk/Word 再交给规则过虑, 而是边列举边依
+	 * MaxMatch, LargestAvgLen, SmallestVariance, LargestSumDegreeFreedom 的顺序比较,
+	 * 只保留最好的一个 (同分取先列举的, 与规则过虑的结果相同), 最后才建立它的 Chunk.
+	 * showChunk 时仍走原来的规则过虑, 方便看每个规则的结果.
+	 */
 	public Chunk seg(Sentence sen) {
+		snapshot();
+		if(showChunk) {
+			return segWithRules(sen);
+		}
+		if(sen.isFinish()) {
+			return null;
+		}
+		char[] chs = sen.getText();
+		int[] offsets = this.offsets;
+		int[] tailLen = this.tailLen;
+		int[] best = this.bestTailLen;
+		offsets[0] = sen.getOffset();
+
+		int maxLen = 0;	//含超出句尾的词, 下一个chunk块的开始位置增量
+		int bestLen = -1;
+		double bestAvgLen = 0;
+		double bestVariance = 0;
+		int bestSumDegree = 0;
+
+		int aCount = matchTails(chs, offsets[0], 0);
+		for(int aIdx=aCount-1; aIdx>=0; aIdx--) {
+			tailLen[0] = tailLens[0][aIdx];
+			offsets[1] = offsets[0]+1+tailLen[0];
+
+			int bCount = matchTails(chs, offsets[1], 1);
+			for(int bIdx=bCount-1; bIdx>=0; bIdx--) {
+				tailLen[1] = tailLens[1][bIdx];
+				offsets[2] = offsets[1]+1+tailLen[1];
+				tailLen[2] = maxMatch(chs, offsets[2]);
+
+				int sumChunkLen = tailLen[0]+tailLen[1]+tailLen[2]+3;
+				if(sumChunkLen < maxLen) {
+					continue;
+				}
+				maxLen = sumChunkLen;
+
+				//与 Chunk 相同的算法 (只算在句子内的词), 浮点数的结果才会一致
+				int len = 0;
+				int count = 0;
+				int sumDegree = 0;
+				for(int i=0; i<3; i++) {
+					if(offsets[i] < chs.length) {
+						len += tailLen[i]+1;
+						count++;
+						if(tailLen[i] == 0) {
+							int d = degree(chs[offsets[i]]);
+							if(d > -1) {
+								sumDegree += d;
+							}
+						}
+					}
+				}
+				if(len < bestLen) {	//MaxMatchRule
+					continue;
+				}
+				double avgLen = (double)len/count;
+				double sum = 0;
+				for(int i=0; i<3; i++) {
+					if(offsets[i] < chs.length) {
+						sum += Math.pow(tailLen[i]+1-avgLen, 2);
+					}
+				}
+				double variance = sum/count;
+				if(len == bestLen) {
+					if(avgLen < bestAvgLen) {	//LargestAvgLenRule
+						continue;
+					}
+					if(avgLen == bestAvgLen) {
+						if(variance > bestVariance) {	//SmallestVarianceRule
+							continue;
+						}
+						if(variance == bestVariance && sumDegree <= bestSumDegree) {	//LargestSumDegreeFreedomRule, 同分取先前的
+							continue;
+						}
+					}
+				}
+				bestLen = len;
+				bestAvgLen = avgLen;
+				bestVariance = variance;
+				bestSumDegree = sumDegree;
+				best[0] = tailLen[0];
+				best[1] = tailLen[1];
+				best[2] = tailLen[2];
+			}
+		}
+		sen.addOffset(maxLen);	//maxLen个字符已经处理完
+
+		offsets[1] = offsets[0]+1+best[0];
+		offsets[2] = offsets[1]+1+best[1];
+		return createChunk(sen, chs, best, offsets);
+	}
+
+	/**
+	 * 原来的做法: 建立所有候选 chunk 再用规则过虑, showChunk 时用来输出过程, 也用来检验 {@link #seg(Sentence)} 的结果.
+	 */
+	Chunk segWithRules(Sentence sen) {
+		snapshot();
 		char[] chs = sen.getText();
 		int[] tailLen = new int[3];	//记录词的尾长
 		//int[] maxTailLen = new int[3];	
-		@SuppressWarnings("unchecked")
-		ArrayList<Integer>[] tailLens = new ArrayList[2];	//记录词尾部允许的长度
-		for(int i=0; i<2; i++) {
-			tailLens[i] = new ArrayList<Integer>();
-		}
-		CharNode[] cns = new CharNode[3];
 		
 		int[] offsets = new int[3];	//每个词在sen的开始位置
 		mmr.reset();
@@ -52,21 +158,21 @@ public class ComplexSeg extends Seg{
 			 * 遍历所有不同词长,还不是从最大到0(w[0]=maxLen(chs, offsets[0]); w[0]>=0; w[0]--)
 			 * 可以减少一部分多余的查找.
 			 */
-			maxMatch(cns, 0, chs, offsets[0], tailLens, 0);
-			for(int aIdx=tailLens[0].size()-1; aIdx>=0; aIdx--) {
+			int aCount = matchTails(chs, offsets[0], 0);
+			for(int aIdx=aCount-1; aIdx>=0; aIdx--) {
 
-				tailLen[0] = tailLens[0].get(aIdx);
+				tailLen[0] = tailLens[0][aIdx];
 
 				offsets[1] = offsets[0]+1+tailLen[0];	//第二个词的开始位置
 
-				maxMatch(cns, 1, chs, offsets[1], tailLens, 1);
-				for(int bIdx=tailLens[1].size()-1; bIdx>=0; bIdx--) {
+				int bCount = matchTails(chs, offsets[1], 1);
+				for(int bIdx=bCount-1; bIdx>=0; bIdx--) {
 
-					tailLen[1] = tailLens[1].get(bIdx);
+					tailLen[1] = tailLens[1][bIdx];
 					offsets[2] = offsets[1]+1+tailLen[1];
 
 					//第三个词只需要最长的
-					tailLen[2] = maxMatch(cns, 2, chs, offsets[2]);
+					tailLen[2] = maxMatch(chs, offsets[2]);
 
 					int sumChunkLen = 0;
 					for(int i=0; i<3; i++) {
@@ -75,13 +181,13 @@ public class ComplexSeg extends Seg{
 					Chunk ck = null;
 					if(sumChunkLen >= maxLen) {
 						maxLen = sumChunkLen;	//下一个chunk块的开始位置增量
-						ck = createChunk(sen, chs, tailLen, offsets, cns);
+						ck = createChunk(sen, chs, tailLen, offsets);
 						mmr.addChunk(ck);
 
 					}
 					if(showChunk) {
 						if(ck == null) {
-							ck = createChunk(sen, chs, tailLen, offsets, cns);
+							ck = createChunk(sen, chs, tailLen, offsets);
 							mmr.addChunk(ck);
 						}
 						System.out.println(ck);
@@ -115,7 +221,18 @@ public class ComplexSeg extends Seg{
 		return null;
 	}
 
-	private Chunk createChunk(Sentence sen, char[] chs, int[] tailLen, int[] offsets, CharNode[] cns/*, char[][] cks*/) {
+	/**
+	 * 找出 chs[offset] 开始所有的词尾长, 放到 tailLens[idx], 空间不够就加大
+	 */
+	private int matchTails(char[] chs, int offset, int idx) {
+		int n;
+		while((n = maxMatch(chs, offset, tailLens[idx])) == tailLens[idx].length) {
+			tailLens[idx] = new int[tailLens[idx].length * 2];
+		}
+		return n;
+	}
+	
+	private Chunk createChunk(Sentence sen, char[] chs, int[] tailLen, int[] offsets/*, char[][] cks*/) {
 		Chunk ck = new Chunk();
 		
 		for(int i=0; i<3; i++) {
@@ -123,10 +240,7 @@ public class ComplexSeg extends Seg{
 			if(offsets[i] < chs.length) {
 				ck.words[i] = new Word(chs, sen.getStartOffset(), offsets[i], tailLen[i]+1);//new Word(cks[i], sen.getStartOffset()+offsets[i]);
 				if(tailLen[i] == 0) {	//单字的要取得"字频计算出自由度"
-					CharNode cn = cns[i];	//dic.head(chs[offsets[i]]);
-					if(cn !=null) {
-						ck.words[i].setDegree(cn.getFreq());
-					}
+					ck.words[i].setDegree(degree(chs[offsets[i]]));
 				}
 			}
 		}
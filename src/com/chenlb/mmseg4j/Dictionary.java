@@ -11,7 +11,10 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,6 +25,10 @@ import java.util.logging.Logger;
  * 词典类. 词库目录单例模式.<br/>
  * 保存单字与其频率,还有词库.<br/>
  * 有检测词典变更的接口，外部程序可以使用 {@link #wordsFileIsChange()} 和 {@link #reload()} 来完成检测与加载的工作.
+ * <p>Modified by Kuan-ming Su.<br/>
+ * 同一个目录只会加载一次（同时要的 thread 会等第一个加载完）。
+ * 词库是不会改变的 {@link Lexicon}，重新加载、换使用者词库或是加词时都是建好新的再整个换掉，
+ * 正在分词的 thread 不用加锁。</p>
  * 
  * @author chenlb 2009-2-20 下午11:34:29
  */
@@ -29,16 +36,24 @@ public class Dictionary {
 
 	/**
 	 * Added by Kuan-ming Su.
-	 * 增加使用者自定詞庫路徑
+	 * 增加使用者自定詞庫路徑（新建立的词典预设用这些，已经建立的用 {@link #setUserDictFiles(File[])} 更换）
 	 */
 	public static File[] userDict;
 	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 編譯過的詞庫存放的目錄，null 的話放在系統暫存目錄下的 mmseg4j 目录
+	 */
+	public static File compiledDicPath;
+	
 	
 	private static final Logger log = Logger.getLogger(Dictionary.class.getName());
 	
 	private File dicPath;	//词库目录
-	private volatile Map<Character, CharNode> dict;
-	private volatile Map<Character, Object> unit;	//单个字的单位
+	private volatile Lexicon lexicon;	//單字、單位字和所有的詞（Modified by Kuan-ming Su）
+	private volatile File[] userDictFiles;	//使用者詞庫（Added by Kuan-ming Su）
+	/** 用 {@link #addWords(Collection)} 加的词, 重新加载后还要加回去 */
+	private final LinkedHashSet<String> addedWords = new LinkedHashSet<String>();
 	
 	/** 记录 word 文件的最后修改时间 */
 	private Map<File, Long> wordsLastTime = null;
@@ -81,23 +96,61 @@ public class Dictionary {
 	 * @param path 词典的目录
 	 */
 	public static Dictionary getInstance(File path) {
+		Dictionary dic = register(path, userDict);
+		dic.ensureLoaded();
+		return dic;
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @param path 词典的目录
+	 * @param userDictFiles 使用者詞庫, 已经加载的词典不同时会换成这些
+	 * @see #setUserDictFiles(File[])
+	 */
+	public static Dictionary getInstance(File path, File[] userDictFiles) {
+		Dictionary dic = register(path, userDictFiles);
+		dic.setUserDictFiles(userDictFiles);
+		return dic;
+	}
+	
+	/**
+	 * 取得或登记 path 的词典（还没加载）, 同一个 path 只会有一个
+	 */
+	private static Dictionary register(File path, File[] userDictFiles) {
 		Dictionary dic = dics.get(path);
 		if(dic == null) {
-			dic = new Dictionary(path);
-			dics.put(path, dic);
+			Dictionary created = new Dictionary(path, userDictFiles);
+			dic = dics.putIfAbsent(path, created);
+			if(dic == null) {
+				dic = created;
+			}
 		}
 		return dic;
 	}
 	
+	/**
+	 * 还没加载就加载, 同时呼叫的 thread 会等第一个加载完
+	 */
+	private void ensureLoaded() {
+		if(lexicon == null) {
+			synchronized(this) {
+				if(lexicon == null) {
+					reload();
+				}
+			}
+		}
+	}
+	
 	/**
 	 * 销毁, 释放资源. 此后此对像不再可用.
 	 */
 	void destroy() {
-		clear(dicPath);
+		if(dicPath != null) {
+			dics.remove(dicPath, this);	//只移除自己, 不要移除同一个目录后来建立的
+		}
 		
 		dicPath = null;
-		dict = null;
-		unit = null;
+		lexicon = null;
 	}
 	
 	/**
@@ -117,17 +170,12 @@ public class Dictionary {
 	}
 	
 	/**
-	 * 词典的目录 
+	 * 词典的目录, 第一次使用前才加载 (Modified by Kuan-ming Su)
 	 */
-	private Dictionary(File path) {
-		init(path);
-	}
-	
-	private void init(File path) {
+	private Dictionary(File path, File[] userDictFiles) {
 		dicPath = path;
 		wordsLastTime = new HashMap<File, Long>();
-		
-		reload();	//加载词典
+		this.userDictFiles = userDictFiles == null ? null : userDictFiles.clone();
 	}
 	
 	private static long now() {
@@ -149,67 +197,62 @@ public class Dictionary {
 		});
 	}
 	
-	//@SuppressWarnings("resource")
-	private Map<Character, CharNode> loadDic(File wordsPath) throws IOException {
-		InputStream charsIn = null;
+	/**
+	 * Added by Kuan-ming Su.
+	 * 詞庫的來源檔案（依載入的順序），jar 裡的檔案是 URL
+	 */
+	private static class DicSource {
+		final URL url;
+		final File file;	//不在 jar 里的才有
+		final boolean isChars, isUnits;
+		
+		DicSource(URL url, File file, boolean isChars, boolean isUnits) {
+			this.url = url;
+			this.file = file;
+			this.isChars = isChars;
+			this.isUnits = isUnits;
+		}
+		
+		InputStream open() throws IOException {
+			return file != null ? new FileInputStream(file) : url.openStream();
+		}
+		
+		/** 用来检测是否变更 */
+		long lastModified() throws IOException {
+			return file != null ? file.lastModified() : url.openConnection().getLastModified();
+		}
+		
+		long length() throws IOException {
+			return file != null ? file.length() : url.openConnection().getContentLengthLong();
+		}
+		
+		File logFile() {
+			return file != null ? file : new File(url.getFile());
+		}
+	}
+	
+	private static final String RESOURCE_PATH = "/org/sustudio/concise/core/mmseg/dictionary/";
+	
+	/**
+	 * 依載入的順序列出詞庫的來源
+	 */
+	private List<DicSource> listSources(File wordsPath) throws IOException {
+		List<DicSource> sources = new ArrayList<DicSource>();
+		
 		File charsFile = new File(wordsPath, "chars.dic");
 		if(charsFile.exists()) {
-			charsIn = new FileInputStream(charsFile);
-			addLastTime(charsFile);	//chars.dic 也检测是否变更
+			sources.add(new DicSource(charsFile.toURI().toURL(), charsFile, true, false));
 		} else {	//从 jar 里加载
-			//charsIn = this.getClass().getResourceAsStream("/data/chars.dic");
-			//charsFile = new File(this.getClass().getResource("/data/chars.dic").getFile());	//only for log
-			// 
-			// modified by Kuan-ming Su
-			charsIn = this.getClass().getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/chars.dic");
-			charsFile = new File(this.getClass().getResource("/org/sustudio/concise/core/mmseg/dictionary/chars.dic").getFile());  // only for log
+			sources.add(new DicSource(Dictionary.class.getResource(RESOURCE_PATH + "chars.dic"), null, true, false));
 		}
-		final Map<Character, CharNode> dic = new HashMap<Character, CharNode>();
-		int lineNum = 0;
-		long s = now();
-		long ss = s;
-		lineNum = load(charsIn, new FileLoading() {	//单个字的
-
-			public void row(String line, int n) {
-				if(line.length() < 1) {
-					return;
-				}
-				String[] w = line.split(" ");
-				CharNode cn = new CharNode();
-				switch(w.length) {
-				case 2:
-					try {
-						cn.setFreq((int)(Math.log(Integer.parseInt(w[1]))*100));//字频计算出自由度
-					} catch(NumberFormatException e) {
-						//eat...
-					}
-				case 1:
-					
-					dic.put(w[0].charAt(0), cn);
-				}
-			}
-		});
-		log.info("chars loaded time="+(now()-s)+"ms, line="+lineNum+", on file="+charsFile);
 		
-		//try load words.dic in jar
-		// InputStream wordsDicIn = this.getClass().getResourceAsStream("/data/words.dic");
-		// if(wordsDicIn != null) {
-		// 	File wordsDic = new File(this.getClass().getResource("/data/words.dic").getFile());
-		// 	loadWord(wordsDicIn, dic, wordsDic);
-		// }
-		//
-		// modified by Kuan-ming Su
-		InputStream wordsDicIn = this.getClass().getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-moe.dic");
-		if (wordsDicIn != null) {
-			File wordsDic = new File(this.getClass().getResource("/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-moe.dic").getFile());
-			loadWord(wordsDicIn, dic, wordsDic);
+		URL wordsDic = Dictionary.class.getResource(RESOURCE_PATH + "words-taiwan-moe.dic");
+		if (wordsDic != null) {
+			sources.add(new DicSource(wordsDic, null, false, false));
 		}
-		
-		// added by Kuan-ming Su
-		InputStream wordsPlace = this.getClass().getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-placename.dic");
-		if (wordsPlace != null) {
-			File placeDic = new File(this.getClass().getResource("/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-placename.dic").getFile());
-			loadWord(wordsPlace, dic, placeDic);
+		URL placeDic = Dictionary.class.getResource(RESOURCE_PATH + "words-taiwan-placename.dic");
+		if (placeDic != null) {
+			sources.add(new DicSource(placeDic, null, false, false));
 		}
 		
 		File[] words = listWordsFiles();	//只要 wordsXXX.dic的文件
@@ -217,6 +260,7 @@ public class Dictionary {
 		// Added by Kuan-ming Su
 		// 擴展使用者詞庫檔案
 		//
+		File[] userDict = userDictFiles;
 		if (userDict != null && userDict.length > 0) {
 			if (words == null) {
 				words = userDict;
@@ -227,62 +271,179 @@ public class Dictionary {
 				words = userDicts;
 			}
 		}
-		
 		if(words != null) {	//扩展词库目录
 			for(File wordsFile : words) {
-				loadWord(new FileInputStream(wordsFile), dic, wordsFile);
-				
-				addLastTime(wordsFile);	//用于检测是否修改
+				sources.add(new DicSource(wordsFile.toURI().toURL(), wordsFile, false, false));
 			}
 		}
 		
-		log.info("load all dic use time="+(now()-ss)+"ms");
-		return dic;
+		File unitFile = new File(wordsPath, "units.dic");
+		if(unitFile.exists()) {
+			sources.add(new DicSource(unitFile.toURI().toURL(), unitFile, false, true));
+		} else {	//在jar包里的/data/unit.dic
+			// modified by Kuan-ming Su
+			sources.add(new DicSource(Dictionary.class.getResource(RESOURCE_PATH + "chars.dic"), null, false, true));
+		}
+		return sources;
 	}
 	
 	/**
-	 * @param is 词库文件流
-	 * @param dic 加载的词保存在结构中
-	 * @param wordsFile	日志用
-	 * @throws IOException from {@link #load(InputStream, FileLoading)}
+	 * Added by Kuan-ming Su.
+	 * 來源檔案的 fingerprint（路徑、修改時間和大小），用來判斷編譯過的詞庫是否過時
 	 */
-	private void loadWord(InputStream is, Map<Character, CharNode> dic, File wordsFile) throws IOException {
-		long s = now();
-		int lineNum = load(is, new WordsFileLoading(dic)); //正常的词库
-		log.info("words loaded time="+(now()-s)+"ms, line="+lineNum+", on file="+wordsFile);
+	private static long fingerprint(List<DicSource> sources, boolean withStamps) throws IOException {
+		long h = 0xcbf29ce484222325L;	// FNV-1a
+		for(DicSource source : sources) {
+			String id = (source.isChars ? "c:" : source.isUnits ? "u:" : "w:") + source.url;
+			for(int i=0; i<id.length(); i++) {
+				h = (h ^ id.charAt(i)) * 0x100000001b3L;
+			}
+			if(withStamps) {
+				h = (h ^ source.lastModified()) * 0x100000001b3L;
+				h = (h ^ source.length()) * 0x100000001b3L;
+			}
+		}
+		return h;
 	}
 	
-	//@SuppressWarnings("resource")
-	private Map<Character, Object> loadUnit(File path) throws IOException {
-		InputStream fin = null;
-		File unitFile = new File(path, "units.dic");
-		if(unitFile.exists()) {
-			fin = new FileInputStream(unitFile);
-			addLastTime(unitFile);
-		} else {	//在jar包里的/data/unit.dic
-			//fin = Dictionary.class.getResourceAsStream("/data/units.dic");
-			//unitFile = new File(Dictionary.class.getResource("/data/units.dic").getFile());
-			//
-			// modified by Kuan-ming Su
-			fin = this.getClass().getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/chars.dic");
-			unitFile = new File(this.getClass().getResource("/org/sustudio/concise/core/mmseg/dictionary/chars.dic").getFile());  // only for log
+	/**
+	 * Added by Kuan-ming Su.
+	 * 編譯過的詞庫存放的目錄
+	 */
+	private static File compiledDir() {
+		File dir = compiledDicPath;
+		if(dir == null) {
+			dir = new File(System.getProperty("java.io.tmpdir"), "mmseg4j");
+		}
+		return dir;
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 編譯過的詞庫檔案的檔名開頭，同一組來源（不管修改時間）都一樣
+	 */
+	private static String compiledPrefix(List<DicSource> sources) throws IOException {
+		return "mmseg4j-" + Long.toHexString(fingerprint(sources, false)) + "-";
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 編譯過的詞庫檔案，來源的內容變更後檔名也不一樣，不會蓋掉可能正被 memory-map 著的舊檔
+	 */
+	private static File compiledFile(List<DicSource> sources, long fingerprint) throws IOException {
+		return new File(compiledDir(), compiledPrefix(sources) + Long.toHexString(fingerprint) + ".lexicon");
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 刪掉同一組來源過時的編譯檔（還被 map 著而刪不掉的下次再刪）
+	 */
+	private static void deleteStaleCompiledFiles(List<DicSource> sources, final File current) throws IOException {
+		final String prefix = compiledPrefix(sources);
+		File[] stale = compiledDir().listFiles(new FilenameFilter() {
+
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(".lexicon") && !name.equals(current.getName());
+			}
+			
+		});
+		if(stale != null) {
+			for(File file : stale) {
+				if(!file.delete()) {
+					log.fine("cannot delete stale compiled dic="+file);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Modified by Kuan-ming Su.
+	 * 先找編譯過的詞庫（memory-map），沒有或是過時了才剖析 .dic 檔，再把結果編譯起來。
+	 */
+	private Lexicon loadDic(File wordsPath) throws IOException {
+		long s = now();
+		List<DicSource> sources = listSources(wordsPath);
+		for(DicSource source : sources) {
+			if(source.file != null) {
+				addLastTime(source.file);	//用于检测是否修改
+			}
 		}
 		
-		final Map<Character, Object> unit = new HashMap<Character, Object>(); 
+		long fingerprint = fingerprint(sources, true);
+		File compiled = compiledFile(sources, fingerprint);
+		try {
+			Lexicon lexicon = Lexicon.map(compiled, fingerprint);
+			if(lexicon != null) {
+				log.info("compiled dic mapped time="+(now()-s)+"ms, on file="+compiled);
+				return lexicon;
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "cannot map compiled dic="+compiled, e);
+		}
 		
-		long s = now();
-		int lineNum = load(fin, new FileLoading() {
+		final Lexicon.Builder builder = new Lexicon.Builder();
+		for(DicSource source : sources) {
+			long ls = now();
+			int lineNum;
+			if(source.isChars) {
+				lineNum = load(source.open(), new FileLoading() {	//单个字的
 
-			public void row(String line, int n) {
-				if(line.length() != 1) {
-					return;
-				}
-				unit.put(line.charAt(0), Dictionary.class);
+					public void row(String line, int n) {
+						if(line.length() < 1) {
+							return;
+						}
+						String[] w = line.split(" ");
+						int freq = -1;
+						switch(w.length) {
+						case 2:
+							try {
+								freq = (int)(Math.log(Integer.parseInt(w[1]))*100);//字频计算出自由度
+							} catch(NumberFormatException e) {
+								//eat...
+							}
+						case 1:
+							builder.addChar(w[0].charAt(0), freq);
+						}
+					}
+				});
+				log.info("chars loaded time="+(now()-ls)+"ms, line="+lineNum+", on file="+source.logFile());
 			}
-		});
-		log.info("unit loaded time="+(now()-s)+"ms, line="+lineNum+", on file="+unitFile);
+			else if(source.isUnits) {
+				lineNum = load(source.open(), new FileLoading() {
 
-		return unit;
+					public void row(String line, int n) {
+						if(line.length() != 1) {
+							return;
+						}
+						builder.addUnit(line.charAt(0));
+					}
+				});
+				log.info("unit loaded time="+(now()-ls)+"ms, line="+lineNum+", on file="+source.logFile());
+			}
+			else {
+				lineNum = load(source.open(), new WordsFileLoading(builder)); //正常的词库
+				log.info("words loaded time="+(now()-ls)+"ms, line="+lineNum+", on file="+source.logFile());
+			}
+		}
+		Lexicon lexicon = builder.build();
+		log.info("load all dic use time="+(now()-s)+"ms");
+		
+		try {
+			File dir = compiled.getParentFile();
+			if(!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("cannot create directory "+dir);
+			}
+			lexicon.write(compiled, fingerprint);
+			Lexicon mapped = Lexicon.map(compiled, fingerprint);
+			if(mapped != null) {
+				lexicon = mapped;
+			}
+			log.info("compiled dic written to file="+compiled);
+			deleteStaleCompiledFiles(sources, compiled);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "cannot write compiled dic="+compiled, e);
+		}
+		return lexicon;
 	}
 
 	/**
@@ -291,12 +452,12 @@ public class Dictionary {
 	 * @author chenlb 2009-10-15 下午02:12:55
 	 */
 	private static class WordsFileLoading implements FileLoading {
-		final Map<Character, CharNode> dic;
+		final Lexicon.Builder dic;
 
 		/**
 		 * @param dic 加载的词，保存在此结构中。
 		 */
-		public WordsFileLoading(Map<Character, CharNode> dic) {
+		public WordsFileLoading(Lexicon.Builder dic) {
 			this.dic = dic;
 		}
 		
@@ -304,12 +465,7 @@ public class Dictionary {
 			if(line.length() < 2) {
 				return;
 			}
-			CharNode cn = dic.get(line.charAt(0));
-			if(cn == null) {
-				cn = new CharNode();
-				dic.put(line.charAt(0), cn);
-			}
-			cn.addWordTail(tail(line));
+			dic.addWord(line);
 		}
 	}
 	
@@ -332,16 +488,6 @@ public class Dictionary {
 		return n;
 	}
 	
-	/**
-	 * 取得 str 除去第一个char的部分
-	 * @author chenlb 2009-3-3 下午10:05:26
-	 */
-	private static char[] tail(String str) {
-		char[] cs = new char[str.length()-1];
-		str.getChars(1, str.length(), cs, 0);
-		return cs;
-	}
-	
 	public static interface FileLoading {
 		/**
 		 * @param line 读出的一行
@@ -395,19 +541,19 @@ public class Dictionary {
 	 */
 	public synchronized boolean reload() {
 		Map<File, Long> oldWordsLastTime = new HashMap<File, Long>(wordsLastTime);
-		Map<Character, CharNode> oldDict = dict;
-		Map<Character, Object> oldUnit = unit;
 		
 		try {
 			wordsLastTime.clear();
-			dict = loadDic(dicPath);
-			unit = loadUnit(dicPath);
+			Lexicon loaded = loadDic(dicPath);
+			if(!addedWords.isEmpty()) {
+				loaded = loaded.withUserWords(addedWords);
+			}
+			lexicon = loaded;	//整个换掉, 正在用旧词库的不受影响
 			lastLoadTime = System.currentTimeMillis();
 		} catch (IOException e) {
 			//rollback
+			wordsLastTime.clear();
 			wordsLastTime.putAll(oldWordsLastTime);
-			dict = oldDict;
-			unit = oldUnit;
 			
 			if(log.isLoggable(Level.WARNING)) {
 				log.log(Level.WARNING, "reload dic error! dic="+dicPath+", and rollbacked.", e);
@@ -418,6 +564,55 @@ public class Dictionary {
 		return true;
 	}
 	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 换使用者詞庫, 和目前的一样而且词典文件都没有修改过 (见 {@link #wordsFileIsChange()}) 就不重新加载.
+	 * @param files 使用者詞庫, 可以是 null
+	 * @return 是否重新加载了
+	 */
+	public synchronized boolean setUserDictFiles(File[] files) {
+		if(lexicon != null && Arrays.equals(userDictFiles, files) && !wordsFileIsChange()) {
+			return false;
+		}
+		File[] old = userDictFiles;
+		userDictFiles = files == null ? null : files.clone();
+		if(!reload()) {
+			userDictFiles = old;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @return 使用者詞庫
+	 */
+	public File[] getUserDictFiles() {
+		File[] files = userDictFiles;
+		return files == null ? null : files.clone();
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 加词, 不用重新加载原来的词库 (另外放在一个小的 trie 里, 见 {@link Lexicon#withUserWords(Collection)}).
+	 * 重新加载后这些词还在, 但不会写进编译过的词库.
+	 * @param words 两个字以上的词
+	 * @return 有没有加了新的词
+	 */
+	public synchronized boolean addWords(Collection<String> words) {
+		ensureLoaded();
+		boolean changed = false;
+		for(String word : words) {
+			if(word != null && word.length() > 1 && !match(word)) {
+				changed |= addedWords.add(word);
+			}
+		}
+		if(changed) {
+			lexicon = lexicon.withUserWords(addedWords);
+		}
+		return changed;
+	}
+	
 	/**
 	 * word 能否在词库里找到
 	 * @author chenlb 2009-3-3 下午11:10:45
@@ -426,19 +621,62 @@ public class Dictionary {
 		if(word == null || word.length() < 2) {
 			return false;
 		}
-		CharNode cn = dict.get(word.charAt(0));
-		return search(cn, word.toCharArray(), 0, word.length()-1) >= 0;
+		return isWord(word.toCharArray(), 0, word.length());
 	}
 	
+	/**
+	 * @deprecated 改用 {@link #matchAll(char[], int, int[])}、{@link #maxMatchLength(char[], int)} 和 {@link #degree(char)}
+	 */
+	@Deprecated
 	public CharNode head(char ch) {
-		return dict.get(ch);
+		Lexicon lex = lexicon;
+		DoubleArrayTrie trie = lex.getTrie();
+		int state = trie.next(DoubleArrayTrie.ROOT, ch);
+		return state == DoubleArrayTrie.NONE ? null : new CharNode(lex.degree(ch), trie, state);
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * 一次找出 sen[offset] 开始所有词的长度（由短到长，lengths[0] 一定是单字的 1）.
+	 * @param lengths 存放长度, 空间不够时只存前面的
+	 * @return 找到几个, 至少一个
+	 * @see Lexicon#matchAll(char[], int, int[])
+	 */
+	public int matchAll(char[] sen, int offset, int[] lengths) {
+		return lexicon.matchAll(sen, offset, lengths);
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @return sen[offset] 开始最长的词的长度, 至少是 1
+	 */
+	public int maxMatchLength(char[] sen, int offset) {
+		return lexicon.maxMatch(sen, offset);
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @return sen[offset] 开始 len 长的词是否存在（两个字以上）
+	 */
+	public boolean isWord(char[] sen, int offset, int len) {
+		return lexicon.isWord(sen, offset, len);
+	}
+	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @return 单字的"字频计算出自由度", 没有的话是 -1
+	 */
+	public int degree(char ch) {
+		return lexicon.degree(ch);
 	}
 	
 	/**
 	 * sen[offset] 后 tailLen 长的词是否存在.
 	 * @see CharNode#indexOf(char[], int, int)
 	 * @author chenlb 2009-4-8 下午11:13:49
+	 * @deprecated 改用 {@link #isWord(char[], int, int)}
 	 */
+	@Deprecated
 	public int search(CharNode node, char[] sen, int offset, int tailLen) {
 		if(node != null) {
 			return node.indexOf(sen, offset, tailLen);
@@ -446,11 +684,17 @@ public class Dictionary {
 		return -1;
 	}
 	
+	/**
+	 * @return 最长的词尾长, 没有就是 0
+	 */
 	public int maxMatch(char[] sen, int offset) {
-		CharNode node = dict.get(sen[offset]);
-		return maxMatch(node, sen, offset);
+		return lexicon.maxMatch(sen, offset) - 1;
 	}
 	
+	/**
+	 * @deprecated 改用 {@link #maxMatchLength(char[], int)}
+	 */
+	@Deprecated
 	public int maxMatch(CharNode node, char[] sen, int offset) {
 		if(node != null) {
 			return node.maxMatch(sen, offset+1);
@@ -458,6 +702,10 @@ public class Dictionary {
 		return 0;
 	}
 	
+	/**
+	 * @deprecated 改用 {@link #matchAll(char[], int, int[])}
+	 */
+	@Deprecated
 	public ArrayList<Integer> maxMatch(CharNode node, ArrayList<Integer> tailLens, char[] sen, int offset) {
 		tailLens.clear();
 		tailLens.add(0);
@@ -467,8 +715,8 @@ public class Dictionary {
 		return tailLens;
 	}
 	
-	public boolean isUnit(Character ch) {
-		return unit.containsKey(ch);
+	public boolean isUnit(char ch) {
+		return lexicon.isUnit(ch);
 	}
 	
 	/**
@@ -500,11 +748,28 @@ public class Dictionary {
 	
 	/**
 	 * 仅仅用来观察词库.
+	 * @deprecated 改用 {@link #getLexicon()}
 	 */
+	@Deprecated
 	public Map<Character, CharNode> getDict() {
+		Map<Character, CharNode> dict = new HashMap<Character, CharNode>();
+		for(int c=Character.MIN_VALUE; c<=Character.MAX_VALUE; c++) {
+			CharNode cn = head((char) c);
+			if(cn != null) {
+				dict.put((char) c, cn);
+			}
+		}
 		return dict;
 	}
 	
+	/**
+	 * Added by Kuan-ming Su.
+	 * @return 目前的詞庫
+	 */
+	public Lexicon getLexicon() {
+		return lexicon;
+	}
+	
 	/**
 	 * 注意：当 words.dic 是从 jar 里加载时，此时 File 可能是不存在的。
 	 */
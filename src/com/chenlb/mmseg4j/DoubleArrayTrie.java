@@ -0,0 +1,175 @@
+package com.chenlb.mmseg4j;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Added by Kuan-ming Su.
+ * <p>所有詞彙放在一個 double-array trie 裡，狀態只是 int，轉移只要查兩個陣列，不需要 Character 物件和一層層的 HashMap。</p>
+ * <p>狀態 t 是狀態 s 經過字元 c 的下一個狀態，若 <code>t = base[s] + c + 1</code> 而且 <code>check[t] == s</code>。
+ * base 的最低位元記錄這個狀態是不是一個詞的結尾（只有兩個字以上的詞才算）。</p>
+ * <p>陣列可以是 heap 上的 int[]，也可以是 memory-mapped 的檔案（見 {@link Lexicon}）。</p>
+ *
+ * @author Kuan-ming Su
+ */
+public class DoubleArrayTrie {
+
+	/** 起始狀態 */
+	public static final int ROOT = 0;
+
+	/** 沒有這個轉移 */
+	public static final int NONE = -1;
+
+	private final IntBuffer base;
+	private final IntBuffer check;
+	private final int size;
+
+	DoubleArrayTrie(IntBuffer base, IntBuffer check) {
+		this.base = base;
+		this.check = check;
+		this.size = base.limit();
+	}
+
+	/**
+	 * @return 狀態的數量（陣列的長度）
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param state
+	 * @param c
+	 * @return 經過字元 c 之後的狀態，沒有的話傳回 {@link #NONE}
+	 */
+	public int next(int state, char c) {
+		int t = (base.get(state) >>> 1) + c + 1;
+		if (t < size && check.get(t) == state) {
+			return t;
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param state
+	 * @return 這個狀態是不是兩個字以上的詞的結尾
+	 */
+	public boolean isWord(int state) {
+		return (base.get(state) & 1) != 0;
+	}
+
+	/**
+	 * 依序寫出 base 和 check 陣列（不含長度）
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		for (int i = 0; i < size; i++) {
+			out.writeInt(base.get(i));
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeInt(check.get(i));
+		}
+	}
+
+	/**
+	 * 從排序過的詞彙建立 {@link DoubleArrayTrie}
+	 */
+	static class Builder {
+
+		private int[] base = new int[1 << 16];
+		private int[] check = new int[1 << 16];
+		private int size = 1;
+		/** 已經用掉的位置 */
+		private final BitSet used = new BitSet();
+
+		/** 還沒處理的節點：state, depth, left, right */
+		private final Deque<int[]> queue = new ArrayDeque<int[]>();
+
+		Builder() {
+			Arrays.fill(check, NONE);
+			check[ROOT] = Integer.MIN_VALUE;	// root 不是任何狀態的下一個
+			used.set(ROOT);
+		}
+
+		/**
+		 * @param keys	依 {@link String#compareTo(String)} 排序、不重複的詞（單字也要放進來，才會有第一個字的狀態）
+		 * @return trie
+		 */
+		DoubleArrayTrie build(String[] keys) {
+			queue.add(new int[] { ROOT, 0, 0, keys.length });
+			char[] children = new char[64];
+			int[] childStarts = new int[65];
+			while (!queue.isEmpty()) {
+				int[] node = queue.poll();
+				int state = node[0], depth = node[1], left = node[2], right = node[3];
+
+				// 排序過的詞，同一個前綴的會在一起，最短的在最前面
+				boolean isWord = false;
+				int numChildren = 0;
+				for (int i = left; i < right; i++) {
+					if (keys[i].length() == depth) {
+						isWord = depth > 1;
+						continue;
+					}
+					char c = keys[i].charAt(depth);
+					if (numChildren == 0 || children[numChildren - 1] != c) {
+						if (numChildren == children.length) {
+							children = Arrays.copyOf(children, numChildren * 2);
+							childStarts = Arrays.copyOf(childStarts, numChildren * 2 + 1);
+						}
+						children[numChildren] = c;
+						childStarts[numChildren++] = i;
+					}
+				}
+				childStarts[numChildren] = right;
+
+				int b = numChildren == 0 ? 0 : findBase(children, numChildren);
+				base[state] = (b << 1) | (isWord ? 1 : 0);
+				for (int i = 0; i < numChildren; i++) {
+					int t = b + children[i] + 1;
+					check[t] = state;
+					used.set(t);
+					size = Math.max(size, t + 1);
+					queue.add(new int[] { t, depth + 1, childStarts[i], childStarts[i + 1] });
+				}
+			}
+			return new DoubleArrayTrie(IntBuffer.wrap(base, 0, size).slice(), IntBuffer.wrap(check, 0, size).slice());
+		}
+
+		/**
+		 * 找一個讓所有子節點都落在空位的 base
+		 */
+		private int findBase(char[] children, int numChildren) {
+			int pos = used.nextClearBit(children[0] + 1);
+			while (true) {
+				int b = pos - children[0] - 1;
+				boolean free = true;
+				for (int i = 1; i < numChildren && free; i++) {
+					free = !used.get(b + children[i] + 1);
+				}
+				if (free) {
+					ensureCapacity(b + children[numChildren - 1] + 2);
+					return b;
+				}
+				pos = used.nextClearBit(pos + 1);
+			}
+		}
+
+		private void ensureCapacity(int newSize) {
+			if (newSize > base.length) {
+				int capacity = Math.max(newSize, base.length * 2);
+				base = Arrays.copyOf(base, capacity);
+				int oldLength = check.length;
+				check = Arrays.copyOf(check, capacity);
+				Arrays.fill(check, oldLength, capacity, NONE);
+			}
+		}
+	}
+
+}
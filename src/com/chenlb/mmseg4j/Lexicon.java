@@ -0,0 +1,347 @@
+package com.chenlb.mmseg4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Added by Kuan-ming Su.
+ * <p>編譯過的詞庫：有哪些字和它們的自由度、單位字，以及所有詞彙的 {@link DoubleArrayTrie}。</p>
+ * <p>可以寫成一個二進位檔，之後直接 memory-map 進來，不需要再一行一行剖析 .dic 檔。
+ * 檔案的開頭記錄了來源檔案的 fingerprint，來源有變更的時候就不能用。</p>
+ * <p>使用者另外加的詞放在一個小的 trie 裡（見 {@link #withUserWords(Collection)}），
+ * 查詢時兩個 trie 都會查，不需要重建整個詞庫。</p>
+ * <p>建立以後內容不會再改變，可以讓多個 thread 共用。</p>
+ *
+ * @author Kuan-ming Su
+ */
+public class Lexicon {
+
+	private static final int MAGIC = 0x4D4D5344;	// "MMSD"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+	private static final int NUM_CHARS = Character.MAX_VALUE + 1;
+
+	private final BitSet chars;
+	private final IntBuffer charFreqs;
+	private final BitSet units;
+	private final DoubleArrayTrie trie;
+	/** 使用者另外加的詞，沒有的話是 null */
+	private final DoubleArrayTrie userTrie;
+
+	private Lexicon(BitSet chars, IntBuffer charFreqs, BitSet units, DoubleArrayTrie trie) {
+		this.chars = chars;
+		this.charFreqs = charFreqs;
+		this.units = units;
+		this.trie = trie;
+		this.userTrie = null;
+	}
+
+	/**
+	 * 和 base 共用所有的資料，只換掉使用者的詞
+	 */
+	private Lexicon(Lexicon base, DoubleArrayTrie userTrie) {
+		this.chars = base.chars;
+		this.charFreqs = base.charFreqs;
+		this.units = base.units;
+		this.trie = base.trie;
+		this.userTrie = userTrie;
+	}
+
+	/**
+	 * 加上使用者的詞，原來的詞庫不會重建也不會改變。
+	 * @param words	使用者全部的詞（會取代先前加的），單字和詞庫中已經有的詞會略過
+	 * @return 新的詞庫
+	 */
+	public Lexicon withUserWords(Collection<String> words) {
+		TreeSet<String> keys = new TreeSet<String>();
+		for (String word : words) {
+			if (word.length() > 1 && !isWord(trie, word.toCharArray(), 0, word.length())) {
+				keys.add(word);
+			}
+		}
+		if (keys.isEmpty()) {
+			return userTrie == null ? this : new Lexicon(this, null);
+		}
+		DoubleArrayTrie userTrie = new DoubleArrayTrie.Builder().build(keys.toArray(new String[keys.size()]));
+		return new Lexicon(this, userTrie);
+	}
+
+	/**
+	 * @return 所有詞彙的 trie
+	 */
+	public DoubleArrayTrie getTrie() {
+		return trie;
+	}
+
+	/**
+	 * @param ch
+	 * @return 單字的自由度，沒有的話是 -1
+	 */
+	public int degree(char ch) {
+		return chars.get(ch) ? charFreqs.get(ch) : -1;
+	}
+
+	/**
+	 * 一次走過 trie，找出 sen[offset] 開始所有在詞庫中的詞的長度（由短到長）。
+	 * 單字一定算一個詞，所以 lengths[0] 一定是 1。
+	 * @param sen
+	 * @param offset
+	 * @param lengths	存放長度，至少要有一格，空間不夠時只存前面的
+	 * @return 找到幾個（至少一個）
+	 */
+	public int matchAll(char[] sen, int offset, int[] lengths) {
+		lengths[0] = 1;
+		int count = 1;
+		if (offset >= sen.length) {
+			return count;
+		}
+		int state = trie.next(DoubleArrayTrie.ROOT, sen[offset]);
+		for (int i = offset + 1; i < sen.length && state != DoubleArrayTrie.NONE && count < lengths.length; i++) {
+			state = trie.next(state, sen[i]);
+			if (state != DoubleArrayTrie.NONE && trie.isWord(state)) {
+				lengths[count++] = i - offset + 1;
+			}
+		}
+		if (userTrie != null) {
+			state = userTrie.next(DoubleArrayTrie.ROOT, sen[offset]);
+			for (int i = offset + 1; i < sen.length && state != DoubleArrayTrie.NONE; i++) {
+				state = userTrie.next(state, sen[i]);
+				if (state != DoubleArrayTrie.NONE && userTrie.isWord(state)) {
+					count = insert(lengths, count, i - offset + 1);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 把 length 依順序插入 lengths，重複的不插入；空間不夠時丟掉最長的
+	 * @return 插入後的數量
+	 */
+	private static int insert(int[] lengths, int count, int length) {
+		int i = count;
+		while (i > 0 && lengths[i - 1] > length) {
+			i--;
+		}
+		if ((i > 0 && lengths[i - 1] == length) || i == lengths.length) {
+			return count;
+		}
+		int n = Math.min(count, lengths.length - 1);
+		System.arraycopy(lengths, i, lengths, i + 1, n - i);
+		lengths[i] = length;
+		return n + 1;
+	}
+
+	/**
+	 * @param sen
+	 * @param offset
+	 * @return sen[offset] 開始最長的詞的長度，至少是 1
+	 */
+	public int maxMatch(char[] sen, int offset) {
+		if (offset >= sen.length) {
+			return 1;
+		}
+		int length = maxMatch(trie, sen, offset);
+		if (userTrie != null) {
+			length = Math.max(length, maxMatch(userTrie, sen, offset));
+		}
+		return length;
+	}
+
+	private static int maxMatch(DoubleArrayTrie trie, char[] sen, int offset) {
+		int length = 1;
+		int state = trie.next(DoubleArrayTrie.ROOT, sen[offset]);
+		for (int i = offset + 1; i < sen.length && state != DoubleArrayTrie.NONE; i++) {
+			state = trie.next(state, sen[i]);
+			if (state != DoubleArrayTrie.NONE && trie.isWord(state)) {
+				length = i - offset + 1;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @param sen
+	 * @param offset
+	 * @param length
+	 * @return sen[offset] 開始長度 length 的字串是不是詞庫中的詞（兩個字以上）
+	 */
+	public boolean isWord(char[] sen, int offset, int length) {
+		if (length < 2) {
+			return false;
+		}
+		return isWord(trie, sen, offset, length) || (userTrie != null && isWord(userTrie, sen, offset, length));
+	}
+
+	private static boolean isWord(DoubleArrayTrie trie, char[] sen, int offset, int length) {
+		int state = DoubleArrayTrie.ROOT;
+		for (int i = offset; i < offset + length && state != DoubleArrayTrie.NONE; i++) {
+			state = trie.next(state, sen[i]);
+		}
+		return state != DoubleArrayTrie.NONE && trie.isWord(state);
+	}
+
+	/**
+	 * @param ch
+	 * @return 是否為單位字
+	 */
+	public boolean isUnit(char ch) {
+		return units.get(ch);
+	}
+
+	/**
+	 * 寫成二進位檔（先寫到暫存檔再改名，不會讓其他 process 讀到一半的檔案），不含使用者另外加的詞。
+	 * 檔案已經存在的話不會蓋掉（可能正被 memory-map 著），這時丟出 IOException。
+	 * @param file
+	 * @param fingerprint	來源檔案的 fingerprint
+	 * @throws IOException
+	 */
+	public void write(File file, long fingerprint) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(trie.size());
+			out.writeInt(units.cardinality());
+			for (int c = units.nextSetBit(0); c >= 0; c = units.nextSetBit(c + 1)) {
+				out.writeInt(c);
+			}
+			for (int c = 0; c < NUM_CHARS; c++) {
+				out.writeInt(chars.get(c) ? 1 : 0);
+			}
+			for (int c = 0; c < NUM_CHARS; c++) {
+				out.writeInt(charFreqs.get(c));
+			}
+			trie.writeTo(out);
+		} finally {
+			out.close();
+		}
+		if (file.exists() || !tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("cannot rename " + tmp + " to " + file);
+		}
+	}
+
+	/**
+	 * memory-map 編譯過的詞庫，先檢查過檔頭才 map，不能用的檔案不會被 map 住
+	 * @param file
+	 * @param fingerprint	來源檔案的 fingerprint
+	 * @return 詞庫，檔案不存在、格式不對或是來源已經變更則傳回 null
+	 * @throws IOException
+	 */
+	public static Lexicon map(File file, long fingerprint) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_BYTES) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION || raf.readLong() != fingerprint) {
+				return null;
+			}
+			int trieSize = raf.readInt();
+			int numUnits = raf.readInt();
+			long expected = HEADER_BYTES + 4L * (numUnits + 2L * NUM_CHARS + 2L * trieSize);
+			if (raf.length() != expected) {
+				return null;
+			}
+
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			IntBuffer ints = ((ByteBuffer) buffer.position(HEADER_BYTES)).slice().asIntBuffer();
+			BitSet units = new BitSet(NUM_CHARS);
+			for (int i = 0; i < numUnits; i++) {
+				units.set(ints.get(i));
+			}
+			BitSet chars = new BitSet(NUM_CHARS);
+			for (int c = 0; c < NUM_CHARS; c++) {
+				if (ints.get(numUnits + c) != 0) {
+					chars.set(c);
+				}
+			}
+			IntBuffer charFreqs = slice(ints, numUnits + NUM_CHARS, NUM_CHARS);
+			IntBuffer base = slice(ints, numUnits + 2 * NUM_CHARS, trieSize);
+			IntBuffer check = slice(ints, numUnits + 2 * NUM_CHARS + trieSize, trieSize);
+			return new Lexicon(chars, charFreqs, units, new DoubleArrayTrie(base, check));
+		} finally {
+			raf.close();	// mapping 在 channel 關閉後仍然有效
+		}
+	}
+
+	private static IntBuffer slice(IntBuffer ints, int offset, int length) {
+		IntBuffer dup = ints.duplicate();
+		dup.position(offset);
+		dup.limit(offset + length);
+		return dup.slice();
+	}
+
+	/**
+	 * 收集 .dic 檔的內容，建立 {@link Lexicon}
+	 */
+	public static class Builder {
+
+		private final Map<Character, Integer> charFreqs = new HashMap<Character, Integer>();
+		private final Set<String> words = new HashSet<String>();
+		private final BitSet units = new BitSet(NUM_CHARS);
+
+		/**
+		 * 加一個單字（後加的自由度會蓋掉先前的）
+		 * @param ch
+		 * @param freq	自由度，沒有的話是 -1
+		 */
+		public void addChar(char ch, int freq) {
+			charFreqs.put(ch, freq);
+		}
+
+		/**
+		 * 加一個詞，第一個字還沒有加過的話自由度是 -1
+		 * @param word	兩個字以上的詞
+		 */
+		public void addWord(String word) {
+			if (!charFreqs.containsKey(word.charAt(0))) {
+				charFreqs.put(word.charAt(0), -1);
+			}
+			words.add(word);
+		}
+
+		/**
+		 * 加一個單位字
+		 * @param ch
+		 */
+		public void addUnit(char ch) {
+			units.set(ch);
+		}
+
+		public Lexicon build() {
+			BitSet chars = new BitSet(NUM_CHARS);
+			int[] freqs = new int[NUM_CHARS];
+			Set<String> keys = new HashSet<String>(words);
+			for (Map.Entry<Character, Integer> entry : charFreqs.entrySet()) {
+				chars.set(entry.getKey());
+				freqs[entry.getKey()] = entry.getValue();
+				keys.add(String.valueOf(entry.getKey()));
+			}
+			String[] sortedKeys = keys.toArray(new String[keys.size()]);
+			Arrays.sort(sortedKeys);
+			DoubleArrayTrie trie = new DoubleArrayTrie.Builder().build(sortedKeys);
+			return new Lexicon(chars, IntBuffer.wrap(freqs), (BitSet) units.clone(), trie);
+		}
+	}
+
+}
@@ -1,14 +1,17 @@
 package com.chenlb.mmseg4j;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Queue;
 
 /**
  * Reader 流的分词(有字母,数字等), 析出中文(其实是 CJK)成句子 {@link Sentence} 再对 mmseg 算法分词.<br/>
+ * <p>Modified by Kuan-ming Su.<br/>
+ * 不再用 PushbackReader 一个字一个字读, 而是一次读一整块到可重复使用的 char[] 里,
+ * 全形转半形和字符类型 ({@link Character#getType(char)}) 也是整块一起做.
+ * 连续的中文(以及 ⅠⅡ, ①② 等)直接在块里找出结尾, 一次复制成句子.</p>
  * 
  * 非线程安全
  * @author chenlb 2009-9-20下午10:41:41
@@ -20,12 +23,32 @@ public class MMSeg {
 	public int ReaderStatus = 0;
 	
 	
-	private PushbackReader reader;
+	/** 一开始读入块的大小, 一串中文比它长时会加大 */
+	private static final int BUFFER_SIZE = 8192;
+	/** 补充下一块时, 目前位置前面至少保留这么多字符给 {@link #pushBack(int)} 用 */
+	private static final int PUSHBACK_SIZE = 20;
+
+	private Reader reader;
 	private Seg seg;
 	
 	private StringBuilder bufSentence = new StringBuilder(256);
 	private Sentence currentSentence;
-	private Queue<Word> bufWord;	// word 缓存, 因为有 chunk 分析三个以上.
+	private final Sentence sentence = new Sentence();
+	private final Queue<Word> bufWord = new ArrayDeque<Word>();	// word 缓存, 因为有 chunk 分析三个以上.
+	
+	/** 已转半形的字符 */
+	private char[] buffer = new char[BUFFER_SIZE];
+	/** buffer 中每个字符的 {@link Character#getType(char)} */
+	private byte[] types = new byte[BUFFER_SIZE];
+	/** 下一个要读的字符 */
+	private int position;
+	/** buffer 中有效字符的结尾 */
+	private int limit;
+	/** buffer[0] 在整个文本中的位置 */
+	private int bufferOffset;
+	/** 正在读取的一串字符的开始, 补充下一块时不能丢掉; 没有时是 -1 */
+	private int markPosition = -1;
+	private boolean eof;
 	
 	public MMSeg(Reader input, Seg seg) {
 		this.seg = seg;
@@ -33,34 +56,111 @@ public class MMSeg {
 		reset(input);
 	}
 
-	private int readedIdx = 0;
-	
 	public void reset(Reader input) {
-		this.reader = new PushbackReader(new BufferedReader(input), 20);
+		this.reader = input;
 		currentSentence = null;
-		bufWord = new LinkedList<Word>();
+		bufWord.clear();
 		bufSentence.setLength(0);
-		readedIdx = -1;
+		position = 0;
+		limit = 0;
+		bufferOffset = 0;
+		markPosition = -1;
+		eof = false;
 	}
 	
-	private int readNext() throws IOException {
-		int d = reader.read();
-		if(d > -1) {
-			readedIdx++;
+	/**
+	 * 已经读取的字符数, 读完后就是整个文本的长度.
+	 * Added by Kuan-ming Su.
+	 */
+	public int getReadCount() {
+		return bufferOffset + position;
+	}
+	
+	/** 最后读取的字符在整个文本中的位置 */
+	private int readedIdx() {
+		return bufferOffset + position - 1;
+	}
+	
+	/**
+	 * 读入下一块, 顺便转半形和取得字符类型.
+	 * 
+	 * @return 没有东西可读时返回 false
+	 */
+	private boolean fill() throws IOException {
+		if(eof) {
+			return false;
+		}
+		int keep = Math.max(0, position - PUSHBACK_SIZE);
+		if(markPosition >= 0 && markPosition < keep) {
+			keep = markPosition;
+		}
+		if(keep > 0) {	//丢掉已经用不到的
+			System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+			System.arraycopy(types, keep, types, 0, limit - keep);
+			bufferOffset += keep;
+			position -= keep;
+			limit -= keep;
+			if(markPosition >= 0) {
+				markPosition -= keep;
+			}
+		}
+		if(limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			types = Arrays.copyOf(types, types.length * 2);
+		}
+		int n;
+		do {
+			n = reader.read(buffer, limit, buffer.length - limit);
+		} while(n == 0);
+		if(n < 0) {
+			eof = true;
+			return false;
+		}
+		for(int i=limit; i<limit+n; i++) {
 			//
 			// disabled by Kuan-ming Su.
 			// 要保留大小寫
 			//d = Character.toLowerCase(d);
 			
 			// 轉半形
-			d = toAscii(d);
+			char c = (char) toAscii(buffer[i]);
+			buffer[i] = c;
+			types[i] = (byte) Character.getType(c);
 		}
-		return d;
+		limit += n;
+		return true;
 	}
 	
+	private int readNext() throws IOException {
+		if(position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++];
+	}
+	
+	/** data 一定是刚读出来的字符, 所以只要退回一格 */
 	private void pushBack(int data) throws IOException {
-		readedIdx--;
-		reader.unread(data);
+		position--;
+	}
+	
+	/**
+	 * 刚读的字符开始, 读到不是 type 类型的字符为止, 读完后这串字符是 buffer[start, position).
+	 * 
+	 * @return 这串字符在 buffer 中的开始位置
+	 */
+	private int readRun(int type) throws IOException {
+		markPosition = position - 1;
+		while(true) {
+			while(position < limit && types[position] == type) {
+				position++;
+			}
+			if(position < limit || !fill()) {
+				break;
+			}
+		}
+		int start = markPosition;
+		markPosition = -1;
+		return start;
 	}
 
 	
@@ -74,7 +174,7 @@ public class MMSeg {
 			boolean read = true;
 			while(read && (data=readNext()) != -1) {
 				read = false;	//默认一次可以读出同一类字符,就可以分词内容
-				int type = Character.getType(data);
+				int type = types[position-1];
 				String wordType = Word.TYPE_WORD;
 				switch(type) {
 				case Character.UPPERCASE_LETTER:
@@ -133,12 +233,9 @@ public class MMSeg {
 					 * 1. 0x3041-0x30f6 -> ぁ-ヶ	//日文(平|片)假名
 					 * 2. 0x3105-0x3129 -> ㄅ-ㄩ	//注意符号
 					 */
-					bufSentence.appendCodePoint(data);
-					readChars(bufSentence, new ReadCharByType(Character.OTHER_LETTER));
-
-					currentSentence = createSentence(bufSentence);
-
-					bufSentence.setLength(0);
+					int start = readRun(Character.OTHER_LETTER);
+					sentence.reinit(Arrays.copyOfRange(buffer, start, position), bufferOffset + start);
+					currentSentence = sentence;
 
 					break;
 				case Character.DECIMAL_DIGIT_NUMBER:
@@ -174,24 +271,16 @@ public class MMSeg {
 					break;
 				case Character.LETTER_NUMBER:
 					// ⅠⅡⅢ 单分
-					bufSentence.appendCodePoint(data);
-					readChars(bufSentence, new ReadCharByType(Character.LETTER_NUMBER));
-
-					int startIdx = startIdx(bufSentence);
-					for(int i=0; i<bufSentence.length(); i++) {
-						bufWord.add(new Word(new char[] {bufSentence.charAt(i)}, startIdx++, Word.TYPE_LETTER_NUMBER));
+					start = readRun(Character.LETTER_NUMBER);
+					for(int i=start; i<position; i++) {
+						bufWord.add(new Word(new char[] {buffer[i]}, bufferOffset + i, Word.TYPE_LETTER_NUMBER));
 					}
 
-					bufSentence.setLength(0);	//缓存的字符清除
-
 					break;
 				case Character.OTHER_NUMBER:
 					//①⑩㈠㈩⒈⒑⒒⒛⑴⑽⑾⒇ 连着用
-					bufSentence.appendCodePoint(data);
-					readChars(bufSentence, new ReadCharByType(Character.OTHER_NUMBER));
-
-					bufWord.add(createWord(bufSentence, Word.TYPE_OTHER_NUMBER));
-					bufSentence.setLength(0);
+					start = readRun(Character.OTHER_NUMBER);
+					bufWord.add(new Word(Arrays.copyOfRange(buffer, start, position), bufferOffset + start, Word.TYPE_OTHER_NUMBER));
 					break;
 					
 				
@@ -204,7 +293,7 @@ public class MMSeg {
 				default :
 					// Added by Kuan-ming Su
 					// 如果空格之外的，全都撿起來使用
-					return new Word(Character.toChars(data), readedIdx, Word.TYPE_OTHER);					
+					return new Word(Character.toChars(data), readedIdx(), Word.TYPE_OTHER);					
 					
 					//其它认为无效字符
 					//read = true;
@@ -397,20 +486,6 @@ public class MMSeg {
 		
 	}
 	
-	/**读取指定类型的字符*/
-	private static class ReadCharByType extends ReadChar {
-		int charType;
-		public ReadCharByType(int charType) {
-			this.charType = charType;
-		}
-
-		boolean isRead(int codePoint) {
-			int type = Character.getType(codePoint);
-			return type == charType;
-		}
-		
-	}
-	
 	private Word createWord(StringBuilder bufSentence, String type) {
 		return new Word(toChars(bufSentence), startIdx(bufSentence), type);
 	}
@@ -419,13 +494,9 @@ public class MMSeg {
 		return new Word(toChars(bufSentence), startIdx, type);
 	}
 	
-	private Sentence createSentence(StringBuilder bufSentence) {
-		return new Sentence(toChars(bufSentence), startIdx(bufSentence));
-	}
-	
 	/**取得 bufSentence 的第一个字符在整个文本中的位置*/
 	private int startIdx(StringBuilder bufSentence) {
-		return readedIdx - bufSentence.length() + 1;
+		return readedIdx() - bufSentence.length() + 1;
 	}
 	
 	/**从 StringBuilder 里复制出 char[] */
@@ -1,6 +1,5 @@
 package com.chenlb.mmseg4j;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -11,11 +10,27 @@ import java.util.List;
 public abstract class Seg {
 
 	protected Dictionary dic;
+	/** 这次 seg() 用的词库 (Added by Kuan-ming Su) */
+	private Lexicon lexicon;
 	
 	public Seg(Dictionary dic) {
 		super();
 		this.dic = dic;
 	}
+	
+	/**
+	 * Added by Kuan-ming Su.<br/>
+	 * 取得目前词库的 snapshot, 之后的查词都用它, 直到下一次呼叫. 每次 seg() 开始时呼叫,
+	 * 同一个 chunk 不会因为词库在中途换掉（重新加载、加词）而查到两个不同的词库.
+	 */
+	protected void snapshot() {
+		lexicon = dic.getLexicon();
+	}
+	
+	private Lexicon lexicon() {
+		Lexicon lex = lexicon;
+		return lex != null ? lex : dic.getLexicon();
+	}
 
 	/**
 	 * 输出 chunks, 调试用.
@@ -27,7 +42,7 @@ public abstract class Seg {
 	}
 	
 	/**
-	 * @see Dictionary#isUnit(Character)
+	 * @see Dictionary#isUnit(char)
 	 */
 	protected boolean isUnit(int codePoint) {
 		return dic.isUnit((char) codePoint);
@@ -35,55 +50,42 @@ public abstract class Seg {
 	
 	/**
 	 * 查找chs[offset]后面的 tailLen个char是否为词.
-	 * @return 返回chs[offset]字符结点下的词尾索引号,没找到返回 -1.
+	 * @return 找到返回 1 (Modified by Kuan-ming Su: 不再有词尾索引号),没找到返回 -1.
 	 */
 	protected int search(char[] chs, int offset, int tailLen) {
 		if(tailLen == 0) {
 			return -1;
 		}
-		CharNode cn = dic.head(chs[offset]);
-		
-		return search(cn, chs, offset, tailLen);
+		return lexicon().isWord(chs, offset, tailLen+1) ? 1 : -1;
 	}
 	
 	/**
-	 * 没有数组的复制.
-	 * @author chenlb 2009-4-8 下午11:39:15
+	 * 最大匹配<br/>
+	 * 从 chs[offset] 开始匹配
+	 * @return 最大匹配到的词尾长, > 0 找到
 	 */
-	protected int search(CharNode cn, char[] chs, int offset, int tailLen) {
-		if(tailLen == 0 || cn == null) {
-			return -1;
-		}
-		return dic.search(cn, chs, offset, tailLen);
+	protected int maxMatch(char[] chs, int offset) {
+		return lexicon().maxMatch(chs, offset) - 1;
 	}
 	
 	/**
-	 * 最大匹配<br/>
-	 * 从 chs[offset] 开始匹配, 同时把 chs[offset] 的字符结点保存在 cns[cnIdx]
-	 * @return 最大匹配到的词尾长, > 0 找到
+	 * 匹配,同时找出长度. <br/>
+	 * Modified by Kuan-ming Su: 从 chs[offset] 开始一次找出所有匹配的词, 词尾长放到 tailLens 中（由短到长, tailLens[0] 一定是 0）.
+	 * @return 找到几个, 至少一个
 	 */
-	protected int maxMatch(CharNode[] cns, int cnIdx, char[] chs, int offset) {
-		CharNode cn = null;
-		if(offset < chs.length) {
-			cn = dic.head(chs[offset]);
+	protected int maxMatch(char[] chs, int offset, int[] tailLens) {
+		int n = lexicon().matchAll(chs, offset, tailLens);
+		for(int i=0; i<n; i++) {
+			tailLens[i]--;
 		}
-		cns[cnIdx] = cn;
-		return dic.maxMatch(cn, chs, offset);
+		return n;
 	}
 	
 	/**
-	 * 匹配,同时找出长度. <br/>
-	 * 从 chs[offset] 开始找所有匹配的词, 找到的放到 tailLens[tailLensIdx] 中. <br/>
-	 * 同时把 chs[offset] 的字符结点保存在 cns[cnIdx].
-	 * @author chenlb 2009-4-12 上午10:37:58
+	 * 单字的"字频计算出自由度", 不在词库里的是 -1.
 	 */
-	protected void maxMatch(CharNode[] cns, int cnIdx, char[] chs, int offset, ArrayList<Integer>[] tailLens, int tailLensIdx) {
-		CharNode cn = null;
-		if(offset < chs.length) {
-			cn = dic.head(chs[offset]);
-		}
-		cns[cnIdx] = cn;
-		dic.maxMatch(cn, tailLens[tailLensIdx], chs, offset);
+	protected int degree(char ch) {
+		return lexicon().degree(ch);
 	}
 	
 	/**
@@ -13,6 +13,7 @@ public class SimpleSeg extends Seg{
 	}
 
 	public Chunk seg(Sentence sen) {
+		snapshot();
 		Chunk chunk = new Chunk();
 		char[] chs = sen.getText();
 		for(int k=0; k<3&&!sen.isFinish(); k++) {
@@ -20,7 +21,7 @@ public class SimpleSeg extends Seg{
 			int maxLen = 0;
 
 			//有了 key tree 的支持可以从头开始 max match
-			maxLen = dic.maxMatch(chs, offset);
+			maxLen = maxMatch(chs, offset);
 			
 			chunk.words[k] = new Word(chs, sen.getStartOffset(), offset, maxLen+1);
 
@@ -19,7 +19,7 @@ import com.chenlb.mmseg4j.Word;
  * @author chenlb 2009-10-14 下午04:03:18
  * @deprecated
  */
-public class CutLetterDigitFilter extends TokenFilter {
+public final class CutLetterDigitFilter extends TokenFilter {
 
 	protected Queue<Token> tokenQueue = new LinkedList<Token>();
 
@@ -12,7 +12,7 @@ import com.chenlb.mmseg4j.MMSeg;
 import com.chenlb.mmseg4j.Seg;
 import com.chenlb.mmseg4j.Word;
 
-public class MMSegTokenizer extends Tokenizer {
+public final class MMSegTokenizer extends Tokenizer {
 
 	private MMSeg mmSeg;
 	
@@ -90,7 +90,7 @@ public class MMSegTokenizer extends Tokenizer {
 		Word word = mmSeg.next();
 		if(word != null) {
 			termAtt.copyBuffer(word.getSen(), word.getWordOffset(), word.getLength());
-			offsetAtt.setOffset(word.getStartOffset(), word.getEndOffset());
+			offsetAtt.setOffset(correctOffset(word.getStartOffset()), correctOffset(word.getEndOffset()));
 			typeAtt.setType(word.getType());
 			return true;
 		} else {
@@ -99,4 +99,15 @@ public class MMSegTokenizer extends Tokenizer {
 			return false;
 		}
 	}
+	
+	/**
+	 * 最後的 offset 是讀進來的字元數
+	 * Added by Kuan-ming Su.
+	 */
+	@Override
+	public void end() throws IOException {
+		super.end();
+		int finalOffset = correctOffset(mmSeg.getReadCount());
+		offsetAtt.setOffset(finalOffset, finalOffset);
+	}
 }
@@ -0,0 +1,506 @@
+package org.sustudio.concise.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.cluster.Cluster;
+import org.sustudio.concise.core.cluster.ConcClusterIterator;
+import org.sustudio.concise.core.cluster.NgramClusterIterator;
+import org.sustudio.concise.core.collocation.Collocate;
+import org.sustudio.concise.core.collocation.SurfaceCollocateIterator;
+import org.sustudio.concise.core.collocation.TermVectorCollocateIterator;
+import org.sustudio.concise.core.collocation.TextualCollocateIterator;
+import org.sustudio.concise.core.collocation.TextualCollocateIterator.BOUNDARY;
+import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.concordance.NodeMatcher;
+import org.sustudio.concise.core.keyword.Keyword;
+import org.sustudio.concise.core.keyword.KeywordIterator;
+import org.sustudio.concise.core.wordlister.WordFilter;
+
+/**
+ * {@link Workspace} 的分析結果快取。
+ * <p>同樣的分析（種類、搜尋字串、跨距、是否顯示詞性、相關的 {@link CCPrefs} 設定）
+ * 在同一個版本的 index 上結果一定相同，所以 key 裡包含 reader 的版本；index 改變後舊的結果自然不會再用到。
+ * {@link org.sustudio.concise.core.corpus.DocumentWriter} 寫入時會呼叫 {@link #invalidate()} 清掉全部的結果。</p>
+ * <p>記憶體中最多保留 {@link CCPrefs#ANALYSIS_CACHE_MAX_ITEMS} 筆資料（所有結果的筆數加總），
+ * 超過時丟掉最久沒有用到的結果。{@link CCPrefs#ANALYSIS_CACHE_DISK_ENABLED} 時結果另外用 gzip 存在
+ * workspace 的快取資料夾（最多 {@link CCPrefs#ANALYSIS_CACHE_DISK_MB} MB），重新開啟 workspace 之後還能使用。</p>
+ * <p>傳回的 list 是新的複本，可以自行排序；裡頭的物件則是共用的，不要修改。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class AnalysisCache {
+
+	private static final String FILE_SUFFIX = ".ser.gz";
+
+	private final Workspace workspace;
+	private final File folder;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long items = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * 記憶體中的一筆結果
+	 */
+	private static class Entry {
+		final Serializable value;
+		final int size;
+
+		Entry(Serializable value) {
+			this.value = value;
+			this.size = sizeOf(value);
+		}
+	}
+
+	/**
+	 * 存在磁碟上的結果，讀回來時檢查 key 是否相同
+	 */
+	private static class DiskEntry implements Serializable {
+		private static final long serialVersionUID = 4410513512935012542L;
+
+		final String key;
+		final Serializable value;
+
+		DiskEntry(String key, Serializable value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 計算分析結果
+	 */
+	public interface Loader<T extends Serializable> {
+		T load() throws Exception;
+	}
+
+	AnalysisCache(Workspace workspace, File folder) {
+		this.workspace = workspace;
+		this.folder = folder;
+	}
+
+	/**
+	 * 傳回快取的結果，沒有的話用 loader 計算並存起來
+	 * @param key		{@link #key(String, Object...)} 產生的 key
+	 * @param loader	計算結果
+	 * @return 結果
+	 * @throws Exception	loader 的 exception
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Serializable> T get(String key, Loader<T> loader) throws Exception {
+		Serializable value = get(key);
+		if (value == null) {
+			value = loader.load();
+			put(key, value);
+		}
+		return (T) value;
+	}
+
+	/**
+	 * 傳回快取的結果
+	 * @param key
+	 * @return 結果，沒有的話傳回 null
+	 */
+	public Serializable get(String key) {
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry.value;
+			}
+		}
+		Serializable value = readFromDisk(key);
+		synchronized (this) {
+			if (value != null) {
+				hits++;
+				putInMemory(key, value);
+			}
+			else {
+				misses++;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 存入結果
+	 * @param key
+	 * @param value
+	 */
+	public void put(String key, Serializable value) {
+		synchronized (this) {
+			putInMemory(key, value);
+		}
+		writeToDisk(key, value);
+	}
+
+	private void putInMemory(String key, Serializable value) {
+		Entry entry = new Entry(value);
+		if (entry.size > CCPrefs.ANALYSIS_CACHE_MAX_ITEMS) {
+			return;
+		}
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			items -= previous.size;
+		}
+		items += entry.size;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (items > CCPrefs.ANALYSIS_CACHE_MAX_ITEMS && iterator.hasNext()) {
+			items -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * 清掉所有的結果（包括磁碟上的）
+	 */
+	public void invalidate() {
+		synchronized (this) {
+			entries.clear();
+			items = 0;
+		}
+		if (folder.exists()) {
+			synchronized (folder) {
+				FileUtils.deleteQuietly(folder);
+			}
+		}
+	}
+
+	/**
+	 * @return 記憶體中的結果數
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return 記憶體中所有結果的筆數加總
+	 */
+	public synchronized long getItems() {
+		return items;
+	}
+
+	/**
+	 * @return 命中的次數
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return 沒有命中的次數
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * 產生 key：分析的種類、參數、相關的 {@link CCPrefs} 設定
+	 * @param analysis	分析的種類
+	 * @param params	影響結果的參數，{@link IndexReader} 以版本代表
+	 * @return key
+	 */
+	public static String key(String analysis, Object... params) {
+		StringBuilder sb = new StringBuilder(analysis);
+		for (Object param : params) {
+			sb.append('\u0000');
+			if (param instanceof DirectoryReader) {
+				sb.append("v").append(((DirectoryReader) param).getVersion());
+			}
+			else if (param instanceof IndexReader) {
+				// 不是 DirectoryReader 就用 identity
+				sb.append("r").append(System.identityHashCode(param));
+			}
+			else {
+				sb.append(param);
+			}
+		}
+		sb.append('\u0000').append(prefsSignature());
+		return sb.toString();
+	}
+
+	/**
+	 * 影響分析結果的 {@link CCPrefs} 設定
+	 */
+	private static String prefsSignature() {
+		StringBuilder sb = new StringBuilder(new WordFilter().toString());
+		sb.append('\u0000').append(CCPrefs.LOWERCASE_ENABLED);
+		sb.append('\u0000').append(CCPrefs.POS_SEPARATOR);
+		if (CCPrefs.STOP_WORDS_ENABLED && CCPrefs.stopWords != null) {
+			sb.append('\u0000').append(digest(Arrays.toString(CCPrefs.stopWords)));
+		}
+		if (CCPrefs.LEMMA_ENABLED && CCPrefs.LEMMA_LIST != null) {
+			sb.append('\u0000').append(digest(CCPrefs.LEMMA_LIST.toString()));
+		}
+		return sb.toString();
+	}
+
+	private static String digest(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			return new BigInteger(1, md.digest(s.getBytes("UTF-8"))).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(s.hashCode());
+		} catch (IOException e) {
+			return Integer.toHexString(s.hashCode());
+		}
+	}
+
+	/**
+	 * 結果的大小（筆數）
+	 */
+	private static int sizeOf(Serializable value) {
+		if (value instanceof Collection) {
+			return Math.max(1, ((Collection<?>) value).size());
+		}
+		if (value instanceof int[]) {
+			return Math.max(1, ((int[]) value).length);
+		}
+		return 1;
+	}
+
+
+	/////////////////////////////////////////////////////////////////////////
+	// disk tier
+	/////////////////////////////////////////////////////////////////////////
+
+	private File file(String key) {
+		return new File(folder, digest(key) + FILE_SUFFIX);
+	}
+
+	private Serializable readFromDisk(String key) {
+		if (!CCPrefs.ANALYSIS_CACHE_DISK_ENABLED) {
+			return null;
+		}
+		synchronized (folder) {
+			File file = file(key);
+			if (!file.exists()) {
+				return null;
+			}
+			try {
+				ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+				try {
+					DiskEntry entry = (DiskEntry) in.readObject();
+					if (key.equals(entry.key)) {
+						file.setLastModified(System.currentTimeMillis());
+						return entry.value;
+					}
+				} finally {
+					in.close();
+				}
+			} catch (Exception e) {
+				// 壞掉或是舊版本的檔案
+				file.delete();
+			}
+			return null;
+		}
+	}
+
+	private void writeToDisk(String key, Serializable value) {
+		if (!CCPrefs.ANALYSIS_CACHE_DISK_ENABLED) {
+			return;
+		}
+		synchronized (folder) {
+			folder.mkdirs();
+			File file = file(key);
+			try {
+				ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))));
+				try {
+					out.writeObject(new DiskEntry(key, value));
+				} finally {
+					out.close();
+				}
+			} catch (IOException e) {
+				file.delete();
+				return;
+			}
+			trimDisk();
+		}
+	}
+
+	/**
+	 * 超過 {@link CCPrefs#ANALYSIS_CACHE_DISK_MB} 時刪除最久沒有用到的檔案
+	 */
+	private void trimDisk() {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		long maxBytes = (long) (CCPrefs.ANALYSIS_CACHE_DISK_MB * 1024 * 1024);
+		long bytes = 0;
+		for (File file : files) {
+			bytes += file.length();
+		}
+		if (bytes <= maxBytes) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (File file : files) {
+			if (bytes <= maxBytes) {
+				break;
+			}
+			bytes -= file.length();
+			file.delete();
+		}
+	}
+
+
+	/////////////////////////////////////////////////////////////////////////
+	// analyses
+	/////////////////////////////////////////////////////////////////////////
+
+	private static String concKey(String analysis, Conc conc, Object... params) {
+		Object[] all = new Object[params.length + 6];
+		all[0] = conc.reader;
+		all[1] = conc.queryStr;
+		all[2] = conc.query;
+		all[3] = conc.left_span_size;
+		all[4] = conc.right_span_size;
+		all[5] = conc.showPartOfSpeech;
+		System.arraycopy(params, 0, all, 6, params.length);
+		return key(analysis, all);
+	}
+
+	private static <T> ArrayList<T> toList(Iterable<T> iterable) {
+		ArrayList<T> list = new ArrayList<T>();
+		for (T t : iterable) {
+			list.add(t);
+		}
+		list.trimToSize();
+		return list;
+	}
+
+	/**
+	 * 有 hit 的文件編號，見 {@link Conc#hitDocIds()}
+	 * @param conc
+	 * @return 文件編號
+	 * @throws Exception
+	 */
+	public int[] hitDocIds(final Conc conc) throws Exception {
+		int[] docIds = get(concKey("hitDocIds", conc), new Loader<int[]>() {
+			@Override
+			public int[] load() throws Exception {
+				return conc.hitDocIds();
+			}
+		});
+		return docIds.clone();
+	}
+
+	/**
+	 * 見 {@link SurfaceCollocateIterator}，查詢可以的話直接從 term vector 計算（{@link TermVectorCollocateIterator}）
+	 * @param conc
+	 * @return collocates
+	 * @throws Exception
+	 */
+	public List<Collocate> surfaceCollocates(final Conc conc) throws Exception {
+		return new ArrayList<Collocate>(get(concKey("surfaceCollocates", conc), new Loader<ArrayList<Collocate>>() {
+			@Override
+			public ArrayList<Collocate> load() throws Exception {
+				if (NodeMatcher.isSupported(conc.query)) {
+					return toList(new TermVectorCollocateIterator(conc));
+				}
+				return toList(new SurfaceCollocateIterator(conc));
+			}
+		}));
+	}
+
+	/**
+	 * 見 {@link TextualCollocateIterator}
+	 * @param conc
+	 * @param boundary
+	 * @return collocates
+	 * @throws Exception
+	 */
+	public List<Collocate> textualCollocates(final Conc conc, final BOUNDARY boundary) throws Exception {
+		return new ArrayList<Collocate>(get(concKey("textualCollocates", conc, boundary), new Loader<ArrayList<Collocate>>() {
+			@Override
+			public ArrayList<Collocate> load() throws Exception {
+				return toList(new TextualCollocateIterator(conc, boundary));
+			}
+		}));
+	}
+
+	/**
+	 * 見 {@link ConcClusterIterator}
+	 * @param conc
+	 * @return clusters
+	 * @throws Exception
+	 */
+	public List<Cluster> concClusters(final Conc conc) throws Exception {
+		return new ArrayList<Cluster>(get(concKey("concClusters", conc), new Loader<ArrayList<Cluster>>() {
+			@Override
+			public ArrayList<Cluster> load() throws Exception {
+				return toList(new ConcClusterIterator(conc));
+			}
+		}));
+	}
+
+	/**
+	 * 見 {@link NgramClusterIterator}
+	 * @param n
+	 * @param showPartOfSpeech
+	 * @param minFreq
+	 * @return clusters
+	 * @throws Exception
+	 */
+	public List<Cluster> ngramClusters(final int n, final boolean showPartOfSpeech, final long minFreq) throws Exception {
+		String key = key("ngramClusters", workspace.getIndexReader(INDEX.DOCUMENT), n, showPartOfSpeech, minFreq);
+		return new ArrayList<Cluster>(get(key, new Loader<ArrayList<Cluster>>() {
+			@Override
+			public ArrayList<Cluster> load() throws Exception {
+				return toList(new NgramClusterIterator(workspace, n, showPartOfSpeech, minFreq));
+			}
+		}));
+	}
+
+	/**
+	 * 見 {@link KeywordIterator}
+	 * @param showPartOfSpeech
+	 * @return keywords
+	 * @throws Exception
+	 */
+	public List<Keyword> keywords(final boolean showPartOfSpeech) throws Exception {
+		String key = key("keywords",
+						 workspace.getIndexReader(INDEX.DOCUMENT),
+						 workspace.getIndexReader(INDEX.REFERENCE),
+						 showPartOfSpeech);
+		return new ArrayList<Keyword>(get(key, new Loader<ArrayList<Keyword>>() {
+			@Override
+			public ArrayList<Keyword> load() throws Exception {
+				return toList(new KeywordIterator(workspace, showPartOfSpeech));
+			}
+		}));
+	}
+}
@@ -30,6 +30,9 @@ public class CCPrefs implements Serializable {
 	/** pos tagger 用的 separator */
 	public static String POS_TAGGER_SEPARATOR = DEFAULT_POS_TAGGER_SEPARATOR;
 	
+	/** 同時進行詞性標注的 thread 數 */
+	public static int POS_TAGGER_THREADS = Runtime.getRuntime().availableProcessors();
+	
 	/** enable lowercase */
 	public static boolean LOWERCASE_ENABLED = false;
 	
@@ -63,4 +66,38 @@ public class CCPrefs implements Serializable {
 	public static LemmaList LEMMA_LIST = new LemmaList();
 	
 	
+	/** 匯入時是否一併建立 n-gram 索引 */
+	public static boolean NGRAM_INDEX_ENABLED = false;
+	
+	/** 計算 cluster 時最多使用的記憶體（MB），超過的部分會暫存到磁碟 */
+	public static double CLUSTER_RAM_BUFFER_MB = 64;
+	
+	/** 很大的文件是否切成幾段同時斷詞（MMSeg） */
+	public static boolean PARALLEL_SEGMENTATION_ENABLED = false;
+	
+	/** 寫入文件時，searcher 在背景更新的間隔（秒） */
+	public static double NRT_REFRESH_SECONDS = 1.0;
+	
+	/** 新開啟的 {@link Workspace} 讀取 index 用的 Directory 實作 */
+	public static DirectoryEnum INDEX_DIRECTORY = DirectoryEnum.Auto;
+	
+	/** collocation、cluster 暫存 index 超過 {@link #TEMP_RAM_BUFFER_MB} 時用的 Directory 實作，{@link DirectoryEnum#RAM} 表示全部放在記憶體 */
+	public static DirectoryEnum TEMP_DIRECTORY = DirectoryEnum.Auto;
+	
+	/** collocation、cluster 暫存 index 放在記憶體的上限（MB），超過的部分寫到 workspace 的暫存資料夾 */
+	public static double TEMP_RAM_BUFFER_MB = 64;
+	
+	/** 分析結果快取在記憶體中最多保留的筆數（所有結果加總），0 表示不快取 */
+	public static long ANALYSIS_CACHE_MAX_ITEMS = 200000;
+	
+	/** 分析結果是否也快取到 workspace 的快取資料夾 */
+	public static boolean ANALYSIS_CACHE_DISK_ENABLED = false;
+	
+	/** 磁碟上分析結果快取的上限（MB） */
+	public static double ANALYSIS_CACHE_DISK_MB = 256;
+	
+	/** 開啟 {@link Workspace} 和重新開啟 reader 之後，是否在背景預先載入 index、詞表和 autocompleter */
+	public static boolean WARM_UP_ENABLED = false;
+	
+	
 }
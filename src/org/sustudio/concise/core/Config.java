@@ -22,9 +22,21 @@ public class Config {
 	/** reference index folder */
 	public static final String REF_INDEX_FOLDER = "ridx.conciseindex";
 	
+	/** n-gram index folder */
+	public static final String NGRAM_INDEX_FOLDER = "ngram.conciseindex";
+	
+	/** reference n-gram index folder */
+	public static final String REF_NGRAM_INDEX_FOLDER = "rngram.conciseindex";
+	
 	/** Dictionary Folder */
 	public static final String DIC_FOLDER = "dic.concisedic";
 	
+	/** temporary folder (collocation, cluster) */
+	public static final String TEMP_FOLDER = "tmp.concisetemp";
+	
+	/** analysis cache folder */
+	public static final String CACHE_FOLDER = "cache.concisecache";
+	
 	/** Original Documents folder */
 	public static final String ORIGINAL_DOC_FOLDER = "Original Documents";
 	
@@ -0,0 +1,70 @@
+package org.sustudio.concise.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * 開啟 index 用的 {@link Directory} 實作。
+ * <p>{@link #MMap} 讓作業系統的 page cache 直接當作 index 的快取，
+ * 多個 JVM 讀同一個（參照）語料庫時共用同一份記憶體；
+ * {@link #RAM} 把整個 index 讀進 heap，只適合小的語料庫，寫入時仍然寫到磁碟。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public enum DirectoryEnum {
+
+	/** 由 Lucene 依平台決定（64 位元上通常是 mmap） */
+	Auto	("Auto"),
+	MMap	("Memory-mapped"),
+	NIOFS	("NIO"),
+	RAM		("RAM (preloaded)");
+
+	private String label;
+	DirectoryEnum(String label) {
+		this.label = label;
+	}
+
+	public String label() {
+		return label;
+	}
+
+	/**
+	 * 開啟讀取用的 directory
+	 * @param dir	資料夾
+	 * @return directory
+	 * @throws IOException
+	 */
+	public Directory open(File dir) throws IOException {
+		switch (this) {
+		case MMap:	return new MMapDirectory(dir);
+		case NIOFS:	return new NIOFSDirectory(dir);
+		case RAM:
+			Directory source = FSDirectory.open(dir);
+			try {
+				return new RAMDirectory(source, IOContext.READ);
+			} finally {
+				source.close();
+			}
+		case Auto:
+		default:	return FSDirectory.open(dir);
+		}
+	}
+
+	/**
+	 * 開啟寫入用的 directory，{@link #RAM} 改用 {@link #Auto}，內容一定寫到磁碟
+	 * @param dir	資料夾
+	 * @return directory
+	 * @throws IOException
+	 */
+	public Directory openForWriting(File dir) throws IOException {
+		return this == RAM ? Auto.open(dir) : open(dir);
+	}
+}
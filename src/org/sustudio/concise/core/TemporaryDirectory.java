@@ -0,0 +1,69 @@
+package org.sustudio.concise.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NRTCachingDirectory;
+
+/**
+ * collocation、cluster 用的暫存 {@link Directory}。
+ * <p>檔案先寫在記憶體裡，佔用超過預算（MB）之後新的檔案才寫到 workspace 的暫存資料夾，
+ * 所以小的暫存 index 和 RAMDirectory 一樣快，大的也不會把 heap 用光。
+ * 暫存的內容不需要保存，{@link #sync(Collection)} 什麼都不做，檔案也就不會被搬到磁碟上。</p>
+ * <p>{@link #close()} 時刪除資料夾；沒有關閉的話在 {@link Workspace#close()} 時刪除。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class TemporaryDirectory extends NRTCachingDirectory {
+
+	private final Workspace workspace;
+	private final File folder;
+	private boolean closed = false;
+
+	/**
+	 * @param workspace		擁有這個暫存資料夾的 workspace
+	 * @param folder		超過預算的檔案放在這裡
+	 * @param directoryType	暫存資料夾的 Directory 實作
+	 * @param maxRamMB		放在記憶體的上限（MB）
+	 * @throws IOException
+	 */
+	TemporaryDirectory(Workspace workspace, File folder, DirectoryEnum directoryType, double maxRamMB) throws IOException {
+		super(directoryType.openForWriting(folder), maxRamMB, maxRamMB);
+		this.workspace = workspace;
+		this.folder = folder;
+	}
+
+	/**
+	 * @return 暫存資料夾
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	@Override
+	public void sync(Collection<String> fileNames) throws IOException {
+		// 暫存用，不需要寫到磁碟
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			// NRTCachingDirectory 關閉時會把記憶體中的檔案寫到磁碟，先刪掉
+			for (String name : listCachedFiles()) {
+				deleteFile(name);
+			}
+			super.close();
+		} finally {
+			FileUtils.deleteQuietly(folder);
+			workspace.temporaryFolderDeleted(folder);
+		}
+	}
+}
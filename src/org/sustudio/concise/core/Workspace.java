@@ -3,16 +3,38 @@ package org.sustudio.concise.core;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.TrackingIndexWriter;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.sustudio.concise.core.autocompleter.AutoCompleter;
 
 /**
  * Concise資料夾的基礎，開啓 {@link Workspace} 後會建立相關的檔案結構，並且開啓預設的 {@link IndexReader}。
+ * <p>每個 {@link INDEX} 由一個 {@link SearcherManager} 管理。長時間的分析應該用 {@link #acquireSearcher(INDEX)}
+ * 取得一個固定的 snapshot，用完再 {@link #releaseSearcher(IndexSearcher)}；匯入或刪除文件時不會關掉它。
+ * 有 {@link org.sustudio.concise.core.corpus.DocumentWriter} 開啟時改成 near-real-time，
+ * 在背景每隔 {@link CCPrefs#NRT_REFRESH_SECONDS} 秒更新一次，新取得的 searcher 就看得到還沒 commit 的文件。</p>
+ * <p>{@link #getIndexReader(INDEX)} 傳回的是 workspace 自己保留的 snapshot，
+ * 直到 {@link #reopenIndexReader(INDEX)}（寫入結束時會自動呼叫）才換成新的。</p>
+ * <p>index 用哪一種 {@link Directory} 由 {@link #setDirectoryType(DirectoryEnum)} 決定，
+ * 預設是 {@link CCPrefs#INDEX_DIRECTORY}；需要其他實作時可以改寫 {@link #openDirectory(File)}。</p>
  * 
  * @author Kuan-ming Su
  *
@@ -32,13 +54,74 @@ public class Workspace {
 	private File workpath;
 	private ConciseFile indexDir;
 	private ConciseFile indexDirRef;
+	private ConciseFile ngramDir;
+	private ConciseFile ngramDirRef;
+	private ConciseFile tempDir;
+	private ConciseFile cacheDir;
+	private final AnalysisCache analysisCache;
+	private WorkspaceWarmUp warmUp;
+	private boolean warmUpPartOfSpeech = false;
 	private ConciseFile dicDir;
 	private ConciseFile originalDocs;
 	private ConciseFile originalRefs;
-	private IndexReader indexReader;
-	private IndexReader indexReaderRef;
-	private Directory indexDirectory;
-	private Directory indexDirectoryRef;
+	private final Map<INDEX, IndexHandle> handles = new EnumMap<INDEX, IndexHandle>(INDEX.class);
+	private DirectoryEnum directoryType = CCPrefs.INDEX_DIRECTORY;
+	/** 還沒有刪除的暫存資料夾 */
+	private final Set<File> temporaryFolders = new HashSet<File>();
+	
+	/**
+	 * 一個 INDEX 開啟的 directory、searcher 和寫入中的 writer
+	 */
+	private static class IndexHandle {
+		ReaderDirectory directory;
+		SearcherManager manager;
+		/** {@link #getIndexReader(INDEX)} 傳回的 snapshot */
+		IndexSearcher current;
+		IndexWriter writer;
+		ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+	}
+	
+	/**
+	 * 讀取用的 {@link Directory} 和從它開啟、還沒關閉的 reader 數量。
+	 * 還有 reader（例如還沒 release 的 searcher）時 {@link #close()} 只做記號，
+	 * 等最後一個 reader 關閉才真正關閉 directory。
+	 */
+	private static class ReaderDirectory extends SearcherFactory implements IndexReader.ReaderClosedListener {
+		final Directory directory;
+		private int openReaders = 0;
+		private boolean closing = false;
+		
+		ReaderDirectory(Directory directory) {
+			this.directory = directory;
+		}
+		
+		@Override
+		public synchronized IndexSearcher newSearcher(IndexReader reader) throws IOException {
+			openReaders++;
+			reader.addReaderClosedListener(this);
+			return new IndexSearcher(reader);
+		}
+		
+		@Override
+		public void onClose(IndexReader reader) {
+			synchronized (this) {
+				if (--openReaders > 0 || !closing) {
+					return;
+				}
+			}
+			IOUtils.closeWhileHandlingException(directory);
+		}
+		
+		void close() throws IOException {
+			synchronized (this) {
+				closing = true;
+				if (openReaders > 0) {
+					return;
+				}
+			}
+			directory.close();
+		}
+	}
 	
 	public Workspace(File workpath) throws IOException {
 		
@@ -56,7 +139,19 @@ public class Workspace {
 		originalDocs	= createFolderIfNotExists(Config.ORIGINAL_DOC_FOLDER);
 		originalRefs	= createFolderIfNotExists(Config.ORIGINAL_REF_FOLDER);
 		
+		// n-gram index folders are created on demand
+		ngramDir		= new ConciseFile(workpath, Config.NGRAM_INDEX_FOLDER, this);
+		ngramDirRef		= new ConciseFile(workpath, Config.REF_NGRAM_INDEX_FOLDER, this);
+		
+		// temporary folder is created on demand
+		tempDir			= new ConciseFile(workpath, Config.TEMP_FOLDER, this);
+		cacheDir		= new ConciseFile(workpath, Config.CACHE_FOLDER, this);
+		analysisCache	= new AnalysisCache(this, cacheDir);
+		
 		openIndexReader(INDEX.DOCUMENT);
+		if (CCPrefs.WARM_UP_ENABLED) {
+			warmUp(warmUpPartOfSpeech);
+		}
 	}
 	
 	/**
@@ -83,84 +178,321 @@ public class Workspace {
 		return getClass().getSimpleName() + " {" + workpath.toString() + "}";
 	}
 	
-	protected void openIndexReader(INDEX indexType) throws IOException {
-		try {
-			switch (indexType) {
-			default:
-			case DOCUMENT:
-				indexDirectory = FSDirectory.open(indexDir);
-				indexReader = DirectoryReader.open(indexDirectory);
-				break;
-				
-			case REFERENCE:
-				indexDirectoryRef = FSDirectory.open(indexDirRef);
-				indexReaderRef = DirectoryReader.open(indexDirectoryRef);
-				break;
-			}
-			
-		} catch (IndexNotFoundException e) {
-			// eat...	
+	private IndexHandle handle(INDEX indexType) {
+		IndexHandle handle = handles.get(indexType);
+		if (handle == null) {
+			handle = new IndexHandle();
+			handles.put(indexType, handle);
 		}
+		return handle;
 	}
 	
-	public IndexReader getIndexReader(INDEX indexType) throws IOException {
-		switch (indexType) {
-		default:
-		case DOCUMENT:
-			if (indexReader == null) {
-				openIndexReader(indexType);
+	/**
+	 * 傳回 INDEX 的 {@link SearcherManager}，還沒有建立 index 的話傳回 null
+	 */
+	private SearcherManager getSearcherManager(INDEX indexType) throws IOException {
+		IndexHandle handle = handle(indexType);
+		if (handle.manager == null) {
+			if (handle.directory == null) {
+				handle.directory = new ReaderDirectory(openDirectory(getIndexDir(indexType)));
 			}
-			return indexReader;
-			
-		case REFERENCE:
-			if (indexReaderRef == null) {
-				openIndexReader(indexType);
+			if (!DirectoryReader.indexExists(handle.directory.directory)) {
+				return null;
+			}
+			handle.manager = new SearcherManager(handle.directory.directory, handle.directory);
+		}
+		return handle.manager;
+	}
+	
+	protected synchronized void openIndexReader(INDEX indexType) throws IOException {
+		IndexHandle handle = handle(indexType);
+		if (handle.current == null) {
+			handle.current = acquireSearcher(indexType);
+		}
+	}
+	
+	/**
+	 * 取得目前最新的 searcher，用完一定要呼叫 {@link #releaseSearcher(IndexSearcher)}。
+	 * 在 release 之前 searcher 的內容不會改變，也不會因為匯入、刪除文件而被關閉。
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @return searcher，還沒有建立 index 的話傳回 null
+	 * @throws IOException
+	 */
+	public synchronized IndexSearcher acquireSearcher(INDEX indexType) throws IOException {
+		SearcherManager manager = getSearcherManager(indexType);
+		return manager == null ? null : manager.acquire();
+	}
+	
+	/**
+	 * 釋放 {@link #acquireSearcher(INDEX)} 取得的 searcher
+	 * @param searcher	可以是 null
+	 * @throws IOException
+	 */
+	public void releaseSearcher(IndexSearcher searcher) throws IOException {
+		if (searcher != null) {
+			searcher.getIndexReader().decRef();
+		}
+	}
+	
+	/**
+	 * 更新 INDEX 的 searcher（之後 {@link #acquireSearcher(INDEX)} 才看得到新的文件），
+	 * 已經取得的 searcher 和 {@link #getIndexReader(INDEX)} 的 snapshot 不受影響
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @throws IOException
+	 */
+	public void refreshSearcher(INDEX indexType) throws IOException {
+		SearcherManager manager;
+		synchronized (this) {
+			manager = getSearcherManager(indexType);
+			if (manager == null) {
+				return;
 			}
-			return indexReaderRef;
+		}
+		try {
+			manager.maybeRefreshBlocking();
+		} catch (AlreadyClosedException e) {
+			// writer 剛好開啟或關閉，換了新的 manager
 		}
 	}
 	
-	public IndexReader reopenIndexReader(INDEX indexType) throws IOException {
-		closeIndexReader(indexType);
+	public synchronized IndexReader getIndexReader(INDEX indexType) throws IOException {
 		openIndexReader(indexType);
-		switch (indexType) {
-		default:
-		case DOCUMENT:		return indexReader;
-		case REFERENCE:		return indexReaderRef;
+		IndexSearcher current = handle(indexType).current;
+		return current == null ? null : current.getIndexReader();
+	}
+	
+	/**
+	 * 把 {@link #getIndexReader(INDEX)} 的 snapshot 換成最新的，舊的 reader 會被關掉，它的 {@link AutoCompleter} 也一起移除
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @return 新的 reader
+	 * @throws IOException
+	 */
+	public synchronized IndexReader reopenIndexReader(INDEX indexType) throws IOException {
+		refreshSearcher(indexType);
+		IndexHandle handle = handle(indexType);
+		IndexSearcher previous = handle.current;
+		handle.current = null;
+		openIndexReader(indexType);
+		if (previous != null && (handle.current == null || handle.current.getIndexReader() != previous.getIndexReader())) {
+			AutoCompleter.removeInstanceFor(previous.getIndexReader());
 		}
-		
+		releaseSearcher(previous);
+		if (CCPrefs.WARM_UP_ENABLED) {
+			warmUp(warmUpPartOfSpeech);
+		}
+		return handle.current == null ? null : handle.current.getIndexReader();
 	}
 	
-	public void closeIndexReader(INDEX indexType) throws IOException {
-		switch (indexType) {
-		default:
-		case DOCUMENT:
-			if (indexReader != null) { 
-				indexReader.close();
-				indexReader = null;
+	/**
+	 * 在背景預先載入 index 檔案、詞表快照和 autocompleter，正在進行的 warm-up 會被取消。
+	 * {@link CCPrefs#WARM_UP_ENABLED} 時開啟 workspace 和 {@link #reopenIndexReader(INDEX)} 之後會自動呼叫
+	 * （沿用上一次的 <code>showPartOfSpeech</code>，預設不顯示詞性）。
+	 * @param showPartOfSpeech	autocompleter 是否顯示詞性
+	 * @return 可以等待或取消的 warm-up
+	 */
+	public synchronized WorkspaceWarmUp warmUp(boolean showPartOfSpeech) {
+		if (warmUp != null) {
+			warmUp.cancel(true);
+		}
+		warmUpPartOfSpeech = showPartOfSpeech;
+		warmUp = new WorkspaceWarmUp(this, showPartOfSpeech);
+		warmUp.start();
+		return warmUp;
+	}
+	
+	/**
+	 * @return 最近一次的 warm-up，沒有的話傳回 null
+	 */
+	public synchronized WorkspaceWarmUp getWarmUp() {
+		return warmUp;
+	}
+	
+	/**
+	 * 關閉 INDEX 的 snapshot 和 searcher manager，已經 {@link #acquireSearcher(INDEX) acquire} 的 searcher 不受影響：
+	 * directory 要等這些 searcher 都 release 之後才會關閉
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @throws IOException
+	 */
+	public synchronized void closeIndexReader(INDEX indexType) throws IOException {
+		IndexHandle handle = handle(indexType);
+		stopReopenThread(handle);
+		if (handle.current != null) {
+			AutoCompleter.removeInstanceFor(handle.current.getIndexReader());
+		}
+		releaseSearcher(handle.current);
+		handle.current = null;
+		if (handle.manager != null) {
+			handle.manager.close();
+			handle.manager = null;
+		}
+		if (handle.directory != null) {
+			handle.directory.close();
+			handle.directory = null;
+		}
+	}
+	
+	/**
+	 * 開始寫入 INDEX。之後的 searcher 直接從 writer 開啟（near-real-time），並且在背景定時更新。
+	 * 由 {@link org.sustudio.concise.core.corpus.DocumentWriter} 呼叫。
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @param writer
+	 * @throws IOException
+	 */
+	public synchronized void attachIndexWriter(INDEX indexType, IndexWriter writer) throws IOException {
+		IndexHandle handle = handle(indexType);
+		stopReopenThread(handle);
+		if (handle.manager != null) {
+			handle.manager.close();
+		}
+		handle.writer = writer;
+		handle.manager = new SearcherManager(writer, true, null);
+		handle.reopenThread = new ControlledRealTimeReopenThread<IndexSearcher>(
+									new TrackingIndexWriter(writer), 
+									handle.manager, 
+									CCPrefs.NRT_REFRESH_SECONDS, 
+									Math.min(0.1, CCPrefs.NRT_REFRESH_SECONDS));
+		handle.reopenThread.setName("concise-nrt-" + indexType.name().toLowerCase());
+		handle.reopenThread.setDaemon(true);
+		handle.reopenThread.start();
+	}
+	
+	/**
+	 * 結束寫入 INDEX，要在 writer 關閉之前呼叫。之後的 searcher 再從 directory 開啟。
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @param writer	{@link #attachIndexWriter(INDEX, IndexWriter)} 的 writer
+	 * @throws IOException
+	 */
+	public synchronized void detachIndexWriter(INDEX indexType, IndexWriter writer) throws IOException {
+		IndexHandle handle = handle(indexType);
+		if (handle.writer != writer) {
+			return;
+		}
+		stopReopenThread(handle);
+		handle.manager.close();
+		handle.manager = null;
+		handle.writer = null;
+		if (handle.directory != null && handle.directory.directory instanceof RAMDirectory) {
+			// 預先載入的內容已經過時，下次重新載入（舊的 snapshot 還在用的話，等它們 release 才關閉）
+			handle.directory.close();
+			handle.directory = null;
+		}
+	}
+	
+	private static void stopReopenThread(IndexHandle handle) {
+		if (handle.reopenThread != null) {
+			handle.reopenThread.close();
+			handle.reopenThread = null;
+		}
+	}
+	
+	public void close() throws IOException {
+		synchronized (this) {
+			if (warmUp != null) {
+				warmUp.cancel(true);
+				warmUp = null;
 			}
-			if (indexDirectory != null) {
-				indexDirectory.close();
-				indexDirectory = null;
+		}
+		closeIndexReader(INDEX.DOCUMENT);
+		closeIndexReader(INDEX.REFERENCE);
+		deleteTemporaryFolders();
+	}
+	
+	/**
+	 * 刪除還沒有關閉的 {@link TemporaryDirectory}（例如沒有讀完就丟掉的 iterator）留下的資料夾
+	 */
+	private void deleteTemporaryFolders() {
+		synchronized (temporaryFolders) {
+			for (File folder : temporaryFolders) {
+				FileUtils.deleteQuietly(folder);
 			}
-			break;
-			
-		case REFERENCE:
-			if (indexReaderRef != null) { 
-				indexReaderRef.close();
-				indexReaderRef = null;
+			temporaryFolders.clear();
+			String[] remaining = tempDir.list();
+			if (remaining != null && remaining.length == 0) {
+				tempDir.delete();
 			}
-			if (indexDirectoryRef != null) {
-				indexDirectoryRef.close();
-				indexDirectoryRef = null;
+		}
+	}
+	
+	void temporaryFolderDeleted(File folder) {
+		synchronized (temporaryFolders) {
+			temporaryFolders.remove(folder);
+		}
+	}
+	
+	/**
+	 * 傳回讀取 index 用的 {@link Directory} 實作
+	 * @return
+	 */
+	public DirectoryEnum getDirectoryType() {
+		return directoryType;
+	}
+	
+	/**
+	 * 設定讀取 index 用的 {@link Directory} 實作，已經開啟的 reader 會關閉，下次使用時再用新的實作開啟
+	 * （已經 {@link #acquireSearcher(INDEX) acquire} 的 searcher 不受影響）
+	 * @param directoryType
+	 * @throws IOException
+	 */
+	public synchronized void setDirectoryType(DirectoryEnum directoryType) throws IOException {
+		if (this.directoryType != directoryType) {
+			this.directoryType = directoryType;
+			for (INDEX indexType : INDEX.values()) {
+				if (handle(indexType).writer == null) {
+					closeIndexReader(indexType);
+				}
 			}
-			break;
 		}
 	}
 	
-	public void close() throws IOException {
-		closeIndexReader(INDEX.DOCUMENT);
-		closeIndexReader(INDEX.REFERENCE);
+	/**
+	 * 用 {@link #getDirectoryType()} 開啟讀取用的 directory
+	 * @param dir	index 資料夾
+	 * @return
+	 * @throws IOException
+	 */
+	public Directory openDirectory(File dir) throws IOException {
+		return directoryType.open(dir);
+	}
+	
+	/**
+	 * 用 {@link #getDirectoryType()} 開啟寫入用的 directory（一定寫到磁碟）
+	 * @param dir	index 資料夾
+	 * @return
+	 * @throws IOException
+	 */
+	public Directory openDirectoryForWriting(File dir) throws IOException {
+		return directoryType.openForWriting(dir);
+	}
+	
+	/**
+	 * 傳回目前讀取 INDEX 的 {@link Directory} 類別，還沒有開啟的話傳回 null
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @return
+	 */
+	public synchronized Class<? extends Directory> getDirectoryClass(INDEX indexType) {
+		ReaderDirectory directory = handle(indexType).directory;
+		return directory == null ? null : directory.directory.getClass();
+	}
+	
+	/**
+	 * 傳回讀取 INDEX 時映射到記憶體的 bytes：{@link MMapDirectory} 是 index 檔案的大小，
+	 * {@link RAMDirectory} 是佔用的 heap，其他實作為 0
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @return bytes
+	 * @throws IOException
+	 */
+	public synchronized long getMappedBytes(INDEX indexType) throws IOException {
+		Directory directory = handle(indexType).directory == null ? null : handle(indexType).directory.directory;
+		if (directory instanceof RAMDirectory) {
+			return ((RAMDirectory) directory).ramBytesUsed();
+		}
+		long bytes = 0;
+		if (directory instanceof MMapDirectory) {
+			for (String name : directory.listAll()) {
+				bytes += directory.fileLength(name);
+			}
+		}
+		return bytes;
 	}
 	
 
@@ -177,6 +509,36 @@ public class Workspace {
 		}
 	}
 	
+	/**
+	 * 傳回儲存 n-gram 索引的 {@link File} 物件（資料夾不一定存在）
+	 * @param indexType DOCUMENT or REFERENCE
+	 * @return
+	 */
+	public ConciseFile getNgramIndexDir(INDEX indexType) {
+		switch (indexType) {
+		default:
+		case DOCUMENT:	return ngramDir;
+		case REFERENCE:	return ngramDirRef;
+		}
+	}
+	
+	/**
+	 * 傳回分析結果的快取
+	 * @return
+	 */
+	public AnalysisCache getAnalysisCache() {
+		// 不鎖 workspace：IndexWriter flush 時（可能在 NRT reopen thread 上）會呼叫
+		return analysisCache;
+	}
+	
+	/**
+	 * 傳回暫存資料夾的 {@link File} 物件（資料夾不一定存在）
+	 * @return
+	 */
+	public ConciseFile getTemporaryDir() {
+		return tempDir;
+	}
+	
 	/**
 	 * 傳回儲存字典（分詞用）的 {@link File} 物件
 	 * @return 儲存字典（分詞用）的 {@link File} 物件
@@ -214,10 +576,25 @@ public class Workspace {
 	
 	/**
 	 * 傳回暫存的 Directory 物件，用於處理 Lucene 的暫存內容。<br>
-	 * 預設是使用 {@link RAMDirectory}，但是可以在應用時改寫為自訂的檔案路徑。
+	 * 預設是 {@link TemporaryDirectory}：先放在記憶體，超過 {@link CCPrefs#TEMP_RAM_BUFFER_MB} 之後寫到
+	 * {@link #getTemporaryDir()} 底下新的資料夾，關閉時刪除。
+	 * {@link CCPrefs#TEMP_DIRECTORY} 是 {@link DirectoryEnum#RAM} 時全部放在 {@link RAMDirectory}。
+	 * 也可以在應用時改寫為自訂的檔案路徑。
 	 * @return
 	 */
 	public Directory getTempDirectory() {
+		if (CCPrefs.TEMP_DIRECTORY != DirectoryEnum.RAM) {
+			try {
+				synchronized (temporaryFolders) {
+					tempDir.mkdirs();
+					File folder = Files.createTempDirectory(tempDir.toPath(), "tmp-").toFile();
+					temporaryFolders.add(folder);
+					return new TemporaryDirectory(this, folder, CCPrefs.TEMP_DIRECTORY, CCPrefs.TEMP_RAM_BUFFER_MB);
+				}
+			} catch (IOException e) {
+				// 建不了暫存資料夾就用記憶體
+			}
+		}
 		return new RAMDirectory();
 	}
 	
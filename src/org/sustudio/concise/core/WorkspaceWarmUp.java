@@ -0,0 +1,200 @@
+package org.sustudio.concise.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RAMDirectory;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.autocompleter.AutoCompleter;
+import org.sustudio.concise.core.wordlister.WordListSnapshot;
+
+/**
+ * 開啟 {@link Workspace} 或是 reader 重新開啟之後，在背景預先做好第一次分析時才會做的事：
+ * <ol>
+ * <li>把 index 檔案讀過一遍，讓作業系統的 page cache（或是 mmap）先載入</li>
+ * <li>DOCUMENT、REFERENCE 的詞表快照（{@link WordListSnapshot}，含 sumTotalTermFreq），顯示和不顯示詞性各一份</li>
+ * <li>DOCUMENT 的 {@link AutoCompleter}</li>
+ * </ol>
+ * <p>本身是一個 {@link Future}，可以等它完成、取消，或是不理它；{@link #getProgress()} 傳回進度。
+ * 由 {@link Workspace#warmUp(boolean)} 建立，{@link CCPrefs#WARM_UP_ENABLED} 時自動開始。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class WorkspaceWarmUp implements Future<Void> {
+
+	private static final int PREFETCH_BUFFER_SIZE = 1 << 16;
+
+	private final Workspace workspace;
+	private final boolean showPartOfSpeech;
+	private final FutureTask<Void> task;
+
+	private volatile int completedSteps = 0;
+	private volatile int totalSteps = 1;
+	private volatile String currentStep = "";
+
+	/**
+	 * @param workspace
+	 * @param showPartOfSpeech	{@link AutoCompleter} 是否顯示詞性
+	 */
+	WorkspaceWarmUp(Workspace workspace, boolean showPartOfSpeech) {
+		this.workspace = workspace;
+		this.showPartOfSpeech = showPartOfSpeech;
+		this.task = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				warmUp();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 在新的 daemon thread 上開始
+	 */
+	void start() {
+		Thread thread = new Thread(task, "concise-warm-up");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	private void warmUp() throws Exception {
+		// 先固定要處理的 reader，避免處理到一半被關閉
+		Map<INDEX, IndexReader> readers = new EnumMap<INDEX, IndexReader>(INDEX.class);
+		for (INDEX indexType : INDEX.values()) {
+			IndexReader reader = workspace.getIndexReader(indexType);
+			if (reader != null && reader.tryIncRef()) {
+				readers.put(indexType, reader);
+			}
+		}
+		try {
+			totalSteps = readers.size() * 3 + (readers.containsKey(INDEX.DOCUMENT) ? 1 : 0);
+			for (Map.Entry<INDEX, IndexReader> entry : readers.entrySet()) {
+				step("prefetch " + entry.getKey());
+				prefetch(entry.getValue());
+				completedSteps++;
+			}
+			for (Map.Entry<INDEX, IndexReader> entry : readers.entrySet()) {
+				for (boolean pos : new boolean[] { false, true }) {
+					step("word list " + entry.getKey() + (pos ? " (part-of-speech)" : ""));
+					WordListSnapshot.getInstance(entry.getValue(), pos).getSumTotalTermFreq();
+					completedSteps++;
+				}
+			}
+			if (readers.containsKey(INDEX.DOCUMENT)) {
+				step("autocompleter");
+				AutoCompleter.getInstanceFor(readers.get(INDEX.DOCUMENT), showPartOfSpeech);
+				if (task.isCancelled()) {
+					// workspace 可能已經換掉或關閉這個 reader 並移除了它的 autocompleter，不要留下來
+					AutoCompleter.removeInstanceFor(readers.get(INDEX.DOCUMENT));
+				}
+				completedSteps++;
+			}
+			currentStep = "";
+		} finally {
+			for (IndexReader reader : readers.values()) {
+				reader.decRef();
+			}
+		}
+	}
+
+	private void step(String name) {
+		if (task.isCancelled() || Thread.currentThread().isInterrupted()) {
+			throw new CancellationException();
+		}
+		currentStep = name;
+	}
+
+	/**
+	 * 依序讀過 reader 用到的 index 檔案
+	 */
+	private void prefetch(IndexReader reader) throws IOException {
+		if (!(reader instanceof DirectoryReader)) {
+			return;
+		}
+		DirectoryReader directoryReader = (DirectoryReader) reader;
+		Directory directory = directoryReader.directory();
+		if (directory instanceof RAMDirectory) {
+			return;		// 已經在記憶體裡了
+		}
+		byte[] buffer = new byte[PREFETCH_BUFFER_SIZE];
+		for (String name : directoryReader.getIndexCommit().getFileNames()) {
+			IndexInput in;
+			try {
+				in = directory.openInput(name, IOContext.READONCE);
+			} catch (FileNotFoundException e) {
+				continue;	// merge 之後已經刪除
+			} catch (NoSuchFileException e) {
+				continue;
+			}
+			try {
+				long remaining = in.length();
+				while (remaining > 0) {
+					if (task.isCancelled()) {
+						return;
+					}
+					int n = (int) Math.min(buffer.length, remaining);
+					in.readBytes(buffer, 0, n);
+					remaining -= n;
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * @return 進度，0 到 1
+	 */
+	public double getProgress() {
+		return isDone() ? 1.0 : Math.min(1.0, (double) completedSteps / Math.max(1, totalSteps));
+	}
+
+	/**
+	 * @return 目前正在做的事，沒有的話為空字串
+	 */
+	public String getCurrentStep() {
+		return currentStep;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return task.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return task.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return task.isDone();
+	}
+
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		return task.get();
+	}
+
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return task.get(timeout, unit);
+	}
+}
@@ -4,9 +4,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
@@ -19,39 +22,85 @@ import org.sustudio.concise.core.wordlister.Word;
 
 /**
  * 根據輸入的字，會自動給出建議搜尋
+ * <p>{@link org.sustudio.concise.core.WorkspaceWarmUp} 可能在背景建立，所以 instance 的 method 都是 synchronized。
+ * 每個 reader 的 AutoCompleter 在共用的 lock 外面建立，同一個 reader 只建立一次，
+ * 建立中的 reader 被移除時不必等它建完。</p>
  * 
  * @author Kuan-ming Su
  *
  */
 public class AutoCompleter {
 
-	private static HashMap<IndexReader, AutoCompleter> map = new HashMap<IndexReader, AutoCompleter>();
+	private static final ConcurrentMap<IndexReader, FutureTask<AutoCompleter>> map = 
+			new ConcurrentHashMap<IndexReader, FutureTask<AutoCompleter>>();
 	
-	public static AutoCompleter getInstanceFor(final IndexReader reader, boolean showPartOfSpeech) throws IOException {
-		AutoCompleter completer = map.get(reader);
-		if (completer == null) {
-			completer = new AutoCompleter(reader, showPartOfSpeech);
-			map.put(reader, completer);
+	public static AutoCompleter getInstanceFor(final IndexReader reader, final boolean showPartOfSpeech) throws IOException {
+		FutureTask<AutoCompleter> task = map.get(reader);
+		if (task == null) {
+			FutureTask<AutoCompleter> newTask = new FutureTask<AutoCompleter>(new Callable<AutoCompleter>() {
+				@Override
+				public AutoCompleter call() throws IOException {
+					return new AutoCompleter(reader, showPartOfSpeech);
+				}
+			});
+			task = map.putIfAbsent(reader, newTask);
+			if (task == null) {
+				// 由第一個要求的 thread 建立，其他 thread 等它建完
+				task = newTask;
+				task.run();
+			}
+		}
+		
+		AutoCompleter completer;
+		try {
+			completer = task.get();
+		} catch (ExecutionException e) {
+			map.remove(reader, task);
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
 		}
 		completer.setShowPartOfSpeech(showPartOfSpeech);
 		return completer;
 	}
 	
 	public static void removeInstanceFor(final IndexReader reader) throws IOException {
-		AutoCompleter completer = map.remove(reader);
-		if (completer != null) {
-			completer.close();
+		FutureTask<AutoCompleter> task = map.remove(reader);
+		if (task != null && task.isDone()) {
+			// 還在建立的話，建好之後就沒有人用了，不必等它
+			AutoCompleter completer = completed(task);
+			if (completer != null) {
+				completer.close();
+			}
 		}
 	}
 	
 	public static AutoCompleter[] getInstances() {
 		ArrayList<AutoCompleter> instances = new ArrayList<AutoCompleter>();
-		for (Map.Entry<IndexReader, AutoCompleter> entry : map.entrySet()) {
-			instances.add(entry.getValue());
+		for (FutureTask<AutoCompleter> task : map.values()) {
+			AutoCompleter completer = task.isDone() ? completed(task) : null;
+			if (completer != null) {
+				instances.add(completer);
+			}
 		}
 		return instances.toArray(new AutoCompleter[0]);
 	}
 	
+	/**
+	 * @return 已經建好的 AutoCompleter，建立失敗則為 null
+	 */
+	private static AutoCompleter completed(FutureTask<AutoCompleter> task) {
+		try {
+			return task.get();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
 	
 	private final IndexReader reader;
 	private Lookup autoCompleter;
@@ -64,7 +113,7 @@ public class AutoCompleter {
 		init();
 	}
 	
-	public void setShowPartOfSpeech(boolean show) throws IOException {
+	public synchronized void setShowPartOfSpeech(boolean show) throws IOException {
 		if (showPartOfSpeech != show) {
 			showPartOfSpeech = show;
 			close();
@@ -72,7 +121,7 @@ public class AutoCompleter {
 		}
 	}
 	
-	public List<Word> lookup(CharSequence text, int number) throws IOException {
+	public synchronized List<Word> lookup(CharSequence text, int number) throws IOException {
 		
 		init();
 		
@@ -117,7 +166,7 @@ public class AutoCompleter {
 	}
 
 	
-	public void close() {
+	public synchronized void close() {
 		autoCompleter = null;
 		dict = null;
 	}
@@ -1,15 +1,24 @@
 package org.sustudio.concise.core.cluster;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.Workspace;
 
-public abstract class ClusterIterator implements Iterator<Cluster>, Iterable<Cluster> {
+public abstract class ClusterIterator implements Iterator<Cluster>, Iterable<Cluster>, Closeable {
 
 	protected Cluster nextCluster;
 	
@@ -20,6 +29,12 @@ public abstract class ClusterIterator implements Iterator<Cluster>, Iterable<Clu
 		temporaryDirectory = workspace.getTempDirectory();
 	}
 	
+	/**
+	 * 不需要暫存目錄的 ClusterIterator 用（需要時再自己設定 {@link #temporaryDirectory}）
+	 */
+	protected ClusterIterator() {
+	}
+	
 	public Iterator<Cluster> iterator() {
 		return this;
 	}
@@ -35,16 +50,102 @@ public abstract class ClusterIterator implements Iterator<Cluster>, Iterable<Clu
 		throw new UnsupportedOperationException("remove() is not supported.");
 	}
 	
+	/**
+	 * 計算一段文件中的 cluster
+	 */
+	protected interface PartitionTask {
+		
+		/**
+		 * @param docIds	所有的文件編號
+		 * @param from		這一段的第一份文件（docIds 的 index）
+		 * @param to		這一段的最後一份文件（不含）
+		 * @param counter	這一段專用的 counter
+		 * @throws Exception
+		 */
+		void count(int[] docIds, int from, int to, NgramCounter counter) throws Exception;
+	}
+	
+	/**
+	 * 把文件分成 numThreads 段，分別用自己的 {@link NgramCounter} 同時計算，最後再合併。
+	 * 結果的順序和次數都和只用一個 thread 計算相同。
+	 * @param docIds		要計算的文件編號
+	 * @param numThreads	thread 數量，小於 2 時在目前的 thread 計算
+	 * @param minFreq		最低次數
+	 * @param task			計算一段文件的工作
+	 * @return 依序排列的 clusters
+	 * @throws Exception	任一段計算失敗時丟出該段的 exception
+	 */
+	protected Iterator<Cluster> countPartitions(final int[] docIds, 
+												int numThreads, 
+												long minFreq, 
+												final PartitionTask task) throws Exception 
+	{
+		int numPartitions = Math.max(Math.min(numThreads, docIds.length), 1);
+		double ramBudgetMB = CCPrefs.CLUSTER_RAM_BUFFER_MB / numPartitions;
+		List<NgramCounter> counters = new ArrayList<NgramCounter>(numPartitions);
+		for (int i = 0; i < numPartitions; i++) {
+			counters.add(new NgramCounter(temporaryDirectory, "cluster" + i + "_", ramBudgetMB));
+		}
+		
+		if (numPartitions == 1) {
+			task.count(docIds, 0, docIds.length, counters.get(0));
+			return NgramCounter.merge(counters, minFreq);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numPartitions);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(numPartitions);
+			for (int i = 0; i < numPartitions; i++) {
+				final int from = (int) ((long) docIds.length * i / numPartitions);
+				final int to = (int) ((long) docIds.length * (i + 1) / numPartitions);
+				final NgramCounter counter = counters.get(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						task.count(docIds, from, to, counter);
+						counter.sort();
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return NgramCounter.merge(counters, minFreq);
+	}
+	
 	/**
 	 * 關閉並刪除暫存目錄
 	 * @throws IOException
 	 */
 	protected void closeTemporaryDirectory() throws IOException {
+		if (temporaryDirectory == null) {
+			return;
+		}
 		if (temporaryDirectory instanceof FSDirectory) {
 			File tmpdir = ((FSDirectory) temporaryDirectory).getDirectory();
 			FileUtils.deleteDirectory(tmpdir);
 		}
 		temporaryDirectory.close();
+		temporaryDirectory = null;
+	}
+	
+	/**
+	 * 讀完之前就不用的話要呼叫，釋放暫存目錄（讀完時會自動呼叫）
+	 */
+	@Override
+	public void close() throws IOException {
+		closeTemporaryDirectory();
 	}
 	
 	//
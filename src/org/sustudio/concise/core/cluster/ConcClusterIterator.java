@@ -1,13 +1,8 @@
 package org.sustudio.concise.core.cluster;
 
+import java.util.Iterator;
 import java.util.StringTokenizer;
 
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiFields;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.ScoreDoc;
 import org.sustudio.concise.core.collocation.TokenSentenceHighlighter;
 import org.sustudio.concise.core.concordance.Conc;
 
@@ -19,49 +14,56 @@ import org.sustudio.concise.core.concordance.Conc;
  */
 public class ConcClusterIterator extends ClusterIterator {
 	
-	private IndexReader reader;
-	private TermsEnum termsEnum;
+	private Iterator<Cluster> clusters;
 	
-	public ConcClusterIterator(Conc conc) throws Exception 
+	public ConcClusterIterator(Conc conc) throws Exception {
+		this(conc, 1);
+	}
+	
+	/**
+	 * @param conc
+	 * @param numThreads	同時處理 hit doc 的 thread 數量
+	 * @throws Exception
+	 */
+	public ConcClusterIterator(final Conc conc, int numThreads) throws Exception 
 	{	
 		super(conc.workspace);
-		TemporaryClusterIndexer ci = new TemporaryClusterIndexer(temporaryDirectory);
-		for (ScoreDoc doc : conc.hitDocs()) {
-			
-			TokenSentenceHighlighter highlighter = new TokenSentenceHighlighter(conc, doc.doc);
-			for (String sentence : highlighter.getHighlightSpans()) {
+		clusters = countPartitions(conc.hitDocIds(), numThreads, 1, new PartitionTask() {
+			@Override
+			public void count(int[] docIds, int from, int to, NgramCounter counter) throws Exception {
 				StringBuilder sb = new StringBuilder();
-				int nodeStart = sentence.indexOf(Conc.preNodeTag);
-				int nodeEnd = sentence.indexOf(Conc.postNodeTag);
-				sb.append(sentence.substring(0, nodeStart));
-				sb.append(sentence.substring(nodeStart + Conc.preNodeTag.length(), nodeEnd));
-				sb.append(sentence.substring(nodeEnd + Conc.postNodeTag.length(), sentence.length()));
-				
-				StringTokenizer st = new StringTokenizer(sb.toString(), " ");
-				if (st.countTokens() == conc.left_span_size + conc.right_span_size + 1) {
-					ci.addDocumentWithString(sb.toString().trim());
+				int length = conc.left_span_size + conc.right_span_size + 1;
+				int[] ids = new int[length];
+				for (int i = from; i < to; i++) {
+					TokenSentenceHighlighter highlighter = new TokenSentenceHighlighter(conc, docIds[i]);
+					for (String sentence : highlighter.getHighlightSpans()) {
+						int nodeStart = sentence.indexOf(Conc.preNodeTag);
+						int nodeEnd = sentence.indexOf(Conc.postNodeTag);
+						sb.append(sentence.substring(0, nodeStart));
+						sb.append(sentence.substring(nodeStart + Conc.preNodeTag.length(), nodeEnd));
+						sb.append(sentence.substring(nodeEnd + Conc.postNodeTag.length(), sentence.length()));
+						
+						StringTokenizer st = new StringTokenizer(sb.toString(), " ");
+						if (st.countTokens() == length) {
+							// 整個 cluster 當成一個 n-gram
+							for (int j = 0; j < length; j++) {
+								ids[j] = counter.tokenId(st.nextToken());
+							}
+							counter.add(ids, 0, length);
+						}
+						sb.setLength(0);
+					}
 				}
-				sb.setLength(0);
 			}
-			ci.commit();
-		}
-		ci.closeWriter();
-		ci = null;
-		
-		reader = DirectoryReader.open(temporaryDirectory);
-		Terms terms = MultiFields.getTerms(reader, TemporaryClusterIndexer.FIELD);
-		if (terms != null) {
-			termsEnum = terms.iterator(null);
-			nextCluster = readNextCluster();
-		}
+		});
+		nextCluster = readNextCluster();
 	}
 	
 	private Cluster readNextCluster() throws Exception {
-		while (termsEnum.next() != null) {
-			return new Cluster(termsEnum.term().utf8ToString(), termsEnum.docFreq());
+		if (clusters.hasNext()) {
+			return clusters.next();
 		}
-		termsEnum = null;
-		reader.close();
+		clusters = null;
 		closeTemporaryDirectory();
 		return null;
 	}
@@ -1,90 +1,264 @@
 package org.sustudio.concise.core.cluster;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.shingle.ShingleAnalyzerWrapper;
 import org.apache.lucene.analysis.shingle.ShingleFilter;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
 import org.sustudio.concise.core.collocation.ConciseTokenAnalyzer;
 import org.sustudio.concise.core.corpus.importer.ConciseField;
 
+/**
+ * 列出所有的 n-gram cluster。
+ * <p>如果有和主索引一致的 {@link NgramIndex}，直接依序讀出 n-gram 和次數；
+ * 否則重新斷出每份文件的 n-gram，用 {@link NgramCounter} 計算次數。</p>
+ * 
+ * @author Kuan-ming Su
+ *
+ */
 public class NgramClusterIterator extends ClusterIterator {
 
+	private final long minFreq;
+	
 	private IndexReader ireader;
 	private TermsEnum termsEnum;
-	private final Analyzer analyzer;
+	private Iterator<Cluster> countedClusters;
+	
+	/** n-gram 索引的 live docs（沒有刪除的文件則為 null） */
+	private Bits liveDocs;
+	private DocsEnum docsEnum;
+	private Analyzer tokenAnalyzer;
+	private final HashMap<String, String> tokenCache = new HashMap<String, String>();
+	/** 詞彙會被轉換（大小寫、詞性分隔、lemma）時，先合併再依序輸出 */
+	private Iterator<Entry<BytesRef, long[]>> mergedClusters;
 	
 	public NgramClusterIterator(final Workspace workspace, final int n, boolean showPartOfSpeech) throws Exception {
-		super(workspace);
-		analyzer = new ShingleAnalyzerWrapper(new ConciseTokenAnalyzer(Config.LUCENE_VERSION, showPartOfSpeech),
-											  n,
-											  n,
-											  ShingleFilter.DEFAULT_TOKEN_SEPARATOR,
-											  false,
-											  false,
-											  ShingleFilter.DEFAULT_FILLER_TOKEN);
+		this(workspace, n, showPartOfSpeech, 1);
+	}
+	
+	/**
+	 * @param workspace
+	 * @param n
+	 * @param showPartOfSpeech
+	 * @param minFreq			最低次數，次數較低的 n-gram 不會列出
+	 * @throws Exception
+	 */
+	public NgramClusterIterator(final Workspace workspace, final int n, boolean showPartOfSpeech, long minFreq) throws Exception {
+		this(workspace, n, showPartOfSpeech, minFreq, 1);
+	}
+	
+	/**
+	 * @param workspace
+	 * @param n
+	 * @param showPartOfSpeech
+	 * @param minFreq			最低次數，次數較低的 n-gram 不會列出
+	 * @param numThreads		沒有 {@link NgramIndex} 時，同時計算 n-gram 的 thread 數量
+	 * @throws Exception
+	 */
+	public NgramClusterIterator(final Workspace workspace, final int n, boolean showPartOfSpeech, long minFreq, int numThreads) throws Exception {
+		super();	// 讀 n-gram 索引時用不到暫存目錄
+		this.minFreq = minFreq;
 		
-		TemporaryClusterIndexer ci = new TemporaryClusterIndexer(temporaryDirectory);
+		DirectoryReader ngramReader = NgramIndex.supports(n) ? 
+									  NgramIndex.openFreshReader(workspace, INDEX.DOCUMENT) : 
+									  null;
+		if (ngramReader != null) {
+			readNgramIndex(ngramReader, n, showPartOfSpeech);
+		}
+		else {
+			temporaryDirectory = workspace.getTempDirectory();
+			countClusters(workspace, n, showPartOfSpeech, numThreads);
+		}
+	}
+	
+	/**
+	 * 從 {@link NgramIndex} 讀出 n-gram
+	 */
+	private void readNgramIndex(DirectoryReader ngramReader, int n, boolean showPartOfSpeech) throws Exception {
+		ireader = ngramReader;
+		liveDocs = MultiFields.getLiveDocs(ngramReader);
+		tokenAnalyzer = new ConciseTokenAnalyzer(Config.LUCENE_VERSION, showPartOfSpeech);
+		Terms terms = MultiFields.getTerms(ngramReader, NgramIndex.field(n, showPartOfSpeech));
+		if (terms == null) {
+			closeNgramReader();
+			return;
+		}
+		termsEnum = terms.iterator(null);
 		
-		for (int i = 0; i < workspace.getIndexReader(INDEX.DOCUMENT).maxDoc(); i++) {
-			Document doc = workspace.getIndexReader(INDEX.DOCUMENT).document(i);
-			if (doc == null) continue;
-			
-			TokenStream tokenStream = doc.getField(ConciseField.CONTENT.field()).tokenStream(analyzer, null);
-			CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+		if (CCPrefs.LOWERCASE_ENABLED || 
+			CCPrefs.LEMMA_ENABLED || 
+			!CCPrefs.POS_SEPARATOR.equals(Config.SYSTEM_POS_SEPERATOR)) 
+		{
+			// 轉換後的 n-gram 可能重複，順序也可能不同
+			TreeMap<BytesRef, long[]> clusters = new TreeMap<BytesRef, long[]>();
+			Cluster cluster;
+			while ((cluster = readNextNgram()) != null) {
+				BytesRef word = new BytesRef(cluster.getWord());
+				long[] freq = clusters.get(word);
+				if (freq == null) {
+					clusters.put(word, new long[] { cluster.getFreq() });
+				}
+				else {
+					freq[0] += cluster.getFreq();
+				}
+			}
+			mergedClusters = clusters.entrySet().iterator();
+		}
+		nextCluster = readNextCluster();
+	}
+	
+	/**
+	 * 下一個 n-gram（已經轉換過，並且略過被 {@link org.sustudio.concise.core.wordlister.WordFilter} 過濾掉的詞）
+	 */
+	private Cluster readNextNgram() throws IOException {
+		BytesRef term;
+		while (termsEnum != null && (term = termsEnum.next()) != null) {
+			long freq = 0;
+			if (liveDocs == null) {
+				freq = termsEnum.totalTermFreq();
+			}
+			else {
+				docsEnum = termsEnum.docs(liveDocs, docsEnum, DocsEnum.FLAG_FREQS);
+				while (docsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+					freq += docsEnum.freq();
+				}
+			}
+			if (freq == 0) {
+				continue;
+			}
 			
-			tokenStream.reset();
-			while (tokenStream.incrementToken()) {
-				// 遇到有跳字的時候總會出現 _ (under score) 符號（這個是 ShingleFilter.DEFAULT_FILTER_TOKEN 設定的）
-				if (ngramContainsStopWords(termAttr.toString())) {
-					continue;
+			StringBuilder sb = new StringBuilder();
+			StringTokenizer st = new StringTokenizer(term.utf8ToString(), ShingleFilter.DEFAULT_TOKEN_SEPARATOR);
+			while (st.hasMoreTokens()) {
+				String token = token(st.nextToken());
+				if (token == null) {
+					sb = null;
+					break;
+				}
+				if (sb.length() > 0) {
+					sb.append(ShingleFilter.DEFAULT_TOKEN_SEPARATOR);
 				}
-				ci.addDocumentWithString(termAttr.toString());
+				sb.append(token);
+			}
+			if (sb != null) {
+				return new Cluster(sb.toString(), freq);
 			}
-			tokenStream.end();
-			tokenStream.close();
-			ci.commit();
 		}
-		ci.closeWriter();
-		ci = null;
-		
-		// dump temporary 
-		ireader = DirectoryReader.open(temporaryDirectory);
-		Terms terms = MultiFields.getTerms(ireader, TemporaryClusterIndexer.FIELD);
-		if (terms != null) {
-			termsEnum = terms.iterator(null);
-			nextCluster = readNextCluster();
+		termsEnum = null;
+		return null;
+	}
+	
+	/**
+	 * 依 {@link ConciseTokenAnalyzer} 轉換詞彙，結果會暫存起來
+	 * @return 轉換後的詞，被過濾掉則為 null
+	 */
+	private String token(String word) throws IOException {
+		String token = tokenCache.get(word);
+		if (token == null && !tokenCache.containsKey(word)) {
+			if (!word.equals(ShingleFilter.DEFAULT_FILLER_TOKEN)) {
+				TokenStream tokenStream = tokenAnalyzer.tokenStream(null, word);
+				CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+				tokenStream.reset();
+				if (tokenStream.incrementToken()) {
+					token = termAttr.toString();
+				}
+				tokenStream.end();
+				tokenStream.close();
+			}
+			tokenCache.put(word, token);
+		}
+		return token;
+	}
+	
+	private void closeNgramReader() throws IOException {
+		if (ireader != null) {
+			Directory directory = ((DirectoryReader) ireader).directory();
+			ireader.close();
+			directory.close();
+			ireader = null;
 		}
 	}
 	
-	private boolean ngramContainsStopWords(final String ngram) {
-		final StringTokenizer st = new StringTokenizer(ngram, ShingleFilter.DEFAULT_TOKEN_SEPARATOR);
-		while (st.hasMoreTokens()) {
-			final String wordToTest = st.nextToken();
-			if (wordToTest.equals(ShingleFilter.DEFAULT_FILLER_TOKEN)) {
-				return true;
+	/**
+	 * 重新斷出每份文件的 n-gram，用 {@link NgramCounter} 計算次數
+	 */
+	private void countClusters(final Workspace workspace, final int n, final boolean showPartOfSpeech, int numThreads) throws Exception {
+		final IndexReader reader = workspace.getIndexReader(INDEX.DOCUMENT);
+		Bits liveDocs = MultiFields.getLiveDocs(reader);
+		int[] docIds = new int[reader.numDocs()];
+		int numDocs = 0;
+		for (int i = 0; i < reader.maxDoc() && numDocs < docIds.length; i++) {
+			if (liveDocs == null || liveDocs.get(i)) {
+				docIds[numDocs++] = i;
 			}
 		}
-		return false;
+		
+		countedClusters = countPartitions(docIds, numThreads, minFreq, new PartitionTask() {
+			@Override
+			public void count(int[] docIds, int from, int to, NgramCounter counter) throws Exception {
+				Analyzer analyzer = new ConciseTokenAnalyzer(Config.LUCENE_VERSION, showPartOfSpeech);
+				for (int i = from; i < to; i++) {
+					Document doc = reader.document(docIds[i], Collections.singleton(ConciseField.CONTENT.field()));
+					String content = doc.get(ConciseField.CONTENT.field());
+					if (content == null) continue;
+					
+					// 被過濾掉的詞會讓位置不連續，跨過它的 n-gram 不算
+					counter.count(analyzer.tokenStream(ConciseField.CONTENT.field(), content), n);
+				}
+				analyzer.close();
+			}
+		});
+		nextCluster = readNextCluster();
 	}
 	
 	private Cluster readNextCluster() throws Exception {
-		while (termsEnum.next() != null) {
-			return new Cluster(termsEnum.term().utf8ToString(), termsEnum.docFreq());
+		if (mergedClusters != null) {
+			while (mergedClusters.hasNext()) {
+				Entry<BytesRef, long[]> entry = mergedClusters.next();
+				if (entry.getValue()[0] >= minFreq) {
+					return new Cluster(entry.getKey().utf8ToString(), entry.getValue()[0]);
+				}
+			}
+			mergedClusters = null;
+			closeNgramReader();
+			return null;
 		}
-		termsEnum = null;
-		ireader.close();
+		if (tokenAnalyzer != null) {
+			Cluster cluster = readNextNgram();
+			while (cluster != null && cluster.getFreq() < minFreq) {
+				cluster = readNextNgram();
+			}
+			if (cluster == null) {
+				closeNgramReader();
+			}
+			return cluster;
+		}
+		if (countedClusters.hasNext()) {
+			return countedClusters.next();
+		}
+		countedClusters = null;
 		closeTemporaryDirectory();
 		return null;
 	}
@@ -99,4 +273,9 @@ public class NgramClusterIterator extends ClusterIterator {
 		return cluster;
 	}
 	
+	@Override
+	public void close() throws IOException {
+		closeNgramReader();
+		super.close();
+	}
 }
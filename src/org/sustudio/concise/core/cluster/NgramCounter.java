@@ -0,0 +1,502 @@
+package org.sustudio.concise.core.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+
+/**
+ * 計算 n-gram 的次數，取代為每次出現寫一份文件的 {@link TemporaryClusterIndexer}。
+ * <p>每個詞先換成編號，n-gram 以編號序列為 key 存在 primitive 陣列的 open addressing hash table 裡。
+ * 使用的記憶體（含詞的編號）超過上限時，依 n-gram 排序後寫成暫存檔（run），最後再把所有的 run 合併（k-way merge）。
+ * 詞的編號要留到最後才能輸出 n-gram，不能寫出去，所以 hash table 至少可以用上限的 1/4，
+ * 不會因為詞彙很多而每加一個 n-gram 就寫一次暫存檔。</p>
+ * <p>輸出的順序和 Lucene 的 term 一樣是 UTF-8 的 byte 順序，n-gram 中的詞以空白分隔；
+ * 次數低於下限的 n-gram 不會產生 {@link Cluster}。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class NgramCounter {
+
+	/** n-gram 中詞和詞之間的分隔 */
+	private static final byte SEPARATOR_BYTE = ' ';
+	/** hash table 至少可以用記憶體上限的幾分之一 */
+	private static final int MIN_TABLE_SHARE = 4;
+
+	private final Directory spillDirectory;
+	private final String runPrefix;
+	private final long ramBudget;
+
+	// 詞的編號
+	private final Counter tokenBytesUsed = Counter.newCounter();
+	private final BytesRefHash tokenIds = new BytesRefHash(
+			new ByteBlockPool(new ByteBlockPool.DirectTrackingAllocator(tokenBytesUsed)),
+			BytesRefHash.DEFAULT_CAPACITY,
+			new BytesRefHash.DirectBytesStartArray(BytesRefHash.DEFAULT_CAPACITY, tokenBytesUsed));
+	private final BytesRef tokenBytes = new BytesRef();
+
+	// hash table：slots 存 entry + 1，0 表示空的
+	private int[] slots;
+	private int[] hashes;
+	private int[] keyStarts;
+	private long[] counts;
+	private int[] keyPool;
+	private int poolSize;
+	private int size;
+
+	private final List<String> runs = new ArrayList<String>();
+	/** 已經排序好的 hash table 內容（{@link #sort()}） */
+	private MemorySource sorted;
+	private int[] scratch = new int[8];
+
+	/**
+	 * @param spillDirectory	暫存檔的目錄
+	 * @param runPrefix			暫存檔的檔名開頭（同一個目錄有好幾個 counter 時要不一樣）
+	 * @param ramBudgetMB		hash table 最多使用的記憶體（MB）
+	 */
+	public NgramCounter(Directory spillDirectory, String runPrefix, double ramBudgetMB) {
+		this.spillDirectory = spillDirectory;
+		this.runPrefix = runPrefix;
+		this.ramBudget = (long) (ramBudgetMB * 1024 * 1024);
+		clearTable();
+	}
+
+	private void clearTable() {
+		slots = new int[1024];
+		hashes = new int[512];
+		keyStarts = new int[513];
+		counts = new long[512];
+		keyPool = new int[2048];
+		poolSize = 0;
+		size = 0;
+	}
+
+	/**
+	 * @param token
+	 * @return 詞的編號
+	 */
+	public int tokenId(String token) {
+		UnicodeUtil.UTF16toUTF8(token, 0, token.length(), tokenBytes);
+		return tokenId(tokenBytes);
+	}
+
+	private int tokenId(BytesRef token) {
+		int id = tokenIds.add(token);
+		return id < 0 ? -id - 1 : id;
+	}
+
+	/**
+	 * 計算 token stream 中所有的 n-gram，位置不連續（中間有被過濾掉的詞）的不算
+	 * @param tokenStream	還沒有 reset 的 token stream，用完會關閉
+	 * @param n
+	 * @throws IOException
+	 */
+	public void count(TokenStream tokenStream, int n) throws IOException {
+		CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+		PositionIncrementAttribute posIncrAttr = tokenStream.addAttribute(PositionIncrementAttribute.class);
+		int[] window = new int[n];
+		int run = 0;
+		tokenStream.reset();
+		while (tokenStream.incrementToken()) {
+			if (posIncrAttr.getPositionIncrement() != 1) {
+				run = 0;
+			}
+			if (run == n) {
+				System.arraycopy(window, 1, window, 0, n - 1);
+				run--;
+			}
+			UnicodeUtil.UTF16toUTF8(termAttr.buffer(), 0, termAttr.length(), tokenBytes);
+			window[run++] = tokenId(tokenBytes);
+			if (run == n) {
+				add(window, 0, n);
+			}
+		}
+		tokenStream.end();
+		tokenStream.close();
+	}
+
+	/**
+	 * 加一次 n-gram
+	 * @param tokens	n-gram 中的詞
+	 * @throws IOException
+	 */
+	public void add(String... tokens) throws IOException {
+		if (scratch.length < tokens.length) {
+			scratch = new int[ArrayUtil.oversize(tokens.length, RamUsageEstimator.NUM_BYTES_INT)];
+		}
+		for (int i = 0; i < tokens.length; i++) {
+			scratch[i] = tokenId(tokens[i]);
+		}
+		add(scratch, 0, tokens.length);
+	}
+
+	/**
+	 * 加一次 n-gram
+	 * @param ids		詞的編號（{@link #tokenId(String)}）
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void add(int[] ids, int offset, int length) throws IOException {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + ids[i];
+		}
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			int entry = slots[slot] - 1;
+			if (hashes[entry] == hash && keyEquals(entry, ids, offset, length)) {
+				counts[entry]++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// new entry
+		if (size == counts.length) {
+			int capacity = ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_LONG);
+			hashes = Arrays.copyOf(hashes, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			keyStarts = Arrays.copyOf(keyStarts, capacity + 1);
+		}
+		keyPool = ArrayUtil.grow(keyPool, poolSize + length);
+		System.arraycopy(ids, offset, keyPool, poolSize, length);
+		poolSize += length;
+		hashes[size] = hash;
+		counts[size] = 1;
+		keyStarts[size + 1] = poolSize;
+		slots[slot] = ++size;
+
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		if (ramBytesUsed() > ramBudget && tableBytesUsed() > ramBudget / MIN_TABLE_SHARE) {
+			spill();
+		}
+	}
+
+	private boolean keyEquals(int entry, int[] ids, int offset, int length) {
+		int start = keyStarts[entry];
+		if (keyStarts[entry + 1] - start != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (keyPool[start + i] != ids[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+	}
+
+	/**
+	 * @return hash table 和詞的編號使用的記憶體
+	 */
+	public long ramBytesUsed() {
+		return tableBytesUsed() + tokenBytesUsed.get();
+	}
+
+	private long tableBytesUsed() {
+		return (long) slots.length * RamUsageEstimator.NUM_BYTES_INT +
+			   (long) hashes.length * RamUsageEstimator.NUM_BYTES_INT +
+			   (long) keyStarts.length * RamUsageEstimator.NUM_BYTES_INT +
+			   (long) counts.length * RamUsageEstimator.NUM_BYTES_LONG +
+			   (long) keyPool.length * RamUsageEstimator.NUM_BYTES_INT;
+	}
+
+	/**
+	 * 把目前的 hash table 依 n-gram 排序後寫成暫存檔，然後清空
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		MemorySource source = new MemorySource();
+		String name = runPrefix + runs.size();
+		IndexOutput output = spillDirectory.createOutput(name, IOContext.DEFAULT);
+		try {
+			output.writeVInt(size);
+			while (source.next()) {
+				output.writeVInt(source.term.length);
+				output.writeBytes(source.term.bytes, source.term.offset, source.term.length);
+				output.writeVLong(source.freq);
+			}
+		} finally {
+			output.close();
+		}
+		runs.add(name);
+		clearTable();
+	}
+
+	/**
+	 * 先把目前 hash table 的內容排序好，平行計算時可以在各自的 thread 先做，之後不能再加 n-gram
+	 */
+	public void sort() {
+		if (sorted == null && size > 0) {
+			sorted = new MemorySource();
+		}
+	}
+
+	/**
+	 * 依序列出所有的 n-gram，讀完以後刪除暫存檔
+	 * @param minFreq	最低次數
+	 * @return clusters
+	 * @throws IOException
+	 */
+	public Iterator<Cluster> clusters(long minFreq) throws IOException {
+		return merge(Collections.singletonList(this), minFreq);
+	}
+
+	/**
+	 * 合併好幾個 counter 的結果，依序列出所有的 n-gram，讀完以後刪除暫存檔
+	 * @param counters
+	 * @param minFreq	最低次數
+	 * @return clusters
+	 * @throws IOException
+	 */
+	public static Iterator<Cluster> merge(List<NgramCounter> counters, long minFreq) throws IOException {
+		List<SortedSource> sources = new ArrayList<SortedSource>();
+		for (NgramCounter counter : counters) {
+			for (String run : counter.runs) {
+				sources.add(new RunSource(counter.spillDirectory, run));
+			}
+			counter.runs.clear();
+			counter.sort();
+			if (counter.sorted != null) {
+				sources.add(counter.sorted);
+				counter.sorted = null;
+				counter.clearTable();
+			}
+		}
+		return new MergingIterator(sources, minFreq);
+	}
+
+
+	/**
+	 * 依 n-gram 排序的 (n-gram, 次數) 序列
+	 */
+	private static abstract class SortedSource {
+		BytesRef term;
+		long freq;
+
+		/** 移到下一個 n-gram，沒有了則傳回 false（並且釋放資源） */
+		abstract boolean next() throws IOException;
+	}
+
+	/**
+	 * 目前 hash table 的內容（排序過）
+	 */
+	private class MemorySource extends SortedSource {
+
+		private final BytesRefArray keys = new BytesRefArray(Counter.newCounter());
+		private final int[] order;
+		private final long[] freqs;
+		private final int length;
+		private int index = -1;
+
+		MemorySource() {
+			length = size;
+			freqs = counts;
+			order = new int[length];
+			BytesRef key = new BytesRef();
+			BytesRef token = new BytesRef();
+			for (int entry = 0; entry < length; entry++) {
+				key.length = 0;
+				for (int i = keyStarts[entry]; i < keyStarts[entry + 1]; i++) {
+					if (i > keyStarts[entry]) {
+						key.grow(key.length + 1);
+						key.bytes[key.length++] = SEPARATOR_BYTE;
+					}
+					tokenIds.get(keyPool[i], token);
+					key.grow(key.length + token.length);
+					System.arraycopy(token.bytes, token.offset, key.bytes, key.length, token.length);
+					key.length += token.length;
+				}
+				keys.append(key);
+				order[entry] = entry;
+			}
+
+			new IntroSorter() {
+				private final BytesRef a = new BytesRef();
+				private final BytesRef b = new BytesRef();
+				private final BytesRef pivot = new BytesRef();
+
+				@Override
+				protected int compare(int i, int j) {
+					return keys.get(a, order[i]).compareTo(keys.get(b, order[j]));
+				}
+
+				@Override
+				protected void swap(int i, int j) {
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+				}
+
+				@Override
+				protected void setPivot(int i) {
+					keys.get(pivot, order[i]);
+				}
+
+				@Override
+				protected int comparePivot(int j) {
+					return pivot.compareTo(keys.get(b, order[j]));
+				}
+			}.sort(0, length);
+			term = new BytesRef();
+		}
+
+		@Override
+		boolean next() {
+			if (++index >= length) {
+				keys.clear();
+				return false;
+			}
+			keys.get(term, order[index]);
+			freq = freqs[order[index]];
+			return true;
+		}
+	}
+
+	/**
+	 * 暫存檔的內容
+	 */
+	private static class RunSource extends SortedSource {
+
+		private final Directory directory;
+		private final String name;
+		private final IndexInput input;
+		private int remaining;
+
+		RunSource(Directory directory, String name) throws IOException {
+			this.directory = directory;
+			this.name = name;
+			this.input = directory.openInput(name, IOContext.READONCE);
+			this.remaining = input.readVInt();
+			this.term = new BytesRef();
+		}
+
+		@Override
+		boolean next() throws IOException {
+			if (remaining-- <= 0) {
+				input.close();
+				directory.deleteFile(name);
+				return false;
+			}
+			int length = input.readVInt();
+			term.grow(length);
+			input.readBytes(term.bytes, 0, length);
+			term.length = length;
+			freq = input.readVLong();
+			return true;
+		}
+	}
+
+	/**
+	 * k-way merge，相同的 n-gram 次數相加
+	 */
+	private static class MergingIterator implements Iterator<Cluster> {
+
+		private final PriorityQueue<SortedSource> queue;
+		private final long minFreq;
+		private Cluster nextCluster;
+
+		MergingIterator(List<SortedSource> sources, long minFreq) throws IOException {
+			this.minFreq = minFreq;
+			this.queue = new PriorityQueue<SortedSource>(Math.max(sources.size(), 1), new Comparator<SortedSource>() {
+				@Override
+				public int compare(SortedSource s1, SortedSource s2) {
+					return s1.term.compareTo(s2.term);
+				}
+			});
+			for (SortedSource source : sources) {
+				if (source.next()) {
+					queue.add(source);
+				}
+			}
+			nextCluster = readNextCluster();
+		}
+
+		private Cluster readNextCluster() throws IOException {
+			BytesRef term = new BytesRef();
+			while (!queue.isEmpty()) {
+				term.copyBytes(queue.peek().term);
+				long freq = 0;
+				while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+					SortedSource source = queue.poll();
+					freq += source.freq;
+					if (source.next()) {
+						queue.add(source);
+					}
+				}
+				if (freq >= minFreq) {
+					return new Cluster(term.utf8ToString(), freq);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextCluster != null;
+		}
+
+		@Override
+		public Cluster next() {
+			if (nextCluster == null) {
+				throw new NoSuchElementException();
+			}
+			Cluster cluster = nextCluster;
+			try {
+				nextCluster = readNextCluster();
+			} catch (IOException e) {
+				e.printStackTrace();
+				nextCluster = null;
+			}
+			return cluster;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("remove() is not supported.");
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+package org.sustudio.concise.core.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.shingle.ShingleFilter;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.concordance.PartOfSpeechFilter;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+/**
+ * 匯入時一併建立的 n-gram 索引（n = {@link #MIN_N} ~ {@link #MAX_N}）。
+ * <p>主索引的每份文件在這裡有一份對應的文件（以 {@link ConciseField#FILENAME} 對應），
+ * 欄位 <code>ngramN</code> 和 <code>ngramN_pos</code> 分別是不含詞性和含詞性的 n-gram（未經 {@link org.sustudio.concise.core.wordlister.WordFilter} 過濾），
+ * 只記錄次數，所以列出 cluster 時只要依序讀過 term 就好。</p>
+ * <p>由 {@link org.sustudio.concise.core.corpus.DocumentWriter} 維護（需要 {@link org.sustudio.concise.core.CCPrefs#NGRAM_INDEX_ENABLED}），
+ * 和主索引的文件不一致時就不使用。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class NgramIndex {
+
+	public static final int MIN_N = 2;
+	public static final int MAX_N = 5;
+
+	private static final String FIELD_PREFIX = "ngram";
+	private static final String POS_SUFFIX = "_pos";
+
+	/** Indexed, tokenized, not stored, only docs and freqs. */
+	public static final FieldType TYPE = new FieldType();
+
+	static {
+		TYPE.setIndexed(true);
+		TYPE.setTokenized(true);
+		TYPE.setOmitNorms(true);
+		TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+		TYPE.freeze();
+	}
+
+	/**
+	 * @param n
+	 * @return 是否有建立這個長度的 n-gram
+	 */
+	public static boolean supports(int n) {
+		return n >= MIN_N && n <= MAX_N;
+	}
+
+	/**
+	 * @param n
+	 * @param showPartOfSpeech
+	 * @return n-gram 的欄位名稱
+	 */
+	public static String field(int n, boolean showPartOfSpeech) {
+		return FIELD_PREFIX + n + (showPartOfSpeech ? POS_SUFFIX : "");
+	}
+
+	/**
+	 * 建立 n-gram 索引用的 {@link Analyzer}，依欄位名稱決定 n 和是否保留詞性
+	 * @return analyzer
+	 */
+	public static Analyzer getAnalyzer() {
+		return new Analyzer(Analyzer.PER_FIELD_REUSE_STRATEGY) {
+
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+				boolean showPartOfSpeech = fieldName.endsWith(POS_SUFFIX);
+				int n = Integer.parseInt(fieldName.substring(FIELD_PREFIX.length(),
+															 fieldName.length() - (showPartOfSpeech ? POS_SUFFIX.length() : 0)));
+
+				Tokenizer source = new WhitespaceTokenizer(Config.LUCENE_VERSION, reader);
+				TokenStream result = new PartOfSpeechFilter(source, showPartOfSpeech);
+				ShingleFilter shingles = new ShingleFilter(result, n, n);
+				shingles.setOutputUnigrams(false);
+				return new TokenStreamComponents(source, shingles);
+			}
+		};
+	}
+
+	/**
+	 * 建立主索引文件對應的 n-gram 文件
+	 * @param filename	主索引文件的 {@link ConciseField#FILENAME}
+	 * @param content	主索引文件的 {@link ConciseField#CONTENT}
+	 * @return n-gram 文件
+	 */
+	public static Document createDocument(String filename, String content) {
+		Document doc = new Document();
+		doc.add(new StringField(ConciseField.FILENAME.field(), filename, Store.NO));
+		for (int n = MIN_N; n <= MAX_N; n++) {
+			doc.add(new Field(field(n, false), content, TYPE));
+			doc.add(new Field(field(n, true), content, TYPE));
+		}
+		return doc;
+	}
+
+	/**
+	 * 開啟 n-gram 索引的 writer
+	 * @param workspace
+	 * @param indexType
+	 * @param create		是否清除原有的內容
+	 * @return writer
+	 * @throws IOException
+	 */
+	public static IndexWriter openWriter(Workspace workspace, INDEX indexType, boolean create) throws IOException {
+		IndexWriterConfig config = new IndexWriterConfig(Config.LUCENE_VERSION, getAnalyzer());
+		config.setOpenMode(create ? OpenMode.CREATE : OpenMode.CREATE_OR_APPEND);
+		File dir = workspace.getNgramIndexDir(indexType);
+		dir.mkdirs();
+		return new IndexWriter(workspace.openDirectoryForWriting(dir), config);
+	}
+
+	/**
+	 * 依主索引的內容重建 n-gram 索引
+	 * @param mainReader	主索引
+	 * @param writer		n-gram 索引的 writer（內容會被清除）
+	 * @throws IOException
+	 */
+	public static void rebuild(IndexReader mainReader, IndexWriter writer) throws IOException {
+		writer.deleteAll();
+		if (mainReader == null) {
+			return;
+		}
+		Bits liveDocs = MultiFields.getLiveDocs(mainReader);
+		for (int i = 0; i < mainReader.maxDoc(); i++) {
+			if (liveDocs != null && !liveDocs.get(i)) continue;
+			Document doc = mainReader.document(i);
+			String filename = doc.get(ConciseField.FILENAME.field());
+			String content = doc.get(ConciseField.CONTENT.field());
+			if (filename != null && content != null) {
+				writer.addDocument(createDocument(filename, content));
+			}
+		}
+	}
+
+	/**
+	 * 開啟和主索引一致的 n-gram 索引
+	 * @param workspace
+	 * @param indexType
+	 * @return n-gram 索引的 reader（用完要連同 directory 一起關閉），沒有建立或是已經過時則為 null
+	 * @throws IOException
+	 */
+	public static DirectoryReader openFreshReader(Workspace workspace, INDEX indexType) throws IOException {
+		File dir = workspace.getNgramIndexDir(indexType);
+		if (!dir.exists()) {
+			return null;
+		}
+		IndexReader mainReader = workspace.getIndexReader(indexType);
+		Directory directory = workspace.openDirectory(dir);
+		try {
+			if (mainReader != null && DirectoryReader.indexExists(directory)) {
+				DirectoryReader reader = DirectoryReader.open(directory);
+				if (isFresh(mainReader, reader)) {
+					return reader;
+				}
+				reader.close();
+			}
+		} catch (IOException e) {
+			directory.close();
+			throw e;
+		}
+		directory.close();
+		return null;
+	}
+
+	/**
+	 * 檢查 n-gram 索引和主索引的文件是否一致（比較兩邊現存文件的 {@link ConciseField#FILENAME}）
+	 * @param mainReader
+	 * @param ngramReader
+	 * @return 是否一致
+	 * @throws IOException
+	 */
+	public static boolean isFresh(IndexReader mainReader, IndexReader ngramReader) throws IOException {
+		if (mainReader == null || ngramReader == null || mainReader.numDocs() != ngramReader.numDocs()) {
+			return false;
+		}
+		TermsEnum mainFilenames = liveFilenames(mainReader);
+		TermsEnum ngramFilenames = liveFilenames(ngramReader);
+		Bits mainLiveDocs = MultiFields.getLiveDocs(mainReader);
+		Bits ngramLiveDocs = MultiFields.getLiveDocs(ngramReader);
+		while (true) {
+			BytesRef mainFilename = nextLive(mainFilenames, mainLiveDocs);
+			BytesRef ngramFilename = nextLive(ngramFilenames, ngramLiveDocs);
+			if (mainFilename == null || ngramFilename == null) {
+				return mainFilename == ngramFilename;
+			}
+			if (!mainFilename.equals(ngramFilename)) {
+				return false;
+			}
+		}
+	}
+
+	private static TermsEnum liveFilenames(IndexReader reader) throws IOException {
+		Terms terms = MultiFields.getTerms(reader, ConciseField.FILENAME.field());
+		return terms == null ? TermsEnum.EMPTY : terms.iterator(null);
+	}
+
+	/**
+	 * 下一個還有現存文件的 term
+	 */
+	private static BytesRef nextLive(TermsEnum termsEnum, Bits liveDocs) throws IOException {
+		BytesRef term;
+		DocsEnum docs = null;
+		while ((term = termsEnum.next()) != null) {
+			if (liveDocs == null) {
+				return term;
+			}
+			docs = termsEnum.docs(liveDocs, docs, DocsEnum.FLAG_NONE);
+			if (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+				return term;
+			}
+		}
+		return null;
+	}
+
+}
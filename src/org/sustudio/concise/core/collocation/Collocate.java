@@ -139,38 +139,17 @@ public class Collocate implements Serializable {
 		this.signatureF2 	= collocateMarginalFrequency;
 		this.signatureN 	= numberOfTexts;
 				
-		double O11 = (double)signatureO;
-		double O12 = (double)signatureF1 - (double)signatureO;
-		double O21 = (double)signatureF2 - (double)signatureO;
-		double O22 = (double)signatureN - (double)signatureF1 - (double)signatureF2 + (double)signatureO;
+		// 公式都在 CollocateMeasurement，top-k 的時候可以不建立 Collocate 直接計算
+		zscore = CollocateMeasurement.ZScore.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		tscore = CollocateMeasurement.TScore.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		mi = CollocateMeasurement.MI.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		mi3 = CollocateMeasurement.MI3.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		simpleLL = CollocateMeasurement.SimpleLL.getValue(signatureO, signatureF1, signatureF2, signatureN);
 		
-		double E11 = (double)signatureF1 * (double)signatureF2 / (double)signatureN;
-		double E12 = (double)signatureF1 * (double)(signatureN - signatureF2) / (double)signatureN;
-		double E21 = (double)(signatureN - signatureF1) * (double)signatureF2 / (double)signatureN;
-		double E22 = (double)(signatureN - signatureF1) * (double)(signatureN - signatureF1) / (double)signatureN;
-				
-		zscore = (O11 - E11) / Math.pow(E11, 0.5);
-		tscore = (O11 - E11) / Math.pow(O11, 0.5);
-		mi = Math.log( O11 / E11 ) / Math.log(2.0);
-		mi3 = Math.log( Math.pow( O11, 3.0 ) / E11) / Math.log(2.0);
-		simpleLL = 2 * ( O11 * Math.log( O11/E11) - (O11 - E11));
-		
-		dice = 2 * O11 / (2 * O11 + O12 + O21);
-		oddsRatio = Math.log( ((O11 + 0.5) * (O22 + 0.5)) / ((O12 + 0.5) * (O21 + 0.5)) );
-		chiSquaredCorr = (O11 + O12 + O21 + O22) * Math.pow( Math.abs(O11 * O22 - O12 * O21) - (double)signatureN / 2d, 2d) 
-							/ ( (O11 + O12) * (O21 + O22) * (O11 + O21) * (O12 + O22) );
-		
-		//
-		// since log(0) = -Infinity (undefined), we have to deal with it.
-		// if yi = 0, likelihood(yi | p) = 1-p, log-likelihood = log(1-p)
-		// that is, p = 0, 1-p = 1, log(1) = 0.
-		// however, a simple way is shown at
-		// http://tdunning.blogspot.com/2008/03/surprise-and-coincidence.html
-		//
-		logLikelihood = 2 * ( O11 * Math.log(O11 / E11 + (O11==0 ? 1 : 0)) 
-							+ O12 * Math.log(O12 / E12 + (O12==0 ? 1 : 0)) 
-							+ O21 * Math.log(O21 / E21 + (O21==0 ? 1 : 0)) 
-							+ O22 * Math.log(O22 / E22 + (O22==0 ? 1 : 0)) );
+		dice = CollocateMeasurement.Dice.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		oddsRatio = CollocateMeasurement.OddsRatio.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		chiSquaredCorr = CollocateMeasurement.ChiSquaredCorr.getValue(signatureO, signatureF1, signatureF2, signatureN);
+		logLikelihood = CollocateMeasurement.LogLikelihood.getValue(signatureO, signatureF1, signatureF2, signatureN);
 	}
 	
 	public long getSignatureO() {
@@ -1,17 +1,22 @@
 package org.sustudio.concise.core.collocation;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.statistics.TopKHeap;
 
-public abstract class CollocateIterator implements Iterator<Collocate>, Iterable<Collocate> {
+public abstract class CollocateIterator implements Iterator<Collocate>, Iterable<Collocate>, Closeable {
 
 	/** node separator (for phrase search) */
 	protected static final String _NODE_SEPARATOR = "_NODE_";
@@ -20,17 +25,76 @@ public abstract class CollocateIterator implements Iterator<Collocate>, Iterable
 	protected Directory temporaryDirectory;
 	protected final Map<CollocateMeasurement, Double> filters;
 	protected Collocate nextCollocate;
+	/** nextCollocate 的候選編號 */
+	private long nextOrd = -1;
+	
+	/** 目前候選的 Evert (O, f1, f2, N) signature，由 {@link #nextCandidate()} 填入 */
+	protected long candidateO;
+	protected long candidateF1;
+	protected long candidateF2;
+	protected long candidateN;
 		
 	public CollocateIterator(Conc conc, Map<CollocateMeasurement, Double> filters) {
+		this(filters);
+		this.temporaryDirectory = conc.workspace.getTempDirectory();
+	}
+	
+	/**
+	 * 不需要暫存目錄的 CollocateIterator 用
+	 * @param filters
+	 */
+	protected CollocateIterator(Map<CollocateMeasurement, Double> filters) {
 		if (filters == null) {
 			filters = new HashMap<CollocateMeasurement, Double>();
 		}
 		this.filters = filters;
-		this.temporaryDirectory = conc.workspace.getTempDirectory();
 	}
 	
 	
-	protected abstract Collocate readNextCollocate() throws Exception;
+	/**
+	 * 讀下一個候選，只把 signature 填入 {@link #candidateO}、{@link #candidateF1}、
+	 * {@link #candidateF2} 和 {@link #candidateN}，還不建立 {@link Collocate}
+	 * @return 候選的編號（依讀取的順序遞增），沒有候選時傳回 -1
+	 * @throws Exception
+	 */
+	protected abstract long nextCandidate() throws Exception;
+	
+	/**
+	 * 建立編號為 ord 的候選的 {@link Collocate}。
+	 * 一般是剛由 {@link #nextCandidate()} 讀到的候選；{@link #top(int, CollocateMeasurement, long)}
+	 * 讀完之後會依編號由小到大再要一次留下來的候選。
+	 * @param ord	候選的編號
+	 * @return collocate
+	 * @throws Exception
+	 */
+	protected abstract Collocate readCandidate(long ord) throws Exception;
+	
+	protected Collocate readNextCollocate() throws Exception {
+		long ord;
+		while ((ord = nextCandidate()) != -1) {
+			if (isFiltered()) {
+				continue;
+			}
+			nextOrd = ord;
+			return readCandidate(ord);
+		}
+		nextOrd = -1;
+		close();
+		return null;
+	}
+	
+	/**
+	 * 目前的候選是否被 filters 濾掉
+	 */
+	private boolean isFiltered() {
+		for (Map.Entry<CollocateMeasurement, Double> entry : filters.entrySet()) {
+			if (entry.getValue().doubleValue() > 
+					entry.getKey().getValue(candidateO, candidateF1, candidateF2, candidateN)) {
+				return true;
+			}
+		}
+		return false;
+	}
 	
 	
 	@Override
@@ -54,16 +118,96 @@ public abstract class CollocateIterator implements Iterator<Collocate>, Iterable
 		return collocate;
 	}
 	
+	/**
+	 * 取出剩下的 collocate 中，依 measurement 最高的 k 個（由高到低排序）。
+	 * 呼叫之後這個 iterator 就用完了。
+	 * @param k				要取出的數量
+	 * @param measurement	排序的依據
+	 * @return 最高的 k 個 collocate
+	 */
+	public List<Collocate> top(int k, CollocateMeasurement measurement) {
+		return top(k, measurement, 0L);
+	}
+	
+	/**
+	 * 取出剩下的 collocate 中，共現次數至少為 minFreq 且依 measurement 最高的 k 個（由高到低排序）。
+	 * 候選只用 signature 計算分數，heap 裡頭只放分數和候選的編號，最後只替留下來的 k 個建立 {@link Collocate}。
+	 * 呼叫之後這個 iterator 就用完了。
+	 * @param k				要取出的數量
+	 * @param measurement	排序的依據
+	 * @param minFreq		最低的共現次數
+	 * @return 最高的 k 個 collocate
+	 */
+	public List<Collocate> top(int k, CollocateMeasurement measurement, long minFreq) {
+		List<Collocate> list = new ArrayList<Collocate>();
+		if (nextCollocate == null) {
+			return list;
+		}
+		
+		// 已經讀出來的第一個
+		Collocate first = nextCollocate;
+		long firstOrd = nextOrd;
+		nextCollocate = null;
+		
+		TopKHeap<Collocate> heap = new TopKHeap<Collocate>(k);
+		try {
+			if (first.getFreq() >= minFreq) {
+				heap.offerOrd(measurement.getValue(first), firstOrd);
+			}
+			long ord;
+			while ((ord = nextCandidate()) != -1) {
+				if (candidateO < minFreq || isFiltered()) {
+					continue;
+				}
+				heap.offerOrd(measurement.getValue(candidateO, candidateF1, candidateF2, candidateN), ord);
+			}
+			
+			// 依編號由小到大建立留下來的 collocate，再依分數排回去
+			long[] ords = heap.toSortedOrds();
+			long[] sortedOrds = ords.clone();
+			Arrays.sort(sortedOrds);
+			Collocate[] collocates = new Collocate[sortedOrds.length];
+			for (int i = 0; i < sortedOrds.length; i++) {
+				collocates[i] = sortedOrds[i] == firstOrd ? first : readCandidate(sortedOrds[i]);
+			}
+			for (long survivor : ords) {
+				list.add(collocates[Arrays.binarySearch(sortedOrds, survivor)]);
+			}
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return list;
+	}
+	
 	/**
 	 * 關閉並刪除暫存目錄
 	 * @throws IOException
 	 */
 	protected void closeTemporaryDirectory() throws IOException {
+		if (temporaryDirectory == null) {
+			return;
+		}
 		if (temporaryDirectory instanceof FSDirectory) {
 			File tmpdir = ((FSDirectory) temporaryDirectory).getDirectory();
 			FileUtils.deleteDirectory(tmpdir);
 		}
 		temporaryDirectory.close();
+		temporaryDirectory = null;
+	}
+	
+	/**
+	 * 讀完之前就不用的話要呼叫，釋放暫存目錄（讀完時會自動呼叫）
+	 */
+	@Override
+	public void close() throws IOException {
+		closeTemporaryDirectory();
 	}
 
 	
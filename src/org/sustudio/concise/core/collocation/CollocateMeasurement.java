@@ -36,6 +36,55 @@ public enum CollocateMeasurement {
 		}
 	}
 	
+	/**
+	 * 直接從 Evert 的 (O, f1, f2, N) signature 計算，不需要先建立 {@link Collocate}
+	 * @param O		co-occurrence
+	 * @param f1	node marginal frequency
+	 * @param f2	collocate marginal frequency
+	 * @param N		sample size
+	 * @return 這個 measurement 的值
+	 */
+	public double getValue(long O, long f1, long f2, long N) {
+		double O11 = (double)O;
+		double O12 = (double)f1 - (double)O;
+		double O21 = (double)f2 - (double)O;
+		double O22 = (double)N - (double)f1 - (double)f2 + (double)O;
+		
+		double E11 = (double)f1 * (double)f2 / (double)N;
+		
+		switch (this) {
+		case Cooccurrence:		return O;
+		case MI:				return Math.log( O11 / E11 ) / Math.log(2.0);
+		case MI3:				return Math.log( Math.pow( O11, 3.0 ) / E11) / Math.log(2.0);
+		case Dice:				return 2 * O11 / (2 * O11 + O12 + O21);
+		case OddsRatio:			return Math.log( ((O11 + 0.5) * (O22 + 0.5)) / ((O12 + 0.5) * (O21 + 0.5)) );
+		case SimpleLL:			return 2 * ( O11 * Math.log( O11/E11) - (O11 - E11));
+		case TScore:			return (O11 - E11) / Math.pow(O11, 0.5);
+		case ZScore:			return (O11 - E11) / Math.pow(E11, 0.5);
+		case ChiSquaredCorr:	
+			return (O11 + O12 + O21 + O22) * Math.pow( Math.abs(O11 * O22 - O12 * O21) - (double)N / 2d, 2d) 
+					/ ( (O11 + O12) * (O21 + O22) * (O11 + O21) * (O12 + O22) );
+		case LogLikelihood:
+			double E12 = (double)f1 * (double)(N - f2) / (double)N;
+			double E21 = (double)(N - f1) * (double)f2 / (double)N;
+			double E22 = (double)(N - f1) * (double)(N - f1) / (double)N;
+			
+			//
+			// since log(0) = -Infinity (undefined), we have to deal with it.
+			// if yi = 0, likelihood(yi | p) = 1-p, log-likelihood = log(1-p)
+			// that is, p = 0, 1-p = 1, log(1) = 0.
+			// however, a simple way is shown at
+			// http://tdunning.blogspot.com/2008/03/surprise-and-coincidence.html
+			//
+			return 2 * ( O11 * Math.log(O11 / E11 + (O11==0 ? 1 : 0)) 
+						+ O12 * Math.log(O12 / E12 + (O12==0 ? 1 : 0)) 
+						+ O21 * Math.log(O21 / E21 + (O21==0 ? 1 : 0)) 
+						+ O22 * Math.log(O22 / E22 + (O22==0 ? 1 : 0)) );
+		
+		default:		return 0d;
+		}
+	}
+	
 	public double defaultCutOff() {
 		return defaultCutOff;
 	}
@@ -15,7 +15,7 @@ import org.sustudio.concise.core.wordlister.WordFilter;
  * @author Kuan-ming Su.
  *
  */
-public class ConciseTokenFilter extends TokenFilter {
+public final class ConciseTokenFilter extends TokenFilter {
 	
 	WordFilter wordFilter;
 	CharTermAttribute termAttr;
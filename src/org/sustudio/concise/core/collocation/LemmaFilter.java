@@ -15,7 +15,7 @@ import org.sustudio.concise.core.wordlister.Lemma;
  * @author Kuan-ming Su
  *
  */
-public class LemmaFilter extends TokenFilter {
+public final class LemmaFilter extends TokenFilter {
 
 	private CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 	
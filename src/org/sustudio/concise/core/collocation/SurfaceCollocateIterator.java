@@ -1,5 +1,6 @@
 package org.sustudio.concise.core.collocation;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
 
@@ -12,10 +13,8 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.util.BytesRef;
 import org.sustudio.concise.core.CCPrefs;
-import org.sustudio.concise.core.Workspace.INDEX;
 import org.sustudio.concise.core.collocation.TemporaryCollocateIndexer.CIField;
 import org.sustudio.concise.core.concordance.Conc;
 import org.sustudio.concise.core.concordance.ConcLine;
@@ -36,7 +35,12 @@ public class SurfaceCollocateIterator extends CollocateIterator {
 	
 	private IndexReader reader;
 	private Fields fields;
+	private Terms terms;
 	private TermsEnum termsEnum;
+	/** termsEnum 目前的 term 的編號 */
+	private long termOrd = -1;
+	/** 目前的 term 是加上標籤的 node（在 corpus 中找不到） */
+	private boolean taggedNode;
 	private TermsEnum corpusTermsEnum;
 	private HashSet<BytesRef> nodesToSkip = new HashSet<BytesRef>();
 	
@@ -58,14 +62,14 @@ public class SurfaceCollocateIterator extends CollocateIterator {
 		super(conc, filters);
 		this.conc = conc;
 		
-		ScoreDoc[] hitDocs = conc.hitDocs();
+		int[] hitDocs = conc.hitDocIds();
 		if (hitDocs.length > 0) {
 			TemporaryCollocateIndexer ci = new TemporaryCollocateIndexer(temporaryDirectory, 
 																		 conc.left_span_size,
 																		 conc.right_span_size);
-			for (ScoreDoc scoreDoc : hitDocs) 
+			for (int docId : hitDocs) 
 			{
-				TokenSentenceHighlighter highlighter = new TokenSentenceHighlighter(conc, scoreDoc.doc);
+				TokenSentenceHighlighter highlighter = new TokenSentenceHighlighter(conc, docId);
 				String[] sentences = highlighter.getHighlightSpans();
 				
 				// Iterate Sentence
@@ -103,10 +107,10 @@ public class SurfaceCollocateIterator extends CollocateIterator {
 			Ns = stats.sumTotalTermFreq();
 			fn = stats.docCount();
 			
-			Terms corpusTerms = MultiFields.getTerms(conc.workspace.getIndexReader(INDEX.DOCUMENT), ConciseField.CONTENT.field());
+			Terms corpusTerms = MultiFields.getTerms(conc.reader, ConciseField.CONTENT.field());
 			corpusTermsEnum = corpusTerms.iterator(null);
 			
-			Terms terms = MultiFields.getTerms(reader, CIField.TEXT.name());
+			terms = MultiFields.getTerms(reader, CIField.TEXT.name());
 			fields = MultiFields.getFields(reader);
 			if (terms != null) {
 				
@@ -125,95 +129,127 @@ public class SurfaceCollocateIterator extends CollocateIterator {
 				nextCollocate = readNextCollocate();
 			}
 		}
+		if (nextCollocate == null) {
+			close();
+		}
 	}
 	
-	protected Collocate readNextCollocate() throws Exception {
-		if (termsEnum != null)
-		while (termsEnum.next() != null) 
+	protected long nextCandidate() throws Exception {
+		if (termsEnum == null) {
+			return -1;
+		}
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) 
 		{
-			BytesRef term = termsEnum.term();
+			termOrd++;
 			if (nodesToSkip.contains(term)) {
 				continue;
 			}
+			readSignature(term);
+			return termOrd;
+		}
+		return -1;
+	}
+	
+	/**
+	 * 計算 term 的 signature
+	 * @param term
+	 * @throws IOException
+	 */
+	private void readSignature(BytesRef term) throws IOException {
+		long fnc = termsEnum.totalTermFreq();
+		long fc = corpusTermsEnum.seekExact(term) ? corpusTermsEnum.totalTermFreq() : 0;
+		
+		String word = null;
+		taggedNode = fc == 0;
+		if (taggedNode) {
+			// 這應該是 node，因為在 collocate 中掛上了標籤，要去掉標籤再找
+			word = stripNodeTags(term);
+			BytesRef bytes = new BytesRef(word);
+			fc += conc.reader
+								.totalTermFreq(new Term(ConciseField.CONTENT.field(), bytes));
 			
-			long fnc = termsEnum.totalTermFreq();			
-			long fc = conc.workspace.getIndexReader(INDEX.DOCUMENT)
-									.totalTermFreq(new Term(ConciseField.CONTENT.field(), term));
-			
-			String word = term.utf8ToString();
-			if (fc == 0) {
-				// 這應該是 node，因為在 collocate 中掛上了標籤，要去掉標籤再找
-				word = word.replace(Conc.preNodeTag, "").replace(Conc.postNodeTag, "");
-				BytesRef bytes = new BytesRef(word);
-				fc += conc.workspace.getIndexReader(INDEX.DOCUMENT)
-									.totalTermFreq(new Term(ConciseField.CONTENT.field(), bytes));
+			// fnc 也會漏掉，所以也得加上
+			fnc += reader.totalTermFreq(new Term(CIField.TEXT.name(), word));
+		}
+		
+		if (CCPrefs.LEMMA_ENABLED) {
+			// lemma
+			Lemma lemmaToCheck = null;
+			if (CCPrefs.LEMMA_LIST != null) {
+				// 檢查的時候要記得去掉 node 的標籤
+				lemmaToCheck = CCPrefs.LEMMA_LIST.get(word == null ? term.utf8ToString() : word);
 				
-				// fnc 也會漏掉，所以也得加上
-				fnc += reader.totalTermFreq(new Term(CIField.TEXT.name(), word));
+				// 應該不會有 form ， 因為在 Highlighter 裡面已經被取代掉了
 			}
-			
-			if (CCPrefs.LEMMA_ENABLED) {
-				// lemma
-				Lemma lemmaToCheck = null;
-				if (CCPrefs.LEMMA_LIST != null) {
-					// 檢查的時候要記得去掉 node 的標籤
-					lemmaToCheck = CCPrefs.LEMMA_LIST.get(word);
-					
-					// 應該不會有 form ， 因為在 Highlighter 裡面已經被取代掉了
-				}
-				if (lemmaToCheck != null) {
-					for (String form : lemmaToCheck.getForms()) {
-						if (corpusTermsEnum.seekExact(new BytesRef(form))) {
-							fc += corpusTermsEnum.totalTermFreq();
-						}
+			if (lemmaToCheck != null) {
+				for (String form : lemmaToCheck.getForms()) {
+					if (corpusTermsEnum.seekExact(new BytesRef(form))) {
+						fc += corpusTermsEnum.totalTermFreq();
 					}
 				}
 			}
-			
-			// 這個會輸出 <node> 的標簽，暫時不用
-			//Collocate collocate = new Collocate(term.utf8ToString(), fn, fc, fnc, Nc, Ns);
-			Collocate collocate = new Collocate(word.replace(CollocateIterator._NODE_SEPARATOR, " "), fn, fc, fnc, Nc, Ns);
-			
-			collocate.setLeftFreq( reader.totalTermFreq(new Term(CIField.LEFT.name(),  word)));
-			collocate.setRightFreq(reader.totalTermFreq(new Term(CIField.RIGHT.name(), word)));
-			collocate.setNodeFreq( reader.totalTermFreq(new Term(CIField.NODE.name(),  word)));
-			
-			// put position vectors
-			for (String field : fields) {
-				if (field.matches("[LR]\\d+")) {
-					//long value = reader.totalTermFreq(new Term(field, term));
-					long value = reader.totalTermFreq(new Term(field, word));
-					collocate.setPositionVector(field, value);
-				}
+		}
+		
+		candidateO = fnc;
+		candidateF1 = Ns - fn;
+		candidateF2 = fc;
+		candidateN = Nc - fn;
+	}
+	
+	private static String stripNodeTags(BytesRef term) {
+		return term.utf8ToString().replace(Conc.preNodeTag, "").replace(Conc.postNodeTag, "");
+	}
+	
+	protected Collocate readCandidate(long ord) throws Exception {
+		if (ord != termOrd) {
+			// top() 讀完之後再回頭找留下來的 term
+			if (ord < termOrd) {
+				termsEnum = terms.iterator(termsEnum);
+				termOrd = -1;
 			}
-			
-			// check filters
-			boolean skip = false;
-			if (filters != null) {
-				for (Map.Entry<CollocateMeasurement, Double> entry : filters.entrySet()) {
-					if (entry.getValue().doubleValue() > entry.getKey().getValue(collocate)) {
-						skip = true;
-						break;
-					}
-				}
+			while (termOrd < ord) {
+				termsEnum.next();
+				termOrd++;
 			}
-			if (skip) continue;
-			
-			return collocate;
+			readSignature(termsEnum.term());
 		}
 		
-		termsEnum = null;
-		fields = null;
-		reader.close();
-		closeTemporaryDirectory();
+		String word = taggedNode ? stripNodeTags(termsEnum.term()) : termsEnum.term().utf8ToString();
 		
-		return null;
+		// 這個會輸出 <node> 的標簽，暫時不用
+		//Collocate collocate = new Collocate(term.utf8ToString(), fn, fc, fnc, Nc, Ns);
+		Collocate collocate = new Collocate(word.replace(CollocateIterator._NODE_SEPARATOR, " "), 
+											candidateO, candidateF1, candidateF2, candidateN);
+		
+		collocate.setLeftFreq( reader.totalTermFreq(new Term(CIField.LEFT.name(),  word)));
+		collocate.setRightFreq(reader.totalTermFreq(new Term(CIField.RIGHT.name(), word)));
+		collocate.setNodeFreq( reader.totalTermFreq(new Term(CIField.NODE.name(),  word)));
+		
+		// put position vectors
+		for (String field : fields) {
+			if (field.matches("[LR]\\d+")) {
+				//long value = reader.totalTermFreq(new Term(field, term));
+				long value = reader.totalTermFreq(new Term(field, word));
+				collocate.setPositionVector(field, value);
+			}
+		}
+		
+		return collocate;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		termsEnum = null;
+		if (reader != null) {
+			reader.close();
+		}
+		super.close();
 	}
 	
 	protected long getCorpusSumTotalTermFreq() throws Exception {
 		if (corpusSumTotalTermFreq == -1) {
-			corpusSumTotalTermFreq = WordIterator.sumTotalTermFreq(conc.workspace, 
-																	  conc.showPartOfSpeech);
+			corpusSumTotalTermFreq = WordIterator.sumTotalTermFreq(conc.reader, conc.showPartOfSpeech);
 		}
 		return corpusSumTotalTermFreq;
 	}
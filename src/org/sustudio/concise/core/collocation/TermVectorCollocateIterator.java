@@ -0,0 +1,423 @@
+package org.sustudio.concise.core.collocation;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.concordance.DocumentTokens;
+import org.sustudio.concise.core.concordance.NodeMatcher;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.wordlister.Lemma;
+import org.sustudio.concise.core.wordlister.WordIterator;
+
+/**
+ * surface 方式的 CollocateIterator，結果和 {@link SurfaceCollocateIterator} 相同，但是不經過暫存的索引。
+ * <p>直接從主索引的 term vector 讀出每份 hit doc 的詞序列，以句子為邊界取左右跨距，
+ * 詞彙先用 {@link BytesRefHash} 轉成連續的 int 編號，共現、左右和各位置的次數都累計在 int array 裡頭，
+ * 詞彙在 corpus 中的次數最後依詞序一次查完，再計算 {@link Collocate}。</p>
+ * <p>只支援 {@link NodeMatcher#isSupported(org.apache.lucene.search.Query)} 的查詢，
+ * 其他的要用 {@link SurfaceCollocateIterator}。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class TermVectorCollocateIterator extends CollocateIterator {
+
+	private static final Comparator<BytesRef> termComparator = BytesRef.getUTF8SortedAsUnicodeComparator();
+
+	private final Conc conc;
+	private final IndexReader corpusReader;
+	private long corpusSumTotalTermFreq = -1;
+
+	private final NodeMatcher nodeMatcher;
+
+	private final Analyzer tokenAnalyzer;
+	private final BreakIterator breakIterator = BreakIterator.getSentenceInstance();
+	private final BytesRef scratch = new BytesRef();
+
+	/** term vector 中的詞的編號 */
+	private final BytesRefHash termIds = new BytesRefHash();
+	/** term 編號轉換後的詞彙編號，被過濾掉則為 -1 */
+	private int[] termWords = new int[0];
+
+	/** 詞彙的編號 */
+	private final BytesRefHash wordIds = new BytesRefHash();
+	private String[] words = new String[0];
+	private int numWords = 0;
+
+	/** 在左右跨距內出現的次數 */
+	private int[] spanFreqs = new int[0];
+	private int[] leftFreqs = new int[0];
+	private int[] rightFreqs = new int[0];
+	/** 當作 node 的次數 */
+	private int[] nodeFreqs = new int[0];
+	/** 在 corpus 中的次數 */
+	private long[] corpusFreqs;
+	/** 各位置的次數，[位置 - 1][詞彙編號] */
+	private int[][] leftPositionFreqs;
+	private int[][] rightPositionFreqs;
+	private int maxLeftPosition = 0;
+	private int maxRightPosition = 0;
+
+	/** 依輸出順序排好的詞彙編號 */
+	private int[] order;
+	private int orderIndex = 0;
+
+	/** corpus sum total term freq */
+	private long Nc;
+
+	/** node freq */
+	private long fn;
+
+	/** sample sum total term freq */
+	private long Ns;
+
+	public TermVectorCollocateIterator(Conc conc) throws Exception {
+		this(conc, null);
+	}
+
+	/**
+	 * @param conc
+	 * @param filters
+	 * @throws IllegalArgumentException 不支援 conc 的查詢
+	 * @throws Exception
+	 */
+	public TermVectorCollocateIterator(Conc conc, Map<CollocateMeasurement, Double> filters) throws Exception
+	{
+		super(filters);	// 用不到暫存目錄
+		this.conc = conc;
+		this.corpusReader = conc.reader;
+		this.nodeMatcher = new NodeMatcher(conc);
+		this.tokenAnalyzer = new ConciseTokenAnalyzer(Config.LUCENE_VERSION, conc.showPartOfSpeech);
+		this.leftPositionFreqs = new int[Math.max(conc.left_span_size, 0)][];
+		this.rightPositionFreqs = new int[Math.max(conc.right_span_size, 0)][];
+
+		int[] hitDocs = conc.hitDocIds();
+		if (hitDocs.length > 0) {
+			for (int docId : hitDocs) {
+				countDocument(docId);
+			}
+
+			Nc = getCorpusSumTotalTermFreq();
+			readCorpusFreqs();
+			sortWords();
+			nextCollocate = readNextCollocate();
+		}
+	}
+
+	/**
+	 * 累計一份文件中每個 node 左右跨距內的詞
+	 * @param docId
+	 * @throws IOException
+	 */
+	private void countDocument(int docId) throws IOException {
+		int[] nodes = nodeMatcher.positions(docId);
+		if (nodes.length == 0) {
+			return;
+		}
+		DocumentTokens tokens = DocumentTokens.read(corpusReader, docId);
+		String source = null;
+
+		int lastNodePosition = -1;
+		for (int position : nodes) {
+			if (position <= lastNodePosition) {
+				continue;	// 和前一個 node 重疊
+			}
+			lastNodePosition = position + nodeMatcher.getNodeLength() - 1;
+			if (lastNodePosition >= tokens.size()) {
+				break;
+			}
+			if (source == null) {
+				source = corpusReader.document(docId, Collections.singleton(ConciseField.CONTENT.field()))
+									 .get(ConciseField.CONTENT.field());
+				if (source == null || source.isEmpty()) {
+					return;
+				}
+				breakIterator.setText(source);
+			}
+
+			int sentenceStart = sentenceStart(source, tokens.getStartOffset(position));
+			int sentenceEnd = sentenceEnd(source, tokens.getEndOffset(lastNodePosition));
+
+			// node
+			StringBuilder node = new StringBuilder();
+			for (int i = position; i <= lastNodePosition; i++) {
+				int id = termWord(tokens.getTerm(i));
+				if (id != -1) {
+					if (node.length() > 0) {
+						node.append(CollocateIterator._NODE_SEPARATOR);
+					}
+					node.append(words[id]);
+				}
+			}
+			int nodeId = wordId(node.toString());
+			nodeFreqs[nodeId]++;
+			fn++;
+			Ns++;
+
+			// left span
+			int count = 0;
+			for (int i = position - 1; i >= 0 && count < leftPositionFreqs.length; i--) {
+				if (tokens.getTerm(i) == null) continue;
+				if (tokens.getStartOffset(i) < sentenceStart) break;
+				int id = termWord(tokens.getTerm(i));
+				if (id == -1) continue;
+
+				spanFreqs[id]++;
+				leftFreqs[id]++;
+				leftPositionFreqs[count] = growPositionFreqs(leftPositionFreqs[count]);
+				leftPositionFreqs[count][id]++;
+				count++;
+			}
+			maxLeftPosition = Math.max(maxLeftPosition, count);
+			Ns += count;
+
+			// right span
+			count = 0;
+			for (int i = lastNodePosition + 1; i < tokens.size() && count < rightPositionFreqs.length; i++) {
+				if (tokens.getTerm(i) == null) continue;
+				if (tokens.getStartOffset(i) >= sentenceEnd) break;
+				int id = termWord(tokens.getTerm(i));
+				if (id == -1) continue;
+
+				spanFreqs[id]++;
+				rightFreqs[id]++;
+				rightPositionFreqs[count] = growPositionFreqs(rightPositionFreqs[count]);
+				rightPositionFreqs[count][id]++;
+				count++;
+			}
+			maxRightPosition = Math.max(maxRightPosition, count);
+			Ns += count;
+		}
+	}
+
+	/**
+	 * 句子的開頭，和 {@link org.sustudio.concise.core.concordance.NodeSentenceFragmentsBuilder} 的規則相同
+	 */
+	private int sentenceStart(String source, int nodeStart) {
+		breakIterator.following(nodeStart);
+		int start = breakIterator.previous();
+		if (start == BreakIterator.DONE) {
+			start = 0;
+		}
+		// 如果有顯示詞性的話，得要跳過
+		if (source.startsWith(Config.SYSTEM_POS_SEPERATOR, start)) {
+			int space = source.indexOf(" ", start);
+			if (space != -1) {
+				start = space;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * 句子的結尾，和 {@link org.sustudio.concise.core.concordance.NodeSentenceFragmentsBuilder} 的規則相同
+	 */
+	private int sentenceEnd(String source, int nodeEnd) {
+		int end = breakIterator.following(Math.min(nodeEnd, source.length()));
+		if (end == BreakIterator.DONE) {
+			return source.length();
+		}
+		// 句子結尾的標點符號後面的詞性
+		if (end + Config.SYSTEM_POS_SEPERATOR.length() < source.length() &&
+			source.startsWith(Config.SYSTEM_POS_SEPERATOR, end))
+		{
+			end = source.indexOf(" ", end);
+			if (end == -1) {
+				end = source.length();
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * 依 {@link ConciseTokenAnalyzer} 轉換詞彙（詞性、過濾、大小寫、lemma），每個 term 只轉換一次
+	 * @param term	term vector 中的詞
+	 * @return 轉換後的詞彙編號，被過濾掉則為 -1
+	 * @throws IOException
+	 */
+	private int termWord(String term) throws IOException {
+		UnicodeUtil.UTF16toUTF8(term, 0, term.length(), scratch);
+		int termId = termIds.add(scratch);
+		if (termId < 0) {
+			return termWords[-termId - 1];
+		}
+		termWords = ArrayUtil.grow(termWords, termId + 1);
+		
+		String word = null;
+		TokenStream tokenStream = tokenAnalyzer.tokenStream(null, term);
+		CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+		tokenStream.reset();
+		if (tokenStream.incrementToken()) {
+			word = termAttr.toString();
+		}
+		tokenStream.end();
+		tokenStream.close();
+		
+		termWords[termId] = word == null || word.isEmpty() ? -1 : wordId(word);
+		return termWords[termId];
+	}
+
+	private int wordId(String word) {
+		UnicodeUtil.UTF16toUTF8(word, 0, word.length(), scratch);
+		int id = wordIds.add(scratch);
+		if (id < 0) {
+			return -id - 1;
+		}
+		if (id >= words.length) {
+			words = Arrays.copyOf(words, ArrayUtil.oversize(id + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+			spanFreqs = ArrayUtil.grow(spanFreqs, words.length);
+			leftFreqs = ArrayUtil.grow(leftFreqs, words.length);
+			rightFreqs = ArrayUtil.grow(rightFreqs, words.length);
+			nodeFreqs = ArrayUtil.grow(nodeFreqs, words.length);
+		}
+		words[id] = word;
+		numWords = id + 1;
+		return id;
+	}
+
+	/**
+	 * 依詞序用同一個 TermsEnum 查出每個詞彙在 corpus 中的次數（含 lemma 的 form）
+	 * @throws IOException
+	 */
+	private void readCorpusFreqs() throws IOException {
+		corpusFreqs = new long[numWords];
+		Terms corpusTerms = MultiFields.getTerms(corpusReader, ConciseField.CONTENT.field());
+		if (corpusTerms == null) {
+			return;
+		}
+		TermsEnum corpusTermsEnum = corpusTerms.iterator(null);
+		// sort 之後 wordIds 就不能再加入新的詞，但還是可以 get
+		int[] sorted = wordIds.sort(termComparator);
+		for (int i = 0; i < numWords; i++) {
+			int id = sorted[i];
+			if (corpusTermsEnum.seekExact(wordIds.get(id, scratch))) {
+				corpusFreqs[id] = corpusTermsEnum.totalTermFreq();
+			}
+		}
+
+		if (CCPrefs.LEMMA_ENABLED && CCPrefs.LEMMA_LIST != null) {
+			for (int id = 0; id < numWords; id++) {
+				Lemma lemma = CCPrefs.LEMMA_LIST.get(words[id]);
+				if (lemma != null) {
+					for (String form : lemma.getForms()) {
+						if (corpusTermsEnum.seekExact(new BytesRef(form))) {
+							corpusFreqs[id] += corpusTermsEnum.totalTermFreq();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private int[] growPositionFreqs(int[] freqs) {
+		if (freqs == null) {
+			return new int[words.length];
+		}
+		if (freqs.length < numWords) {
+			return ArrayUtil.grow(freqs, words.length);
+		}
+		return freqs;
+	}
+
+	private static int positionFreq(int[][] positionFreqs, int position, int id) {
+		int[] freqs = positionFreqs[position];
+		return freqs == null || id >= freqs.length ? 0 : freqs[id];
+	}
+
+	/**
+	 * 依照暫存索引的 term 順序排列：node 的詞以加上標籤的形式排序
+	 */
+	private void sortWords() {
+		final BytesRef[] keys = new BytesRef[numWords];
+		int size = 0;
+		order = new int[numWords];
+		for (int id = 0; id < numWords; id++) {
+			if (words[id].isEmpty()) continue;
+			keys[id] = new BytesRef(nodeFreqs[id] > 0 ?
+									Conc.preNodeTag + words[id] + Conc.postNodeTag :
+									words[id]);
+			order[size++] = id;
+		}
+		order = Arrays.copyOf(order, size);
+		new InPlaceMergeSorter() {
+			@Override
+			protected int compare(int i, int j) {
+				return termComparator.compare(keys[order[i]], keys[order[j]]);
+			}
+
+			@Override
+			protected void swap(int i, int j) {
+				int id = order[i];
+				order[i] = order[j];
+				order[j] = id;
+			}
+		}.sort(0, size);
+	}
+
+	protected long nextCandidate() throws Exception {
+		if (order == null || orderIndex >= order.length) {
+			return -1;
+		}
+		int id = order[orderIndex];
+		candidateO = spanFreqs[id] + nodeFreqs[id];
+		candidateF1 = Ns - fn;
+		candidateF2 = corpusFreqs[id];
+		candidateN = Nc - fn;
+		return orderIndex++;
+	}
+
+	protected Collocate readCandidate(long ord) throws Exception {
+		int id = order[(int) ord];
+		String word = words[id];
+		long fnc = spanFreqs[id] + nodeFreqs[id];
+		long fc = corpusFreqs[id];
+
+		Collocate collocate = new Collocate(word.replace(CollocateIterator._NODE_SEPARATOR, " "), fn, fc, fnc, Nc, Ns);
+		collocate.setLeftFreq(leftFreqs[id]);
+		collocate.setRightFreq(rightFreqs[id]);
+		collocate.setNodeFreq(nodeFreqs[id]);
+
+		// put position vectors
+		for (int i = 0; i < maxLeftPosition; i++) {
+			collocate.setPositionVector("L" + (i + 1), positionFreq(leftPositionFreqs, i, id));
+		}
+		for (int i = 0; i < maxRightPosition; i++) {
+			collocate.setPositionVector("R" + (i + 1), positionFreq(rightPositionFreqs, i, id));
+		}
+		return collocate;
+	}
+
+	@Override
+	public void close() throws IOException {
+		order = null;
+		super.close();
+	}
+
+	protected long getCorpusSumTotalTermFreq() throws Exception {
+		if (corpusSumTotalTermFreq == -1) {
+			corpusSumTotalTermFreq = WordIterator.sumTotalTermFreq(conc.reader, conc.showPartOfSpeech);
+		}
+		return corpusSumTotalTermFreq;
+	}
+
+}
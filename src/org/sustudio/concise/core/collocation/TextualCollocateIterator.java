@@ -1,5 +1,6 @@
 package org.sustudio.concise.core.collocation;
 
+import java.io.IOException;
 import java.util.Map;
 
 import org.apache.lucene.index.DirectoryReader;
@@ -7,8 +8,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
 import org.sustudio.concise.core.collocation.TemporaryCollocateIndexer.CIField;
 import org.sustudio.concise.core.concordance.Conc;
 
@@ -29,11 +30,17 @@ public class TextualCollocateIterator extends CollocateIterator {
 		PARAGRAPH 
 	}
 	
+	private static final BytesRef preNodeBytes = new BytesRef(Conc.preNodeTag);
+	private static final BytesRef postNodeBytes = new BytesRef(Conc.postNodeTag);
+	
 	private IndexReader reader;
 	private long numberOfTexts;
 	private long nodeMarginalFrequency;
+	private Terms nodeTerms;
 	private TermsEnum nodeTermsEnum;
 	private TermsEnum textTermsEnum;
+	/** nodeTermsEnum 目前的 term 的編號 */
+	private long termOrd = -1;
 	
 	public TextualCollocateIterator(Conc conc, BOUNDARY boundary) throws Exception {
 		this(conc, boundary, null);
@@ -48,16 +55,16 @@ public class TextualCollocateIterator extends CollocateIterator {
 		nodeMarginalFrequency = 0;
 		
 		// collecting data
-		for (ScoreDoc scoreDoc : conc.hitDocs()) 
+		for (int docId : conc.hitDocIds()) 
 		{
 			TextualHighlighter highlighter;
 			switch (boundary) {
 			case PARAGRAPH:
-				highlighter = new TextualParagraphHighlighter(conc, scoreDoc.doc);
+				highlighter = new TextualParagraphHighlighter(conc, docId);
 				break;
 			case SENTENCE:
 			default:
-				highlighter = new TextualSentenceHighlighter(conc, scoreDoc.doc);
+				highlighter = new TextualSentenceHighlighter(conc, docId);
 			}
 			String[] texts = highlighter.getAllTextsWithHighlight();
 			
@@ -75,62 +82,95 @@ public class TextualCollocateIterator extends CollocateIterator {
 		reader = DirectoryReader.open(temporaryDirectory);
 		numberOfTexts = reader.numDocs();
 		
-		Terms terms = MultiFields.getTerms(reader, CIField.NODE.name());
+		nodeTerms = MultiFields.getTerms(reader, CIField.NODE.name());
 		Terms textTerms = MultiFields.getTerms(reader, CIField.TEXT.name());
-		if (terms != null && textTerms != null) {
-			nodeTermsEnum = terms.iterator(null);
+		if (nodeTerms != null && textTerms != null) {
+			nodeTermsEnum = nodeTerms.iterator(null);
 			textTermsEnum = textTerms.iterator(null);
 			nextCollocate = readNextCollocate();
 		}
+		if (nextCollocate == null) {
+			close();
+		}
+	}
+	
+	protected long nextCandidate() throws Exception {
+		if (nodeTermsEnum == null) {
+			return -1;
+		}
+		BytesRef term = nodeTermsEnum.next();
+		if (term == null) {
+			return -1;
+		}
+		termOrd++;
+		readSignature(term);
+		return termOrd;
+	}
+	
+	/**
+	 * 計算 term 的 signature
+	 * @param term
+	 * @throws IOException
+	 */
+	private void readSignature(BytesRef term) throws IOException {
+		int coOccurrenceCount = nodeTermsEnum.docFreq();
+		int collocateMarginalFrequency = textTermsEnum.seekExact(term) ? textTermsEnum.docFreq() : 0;
+		if (isTaggedNode(term)) {
+			// 因為 node word 在處理的時候會包上tag，所以找 TEXT 那邊應該會找不到，
+			// 這時候要去掉 tag 去找
+			BytesRef node = new BytesRef(stripNodeTags(term));
+			collocateMarginalFrequency += textTermsEnum.seekExact(node) ? textTermsEnum.docFreq() : 0;
+		}
 		
+		// 這邊不需要再處理 Lemma 的問題
+		// 應該都已經透過 Highlighter 的 Encoder 處理了
+		candidateO = coOccurrenceCount;
+		candidateF1 = nodeMarginalFrequency;
+		candidateF2 = collocateMarginalFrequency;
+		candidateN = numberOfTexts;
 	}
 	
-	protected Collocate readNextCollocate() throws Exception {
-		reader = DirectoryReader.open(temporaryDirectory);
-		BytesRef term = null;
-		while ((term = nodeTermsEnum.next()) != null) {
-			String word = term.utf8ToString();
-			int coOccurrenceCount = nodeTermsEnum.docFreq();
-			int collocateMarginalFrequency = textTermsEnum.seekExact(term) ? textTermsEnum.docFreq() : 0;
-			if (word.startsWith(Conc.preNodeTag) && word.endsWith(Conc.postNodeTag)) {
-				// 因為 node word 在處理的時候會包上tag，所以找 TEXT 那邊應該會找不到，
-				// 這時候要去掉 tag 去找
-				BytesRef node = new BytesRef(word.replace(Conc.preNodeTag, "").replace(Conc.postNodeTag, "").replace(CollocateIterator._NODE_SEPARATOR, " "));
-				collocateMarginalFrequency += textTermsEnum.seekExact(node) ? textTermsEnum.docFreq() : 0;
-			}
-			
-			// 這邊不需要再處理 Lemma 的問題
-			// 應該都已經透過 Highlighter 的 Encoder 處理了
-			Collocate collocate =  new Collocate(word.replace(Conc.preNodeTag, "").replace(Conc.postNodeTag, "").replace(CollocateIterator._NODE_SEPARATOR, " "),
-												 coOccurrenceCount,
-												 nodeMarginalFrequency,
-												 collocateMarginalFrequency,
-												 numberOfTexts);
-			if (word.startsWith(Conc.preNodeTag) && word.endsWith(Conc.postNodeTag)) {
-				collocate.setNodeFreq(nodeMarginalFrequency);
-			}
-			
-			// check filters
-			boolean skip = false;
-			if (filters != null) {
-				for (Map.Entry<CollocateMeasurement, Double> entry : filters.entrySet()) {
-					if (entry.getValue().doubleValue() > entry.getKey().getValue(collocate)) {
-						skip = true;
-						break;
-					}
-				}
+	private static boolean isTaggedNode(BytesRef term) {
+		return StringHelper.startsWith(term, preNodeBytes) && StringHelper.endsWith(term, postNodeBytes);
+	}
+	
+	private static String stripNodeTags(BytesRef term) {
+		return term.utf8ToString().replace(Conc.preNodeTag, "").replace(Conc.postNodeTag, "").replace(CollocateIterator._NODE_SEPARATOR, " ");
+	}
+	
+	protected Collocate readCandidate(long ord) throws Exception {
+		if (ord != termOrd) {
+			// top() 讀完之後再回頭找留下來的 term
+			if (ord < termOrd) {
+				nodeTermsEnum = nodeTerms.iterator(nodeTermsEnum);
+				termOrd = -1;
 			}
-			if (skip) {
-				continue;
+			while (termOrd < ord) {
+				nodeTermsEnum.next();
+				termOrd++;
 			}
-			
-			return collocate;
+			readSignature(nodeTermsEnum.term());
 		}
 		
-		reader.close();
-		closeTemporaryDirectory();
-		
-		return null;
+		BytesRef term = nodeTermsEnum.term();
+		Collocate collocate =  new Collocate(stripNodeTags(term),
+											 candidateO,
+											 candidateF1,
+											 candidateF2,
+											 candidateN);
+		if (isTaggedNode(term)) {
+			collocate.setNodeFreq(nodeMarginalFrequency);
+		}
+		return collocate;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		nodeTermsEnum = null;
+		if (reader != null) {
+			reader.close();
+		}
+		super.close();
 	}
 	
 }
@@ -6,7 +6,6 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.vectorhighlight.FragmentsBuilder;
 import org.apache.lucene.search.vectorhighlight.SingleFragListBuilder;
 import org.sustudio.concise.core.Config;
-import org.sustudio.concise.core.Workspace.INDEX;
 import org.sustudio.concise.core.concordance.Conc;
 import org.sustudio.concise.core.concordance.ConcHighlighter;
 import org.sustudio.concise.core.corpus.importer.ConciseField;
@@ -34,7 +33,7 @@ public abstract class TextualHighlighter extends ConcHighlighter {
 	public String[] getHighlightTexts() throws IOException {
 		return getBestFragments(
 						getFieldQuery(query),
-						workspace.getIndexReader(INDEX.DOCUMENT),
+						getIndexReader(),
 						docID,
 						ConciseField.CONTENT.field(),
 						1,
@@ -49,7 +48,7 @@ public abstract class TextualHighlighter extends ConcHighlighter {
 	public String[] getAllTextsWithHighlight() throws IOException {
 		return getBestFragments(
 						getFieldQuery(query),
-						workspace.getIndexReader(INDEX.DOCUMENT),
+						getIndexReader(),
 						docID,
 						ConciseField.CONTENT.field(),
 						1,
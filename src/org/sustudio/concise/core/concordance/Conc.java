@@ -1,17 +1,31 @@
 package org.sustudio.concise.core.concordance;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiTermQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
 import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
@@ -19,11 +33,14 @@ import org.sustudio.concise.core.corpus.importer.ConciseField;
 
 /**
  * 找出 search words 出現在哪些 document 裡頭
+ * <p>預設使用 {@link Workspace#getIndexReader(INDEX)} 共用的 reader。
+ * 指定 <code>snapshot</code> 時改從 {@link Workspace#acquireSearcher(INDEX)} 取得固定的 snapshot，
+ * 之後的 concordance、collocation 都在這個 snapshot 上計算，不受匯入、刪除文件影響，用完一定要 {@link #close()}。</p>
  * 
  * @author Kuan-ming
  *
  */
-public class Conc {
+public class Conc implements Closeable {
 	
 	public static final int DEFAULT_LEFT_SPAN = 10;
 	public static final int DEFAULT_RIGHT_SPAN = 10;
@@ -41,23 +58,73 @@ public class Conc {
 	public int left_span_size = DEFAULT_LEFT_SPAN;
 	public int right_span_size = DEFAULT_RIGHT_SPAN;
 	
+	private final boolean snapshot;
+	private boolean closed = false;
+	
 	public Conc(Workspace workspace, final String queryStr, boolean showPartOfSpeech) throws ParseException, IOException {
+		this(workspace, queryStr, showPartOfSpeech, false);
+	}
+	
+	/**
+	 * @param workspace
+	 * @param queryStr
+	 * @param showPartOfSpeech
+	 * @param snapshot	true 的話取得固定的 snapshot，用完一定要 {@link #close()}；false 的話用 workspace 共用的 reader
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public Conc(Workspace workspace, final String queryStr, boolean showPartOfSpeech, boolean snapshot) throws ParseException, IOException {
 		
 		this.workspace = workspace;
 		this.queryStr = queryStr;
 		this.showPartOfSpeech = showPartOfSpeech;
+		this.snapshot = snapshot;
 		
-		reader = workspace.getIndexReader(INDEX.DOCUMENT);
-		searcher = new IndexSearcher(reader);
+		if (snapshot) {
+			searcher = workspace.acquireSearcher(INDEX.DOCUMENT);
+			reader = searcher == null ? null : searcher.getIndexReader();
+		}
+		else {
+			reader = workspace.getIndexReader(INDEX.DOCUMENT);
+			searcher = reader == null ? null : new IndexSearcher(reader);
+		}
+		if (searcher == null) {
+			throw new IndexNotFoundException("no index in " + workspace.getIndexDir(INDEX.DOCUMENT));
+		}
 		
+		try {
+			query = parse(queryStr);
+		} catch (ParseException e) {
+			close();
+			throw e;
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	private Query parse(String queryStr) throws ParseException, IOException {
 		QueryParser parser = new QueryParser(Config.LUCENE_VERSION, 
 				 							 ConciseField.CONTENT.field(),
 				 							 new ConciseQueryAnalyzer());
 		parser.setMultiTermRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
 		parser.setAllowLeadingWildcard(true);
 		
-		query = parser.parse(queryStr);
-		query = searcher.rewrite(query);
+		return searcher.rewrite(parser.parse(queryStr));
+	}
+	
+	/**
+	 * 釋放 snapshot，使用共用的 reader 時不做任何事
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (snapshot && !closed) {
+			closed = true;
+			workspace.releaseSearcher(searcher);
+		}
 	}
 	
 	/**
@@ -85,6 +152,93 @@ public class Conc {
 		return collector.allDocs();
 	}
 	
+	/**
+	 * 傳回有 hit 的文件編號（由小到大），不計算分數也不建立 {@link ScoreDoc}
+	 * @return 文件編號
+	 * @throws Exception
+	 */
+	public int[] hitDocIds() throws Exception {
+		return hitDocIds(null);
+	}
+	
+	/**
+	 * 傳回有 hit 的文件編號（由小到大），不計算分數也不建立 {@link ScoreDoc}。
+	 * 每個 segment 分別交給 executor 搜尋，最後依 segment 的順序接起來。
+	 * @param executor	搜尋 segment 用的 executor，null 的話在目前的 thread 逐一搜尋
+	 * @return 文件編號
+	 * @throws Exception
+	 */
+	public int[] hitDocIds(ExecutorService executor) throws Exception {
+		final Weight weight = searcher.createNormalizedWeight(query);
+		List<AtomicReaderContext> leaves = reader.leaves();
+		int[][] leafDocs = new int[leaves.size()][];
+		
+		if (executor == null || leaves.size() < 2) {
+			for (int i = 0; i < leaves.size(); i++) {
+				leafDocs[i] = hitDocIds(weight, leaves.get(i));
+			}
+		}
+		else {
+			List<Future<int[]>> futures = new ArrayList<Future<int[]>>(leaves.size());
+			for (final AtomicReaderContext leaf : leaves) {
+				futures.add(executor.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() throws Exception {
+						return hitDocIds(weight, leaf);
+					}
+				}));
+			}
+			try {
+				for (int i = 0; i < leaves.size(); i++) {
+					try {
+						leafDocs[i] = futures.get(i).get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof Exception) {
+							throw (Exception) e.getCause();
+						}
+						throw e;
+					}
+				}
+			} finally {
+				for (Future<int[]> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+		
+		int numHits = 0;
+		for (int[] docs : leafDocs) {
+			numHits += docs.length;
+		}
+		int[] docIds = new int[numHits];
+		int offset = 0;
+		for (int i = 0; i < leafDocs.length; i++) {
+			int docBase = leaves.get(i).docBase;
+			for (int doc : leafDocs[i]) {
+				docIds[offset++] = docBase + doc;
+			}
+		}
+		return docIds;
+	}
+	
+	/**
+	 * 一個 segment 中有 hit 的文件編號（segment 內的編號）
+	 */
+	private static int[] hitDocIds(Weight weight, AtomicReaderContext leaf) throws IOException {
+		Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+		if (scorer == null) {
+			return new int[0];
+		}
+		int[] docs = new int[16];
+		int size = 0;
+		int doc;
+		while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+			docs = ArrayUtil.grow(docs, size + 1);
+			docs[size++] = doc;
+		}
+		return Arrays.copyOf(docs, size);
+	}
+	
 	/**
 	 * 傳回搜尋的詞
 	 * @return
@@ -9,6 +9,7 @@ import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
 import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.highlighter.Highlighter;
@@ -59,6 +60,14 @@ public class ConcHighlighter extends Highlighter {
 		return s;
 	}
 	
+	/**
+	 * 使用 {@link Conc} 搜尋時的 reader，docID 才會一致
+	 */
+	@Override
+	protected IndexReader getIndexReader() {
+		return conc.reader;
+	}
+	
 	@Override
 	public Analyzer getAnalyzer() {
 		return new Analyzer() {
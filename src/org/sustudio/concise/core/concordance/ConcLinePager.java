@@ -0,0 +1,317 @@
+package org.sustudio.concise.core.concordance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.search.ScoreDoc;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+/**
+ * 分頁讀取 concordance lines，可以直接取出所有 hit 中第 N 行開始的一頁。
+ * <p>每份文件有幾行是從 postings 和 term vector 的長度算出來的（只算到需要的文件為止），
+ * 要顯示的行才從 term vector 讀出詞序列，只取 node 左右跨距內的詞，不會 highlight 整份文件。
+ * 最近讀過的文件標題會暫存起來。</p>
+ * <p>行的順序、node 和左右跨距的內容和 {@link ConcLineIterator} 相同：段落的換行佔去左跨距的一個位置，
+ * 跨距不受句子限制。{@link NodeMatcher} 不支援的查詢（例如 boolean 查詢裡的 phrase、有 slop 的 phrase）
+ * 則直接用 {@link ConcLineIterator} 讀取需要的文件。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class ConcLinePager {
+
+	/** 暫存的詞彙轉換和文件標題最多幾筆 */
+	private static final int MAX_CACHE_SIZE = 4096;
+
+	private final Conc conc;
+	/** 不支援的查詢為 null */
+	private final NodeMatcher nodeMatcher;
+	private final Analyzer analyzer;
+	private final Map<String, String> tokenCache = new LruCache<String, String>(MAX_CACHE_SIZE);
+	private final Map<Integer, String> titles = new LruCache<Integer, String>(MAX_CACHE_SIZE);
+
+	private final int[] docIds;
+	/** lineEnds[i] 是到第 i 份文件為止（含）的行數 */
+	private int[] lineEnds;
+	private int countedDocs = 0;
+
+	public ConcLinePager(Conc conc) throws Exception {
+		this.conc = conc;
+		this.nodeMatcher = NodeMatcher.isSupported(conc.query) ? new NodeMatcher(conc) : null;
+		this.analyzer = new ConcHighlighter(conc, -1).getAnalyzer();
+		this.docIds = conc.hitDocIds();
+		this.lineEnds = new int[docIds.length];
+	}
+
+	/**
+	 * 傳回所有的行數（需要算過每一份 hit doc）
+	 * @return 行數
+	 * @throws IOException
+	 */
+	public int getTotalLines() throws IOException {
+		countLines(Integer.MAX_VALUE);
+		return countedDocs == 0 ? 0 : lineEnds[countedDocs - 1];
+	}
+
+	/**
+	 * 取出第 index 行（從 0 開始）
+	 * @param index
+	 * @return concordance line，超出範圍則為 null
+	 * @throws IOException
+	 */
+	public ConcLine getLine(int index) throws IOException {
+		List<ConcLine> lines = getLines(index, 1);
+		return lines.isEmpty() ? null : lines.get(0);
+	}
+
+	/**
+	 * 取出第 from 行開始的 pageSize 行（從 0 開始）
+	 * @param from		第一行
+	 * @param pageSize	最多幾行
+	 * @return concordance lines
+	 * @throws IOException
+	 */
+	public List<ConcLine> getLines(int from, int pageSize) throws IOException {
+		List<ConcLine> lines = new ArrayList<ConcLine>();
+		if (from < 0 || pageSize <= 0) {
+			return lines;
+		}
+		int to = from + pageSize > 0 ? from + pageSize : Integer.MAX_VALUE;
+		countLines(to);
+
+		int doc = docIndexOf(from);
+		while (doc < countedDocs && lines.size() < pageSize) {
+			int docStart = doc == 0 ? 0 : lineEnds[doc - 1];
+			if (docStart >= to) {
+				break;
+			}
+			int first = Math.max(from - docStart, 0);
+			int last = Math.min(to, lineEnds[doc]) - docStart;
+			if (first < last) {
+				readLines(docIds[doc], first, last, lines);
+			}
+			doc++;
+		}
+		return lines;
+	}
+
+	/**
+	 * 計算每份文件的行數，直到總行數超過 lines 為止
+	 */
+	private void countLines(int lines) throws IOException {
+		while (countedDocs < docIds.length &&
+			   (countedDocs == 0 || lineEnds[countedDocs - 1] < lines))
+		{
+			int previous = countedDocs == 0 ? 0 : lineEnds[countedDocs - 1];
+			lineEnds[countedDocs] = previous + countDocLines(docIds[countedDocs]);
+			countedDocs++;
+		}
+	}
+
+	/**
+	 * 文件中有幾行
+	 */
+	private int countDocLines(int docId) throws IOException {
+		if (nodeMatcher != null) {
+			return nodePositions(docId, DocumentTokens.size(conc.reader, docId)).length;
+		}
+		int count = 0;
+		for (Iterator<ConcLine> lines = concLineIterator(docId); lines.hasNext(); lines.next()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 文件中可以顯示的 node 的位置：整個 node 都要在詞序列之內
+	 * @param docId
+	 * @param numTokens	詞序列的長度（{@link DocumentTokens#size()}）
+	 */
+	private int[] nodePositions(int docId, int numTokens) throws IOException {
+		int[] nodes = nodeMatcher.positions(docId);
+		int count = nodes.length;
+		// 位置由小到大，超出的只會在後面
+		while (count > 0 && nodes[count - 1] + nodeMatcher.getNodeLength() > numTokens) {
+			count--;
+		}
+		return count == nodes.length ? nodes : Arrays.copyOf(nodes, count);
+	}
+
+	private ConcLineIterator concLineIterator(int docId) throws IOException {
+		try {
+			return new ConcLineIterator(conc, new ScoreDoc(docId, 0));
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * 第 line 行在哪一份文件
+	 */
+	private int docIndexOf(int line) {
+		// lineEnds 是遞增的，找第一個大於 line 的
+		int index = Arrays.binarySearch(lineEnds, 0, countedDocs, line);
+		if (index < 0) {
+			return -index - 1;
+		}
+		while (index < countedDocs && lineEnds[index] <= line) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * 讀出文件中第 first 到第 last（不含）個 node 的行
+	 */
+	private void readLines(int docId, int first, int last, List<ConcLine> lines) throws IOException {
+		if (nodeMatcher == null) {
+			Iterator<ConcLine> iterator = concLineIterator(docId);
+			for (int n = 0; n < last && iterator.hasNext(); n++) {
+				ConcLine line = iterator.next();
+				if (n >= first) {
+					lines.add(line);
+				}
+			}
+			return;
+		}
+
+		DocumentTokens tokens = DocumentTokens.read(conc.reader, docId);
+		int[] nodes = nodePositions(docId, tokens.size());
+		String title = getTitle(docId);
+
+		StringBuilder sb = new StringBuilder();
+		for (int n = first; n < last && n < nodes.length; n++) {
+			int position = nodes[n];
+			int lastNodePosition = position + nodeMatcher.getNodeLength() - 1;
+
+			// left span（段落的換行也佔一個位置，顯示成空的；
+			// 緊接在前一個 node 後面時，highlight 的標籤包住了中間的空白，也會少算一個位置）
+			String[] left = new String[Math.max(conc.left_span_size, 0)];
+			int count = 0;
+			if (left.length > 0 && n > 0 && nodes[n - 1] + nodeMatcher.getNodeLength() == position &&
+				!isParagraphBreak(tokens, position))
+			{
+				left[count++] = "";
+			}
+			for (int i = position; i > 0 && count < left.length; i--) {
+				if (isParagraphBreak(tokens, i)) {
+					left[count++] = "";
+					if (count == left.length) {
+						break;
+					}
+				}
+				if (tokens.getTerm(i - 1) != null) {
+					left[count++] = token(tokens.getTerm(i - 1));
+				}
+			}
+			sb.setLength(0);
+			for (int i = count - 1; i >= 0; i--) {
+				sb.append(left[i]).append(' ');
+			}
+			String leftSpan = sb.toString().trim();
+
+			// right span
+			sb.setLength(0);
+			count = 0;
+			for (int i = lastNodePosition + 1; i < tokens.size() && count < conc.right_span_size; i++) {
+				if (tokens.getTerm(i) != null) {
+					sb.append(token(tokens.getTerm(i))).append(' ');
+					count++;
+				}
+			}
+			String rightSpan = sb.toString().trim();
+
+			// node
+			sb.setLength(0);
+			for (int i = position; i <= lastNodePosition; i++) {
+				if (tokens.getTerm(i) != null) {
+					sb.append(token(tokens.getTerm(i))).append(' ');
+				}
+			}
+			String node = sb.toString().trim();
+
+			ConcLine line = new ConcLine();
+			line.setDocId(docId);
+			line.setNode(node);
+			line.setLeft(leftSpan);
+			line.setRight(rightSpan);
+			line.setWordId(n + 1);
+			line.setDocTitle(title);
+			lines.add(line);
+		}
+	}
+
+	/**
+	 * 位置 i 的詞前面是不是段落的換行：匯入時詞和詞之間是一個空白，換行則多一個字元
+	 */
+	private static boolean isParagraphBreak(DocumentTokens tokens, int i) {
+		return tokens.getTerm(i) != null && tokens.getTerm(i - 1) != null &&
+			   tokens.getStartOffset(i) - tokens.getEndOffset(i - 1) > 1;
+	}
+
+	private String getTitle(int docId) throws IOException {
+		String title = titles.get(docId);
+		if (title == null && !titles.containsKey(docId)) {
+			title = conc.reader.document(docId, Collections.singleton(ConciseField.TITLE.field()))
+							   .get(ConciseField.TITLE.field());
+			titles.put(docId, title);
+		}
+		return title;
+	}
+
+	/**
+	 * 依 {@link ConcHighlighter} 的 analyzer 轉換詞彙（詞性、lemma、大小寫、詞性分隔），結果會暫存起來
+	 */
+	private String token(String term) throws IOException {
+		String word = tokenCache.get(term);
+		if (word == null) {
+			StringBuilder sb = new StringBuilder();
+			TokenStream tokenStream = analyzer.tokenStream(null, term);
+			CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+			tokenStream.reset();
+			while (tokenStream.incrementToken()) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(termAttr.toString());
+			}
+			tokenStream.end();
+			tokenStream.close();
+			word = sb.toString();
+			tokenCache.put(term, word);
+		}
+		return word;
+	}
+
+	/**
+	 * 超過容量時丟掉最久沒用到的
+	 */
+	private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		LruCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.sustudio.concise.core.concordance;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+/**
+ * 從 term vector 讀回一份文件的詞序列，不需要重新斷詞或 highlight。
+ * <p>匯入時每個位置都有完整的詞（<code>word_POS_TAG</code>）和去掉詞性的詞（<code>word</code>）兩個 term，
+ * 這裡依位置整理成平行的陣列：完整的詞、去掉詞性的詞，以及完整的詞在原文中的 offset。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class DocumentTokens {
+
+	/**
+	 * 讀取文件 {@link ConciseField#CONTENT} 的 term vector
+	 * @param reader
+	 * @param docId
+	 * @return 文件的詞序列，沒有 term vector 則為空的
+	 * @throws IOException
+	 */
+	public static DocumentTokens read(IndexReader reader, int docId) throws IOException {
+		DocumentTokens tokens = new DocumentTokens();
+		Terms vector = reader.getTermVector(docId, ConciseField.CONTENT.field());
+		if (vector == null) {
+			return tokens;
+		}
+
+		TermsEnum termsEnum = vector.iterator(null);
+		DocsAndPositionsEnum positions = null;
+		while (termsEnum.next() != null) {
+			String term = termsEnum.term().utf8ToString();
+			boolean hasPartOfSpeech = term.contains(Config.SYSTEM_POS_SEPERATOR);
+			positions = termsEnum.docsAndPositions(null, positions);
+			if (positions == null || positions.nextDoc() == DocsAndPositionsEnum.NO_MORE_DOCS) {
+				continue;
+			}
+			for (int i = 0; i < positions.freq(); i++) {
+				int position = positions.nextPosition();
+				tokens.ensureCapacity(position + 1);
+				if (hasPartOfSpeech) {
+					tokens.terms[position] = term;
+					tokens.startOffsets[position] = positions.startOffset();
+					tokens.endOffsets[position] = positions.endOffset();
+				}
+				else {
+					tokens.plainTerms[position] = term;
+					if (tokens.terms[position] == null) {
+						tokens.startOffsets[position] = positions.startOffset();
+						tokens.endOffsets[position] = positions.endOffset();
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < tokens.size; i++) {
+			if (tokens.terms[i] == null) {
+				tokens.terms[i] = tokens.plainTerms[i];
+			}
+			else if (tokens.plainTerms[i] == null) {
+				tokens.plainTerms[i] = tokens.terms[i];
+			}
+		}
+		return tokens;
+	}
+
+
+	/**
+	 * 文件 {@link ConciseField#CONTENT} 的 term vector 有幾個位置，和 {@link #read(IndexReader, int)} 的
+	 * {@link #size()} 相同，但是不讀出詞彙
+	 * @param reader
+	 * @param docId
+	 * @return 位置的數量，沒有 term vector 則為 0
+	 * @throws IOException
+	 */
+	public static int size(IndexReader reader, int docId) throws IOException {
+		Terms vector = reader.getTermVector(docId, ConciseField.CONTENT.field());
+		if (vector == null) {
+			return 0;
+		}
+
+		int size = 0;
+		TermsEnum termsEnum = vector.iterator(null);
+		DocsAndPositionsEnum positions = null;
+		while (termsEnum.next() != null) {
+			positions = termsEnum.docsAndPositions(null, positions);
+			if (positions == null || positions.nextDoc() == DocsAndPositionsEnum.NO_MORE_DOCS) {
+				continue;
+			}
+			for (int i = 0; i < positions.freq(); i++) {
+				size = Math.max(size, positions.nextPosition() + 1);
+			}
+		}
+		return size;
+	}
+
+
+	private String[] terms = new String[0];
+	private String[] plainTerms = new String[0];
+	private int[] startOffsets = new int[0];
+	private int[] endOffsets = new int[0];
+	private int size = 0;
+
+	private DocumentTokens() { }
+
+	private void ensureCapacity(int newSize) {
+		if (newSize > terms.length) {
+			int capacity = ArrayUtil.oversize(newSize, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+			terms = Arrays.copyOf(terms, capacity);
+			plainTerms = Arrays.copyOf(plainTerms, capacity);
+			startOffsets = Arrays.copyOf(startOffsets, capacity);
+			endOffsets = Arrays.copyOf(endOffsets, capacity);
+		}
+		if (newSize > size) {
+			size = newSize;
+		}
+	}
+
+	/** @return 位置的數量 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param position
+	 * @return 該位置完整的詞（含詞性），沒有詞的位置為 null
+	 */
+	public String getTerm(int position) {
+		return terms[position];
+	}
+
+	/**
+	 * @param position
+	 * @return 該位置去掉詞性的詞，沒有詞的位置為 null
+	 */
+	public String getPlainTerm(int position) {
+		return plainTerms[position];
+	}
+
+	/**
+	 * @param position
+	 * @return 完整的詞在原文中的起始 offset
+	 */
+	public int getStartOffset(int position) {
+		return startOffsets[position];
+	}
+
+	/**
+	 * @param position
+	 * @return 完整的詞在原文中的結束 offset
+	 */
+	public int getEndOffset(int position) {
+		return endOffsets[position];
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.sustudio.concise.core.concordance;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+/**
+ * 從主索引的 postings 找出 node 在文件中的位置，不需要 highlight。
+ * <p>一般的查詢是所有搜尋詞出現的位置；phrase 查詢（slop 為 0）則是每個符合的 phrase 的起始位置，
+ * 和 {@link ConcLineIterator} 一樣，整個 phrase 算一個 node，長度是 {@link #getNodeLength()}，重疊的 phrase 只算前面那個。</p>
+ * <p>只支援 {@link #isSupported(Query)} 的查詢，其他的（例如 boolean 查詢裡的 phrase、有 slop 的 phrase）
+ * 要交給 {@link ConcLineIterator}。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class NodeMatcher {
+
+	private final List<AtomicReaderContext> leaves;
+	private final BytesRef[] terms;
+	/** phrase 中各個詞相對於第一個詞的位置，不是 phrase 查詢則為 null */
+	private final int[] phraseOffsets;
+
+	/**
+	 * 查詢能不能只從 postings 找出 node：詞、只由詞組成的 boolean 查詢，或最外層 slop 為 0 的 phrase 查詢
+	 * @param query
+	 * @return 可以的話為 true
+	 */
+	public static boolean isSupported(Query query) {
+		if (query instanceof PhraseQuery) {
+			return ((PhraseQuery) query).getSlop() == 0;
+		}
+		return isTermsOnly(query);
+	}
+
+	private static boolean isTermsOnly(Query query) {
+		if (query instanceof TermQuery) {
+			return true;
+		}
+		if (query instanceof BooleanQuery) {
+			for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+				if (!clause.isProhibited() && !isTermsOnly(clause.getQuery())) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param conc
+	 * @throws IllegalArgumentException 不支援 conc 的查詢（見 {@link #isSupported(Query)}）
+	 */
+	public NodeMatcher(Conc conc) {
+		if (!isSupported(conc.query)) {
+			throw new IllegalArgumentException("unsupported query: " + conc.query);
+		}
+		this.leaves = conc.reader.leaves();
+		if (conc.query instanceof PhraseQuery && ((PhraseQuery) conc.query).getSlop() == 0) {
+			PhraseQuery phraseQuery = (PhraseQuery) conc.query;
+			Term[] phraseTerms = phraseQuery.getTerms();
+			int[] positions = phraseQuery.getPositions();
+			terms = new BytesRef[phraseTerms.length];
+			phraseOffsets = new int[phraseTerms.length];
+			for (int i = 0; i < phraseTerms.length; i++) {
+				terms[i] = phraseTerms[i].bytes();
+				phraseOffsets[i] = positions[i] - positions[0];
+			}
+		}
+		else {
+			int i = 0;
+			Set<String> words = conc.getSearchWords();
+			terms = new BytesRef[words.size()];
+			for (String word : words) {
+				terms[i++] = new BytesRef(word);
+			}
+			phraseOffsets = null;
+		}
+	}
+
+	/**
+	 * @return 一個 node 佔了幾個位置（phrase 查詢時是 phrase 的長度）
+	 */
+	public int getNodeLength() {
+		return phraseOffsets == null ? 1 : phraseOffsets[phraseOffsets.length - 1] + 1;
+	}
+
+	/**
+	 * 傳回 node 在文件中的起始位置（由小到大，不重複）
+	 * @param docId
+	 * @return node 的位置
+	 * @throws IOException
+	 */
+	public int[] positions(int docId) throws IOException {
+		if (terms.length == 0 || leaves.isEmpty()) {
+			return new int[0];
+		}
+		AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+		Terms leafTerms = leaf.reader().terms(ConciseField.CONTENT.field());
+		if (leafTerms == null) {
+			return new int[0];
+		}
+
+		int doc = docId - leaf.docBase;
+		TermsEnum termsEnum = leafTerms.iterator(null);
+		DocsAndPositionsEnum postings = null;
+		int[][] termPositions = new int[terms.length][];
+		for (int i = 0; i < terms.length; i++) {
+			termPositions[i] = new int[0];
+			if (!termsEnum.seekExact(terms[i])) {
+				continue;
+			}
+			postings = termsEnum.docsAndPositions(leaf.reader().getLiveDocs(), postings, DocsAndPositionsEnum.FLAG_NONE);
+			if (postings != null && postings.advance(doc) == doc) {
+				int[] positions = new int[postings.freq()];
+				for (int j = 0; j < positions.length; j++) {
+					positions[j] = postings.nextPosition();
+				}
+				termPositions[i] = positions;
+			}
+		}
+
+		int[] positions = new int[16];
+		int size = 0;
+		if (phraseOffsets == null) {
+			for (int[] p : termPositions) {
+				positions = ArrayUtil.grow(positions, size + p.length);
+				System.arraycopy(p, 0, positions, size, p.length);
+				size += p.length;
+			}
+		}
+		else {
+			int nodeLength = getNodeLength();
+			for (int start : termPositions[0]) {
+				if (size > 0 && start < positions[size - 1] + nodeLength) {
+					// 和前一個 phrase 重疊
+					continue;
+				}
+				boolean matched = true;
+				for (int i = 1; i < terms.length && matched; i++) {
+					matched = Arrays.binarySearch(termPositions[i], start + phraseOffsets[i]) >= 0;
+				}
+				if (matched) {
+					positions = ArrayUtil.grow(positions, size + 1);
+					positions[size++] = start;
+				}
+			}
+		}
+		return sortedUnique(positions, size);
+	}
+
+	private static int[] sortedUnique(int[] positions, int size) {
+		Arrays.sort(positions, 0, size);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || positions[i] != positions[unique - 1]) {
+				positions[unique++] = positions[i];
+			}
+		}
+		return Arrays.copyOf(positions, unique);
+	}
+
+}
@@ -8,7 +8,7 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.sustudio.concise.core.Config;
 
-public class PartOfSpeechFilter extends TokenFilter {
+public final class PartOfSpeechFilter extends TokenFilter {
 	
 	private boolean showPartOfSpeech;
 	private CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
@@ -15,7 +15,7 @@ import org.sustudio.concise.core.wordlister.CustomPartOfSpeechEncoder;
  * @author Kuan-ming Su
  *
  */
-public class PartOfSpeechSeparatorFilter extends TokenFilter {
+public final class PartOfSpeechSeparatorFilter extends TokenFilter {
 
 	CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
 	//PartOfSpeechAttribute posAttr = addAttribute(PartOfSpeechAttribute.class);
@@ -4,23 +4,32 @@ import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.ConciseFile;
 import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.cluster.NgramIndex;
 import org.sustudio.concise.core.corpus.importer.ConciseField;
 import org.sustudio.concise.core.corpus.importer.ConciseFileUtils;
 import org.sustudio.concise.core.corpus.importer.ImportPOSAnalyzer;
 
 /**
  * 寫入、刪除文件用
+ * <p>開啟期間 {@link Workspace} 的 searcher 直接從這個 writer 更新（near-real-time），
+ * 關閉時 commit 並更新 {@link Workspace#getIndexReader(INDEX)}；寫入時會清掉 {@link Workspace#getAnalysisCache()}。</p>
  * 
  * @author Kuan-ming Su
  */
@@ -31,29 +40,172 @@ public class DocumentWriter extends IndexWriter {
 	protected final ConciseFile indexDir;
 	protected final ConciseFile originalFolder;
 	
+	/** n-gram 索引的 writer，沒有啟用 {@link CCPrefs#NGRAM_INDEX_ENABLED} 時為 null */
+	protected IndexWriter ngramWriter;
+	private boolean ngramRebuildNeeded = false;
+	private boolean modified = false;
+	
 	public DocumentWriter(Workspace workspace) throws IOException {
 		this(workspace, INDEX.DOCUMENT);
 	}
 	
 	public DocumentWriter(Workspace workspace, INDEX indexType) throws IOException {
-		super(FSDirectory.open(workspace.getIndexDir(indexType)), 
+		super(workspace.openDirectoryForWriting(workspace.getIndexDir(indexType)), 
 			  new IndexWriterConfig(Config.LUCENE_VERSION,
 					  				new ImportPOSAnalyzer(Config.LUCENE_VERSION)));
 		this.workspace = workspace;
 		this.indexType = indexType;
 		this.indexDir = workspace.getIndexDir(indexType);
 		this.originalFolder = workspace.getOriginalDocFolder(indexType);
-		workspace.closeIndexReader(indexType);		
+		if (CCPrefs.NGRAM_INDEX_ENABLED) {
+			openNgramWriter();
+		}
+		workspace.attachIndexWriter(indexType, this);
+	}
+	
+	/**
+	 * 開啟 n-gram 索引，如果和主索引不一致就先重建
+	 * @throws IOException
+	 */
+	private void openNgramWriter() throws IOException {
+		DirectoryReader ngramReader = NgramIndex.openFreshReader(workspace, indexType);
+		boolean fresh = ngramReader != null;
+		if (fresh) {
+			Directory directory = ngramReader.directory();
+			ngramReader.close();
+			directory.close();
+		}
+		ngramWriter = NgramIndex.openWriter(workspace, indexType, !fresh);
+		if (!fresh) {
+			NgramIndex.rebuild(workspace.getIndexReader(indexType), ngramWriter);
+			ngramWriter.commit();
+		}
 	}
 	
 	public void close() throws IOException {
-		super.close();
-		workspace.reopenIndexReader(indexType);
+		try {
+			workspace.detachIndexWriter(indexType, this);
+			super.close();
+			workspace.getAnalysisCache().invalidate();
+			workspace.reopenIndexReader(indexType);
+		} finally {
+			// 主索引關閉失敗時也要釋放 n-gram 索引的 write lock
+			closeNgramWriter();
+		}
 	}
 	
+	/**
+	 * 寫入的內容可能已經被 near-real-time searcher 看到，快取的分析結果不再適用
+	 */
+	@Override
+	protected void doAfterFlush() throws IOException {
+		super.doAfterFlush();
+		workspace.getAnalysisCache().invalidate();
+	}
+	
+	private void closeNgramWriter() throws IOException {
+		if (ngramWriter != null) {
+			if (ngramRebuildNeeded) {
+				NgramIndex.rebuild(workspace.getIndexReader(indexType), ngramWriter);
+			}
+			Directory directory = ngramWriter.getDirectory();
+			ngramWriter.close();
+			directory.close();
+			ngramWriter = null;
+		}
+		else if (modified && workspace.getNgramIndexDir(indexType).exists()) {
+			// 沒有維護 n-gram 索引，已經過時了
+			FileUtils.deleteDirectory(workspace.getNgramIndexDir(indexType));
+		}
+	}
+	
+	/**
+	 * {@link #addDocument(Iterable, Analyzer)} 也是經過這裡（term 為 null）
+	 */
+	@Override
+	public void updateDocument(Term term, Iterable<? extends IndexableField> doc, Analyzer analyzer) throws IOException {
+		super.updateDocument(term, doc, analyzer);
+		modified = true;
+		if (ngramWriter != null) {
+			if (term != null) {
+				deleteNgramDocuments(term);
+			}
+			String filename = null;
+			String content = null;
+			for (IndexableField field : doc) {
+				if (filename == null && field.name().equals(ConciseField.FILENAME.field())) {
+					filename = field.stringValue();
+				}
+				else if (content == null && field.name().equals(ConciseField.CONTENT.field())) {
+					content = field.stringValue();
+				}
+			}
+			if (filename != null && content != null) {
+				ngramWriter.addDocument(NgramIndex.createDocument(filename, content));
+			}
+			else {
+				ngramRebuildNeeded = true;
+			}
+		}
+	}
+	
+	/**
+	 * {@link #addDocuments(Iterable, Analyzer)} 也是經過這裡（term 為 null）
+	 */
+	@Override
+	public void updateDocuments(Term delTerm, Iterable<? extends Iterable<? extends IndexableField>> docs, Analyzer analyzer) throws IOException {
+		super.updateDocuments(delTerm, docs, analyzer);
+		modified = true;
+		ngramRebuildNeeded = true;
+	}
+	
+	@Override
+	public synchronized boolean tryDeleteDocument(IndexReader readerIn, int docID) throws IOException {
+		boolean deleted = super.tryDeleteDocument(readerIn, docID);
+		if (deleted) {
+			modified = true;
+			ngramRebuildNeeded = true;
+		}
+		return deleted;
+	}
+	
+	@Override
+	public void deleteDocuments(Term... terms) throws IOException {
+		super.deleteDocuments(terms);
+		modified = true;
+		if (ngramWriter != null) {
+			deleteNgramDocuments(terms);
+		}
+	}
+	
+	/**
+	 * n-gram 索引只有 {@link ConciseField#FILENAME}，其他欄位的刪除要重建
+	 */
+	private void deleteNgramDocuments(Term... terms) throws IOException {
+		for (Term term : terms) {
+			if (!term.field().equals(ConciseField.FILENAME.field())) {
+				ngramRebuildNeeded = true;
+			}
+		}
+		if (!ngramRebuildNeeded) {
+			ngramWriter.deleteDocuments(terms);
+		}
+	}
+	
+	@Override
+	public void deleteDocuments(Query... queries) throws IOException {
+		super.deleteDocuments(queries);
+		modified = true;
+		ngramRebuildNeeded = true;
+	}
 	
 	public void deleteAll() throws IOException {
 		super.deleteAll();
+		modified = true;
+		if (ngramWriter != null) {
+			ngramWriter.deleteAll();
+			ngramRebuildNeeded = false;
+		}
 		forceMerge(1);
 	}
 	
@@ -0,0 +1,388 @@
+package org.sustudio.concise.core.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.corpus.importer.ConciseFileUtils;
+import org.sustudio.concise.core.corpus.importer.ContentField;
+import org.sustudio.concise.core.corpus.importer.Importer;
+
+/**
+ * 產生測試、評估效能用的語料庫。
+ * <p>詞彙依 Zipf 分布抽樣，中文詞和英文詞混在一起，每個詞有固定的詞性（可以不加）。
+ * 文件直接透過 {@link DocumentWriter} 寫入，欄位和 {@link Importer} 匯入已斷詞的文件相同，
+ * 原始檔案則是 <tt>詞#詞性</tt> 的格式（{@link CCPrefs#POS_TAGGER_SEPARATOR}），重新匯入會得到一樣的文件。</p>
+ * <p>每份文件用 seed、index 類型和文件編號決定內容，同樣的設定一定產生同樣的語料庫，
+ * 也不會因為文件數不同而改變前面的文件。</p>
+ * <p>上百萬份文件時建議 {@link #setWriteOriginalFiles(boolean)} 設為 false，以免產生太多檔案。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class SyntheticCorpusGenerator {
+
+	/** 中文詞的詞性（重複的比較常出現） */
+	private static final String[] CJK_TAGS = {
+		"NN", "NN", "NN", "NN", "NR", "VV", "VV", "VV", "VA", "AD", "AD",
+		"JJ", "P", "DEC", "DEG", "PN", "CD", "M", "LC", "CC" };
+
+	/** 英文詞的詞性 */
+	private static final String LATIN_TAG = "FW";
+
+	private static final String PUNCTUATION_TAG = "PU";
+
+	private final long seed;
+	private int vocabularySize = 50000;
+	private double zipfExponent = 1.0;
+	private double latinRatio = 0.1;
+	private int minWordsPerDocument = 200;
+	private int maxWordsPerDocument = 800;
+	private int wordsPerSentence = 12;
+	private int sentencesPerParagraph = 4;
+	private boolean tagged = true;
+	private boolean writeOriginalFiles = true;
+	private int commitInterval = 10000;
+
+	private String[] words;
+	private String[] tags;
+	private double[] cumulative;
+
+	/**
+	 * @param seed	亂數的 seed
+	 */
+	public SyntheticCorpusGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * 設定詞彙數（預設 50000）
+	 * @param vocabularySize
+	 */
+	public void setVocabularySize(int vocabularySize) {
+		if (vocabularySize < 1) {
+			throw new IllegalArgumentException("vocabularySize must be positive");
+		}
+		this.vocabularySize = vocabularySize;
+		words = null;
+	}
+
+	/**
+	 * 設定 Zipf 分布的指數（預設 1.0）
+	 * @param zipfExponent
+	 */
+	public void setZipfExponent(double zipfExponent) {
+		this.zipfExponent = zipfExponent;
+		words = null;
+	}
+
+	/**
+	 * 設定詞彙中英文詞的比例（預設 0.1）
+	 * @param latinRatio	0 到 1
+	 */
+	public void setLatinRatio(double latinRatio) {
+		if (latinRatio < 0 || latinRatio > 1) {
+			throw new IllegalArgumentException("latinRatio must be between 0 and 1");
+		}
+		this.latinRatio = latinRatio;
+		words = null;
+	}
+
+	/**
+	 * 設定每份文件的詞數範圍（不含標點，預設 200 到 800）
+	 * @param min
+	 * @param max
+	 */
+	public void setWordsPerDocument(int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("invalid range: " + min + " - " + max);
+		}
+		this.minWordsPerDocument = min;
+		this.maxWordsPerDocument = max;
+	}
+
+	/**
+	 * 設定平均每句的詞數（預設 12）
+	 * @param wordsPerSentence
+	 */
+	public void setWordsPerSentence(int wordsPerSentence) {
+		this.wordsPerSentence = Math.max(1, wordsPerSentence);
+	}
+
+	/**
+	 * 設定平均每段的句數（預設 4）
+	 * @param sentencesPerParagraph
+	 */
+	public void setSentencesPerParagraph(int sentencesPerParagraph) {
+		this.sentencesPerParagraph = Math.max(1, sentencesPerParagraph);
+	}
+
+	/**
+	 * 設定是否加上詞性（預設 true）
+	 * @param tagged
+	 */
+	public void setTagged(boolean tagged) {
+		this.tagged = tagged;
+	}
+
+	/**
+	 * 設定是否在 Original Documents 中產生原始檔案（預設 true）
+	 * @param writeOriginalFiles
+	 */
+	public void setWriteOriginalFiles(boolean writeOriginalFiles) {
+		this.writeOriginalFiles = writeOriginalFiles;
+	}
+
+	/**
+	 * 設定每寫入幾份文件 commit 一次（預設 10000）
+	 * @param commitInterval
+	 */
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = Math.max(1, commitInterval);
+	}
+
+	/**
+	 * 傳回詞彙表中的詞
+	 * @param rank	0 是最常出現的詞
+	 * @return 詞（不含詞性）
+	 */
+	public String getWord(int rank) {
+		ensureVocabulary();
+		return words[rank];
+	}
+
+	/**
+	 * 傳回詞彙表中的詞的詞性
+	 * @param rank	0 是最常出現的詞
+	 * @return 詞性
+	 */
+	public String getTag(int rank) {
+		ensureVocabulary();
+		return tags[rank];
+	}
+
+	/**
+	 * 傳回一份文件原始檔案的內容（<tt>詞#詞性</tt>），可以拿來測試匯入
+	 * @param indexType		DOCUMENT or REFERENCE
+	 * @param docIndex		文件編號
+	 * @return 和 {@link #generate(Workspace, INDEX, int)} 產生的原始檔案相同的內容
+	 */
+	public String getOriginalText(INDEX indexType, int docIndex) {
+		ensureVocabulary();
+		StringBuilder original = new StringBuilder();
+		writeDocument(new Random(documentSeed(indexType, docIndex)), new StringBuilder(), original);
+		return original.toString();
+	}
+
+	/**
+	 * 產生語料庫和參照語料庫
+	 * @param workspace
+	 * @param numDocs			語料庫文件數
+	 * @param numReferenceDocs	參照語料庫文件數
+	 * @throws IOException
+	 */
+	public void generate(Workspace workspace, int numDocs, int numReferenceDocs) throws IOException {
+		generate(workspace, INDEX.DOCUMENT, numDocs);
+		generate(workspace, INDEX.REFERENCE, numReferenceDocs);
+	}
+
+	/**
+	 * 產生文件加到 index 中（不會刪除原有的文件）
+	 * @param workspace
+	 * @param indexType		DOCUMENT or REFERENCE
+	 * @param numDocs		文件數
+	 * @return 寫入的詞數（含標點）
+	 * @throws IOException
+	 */
+	public long generate(Workspace workspace, INDEX indexType, int numDocs) throws IOException {
+		ensureVocabulary();
+		long totalWords = 0;
+		DocumentWriter writer = new DocumentWriter(workspace, indexType);
+		try {
+			String prefix = indexType == INDEX.REFERENCE ? "ref" : "doc";
+			File originalFolder = workspace.getOriginalDocFolder(indexType);
+			StringBuilder content = new StringBuilder();
+			StringBuilder original = new StringBuilder();
+			for (int i = 0; i < numDocs; i++) {
+				String name = String.format("%s-%08d.txt", prefix, i);
+				File targetFile = new File(originalFolder, name);
+
+				Random random = new Random(documentSeed(indexType, i));
+				content.setLength(0);
+				original.setLength(0);
+				int[] counts = writeDocument(random, content, original);
+
+				if (writeOriginalFiles) {
+					targetFile = ConciseFileUtils.getUniqueFile(targetFile);
+					FileUtils.write(targetFile, original, "UTF-8");
+				}
+
+				Document doc = new Document();
+				doc.add(new StringField(ConciseField.TITLE.field(), name, Store.YES));
+				doc.add(new ContentField(ConciseField.CONTENT.field(), content.toString(), Store.YES));
+				doc.add(new StringField(ConciseField.FILENAME.field(), targetFile.getName(), Store.YES));
+				doc.add(new IntField(ConciseField.NUM_WORDS.field(), counts[0], Store.YES));
+				doc.add(new IntField(ConciseField.NUM_PARAGRAPHS.field(), counts[1], Store.YES));
+				doc.add(new IntField(ConciseField.IS_TOKENIZED.field(), 1, Store.YES));
+				writer.addDocument(doc);
+				totalWords += counts[0];
+
+				if ((i + 1) % commitInterval == 0) {
+					writer.commit();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		return totalWords;
+	}
+
+	/**
+	 * 每份文件自己的 seed
+	 */
+	private long documentSeed(INDEX indexType, int docIndex) {
+		long z = seed + 0x9E3779B97F4A7C15L * (((long) indexType.ordinal() << 32) + docIndex + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * 產生一份文件
+	 * @param random
+	 * @param content	寫入 index 的內容（詞性用 {@link Config#SYSTEM_POS_SEPERATOR}）
+	 * @param original	原始檔案的內容（詞性用 {@link CCPrefs#POS_TAGGER_SEPARATOR}）
+	 * @return { 詞數（含標點）, 段落數 }
+	 */
+	private int[] writeDocument(Random random, StringBuilder content, StringBuilder original) {
+		int numWords = minWordsPerDocument + random.nextInt(maxWordsPerDocument - minWordsPerDocument + 1);
+		int countWords = 0;
+		int countParas = 0;
+		int sentenceLeft = sentenceLength(random);
+		int paragraphLeft = paragraphLength(random);
+		for (int i = 0; i < numWords; i++) {
+			int rank = nextRank(random);
+			appendToken(content, original, words[rank], tags[rank]);
+			countWords++;
+
+			if (--sentenceLeft == 0 || i == numWords - 1) {
+				appendToken(content, original, "。", PUNCTUATION_TAG);
+				countWords++;
+				sentenceLeft = sentenceLength(random);
+				if (--paragraphLeft == 0 || i == numWords - 1) {
+					content.append('\n');
+					original.append('\n');
+					countParas++;
+					paragraphLeft = paragraphLength(random);
+				}
+			}
+			else if (random.nextInt(8) == 0) {
+				appendToken(content, original, "，", PUNCTUATION_TAG);
+				countWords++;
+			}
+		}
+		return new int[] { countWords, countParas };
+	}
+
+	private void appendToken(StringBuilder content, StringBuilder original, String word, String tag) {
+		content.append(word);
+		original.append(word);
+		if (tagged) {
+			content.append(Config.SYSTEM_POS_SEPERATOR).append(tag);
+			original.append(CCPrefs.POS_TAGGER_SEPARATOR).append(tag);
+		}
+		content.append(' ');
+		original.append(' ');
+	}
+
+	private int sentenceLength(Random random) {
+		return 1 + random.nextInt(wordsPerSentence * 2);
+	}
+
+	private int paragraphLength(Random random) {
+		return 1 + random.nextInt(sentencesPerParagraph * 2);
+	}
+
+	/**
+	 * @return 依 Zipf 分布抽一個詞的 rank
+	 */
+	private int nextRank(Random random) {
+		int idx = Arrays.binarySearch(cumulative, random.nextDouble());
+		return idx >= 0 ? idx : Math.min(-idx - 1, words.length - 1);
+	}
+
+	/**
+	 * 依 seed 建立詞彙表和 Zipf 分布
+	 */
+	private void ensureVocabulary() {
+		if (words != null) {
+			return;
+		}
+		Random random = new Random(seed);
+		String[] words = new String[vocabularySize];
+		String[] tags = new String[vocabularySize];
+		Set<String> seen = new HashSet<String>(vocabularySize * 2);
+		for (int i = 0; i < vocabularySize; i++) {
+			String word;
+			boolean latin;
+			do {
+				latin = random.nextDouble() < latinRatio;
+				word = latin ? latinWord(random) : cjkWord(random);
+			} while (!seen.add(word));
+			words[i] = word;
+			tags[i] = latin ? LATIN_TAG : CJK_TAGS[random.nextInt(CJK_TAGS.length)];
+		}
+
+		double[] cumulative = new double[vocabularySize];
+		double sum = 0;
+		for (int i = 0; i < vocabularySize; i++) {
+			sum += 1.0 / Math.pow(i + 1, zipfExponent);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < vocabularySize; i++) {
+			cumulative[i] /= sum;
+		}
+
+		this.tags = tags;
+		this.cumulative = cumulative;
+		this.words = words;
+	}
+
+	/**
+	 * 一到四個字的中文詞，兩個字的最多
+	 */
+	private static String cjkWord(Random random) {
+		int k = random.nextInt(20);
+		int length = k < 6 ? 1 : k < 16 ? 2 : k < 19 ? 3 : 4;
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) (0x4E00 + random.nextInt(0x9FA5 - 0x4E00 + 1)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 二到十個字母的英文詞
+	 */
+	private static String latinWord(Random random) {
+		int length = 2 + random.nextInt(9);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+}
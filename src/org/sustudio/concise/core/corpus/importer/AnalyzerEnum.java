@@ -24,26 +24,37 @@ public enum AnalyzerEnum {
 		return label;
 	}
 	
+	/**
+	 * 使用者詞庫改變時不重建 MMSegAnalyzer，只換掉共用詞典的內容。
+	 */
 	public Analyzer getAnalyzer() {
-		switch(this) {
+		return getAnalyzer(this);
+	}
+	
+	private static synchronized Analyzer getAnalyzer(AnalyzerEnum type) {
+		switch(type) {
 		case MMSegComplex:	
 			if (analyzer == null || 
 				!(analyzer instanceof MMSegAnalyzer) || 
-				((MMSegAnalyzer) analyzer).getSegEnum() != MMSeg.Complex ||
-				((MMSegAnalyzer) analyzer).getUserDictFiles() != CCPrefs.userDictionaries)
+				((MMSegAnalyzer) analyzer).getSegEnum() != MMSeg.Complex)
 			{
 				analyzer = new MMSegAnalyzer(MMSeg.Complex, CCPrefs.userDictionaries);
 			}
+			else {
+				((MMSegAnalyzer) analyzer).setUserDictFiles(CCPrefs.userDictionaries);
+			}
 			return analyzer;
 			
 		case MMSegSimple:		
 			if (analyzer == null || 
 				!(analyzer instanceof MMSegAnalyzer) ||
-				((MMSegAnalyzer) analyzer).getSegEnum() != MMSeg.Simple ||
-				((MMSegAnalyzer) analyzer).getUserDictFiles() != CCPrefs.userDictionaries)
+				((MMSegAnalyzer) analyzer).getSegEnum() != MMSeg.Simple)
 			{
 				analyzer = new MMSegAnalyzer(MMSeg.Simple, CCPrefs.userDictionaries);
 			}
+			else {
+				((MMSegAnalyzer) analyzer).setUserDictFiles(CCPrefs.userDictionaries);
+			}
 			return analyzer;
 		/*
 		case SmartChinese:		
@@ -50,4 +50,15 @@ public class ContentField extends Field {
 		super(name, stream, TYPE_NOT_STORED);
 	}
 	
+	/**
+	 * 用 <code>stream</code> 建立索引，同時儲存 <code>value</code>（顯示用）
+	 * @param name
+	 * @param value		儲存的內容
+	 * @param stream	索引用的 token，offset 要對應到 <code>value</code>
+	 */
+	public ContentField(String name, String value, TokenStream stream) {
+		super(name, value, TYPE_STORED);
+		setTokenStream(stream);
+	}
+	
 }
@@ -10,7 +10,7 @@ import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.concordance.PartOfSpeechAttribute;
 
-public class ImportPOSFilter extends TokenFilter {
+public final class ImportPOSFilter extends TokenFilter {
 	
 	private final String posSeperator;
 	private CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
@@ -0,0 +1,109 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.concordance.PartOfSpeechAttribute;
+
+/**
+ * 匯入時已經知道每個詞在內容中的位置，直接產生和 {@link ImportPOSAnalyzer} 相同的 token，
+ * 不必再把整份內容斷一次詞。
+ * <p>和 {@link ImportPOSFilter} 一樣，每個詞先輸出含詞性的原詞，
+ * 再在同一個位置輸出去掉詞性的詞（offset 只涵蓋詞的部分）。</p>
+ * 
+ * @author Kuan-ming Su
+ *
+ */
+public final class ImportTokenStream extends TokenStream {
+	
+	private final String content;
+	private final int[] offsets;
+	private final int numTokens;
+	private final String posSeperator;
+	
+	private final CharTermAttribute termAttr = addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offAttr = addAttribute(OffsetAttribute.class);
+	private final PartOfSpeechAttribute posAttr = addAttribute(PartOfSpeechAttribute.class);
+	private final PositionIncrementAttribute posIncrAttr = addAttribute(PositionIncrementAttribute.class);
+	
+	private int index = 0;
+	private boolean hasOriginal = false;
+	
+	/**
+	 * @param content	內容
+	 * @param offsets	每個詞在 <code>content</code> 中的開始和結束位置，依序排列，詞裡面不能有空白
+	 * @param numTokens	詞數
+	 */
+	public ImportTokenStream(String content, int[] offsets, int numTokens) {
+		this(content, offsets, numTokens, Config.SYSTEM_POS_SEPERATOR);
+	}
+	
+	public ImportTokenStream(String content, int[] offsets, int numTokens, String posSeperator) {
+		this.content = content;
+		this.offsets = offsets;
+		this.numTokens = numTokens;
+		this.posSeperator = posSeperator;
+	}
+	
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (hasOriginal) {
+			int start = offsets[index * 2 - 2];
+			int end = offsets[index * 2 - 1];
+			int splitterPosition = indexOfSeperator(start, end);
+			if (splitterPosition != -1) 
+			{
+				// add part-of-speech attribute
+				posAttr.setPartOfSpeech(content.substring(splitterPosition + posSeperator.length(), end));
+				termAttr.setLength(splitterPosition - start);
+				offAttr.setOffset(start, splitterPosition);
+			}
+			posIncrAttr.setPositionIncrement(0);  // used in phrase searching
+			hasOriginal = false;
+			return true;
+		}
+		if (index < numTokens) {
+			clearAttributes();
+			int start = offsets[index * 2];
+			int end = offsets[index * 2 + 1];
+			termAttr.setEmpty().append(content, start, end);
+			offAttr.setOffset(start, end);
+			posIncrAttr.setPositionIncrement(1);
+			index++;
+			hasOriginal = true;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 只在詞的範圍內找詞性分隔符號（沒有詞性的內容不會一路找到文件結尾）
+	 * @return 分隔符號的位置，找不到則為 -1
+	 */
+	private int indexOfSeperator(int start, int end) {
+		int last = end - posSeperator.length();
+		for (int i = start; i <= last; i++) {
+			if (content.startsWith(posSeperator, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public void end() throws IOException {
+		super.end();
+		offAttr.setOffset(content.length(), content.length());
+	}
+	
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		index = 0;
+		hasOriginal = false;
+	}
+}
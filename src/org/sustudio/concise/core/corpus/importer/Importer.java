@@ -4,17 +4,31 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.tika.Tika;
 import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.Config;
@@ -22,6 +36,8 @@ import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
 import org.sustudio.concise.core.corpus.DocumentWriter;
 
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 
 /**
@@ -37,10 +53,14 @@ import edu.stanford.nlp.tagger.maxent.MaxentTagger;
  */
 public class Importer extends DocumentWriter {
 	
+	/** {@link ImportPOSAnalyzer} 的 WhitespaceTokenizer 會把這麼長的詞截斷 */
+	private static final int MAX_TOKEN_LENGTH = 255 - 1;
+	
 	private MaxentTagger posTagger;
 	private Analyzer indexAnalyzer;
 	private int fileCount = 0;
 	private boolean copyFiles = true;
+	private ExecutorService taggingExecutor;
 	
 	/**
 	 * default constructor.
@@ -72,6 +92,14 @@ public class Importer extends DocumentWriter {
 		return copyFiles;
 	}
 
+	/**
+	 * 設定詞性標注用的 executor，null（預設）表示用 {@link TaggingService} 預設的 executor
+	 * @param taggingExecutor
+	 */
+	public void setTaggingExecutor(ExecutorService taggingExecutor) {
+		this.taggingExecutor = taggingExecutor;
+	}
+	
 	/**
 	 * close Importer.
 	 * @throws IOException
@@ -92,50 +120,320 @@ public class Importer extends DocumentWriter {
 		}
 		else {
 			if (posTagger == null) {
-				posTagger = new MaxentTagger(CCPrefs.POS_TAGGER_MODEL);
+				posTagger = TaggingService.getTagger(CCPrefs.POS_TAGGER_MODEL);
 			}
 			indexAnalyzer = CCPrefs.rawDocAnalyzer.getAnalyzer();
 		}
 		
-		StringBuilder buffer = new StringBuilder();
-		StringBuilder paraBuffer = new StringBuilder();
-		int countParas = 0;
+		TaggedContent tagged = tagContent(file, indexAnalyzer, posTagger);
+		writeDocument(file, isTokenized, tagged);
+	}
+	
+	/**
+	 * 平行匯入多個檔案。
+	 * <p>剖析、斷詞和詞性標注由 <code>numThreads</code> 個 worker 同時進行，
+	 * 每個 worker 有自己的斷詞器，POS tagger 則是共用的（見 {@link TaggingService}）；寫入 index 仍然由呼叫端依照檔案順序進行，
+	 * 所以文件在 index 中的順序和檔案複製的結果跟逐一呼叫 {@link #indexFile(File, boolean)} 相同。</p>
+	 * <p>同時在處理中的檔案最多只有 <code>numThreads * 2</code> 個，以免大量檔案塞爆記憶體。</p>
+	 * 
+	 * @param files			要匯入的檔案
+	 * @param isTokenized	檔案是否已經斷詞
+	 * @param numThreads	worker 數量，小於 2 時等同逐一匯入
+	 * @throws Exception	任一檔案匯入失敗時丟出該檔案的 exception，後面的檔案不會再匯入
+	 */
+	public void indexFiles(Collection<File> files, final boolean isTokenized, int numThreads) throws Exception {
+		if (numThreads < 2 || files.size() < 2) {
+			for (File file : files) {
+				indexFile(file, isTokenized);
+			}
+			return;
+		}
+		
+		final Analyzer analyzer = isTokenized ? 
+								  new WhitespaceAnalyzer(Config.LUCENE_VERSION) : 
+								  CCPrefs.rawDocAnalyzer.getAnalyzer();
+		final MaxentTagger tagger = isTokenized ? null : TaggingService.getTagger(CCPrefs.POS_TAGGER_MODEL);
+		
+		final int maxPending = numThreads * 2;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		Deque<File> pendingFiles = new ArrayDeque<File>(maxPending);
+		Deque<Future<TaggedContent>> pending = new ArrayDeque<Future<TaggedContent>>(maxPending);
+		try {
+			Iterator<File> iter = files.iterator();
+			while (iter.hasNext() || !pending.isEmpty()) {
+				while (iter.hasNext() && pending.size() < maxPending) {
+					final File file = iter.next();
+					pendingFiles.add(file);
+					pending.add(executor.submit(new Callable<TaggedContent>() {
+						@Override
+						public TaggedContent call() throws Exception {
+							return tagContent(file, analyzer, tagger);
+						}
+					}));
+				}
+				
+				TaggedContent tagged;
+				try {
+					tagged = pending.poll().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+				writeDocument(pendingFiles.poll(), isTokenized, tagged);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * 剖析檔案內容、斷詞並進行詞性標注
+	 * <p>每個詞直接寫進內容中，同時記下它的位置，寫入 index 時就不必再斷一次詞
+	 * （見 {@link TaggedContent#tokenOffsets}）。
+	 * 需要詞性標注時，整份文件的段落斷完詞後才交給 {@link TaggingService} 分批同時標注。</p>
+	 * <p>{@link CCPrefs#PARALLEL_SEGMENTATION_ENABLED} 而且用 {@link MMSegAnalyzer} 時，
+	 * 整份文件一次交給 {@link ParallelMMSegTokenizer} 斷詞（見 {@link #tokenizeDocument(ParagraphIterator, Analyzer, ContentBuilder)}），
+	 * 否則逐段斷詞；兩者的結果相同。</p>
+	 * @param file			要剖析的檔案
+	 * @param analyzer		斷詞用的 analyzer
+	 * @param posTagger		POS tagger，如果是已經斷詞的檔案則為 null
+	 * @return 標注過的內容
+	 * @throws Exception
+	 */
+	protected TaggedContent tagContent(File file, Analyzer analyzer, MaxentTagger posTagger) throws Exception {
+		ContentBuilder content = new ContentBuilder(posTagger);
 		
 		Reader reader = new Tika().parse(file);
 		ParagraphIterator iter = new ParagraphIterator(reader);
+		if (CCPrefs.PARALLEL_SEGMENTATION_ENABLED && analyzer instanceof MMSegAnalyzer) {
+			tokenizeDocument(iter, analyzer, content);
+		}
+		else {
+			while (iter.hasMoreParagraphs()) {
+				String para = iter.nextParagraph();
+				
+				TokenStream tokenStream = analyzer.tokenStream(null, new StringReader(para));
+				CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+				tokenStream.reset();
+				while (tokenStream.incrementToken()) {
+					content.addToken(termAttr);
+				}
+				tokenStream.end();
+				tokenStream.close();
+				content.endParagraph();
+			}
+		}
+		reader.close();
+		
+		return content.build();
+	}
+	
+	/**
+	 * 把所有段落以換行接起來一次斷詞，讓 {@link ParallelMMSegTokenizer} 可以同時處理很大的文件，
+	 * 再依詞的 offset 分回各個段落。換行是安全的切點，詞不會跨過它，所以去掉換行本身以後，結果和逐段斷詞相同。
+	 */
+	private static void tokenizeDocument(ParagraphIterator iter, Analyzer analyzer, ContentBuilder content) throws IOException {
+		StringBuilder text = new StringBuilder();
+		int[] paraEnds = new int[16];
+		int numParas = 0;
 		while (iter.hasMoreParagraphs()) {
-			String para = iter.nextParagraph();
-			
-			TokenStream tokenStream = indexAnalyzer.tokenStream(null, new StringReader(para));
-			CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
-			tokenStream.reset();
-			paraBuffer.setLength(0);
-			while (tokenStream.incrementToken()) {
-				paraBuffer.append(termAttr.toString() + " ");
+			text.append(iter.nextParagraph());
+			paraEnds = ArrayUtil.grow(paraEnds, numParas + 1);
+			paraEnds[numParas++] = text.length();
+			text.append('\n');
+		}
+		
+		TokenStream tokenStream = analyzer.tokenStream(null, new StringReader(text.toString()));
+		text = null;
+		CharTermAttribute termAttr = tokenStream.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offsetAttr = tokenStream.addAttribute(OffsetAttribute.class);
+		int para = 0;
+		tokenStream.reset();
+		while (tokenStream.incrementToken()) {
+			int start = offsetAttr.startOffset();
+			if (para < numParas && start == paraEnds[para]) {
+				// 段落之間加上的換行（MMSeg 會把它當成一個詞）
+				continue;
 			}
-			
-			String taggedParagraph = paraBuffer.toString();
+			while (para < numParas - 1 && start > paraEnds[para]) {
+				content.endParagraph();
+				para++;
+			}
+			content.addToken(termAttr);
+		}
+		tokenStream.end();
+		tokenStream.close();
+		for (; para < numParas; para++) {
+			content.endParagraph();
+		}
+	}
+	
+	/**
+	 * 逐段累積斷詞的結果，最後（需要的話）進行詞性標注，產生 {@link TaggedContent}
+	 */
+	private class ContentBuilder {
+		private final MaxentTagger posTagger;
+		private StringBuilder buffer = new StringBuilder();
+		private int[] offsets = new int[1024];
+		private int numTokens = 0;
+		private boolean plainTokens = true;
+		private List<List<Word>> sentences = new ArrayList<List<Word>>();
+		private List<Word> sentence;
+		private int countParas = 0;
+		
+		ContentBuilder(MaxentTagger posTagger) {
+			this.posTagger = posTagger;
+			this.sentence = posTagger != null ? new ArrayList<Word>() : null;
+		}
+		
+		void addToken(CharTermAttribute termAttr) {
+			if (posTagger == null) {
+				if (numTokens * 2 == offsets.length) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				plainTokens &= appendToken(buffer, termAttr, null, offsets, numTokens++);
+			}
+			else {
+				sentence.add(new Word(termAttr.toString()));
+			}
+		}
+		
+		void endParagraph() {
 			if (posTagger != null) {
-				taggedParagraph = posTagger.tagTokenizedString(taggedParagraph);
-				// 轉回半形
-				taggedParagraph = toAscii(taggedParagraph);
+				sentences.add(sentence);
+				sentence = new ArrayList<Word>();
+			}
+			else {
+				buffer.append('\n');
 			}
-			taggedParagraph = taggedParagraph.replace(CCPrefs.POS_TAGGER_SEPARATOR, Config.SYSTEM_POS_SEPERATOR);
-			buffer.append(taggedParagraph + "\n");
 			countParas++;
-			tokenStream.close();
 		}
-		paraBuffer.setLength(0);
-		paraBuffer = null;
 		
-		StringTokenizer st = new StringTokenizer(buffer.toString(), " \n");
-		int numWords = st.countTokens();
+		TaggedContent build() throws Exception {
+			if (posTagger != null) {
+				for (List<TaggedWord> sentence : new TaggingService(posTagger, taggingExecutor).tagSentences(sentences)) {
+					for (TaggedWord word : sentence) {
+						if (numTokens * 2 == offsets.length) {
+							offsets = Arrays.copyOf(offsets, offsets.length * 2);
+						}
+						plainTokens &= appendToken(buffer, word.word(), word.tag(), offsets, numTokens++);
+					}
+					buffer.append('\n');
+				}
+				sentences = null;
+			}
+			
+			String content = buffer.toString();
+			buffer = null;
+			
+			if (!plainTokens) {
+				// 詞裡面有空白或是太長，只能交給 ImportPOSAnalyzer 重新斷詞
+				StringTokenizer st = new StringTokenizer(content, " \n");
+				return new TaggedContent(content, st.countTokens(), countParas);
+			}
+			return new TaggedContent(content, numTokens, countParas, offsets);
+		}
+	}
+	
+	/**
+	 * 把一個詞（和詞性）加到內容後面，詞性分隔換成 {@link Config#SYSTEM_POS_SEPERATOR}，
+	 * 有詞性時全形轉回半形，結果和原本整段處理的相同
+	 * @param buffer	內容
+	 * @param word		詞
+	 * @param tag		詞性，已經斷詞的檔案則為 null
+	 * @param offsets	記錄詞的開始和結束位置
+	 * @param index		第幾個詞
+	 * @return 這個詞是否可以直接當成 {@link ImportPOSAnalyzer} 的一個 token（沒有空白、不會被截斷）
+	 */
+	private static boolean appendToken(StringBuilder buffer, CharSequence word, String tag, int[] offsets, int index) {
+		int start = buffer.length();
+		if (tag == null) {
+			buffer.append(word);
+		}
+		else {
+			for (int i = 0; i < word.length(); i++) {
+				buffer.append(toAscii(word.charAt(i)));
+			}
+			buffer.append(CCPrefs.POS_TAGGER_SEPARATOR).append(toAscii(tag));
+		}
+		
+		String separator = CCPrefs.POS_TAGGER_SEPARATOR;
+		int idx = buffer.indexOf(separator, start);
+		while (idx != -1) {
+			buffer.replace(idx, idx + separator.length(), Config.SYSTEM_POS_SEPERATOR);
+			idx = buffer.indexOf(separator, idx + Config.SYSTEM_POS_SEPERATOR.length());
+		}
+		
+		int end = buffer.length();
+		buffer.append(' ');
+		offsets[index * 2] = start;
+		offsets[index * 2 + 1] = end;
 		
-		writeDocument(file, isTokenized, buffer.toString(), numWords, countParas);
+		if (end == start || end - start >= MAX_TOKEN_LENGTH) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (Character.isWhitespace(buffer.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 斷詞、標注後的文件內容
+	 */
+	protected static class TaggedContent {
+		public final String content;
+		public final int numWords;
+		public final int numParas;
+		
+		/** 
+		 * 每個詞在 <code>content</code> 中的開始和結束位置（共 <code>numWords</code> 組），
+		 * null 表示要用 {@link ImportPOSAnalyzer} 重新斷詞
+		 */
+		public final int[] tokenOffsets;
 		
-		buffer.setLength(0);
-		buffer = null;
+		public TaggedContent(String content, int numWords, int numParas) {
+			this(content, numWords, numParas, null);
+		}
 		
+		public TaggedContent(String content, int numWords, int numParas, int[] tokenOffsets) {
+			this.content = content;
+			this.numWords = numWords;
+			this.numParas = numParas;
+			this.tokenOffsets = tokenOffsets;
+		}
+	}
+	
+	/** 全形字元（排序過）和對應的半形字元，逗號不管 */
+	private static final char[] FULL_WIDTH_CHARS;
+	private static final char[] HALF_WIDTH_CHARS;
+	
+	static {
+		String asciiTable = ". !\"#$%&'()*+-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^_`abcdefghijklmnopqrstuvwxyz{|}~";
+		String fullTable = "．　！”＃＄％＆’（）＊＋－‧／０１２３４５６７８９：；＜＝＞？＠ＡＢＣＤＥＦＧＨＩＪＫＬＭＮＯＰＱＲＳＴＵＶＷＸＹＺ〔＼〕︿＿｀ａｂｃｄｅｆｇｈｉｊｋｌｍｎｏｐｑｒｓｔｕｖｗｘｙｚ｛｜｝～";
+		FULL_WIDTH_CHARS = fullTable.toCharArray();
+		Arrays.sort(FULL_WIDTH_CHARS);
+		HALF_WIDTH_CHARS = new char[FULL_WIDTH_CHARS.length];
+		for (int i = 0; i < FULL_WIDTH_CHARS.length; i++) {
+			HALF_WIDTH_CHARS[i] = asciiTable.charAt(fullTable.indexOf(FULL_WIDTH_CHARS[i]));
+		}
+	}
+	
+	/**
+	 * 把全形轉回半形（逗號不管）
+	 * @param c
+	 * @return
+	 */
+	private static char toAscii(char c) {
+		if (c < FULL_WIDTH_CHARS[0]) {
+			return c;
+		}
+		int idx = Arrays.binarySearch(FULL_WIDTH_CHARS, c);
+		return idx >= 0 ? HALF_WIDTH_CHARS[idx] : c;
 	}
 	
 	/**
@@ -143,27 +441,29 @@ public class Importer extends DocumentWriter {
 	 * @param text
 	 * @return
 	 */
-	private String toAscii(String text) {  
-		  
-		String asciiTable = ". !\"#$%&'()*+-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^_`abcdefghijklmnopqrstuvwxyz{|}~";
-		String fullTable = "．　！”＃＄％＆’（）＊＋－‧／０１２３４５６７８９：；＜＝＞？＠ＡＢＣＤＥＦＧＨＩＪＫＬＭＮＯＰＱＲＳＴＵＶＷＸＹＺ〔＼〕︿＿｀ａｂｃｄｅｆｇｈｉｊｋｌｍｎｏｐｑｒｓｔｕｖｗｘｙｚ｛｜｝～";
-		
-		StringBuilder buffer = new StringBuilder();
-		for (int i = 0; i < text.length(); i++) {
-			char c = text.charAt(i);
-			int fullChar = fullTable.indexOf(c);
-			if (fullChar > -1) {
-				c = asciiTable.charAt(fullChar);
-			}
-			buffer.append(c);
-		  }
-		  
-	return buffer.toString();
-		 
+	private static String toAscii(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = toAscii(chars[i]);
+		}
+		return new String(chars);
 	}
 	
 	
 	protected Document writeDocument(File sourceFile, boolean isTokenized, String content, int numWords, int numParas) throws IOException {
+		return writeDocument(sourceFile, isTokenized, new TaggedContent(content, numWords, numParas));
+	}
+	
+	/**
+	 * 寫入一份文件。有 {@link TaggedContent#tokenOffsets} 時直接用 {@link ImportTokenStream} 建立索引，
+	 * 內容仍然儲存起來顯示用。
+	 * @param sourceFile	原始檔案
+	 * @param isTokenized	檔案是否已經斷詞
+	 * @param tagged		斷詞、標注後的內容
+	 * @return 寫入的文件
+	 * @throws IOException
+	 */
+	protected Document writeDocument(File sourceFile, boolean isTokenized, TaggedContent tagged) throws IOException {
 		final File targetFile;
 		if (copyFiles) {
 			// copy sourceFile to ORIGINAL folder
@@ -180,21 +480,29 @@ public class Importer extends DocumentWriter {
 						ConciseField.TITLE.field(), 
 						sourceFile.getName(), 
 						Store.YES));
-		doc.add(new ContentField(
-						ConciseField.CONTENT.field(), 
-						content, 
-						Store.YES));
+		if (tagged.tokenOffsets != null) {
+			doc.add(new ContentField(
+							ConciseField.CONTENT.field(),
+							tagged.content,
+							new ImportTokenStream(tagged.content, tagged.tokenOffsets, tagged.numWords)));
+		}
+		else {
+			doc.add(new ContentField(
+							ConciseField.CONTENT.field(), 
+							tagged.content, 
+							Store.YES));
+		}
 		doc.add(new StringField(
 						ConciseField.FILENAME.field(),
 						targetFile.getName(),
 						Store.YES));
 		doc.add(new IntField(
 						ConciseField.NUM_WORDS.field(),
-						numWords, 
+						tagged.numWords, 
 						Store.YES));
 		doc.add(new IntField(
 						ConciseField.NUM_PARAGRAPHS.field(), 
-						numParas, 
+						tagged.numParas, 
 						Store.YES));
 		doc.add(new IntField(
 						ConciseField.IS_TOKENIZED.field(),
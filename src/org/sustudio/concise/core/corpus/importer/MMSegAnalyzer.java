@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.Reader;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.sustudio.concise.core.CCPrefs;
+
 import com.chenlb.mmseg4j.ComplexSeg;
 import com.chenlb.mmseg4j.Dictionary;
 import com.chenlb.mmseg4j.MaxWordSeg;
@@ -21,7 +23,7 @@ public class MMSegAnalyzer extends Analyzer {
 	public enum MMSeg { MaxWord, Complex, Simple; }
 	
 	private final MMSeg mmSeg;
-	private final Seg seg;
+	private final Dictionary dic;
 	
 	/**
 	 * @see Dictionary#getInstance()
@@ -30,31 +32,61 @@ public class MMSegAnalyzer extends Analyzer {
 		this(MMSeg.Complex, null);
 	}
 	
+	/**
+	 * 預設的詞典是共用的，使用者詞庫和目前的不同時會換掉（所有用這個詞典的 analyzer 都會一起換）。
+	 * @param segEnum
+	 * @param userDictFiles
+	 */
 	public MMSegAnalyzer(MMSeg segEnum, File[] userDictFiles) {
 		// default dictionaries
-		Dictionary.clear(Dictionary.getDefalutPath());
-		Dictionary.userDict = userDictFiles;
-		Dictionary dic = Dictionary.getInstance();
+		this.dic = Dictionary.getInstance(Dictionary.getDefalutPath(), userDictFiles);
 		this.mmSeg = segEnum;
-		switch (segEnum) {
+	}
+	
+	/**
+	 * 每個 TokenStreamComponents 都要有自己的 Seg，因為 ComplexSeg 的規則物件並不是 thread-safe 。
+	 * @return 新的 Seg
+	 */
+	protected Seg newSeg() {
+		switch (mmSeg) {
 			default:		
-			case Complex:	seg = new ComplexSeg(dic);	break;
-			case Simple:	seg = new SimpleSeg(dic);	break;
-			case MaxWord:	seg = new MaxWordSeg(dic);	break;
+			case Complex:	return new ComplexSeg(dic);
+			case Simple:	return new SimpleSeg(dic);
+			case MaxWord:	return new MaxWordSeg(dic);
 		}
 	}
 	
 	public File[] getUserDictFiles() {
-		return Dictionary.userDict;
+		return dic.getUserDictFiles();
+	}
+	
+	/**
+	 * 換使用者詞庫，不需要重建 analyzer；和目前的一樣就什麼都不做。
+	 * 已經建立的 tokenizer 下一個句子就會用新的詞庫。
+	 * @param userDictFiles
+	 */
+	public void setUserDictFiles(File[] userDictFiles) {
+		dic.setUserDictFiles(userDictFiles);
+	}
+	
+	public Dictionary getDictionary() {
+		return dic;
 	}
 	
 	public MMSeg getSegEnum() {
 		return mmSeg;
 	}
 	
+	/**
+	 * {@link CCPrefs#PARALLEL_SEGMENTATION_ENABLED} 時大文件會分段同時斷詞，結果和逐一斷詞相同。
+	 * @see ParallelMMSegTokenizer
+	 */
 	@Override
 	protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
-		return new TokenStreamComponents(new MMSegTokenizer(seg, reader));
+		if (CCPrefs.PARALLEL_SEGMENTATION_ENABLED) {
+			return new TokenStreamComponents(new ParallelMMSegTokenizer(this, reader));
+		}
+		return new TokenStreamComponents(new MMSegTokenizer(newSeg(), reader));
 	}
 	
 }
@@ -18,7 +18,7 @@ import com.chenlb.mmseg4j.Word;
  * @author Kuan-ming Su
  *
  */
-public class MMSegTokenizer extends Tokenizer {
+public final class MMSegTokenizer extends Tokenizer {
 
 	private MMSeg mmSeg;
 	
@@ -53,7 +53,7 @@ public class MMSegTokenizer extends Tokenizer {
 		Word word = mmSeg.next();
 		if(word != null) {
 			termAtt.copyBuffer(word.getSen(), word.getWordOffset(), word.getLength());
-			offsetAtt.setOffset(word.getStartOffset(), word.getEndOffset());
+			offsetAtt.setOffset(correctOffset(word.getStartOffset()), correctOffset(word.getEndOffset()));
 			typeAtt.setType(word.getType());
 			return true;
 		} else {
@@ -62,4 +62,15 @@ public class MMSegTokenizer extends Tokenizer {
 			return false;
 		}
 	}
+	
+	/**
+	 * 最後的 offset 是讀進來的字元數
+	 * Added by Kuan-ming Su.
+	 */
+	@Override
+	public void end() throws IOException {
+		super.end();
+		int finalOffset = correctOffset(mmSeg.getReadCount());
+		offsetAtt.setOffset(finalOffset, finalOffset);
+	}
 }
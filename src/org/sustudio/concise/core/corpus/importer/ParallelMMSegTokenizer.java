@@ -0,0 +1,291 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+import com.chenlb.mmseg4j.MMSeg;
+import com.chenlb.mmseg4j.Seg;
+import com.chenlb.mmseg4j.Word;
+
+/**
+ * 把很大的一份文件切成幾段，在 fork-join pool 上同時斷詞的 Tokenizer。
+ * <p>一次讀入 {@link #WINDOW_SIZE} 個字元，在「安全」的位置切開：換行或全形的句號、驚嘆號、問號、分號之後。
+ * 這些字元 {@link MMSeg} 一定會單獨斷成一個詞，前面的字也不會往後讀過它，
+ * 所以從它後面重新開始斷詞的結果和一路斷下來完全相同。
+ * 各段的詞依照原來的順序送出，offset 加上該段在整份文件中的位置。</p>
+ * <p>太短或找不到切點時就在目前的 thread 逐一斷詞。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public final class ParallelMMSegTokenizer extends Tokenizer {
+
+	/** 每次讀入的字元數（找不到切點時會加大） */
+	static final int WINDOW_SIZE = 1 << 20;
+
+	/** 每一段最少的字元數 */
+	static final int MIN_CHUNK_SIZE = 1 << 16;
+
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	private final MMSegAnalyzer analyzer;
+	private final Seg seg;
+
+	private final CharTermAttribute termAtt;
+	private final OffsetAttribute offsetAtt;
+	private final TypeAttribute typeAtt;
+
+	private char[] buffer = new char[WINDOW_SIZE];
+	/** buffer 中有效的字元數 */
+	private int length;
+	/** buffer[0] 在整份文件中的位置 */
+	private int bufferOffset;
+	private boolean eof;
+
+	/** 目前這一批斷好的段落 */
+	private List<Chunk> chunks = new ArrayList<Chunk>();
+	private int chunkIndex;
+	private int wordIndex;
+
+	public ParallelMMSegTokenizer(MMSegAnalyzer analyzer, Reader input) {
+		super(input);
+		this.analyzer = analyzer;
+		this.seg = analyzer.newSeg();
+
+		termAtt = addAttribute(CharTermAttribute.class);
+		offsetAtt = addAttribute(OffsetAttribute.class);
+		typeAtt = addAttribute(TypeAttribute.class);
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		length = 0;
+		bufferOffset = 0;
+		eof = false;
+		chunks.clear();
+		chunkIndex = 0;
+		wordIndex = 0;
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		clearAttributes();
+		while (chunkIndex == chunks.size() || wordIndex == chunks.get(chunkIndex).words.size()) {
+			if (chunkIndex < chunks.size()) {
+				chunkIndex++;
+				wordIndex = 0;
+			}
+			else if (!segmentNextWindow()) {
+				return false;
+			}
+		}
+		Chunk chunk = chunks.get(chunkIndex);
+		Word word = chunk.words.get(wordIndex++);
+		termAtt.copyBuffer(word.getSen(), word.getWordOffset(), word.getLength());
+		offsetAtt.setOffset(correctOffset(chunk.offset + word.getStartOffset()),
+							correctOffset(chunk.offset + word.getEndOffset()));
+		typeAtt.setType(word.getType());
+		return true;
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		int finalOffset = correctOffset(bufferOffset + length);
+		offsetAtt.setOffset(finalOffset, finalOffset);
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		chunks.clear();
+	}
+
+	/**
+	 * 讀入下一批文字，切段、斷詞
+	 * @return 沒有文字了就傳回 false
+	 */
+	private boolean segmentNextWindow() throws IOException {
+		// 丟掉上一批已經斷完的
+		int consumed = chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).end;
+		System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+		length -= consumed;
+		bufferOffset += consumed;
+		chunks.clear();
+		chunkIndex = 0;
+		wordIndex = 0;
+
+		int end;
+		while (true) {
+			fill();
+			if (eof) {
+				end = length;
+				break;
+			}
+			end = lastBoundary(0, length);
+			if (end > 0) {
+				break;
+			}
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);	// 整個 buffer 都沒有切點
+		}
+		if (end == 0) {
+			return false;
+		}
+
+		int numChunks = Math.max(1, Math.min(pool.getParallelism(), end / MIN_CHUNK_SIZE));
+		int chunkSize = end / numChunks;
+		int start = 0;
+		while (start < end) {
+			int chunkEnd = end;
+			if (end - start >= chunkSize + MIN_CHUNK_SIZE) {
+				chunkEnd = nextBoundary(start + chunkSize, end);
+			}
+			chunks.add(new Chunk(start, chunkEnd));
+			start = chunkEnd;
+		}
+
+		if (chunks.size() == 1) {
+			chunks.get(0).segment(seg);
+		}
+		else {
+			final List<SegmentTask> tasks = new ArrayList<SegmentTask>(chunks.size());
+			for (Chunk chunk : chunks) {
+				tasks.add(new SegmentTask(chunk));
+			}
+			try {
+				pool.invoke(new RecursiveAction() {
+					private static final long serialVersionUID = 6232071426862613781L;
+
+					@Override
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+			} catch (RuntimeException e) {
+				for (Throwable t = e; t != null; t = t.getCause()) {
+					if (t instanceof IOException) {
+						throw (IOException) t;
+					}
+				}
+				throw e;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 讀到 buffer 滿或是文件結束
+	 */
+	private void fill() throws IOException {
+		while (!eof && length < buffer.length) {
+			int n = input.read(buffer, length, buffer.length - length);
+			if (n < 0) {
+				eof = true;
+			}
+			else {
+				length += n;
+			}
+		}
+	}
+
+	/**
+	 * @return [from, to) 中最後一個切點，沒有則為 from
+	 */
+	private int lastBoundary(int from, int to) {
+		for (int i = to; i > from; i--) {
+			if (isBoundary(buffer[i - 1])) {
+				return i;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * @return from 之後（含）第一個切點，沒有則為 to
+	 */
+	private int nextBoundary(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (isBoundary(buffer[i - 1])) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * 切點前面的字元：{@link MMSeg} 會把它單獨斷成一個詞（單位字除外，數字後面的單位會連在一起）
+	 */
+	private boolean isBoundary(char c) {
+		switch (c) {
+		case '\n':
+		case '\r':
+		case '。':
+		case '！':
+		case '？':
+		case '；':
+			return !analyzer.getDictionary().isUnit(c);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * buffer[start, end) 這一段和它斷出來的詞
+	 */
+	private class Chunk {
+		final int start, end;
+		/** 這一段在整份文件中的位置 */
+		final int offset;
+		List<Word> words;
+
+		Chunk(int start, int end) {
+			this.start = start;
+			this.end = end;
+			this.offset = bufferOffset + start;
+		}
+
+		void segment(Seg seg) throws IOException {
+			MMSeg mmSeg = new MMSeg(new CharArrayReader(buffer, start, end - start), seg);
+			List<Word> words = new ArrayList<Word>((end - start) / 2);
+			Word word;
+			while ((word = mmSeg.next()) != null) {
+				words.add(word);
+			}
+			this.words = words;
+		}
+	}
+
+	/**
+	 * 用自己的 Seg 斷一段（ComplexSeg 不是 thread-safe）
+	 */
+	private class SegmentTask extends RecursiveAction {
+		private static final long serialVersionUID = -2651327016440390012L;
+
+		private final Chunk chunk;
+
+		SegmentTask(Chunk chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				chunk.segment(analyzer.newSeg());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
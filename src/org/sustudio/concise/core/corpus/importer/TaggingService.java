@@ -0,0 +1,245 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sustudio.concise.core.CCPrefs;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+/**
+ * 詞性標注的服務。
+ * <p>{@link MaxentTagger} 的模型載入要好幾秒、佔用上百 MB，所以依模型路徑只載入一次，
+ * 整個程式共用（{@link #getTagger(String)}）。標注時可以多個 thread 同時使用同一個 tagger。</p>
+ * <p>{@link #tagSentences(List)} 把很多句子分成幾批，在 executor 上同時標注，
+ * 傳回的結果和句子的順序相同。預設的 executor 有 {@link CCPrefs#POS_TAGGER_THREADS} 個 thread。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public class TaggingService {
+
+	/** 每一批最少的詞數，太少的話交給其他 thread 反而比較慢 */
+	static final int MIN_BATCH_SIZE = 1000;
+
+	private static final ConcurrentMap<String, MaxentTagger> taggers = new ConcurrentHashMap<String, MaxentTagger>();
+
+	private static DefaultExecutor defaultExecutor;
+
+	/**
+	 * 預設的 executor 和正在使用它的 {@link #tagSentences(List)} 數量。
+	 * thread 數改變時舊的 executor 先退休，等所有使用者都結束後才 shutdown，
+	 * 以免正在送出工作的呼叫遇到 {@link java.util.concurrent.RejectedExecutionException}。
+	 */
+	static final class DefaultExecutor {
+		final ExecutorService service;
+		final int numThreads;
+		private int users;
+		private boolean retired;
+
+		DefaultExecutor(int numThreads) {
+			this.numThreads = numThreads;
+			this.service = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "concise-tagger-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * 傳回模型的 tagger，第一次使用時才載入
+	 * @param modelPath	模型路徑
+	 * @return 共用的 tagger
+	 */
+	public static MaxentTagger getTagger(String modelPath) {
+		MaxentTagger tagger = taggers.get(modelPath);
+		if (tagger == null) {
+			synchronized (taggers) {
+				tagger = taggers.get(modelPath);
+				if (tagger == null) {
+					tagger = new MaxentTagger(modelPath);
+					taggers.put(modelPath, tagger);
+				}
+			}
+		}
+		return tagger;
+	}
+
+	/**
+	 * 不再保留模型的 tagger（正在使用的不受影響）
+	 * @param modelPath	模型路徑
+	 */
+	public static void removeTagger(String modelPath) {
+		taggers.remove(modelPath);
+	}
+
+	/**
+	 * 取得預設的 executor，{@link CCPrefs#POS_TAGGER_THREADS} 改變時會換一個新的。
+	 * 用完一定要呼叫 {@link #releaseDefaultExecutor(DefaultExecutor)}。
+	 * @return 預設的 executor
+	 */
+	static synchronized DefaultExecutor acquireDefaultExecutor() {
+		int numThreads = Math.max(1, CCPrefs.POS_TAGGER_THREADS);
+		if (defaultExecutor == null || defaultExecutor.numThreads != numThreads) {
+			if (defaultExecutor != null) {
+				defaultExecutor.retired = true;
+				if (defaultExecutor.users == 0) {
+					defaultExecutor.service.shutdown();
+				}
+			}
+			defaultExecutor = new DefaultExecutor(numThreads);
+		}
+		defaultExecutor.users++;
+		return defaultExecutor;
+	}
+
+	/**
+	 * 不再使用 {@link #acquireDefaultExecutor()} 取得的 executor，已經退休的在沒有人使用後 shutdown
+	 * @param executor	取得的 executor
+	 */
+	static synchronized void releaseDefaultExecutor(DefaultExecutor executor) {
+		if (--executor.users == 0 && executor.retired) {
+			executor.service.shutdown();	// 已經排入的工作仍然會完成
+		}
+	}
+
+	private final MaxentTagger tagger;
+	private final ExecutorService executor;
+
+	/**
+	 * 使用共用的 tagger 和預設的 executor
+	 * @param modelPath	模型路徑
+	 */
+	public TaggingService(String modelPath) {
+		this(getTagger(modelPath));
+	}
+
+	/**
+	 * 使用預設的 executor
+	 * @param tagger
+	 */
+	public TaggingService(MaxentTagger tagger) {
+		this(tagger, null);
+	}
+
+	/**
+	 * @param tagger
+	 * @param executor	標注用的 executor，null 表示用預設的 executor（{@link CCPrefs#POS_TAGGER_THREADS} 個 thread）
+	 */
+	public TaggingService(MaxentTagger tagger, ExecutorService executor) {
+		this.tagger = tagger;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return 使用的 tagger
+	 */
+	public MaxentTagger getTagger() {
+		return tagger;
+	}
+
+	/**
+	 * 標注一個句子
+	 * @param sentence	斷好詞的句子
+	 * @return 標注的結果，空的句子傳回空的 list
+	 */
+	public List<TaggedWord> tagSentence(List<? extends HasWord> sentence) {
+		if (sentence.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return tagger.tagSentence(sentence);
+	}
+
+	/**
+	 * 標注多個句子。句子依序分成至少 {@link #MIN_BATCH_SIZE} 個詞的幾批同時標注，
+	 * 只有一批時就在目前的 thread 標注。
+	 * @param sentences	斷好詞的句子
+	 * @return 每個句子標注的結果，順序和 <code>sentences</code> 相同
+	 * @throws Exception	標注失敗時丟出該批的 exception
+	 */
+	public List<List<TaggedWord>> tagSentences(final List<? extends List<? extends HasWord>> sentences) throws Exception {
+		List<List<TaggedWord>> results = new ArrayList<List<TaggedWord>>(sentences.size());
+
+		// 依詞數分批，每批是 sentences 中的 [from, to)
+		List<int[]> batches = new ArrayList<int[]>();
+		int from = 0;
+		int batchSize = 0;
+		for (int i = 0; i < sentences.size(); i++) {
+			batchSize += sentences.get(i).size();
+			if (batchSize >= MIN_BATCH_SIZE) {
+				batches.add(new int[] { from, i + 1 });
+				from = i + 1;
+				batchSize = 0;
+			}
+		}
+		if (from < sentences.size()) {
+			if (batches.isEmpty() || batchSize >= MIN_BATCH_SIZE / 2) {
+				batches.add(new int[] { from, sentences.size() });
+			}
+			else {
+				batches.get(batches.size() - 1)[1] = sentences.size();	// 剩下的太少，併到最後一批
+			}
+		}
+
+		if (batches.size() < 2) {
+			for (List<? extends HasWord> sentence : sentences) {
+				results.add(tagSentence(sentence));
+			}
+			return results;
+		}
+
+		DefaultExecutor shared = this.executor != null ? null : acquireDefaultExecutor();
+		ExecutorService executor = shared != null ? shared.service : this.executor;
+		List<Future<List<List<TaggedWord>>>> futures = new ArrayList<Future<List<List<TaggedWord>>>>(batches.size());
+		try {
+			for (final int[] batch : batches) {
+				futures.add(executor.submit(new Callable<List<List<TaggedWord>>>() {
+					@Override
+					public List<List<TaggedWord>> call() throws Exception {
+						List<List<TaggedWord>> tagged = new ArrayList<List<TaggedWord>>(batch[1] - batch[0]);
+						for (int i = batch[0]; i < batch[1]; i++) {
+							tagged.add(tagSentence(sentences.get(i)));
+						}
+						return tagged;
+					}
+				}));
+			}
+			for (Future<List<List<TaggedWord>>> future : futures) {
+				try {
+					results.addAll(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			for (Future<List<List<TaggedWord>>> future : futures) {
+				future.cancel(true);
+			}
+			if (shared != null) {
+				releaseDefaultExecutor(shared);
+			}
+		}
+		return results;
+	}
+}
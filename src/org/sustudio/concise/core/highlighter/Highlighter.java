@@ -7,6 +7,7 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.highlight.Encoder;
 import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
@@ -44,6 +45,15 @@ public class Highlighter extends FastVectorHighlighter {
 		this.docID = docID;
 	}
 	
+	/**
+	 * 傳回 docID 所屬的 reader
+	 * @return
+	 * @throws IOException
+	 */
+	protected IndexReader getIndexReader() throws IOException {
+		return workspace.getIndexReader(INDEX.DOCUMENT);
+	}
+	
 	/**
 	 * 可以更動加載於前面的標簽，如加上顏色
 	 * @return
@@ -67,7 +77,7 @@ public class Highlighter extends FastVectorHighlighter {
 	 */
 	public String getHighlightText() throws IOException {
 		return getBestFragment(getFieldQuery(query),
-				  			   workspace.getIndexReader(INDEX.DOCUMENT),
+				  			   getIndexReader(),
 				  			   docID, 
 				  			   ConciseField.CONTENT.field(),
 				  			   1,
@@ -89,7 +99,7 @@ public class Highlighter extends FastVectorHighlighter {
 	public String[] getHighlightTexts() throws IOException {
 		return getBestFragments(
 						getFieldQuery(query),
-						workspace.getIndexReader(INDEX.DOCUMENT),
+						getIndexReader(),
 						docID,
 						ConciseField.CONTENT.field(),
 						1,
@@ -31,6 +31,25 @@ public class Keyword implements Serializable {
 	 * @param n2 the size of the reference corpus.
 	 */
 	public Keyword(String word, long f1, long f2, long n1, long n2) {
+		this.ll = logLikelihood(f1, f2, n1, n2);
+		this.YatesChiSquare = yatesChiSquare(f1, f2, n1, n2);
+				
+		this.f1 = f1;
+		this.f2 = f2;
+		this.p1 = (float) f1 / (float) n1;
+		this.p2 = (float) f2 / (float) n2;
+		this.word = word;
+	}
+	
+	/**
+	 * log-likelihood
+	 * @param f1 the frequency of the keyword in the corpus.
+	 * @param f2 the frequency of the keyword in the reference corpus.
+	 * @param n1 the size of the corpus.
+	 * @param n2 the size of the reference corpus.
+	 * @return log-likelihood
+	 */
+	public static double logLikelihood(long f1, long f2, long n1, long n2) {
 		//double c1 = 0.0;
 		//double c2 = 0.0;
 		double e1 = (double)n1 * (double) (f1+f2) / (double) (n1+n2);
@@ -39,15 +58,19 @@ public class Keyword implements Serializable {
 		double c1 = (double) f1 * Math.log((double) f1 / e1 + (f1 == 0 ? 1.0 : 0));
 		//if (f2 > 0)
 		double c2 = (double) f2 * Math.log((double) f2 / e2 + (f2 == 0 ? 1.0 : 0));
-		this.ll = 2 * (c1 + c2);
-				
-		this.YatesChiSquare = ((double)(n1+n2) * Math.pow( (Math.abs( (f1*(n2-f2)) - (f2*(n1-f1)) ) - ((double)(n1+n2)/2.0)), 2.0) )/( (double)(f1+f2) * (double)(n1-f1+n2-f2) * (double)n1 * (double)n2);
-				
-		this.f1 = f1;
-		this.f2 = f2;
-		this.p1 = (float) f1 / (float) n1;
-		this.p2 = (float) f2 / (float) n2;
-		this.word = word;
+		return 2 * (c1 + c2);
+	}
+	
+	/**
+	 * Yates' chi-square
+	 * @param f1 the frequency of the keyword in the corpus.
+	 * @param f2 the frequency of the keyword in the reference corpus.
+	 * @param n1 the size of the corpus.
+	 * @param n2 the size of the reference corpus.
+	 * @return Yates' chi-square
+	 */
+	public static double yatesChiSquare(long f1, long f2, long n1, long n2) {
+		return ((double)(n1+n2) * Math.pow( (Math.abs( (f1*(n2-f2)) - (f2*(n1-f1)) ) - ((double)(n1+n2)/2.0)), 2.0) )/( (double)(f1+f2) * (double)(n1-f1+n2-f2) * (double)n1 * (double)n2);
 	}
 	
 	public String getWord() {
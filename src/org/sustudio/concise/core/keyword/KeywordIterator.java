@@ -1,145 +1,245 @@
 package org.sustudio.concise.core.keyword;
 
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.sustudio.concise.core.CCPrefs;
 import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
-import org.sustudio.concise.core.wordlister.Word;
-import org.sustudio.concise.core.wordlister.WordIterator;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.statistics.TopKHeap;
+import org.sustudio.concise.core.wordlister.CustomPartOfSpeechDecoder;
+import org.sustudio.concise.core.wordlister.CustomPartOfSpeechEncoder;
+import org.sustudio.concise.core.wordlister.Lemma;
+import org.sustudio.concise.core.wordlister.WordListSnapshot;
 
+/**
+ * 比較 corpus 和 reference corpus 的詞表，找出關鍵詞。
+ * <p>兩邊的詞表都是依照 TermsEnum 的順序排好的 {@link WordListSnapshot}，
+ * 所以只要同時往下走一遍（sorted merge join）就能得到每個詞的 f1 和 f2，不需要到另一個索引去查詢。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
 public class KeywordIterator implements Iterator<Keyword>, Iterable<Keyword> {
 	
-	private Workspace workspace;
-	private boolean showPartOfSpeech;
-	private WordIterator wordIterator;
-	private WordIterator wordIteratorRef;
-	/* remove after debug
-	private final IndexReader reader;
+	private static final Comparator<BytesRef> termComparator = BytesRef.getUTF8SortedAsUnicodeComparator();
+
+	private final WordListSnapshot corpus;
+	private final WordListSnapshot reference;
+	/** form 不在詞表快照裡（被過濾掉的詞）時改問 reader，和 WordIterator 相同 */
+	private final IndexReader corpusReader;
 	private final IndexReader referenceReader;
-	private final WordFilter wordFilter = new WordFilter();
-	private TermsEnum termsEnum;
-	private TermsEnum referenceTermsEnum;
-	*/
-	private long corpusSumTotalTermFreq = -1;
-	private long referenceSumTotalTermFreq = -1;
+	private final long corpusSumTotalTermFreq;
+	private final long referenceSumTotalTermFreq;
+
+	private int corpusIndex = 0;
+	private int referenceIndex = 0;
+	private final BytesRef corpusTerm = new BytesRef();
+	private final BytesRef referenceTerm = new BytesRef();
+
+	/** 使用 lemma 時，form 要併到 lemma 裡頭 */
+	private HashSet<BytesRef> lemmaForms;
+	private HashMap<BytesRef, Lemma> lemmas;
+	/** 還沒有輸出的 lemma（lemma 本身不在詞表中的話，最後才輸出） */
+	private LinkedHashSet<Lemma> remainingLemmas;
+	private Iterator<Lemma> remainingLemmaIterator;
+
+	private BytesRef currentTerm;
+	private Lemma currentLemma;
+	private long currentF1;
+	private long currentF2;
+
 	private Keyword nextKeyword = null;
 	
 	public KeywordIterator(final Workspace workspace, boolean showPartOfSpeech) throws Exception {
+		corpusReader = workspace.getIndexReader(INDEX.DOCUMENT);
+		referenceReader = workspace.getIndexReader(INDEX.REFERENCE);
+		corpus = WordListSnapshot.getInstance(corpusReader, showPartOfSpeech);
+		reference = WordListSnapshot.getInstance(referenceReader, showPartOfSpeech);
+		corpusSumTotalTermFreq = corpus.getSumTotalTermFreq();
+		referenceSumTotalTermFreq = reference.getSumTotalTermFreq();
 		
-		this.workspace = workspace;
-		this.showPartOfSpeech = showPartOfSpeech;
-		/*
-		this.reader = workspace.getIndexReader();
-		this.referenceReader = workspace.getIndexReaderRef();
-		
-		Terms terms = MultiFields.getTerms(reader, 
-										   CCField.CONTENT.field());
-		Terms referenceTerms = MultiFields.getTerms(referenceReader, 
-													CCField.CONTENT.field());
-		
-		if (terms != null && referenceTerms != null) {
-			termsEnum = terms.iterator(null);
-			referenceTermsEnum = referenceTerms.iterator(null);
-			nextKeyword = readNextKeyword();
-		}
-		*/
-		wordIterator = new WordIterator(workspace, INDEX.DOCUMENT, showPartOfSpeech);
-		wordIteratorRef = new WordIterator(workspace, INDEX.REFERENCE, showPartOfSpeech);
-		if (wordIterator != null && wordIteratorRef != null) {
-			nextKeyword = readNextKeyword();
+		if (CCPrefs.LEMMA_ENABLED && CCPrefs.LEMMA_LIST != null) {
+			lemmaForms = new HashSet<BytesRef>();
+			lemmas = new HashMap<BytesRef, Lemma>();
+			remainingLemmas = new LinkedHashSet<Lemma>();
+			for (Lemma lemma : CCPrefs.LEMMA_LIST) {
+				lemmas.put(new BytesRef(CustomPartOfSpeechDecoder.decode(lemma.getWord())), lemma);
+				remainingLemmas.add(lemma);
+				for (String form : lemma.getForms()) {
+					lemmaForms.add(new BytesRef(CustomPartOfSpeechDecoder.decode(form)));
+				}
+			}
 		}
+		
+		nextKeyword = readNextKeyword();
 	}
 	
 	private Keyword readNextKeyword() {
-		try 
+		if (advance()) {
+			return new Keyword(currentWord(), 
+								 currentF1, 
+								 currentF2, 
+								 corpusSumTotalTermFreq, 
+								 referenceSumTotalTermFreq);
+		}
+		return null;
+	}
+	
+	/**
+	 * 往下走到下一個詞，結果放在 currentTerm（或 currentLemma）、currentF1 和 currentF2，不建立物件
+	 * @return 是否還有下一個詞
+	 */
+	private boolean advance() {
+		currentLemma = null;
+		while (corpusIndex < corpus.size() || referenceIndex < reference.size())
 		{
-			while (wordIterator.hasNext()) 
-			{
-				Word word = wordIterator.next();
-				long f1 = word.getTotalTermFreq();
-				long f2 = workspace.getIndexReader(INDEX.REFERENCE).totalTermFreq(word.getTerm());
-				
-				return new Keyword(word.getWord(), 
-									 f1, 
-									 f2, 
-									 getCorpusSumTotalTermFreq(), 
-									 getReferenceSumTotalTermFreq());
+			int cmp;
+			if (corpusIndex >= corpus.size()) {
+				cmp = 1;
 			}
-			
-			while (wordIteratorRef.hasNext()) {
-				Word word = wordIteratorRef.next();
-				long f1 = workspace.getIndexReader(INDEX.DOCUMENT).totalTermFreq(word.getTerm());
-				if (f1 > 0) {
-					continue;	// keyword already exists
-				}
-				
-				long f2 = word.getTotalTermFreq();
-				return new Keyword(word.getWord(), 
-									 f1, 
-									 f2, 
-									 getCorpusSumTotalTermFreq(), 
-									 getReferenceSumTotalTermFreq());
+			else if (referenceIndex >= reference.size()) {
+				cmp = -1;
+			}
+			else {
+				cmp = termComparator.compare(corpus.getTerm(corpusIndex, corpusTerm),
+											 reference.getTerm(referenceIndex, referenceTerm));
+			}
+
+			currentF1 = 0L;
+			currentF2 = 0L;
+			if (cmp <= 0) {
+				currentTerm = corpus.getTerm(corpusIndex, corpusTerm);
+				currentF1 = corpus.getTotalTermFreq(corpusIndex);
+				corpusIndex++;
+			}
+			if (cmp >= 0) {
+				currentTerm = reference.getTerm(referenceIndex, referenceTerm);
+				currentF2 = reference.getTotalTermFreq(referenceIndex);
+				referenceIndex++;
 			}
-			/*
-			BytesRef term;
-			while ( (term = termsEnum.next()) != null ) 
-			{
-				String word = term.utf8ToString();
-				if (wordFilter.accept(word)) 
-				{
-					long f1 = termsEnum.totalTermFreq();
-					long f2 = referenceReader.totalTermFreq(new Term(CCField.CONTENT.field(), term));
-					
-					return new Keyword(word, 
-										 f1, 
-										 f2, 
-										 getCorpusSumTotalTermFreq(), 
-										 getReferenceSumTotalTermFreq());
+
+			if (lemmas != null) {
+				if (lemmaForms.contains(currentTerm)) {
+					continue;	// form 會被併到 lemma 裡頭
+				}
+				Lemma lemma = lemmas.get(currentTerm);
+				if (lemma != null) {
+					remainingLemmas.remove(lemma);
+					currentF1 += sumFormFreq(corpus, corpusReader, lemma);
+					currentF2 += sumFormFreq(reference, referenceReader, lemma);
 				}
 			}
-			
-			while ( (term = referenceTermsEnum.next()) != null ) 
-			{
-				String word = term.utf8ToString();
-				if (wordFilter.accept(word)) 
-				{
-					long f1 = reader.totalTermFreq(new Term(CCField.CONTENT.field(), term));
-					if (f1 > 0) {
-						continue;	// keyword already exists
-					}
-					
-					long f2 = referenceTermsEnum.totalTermFreq();
-					return new Keyword(word, 
-										 f1, 
-										 f2, 
-										 getCorpusSumTotalTermFreq(), 
-										 getReferenceSumTotalTermFreq());
+			return true;
+		}
+
+		// 處理沒有在詞表中的 Lemma
+		if (lemmas != null) {
+			if (remainingLemmaIterator == null) {
+				remainingLemmaIterator = remainingLemmas.iterator();
+			}
+			while (remainingLemmaIterator.hasNext()) {
+				Lemma lemma = remainingLemmaIterator.next();
+				currentF1 = sumFormFreq(corpus, corpusReader, lemma);
+				currentF2 = sumFormFreq(reference, referenceReader, lemma);
+				if (currentF1 + currentF2 == 0) {
+					continue;
 				}
+				currentLemma = lemma;
+				return true;
 			}
-			
-			termsEnum = null;
-			referenceTermsEnum = null;
-			*/
-			
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		return null;
+		return false;
 	}
 	
-	public long getCorpusSumTotalTermFreq() throws Exception {
-		if (corpusSumTotalTermFreq == -1) {
-			// force to do a word lister
-			corpusSumTotalTermFreq = WordIterator.sumTotalTermFreq(workspace, INDEX.DOCUMENT, showPartOfSpeech);
+	private String currentWord() {
+		if (currentLemma != null) {
+			return currentLemma.getWord();
+		}
+		return CustomPartOfSpeechEncoder.encode(currentTerm.utf8ToString());
+	}
+	
+	/**
+	 * 取出剩下的關鍵詞中，依 measurement 最高的 k 個（由高到低排序）。
+	 * 只有留下來的候選詞才會建立 {@link Keyword} 物件。呼叫之後這個 iterator 就用完了。
+	 * @param k				要取出的數量
+	 * @param measurement	排序的依據
+	 * @return 最高的 k 個關鍵詞
+	 */
+	public List<Keyword> top(int k, KeywordMeasurement measurement) {
+		return top(k, measurement, 0L);
+	}
+	
+	/**
+	 * 取出剩下的關鍵詞中，f1 至少為 minFreq 且依 measurement 最高的 k 個（由高到低排序）。
+	 * 只有留下來的候選詞才會建立 {@link Keyword} 物件。呼叫之後這個 iterator 就用完了。
+	 * @param k				要取出的數量
+	 * @param measurement	排序的依據
+	 * @param minFreq		在 corpus 中的最低次數
+	 * @return 最高的 k 個關鍵詞
+	 */
+	public List<Keyword> top(int k, KeywordMeasurement measurement, long minFreq) {
+		TopKHeap<Keyword> heap = new TopKHeap<Keyword>(k);
+		if (nextKeyword != null && nextKeyword.getFreq() >= minFreq) {
+			heap.offer(measurement.getValue(nextKeyword), nextKeyword);
 		}
+		nextKeyword = null;
+		
+		while (advance()) {
+			if (currentF1 < minFreq) {
+				continue;
+			}
+			double score = measurement.getValue(currentF1, 
+												currentF2, 
+												corpusSumTotalTermFreq, 
+												referenceSumTotalTermFreq);
+			if (heap.wouldAccept(score)) {
+				heap.offer(score, new Keyword(currentWord(), 
+											  currentF1, 
+											  currentF2, 
+											  corpusSumTotalTermFreq, 
+											  referenceSumTotalTermFreq));
+			}
+		}
+		return heap.toSortedList();
+	}
+
+	/**
+	 * 加總 lemma 各個 form 的次數，先找快照，找不到（被過濾掉的詞）再問 reader
+	 */
+	private long sumFormFreq(WordListSnapshot snapshot, IndexReader reader, Lemma lemma) {
+		long freq = 0L;
+		for (String form : lemma.getForms()) {
+			BytesRef term = new BytesRef(CustomPartOfSpeechDecoder.decode(form));
+			int index = snapshot.indexOf(term);
+			if (index != -1) {
+				freq += snapshot.getTotalTermFreq(index);
+			}
+			else if (reader != null) {
+				try {
+					freq += Math.max(0L, reader.totalTermFreq(new Term(ConciseField.CONTENT.field(), term)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return freq;
+	}
+
+	public long getCorpusSumTotalTermFreq() throws Exception {
 		return corpusSumTotalTermFreq;
 	}
 	
 	public long getReferenceSumTotalTermFreq() throws Exception {
-		if (referenceSumTotalTermFreq == -1) {
-			// force to do a word lister
-			referenceSumTotalTermFreq = WordIterator.sumTotalTermFreq(workspace, INDEX.REFERENCE, showPartOfSpeech);
-		}
 		return referenceSumTotalTermFreq;
 	}
 
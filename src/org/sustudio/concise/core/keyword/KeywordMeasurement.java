@@ -0,0 +1,48 @@
+package org.sustudio.concise.core.keyword;
+
+public enum KeywordMeasurement {
+
+	Freq,
+	RefFreq,
+	LogLikelihood,
+	ChiSquare,
+	;
+
+	public double getValue(Keyword keyword) {
+		switch (this) {
+		case Freq:				return keyword.getFreq();
+		case RefFreq:			return keyword.getRefFreq();
+		case LogLikelihood:		return keyword.getLL();
+		case ChiSquare:			return keyword.getChiSquare();
+
+		default:		return 0d;
+		}
+	}
+
+	/**
+	 * 不建立 {@link Keyword} 直接計算
+	 * @param f1 the frequency of the keyword in the corpus.
+	 * @param f2 the frequency of the keyword in the reference corpus.
+	 * @param n1 the size of the corpus.
+	 * @param n2 the size of the reference corpus.
+	 * @return the value
+	 */
+	public double getValue(long f1, long f2, long n1, long n2) {
+		switch (this) {
+		case Freq:				return f1;
+		case RefFreq:			return f2;
+		case LogLikelihood:		return Keyword.logLikelihood(f1, f2, n1, n2);
+		case ChiSquare:			return Keyword.yatesChiSquare(f1, f2, n1, n2);
+
+		default:		return 0d;
+		}
+	}
+
+	public static String[] stringValues() {
+		String[] str = new String[values().length];
+		for (int i=0; i<values().length; i++) {
+			str[i] = values()[i].name();
+		}
+		return str;
+	}
+}
@@ -0,0 +1,217 @@
+package org.sustudio.concise.core.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * 只保留分數最高的 K 個項目的 bounded min-heap 。
+ * <p>分數和加入的順序存在 primitive array 裡頭，heap 頂端永遠是目前最差的項目，
+ * 所以新的項目只要和頂端比較一次就知道要不要留下來。分數相同時，先加入的排在前面。
+ * 分數是 NaN 的項目一律不收。
+ * 陣列隨著項目增加才加大（最多 k），所以 k 可以很大（例如 {@link Integer#MAX_VALUE} 表示全部）。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ * @param <T>
+ */
+public class TopKHeap<T> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int k;
+	private double[] scores;
+	private long[] sequences;
+	private Object[] items;
+	private int size = 0;
+	private long sequence = 0L;
+
+	/**
+	 * @param k	要保留的項目數量
+	 */
+	public TopKHeap(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be >= 0: " + k);
+		}
+		this.k = k;
+		int capacity = Math.min(k, INITIAL_CAPACITY);
+		this.scores = new double[capacity];
+		this.sequences = new long[capacity];
+		this.items = new Object[capacity];
+	}
+
+	/**
+	 * 檢查這個分數是否會被留下來，可以在建立物件之前先問
+	 * @param score
+	 * @return 會不會被留下來
+	 */
+	public boolean wouldAccept(double score) {
+		if (Double.isNaN(score) || k == 0) {
+			return false;
+		}
+		return size < k || score > scores[0];
+	}
+
+	/**
+	 * 加入項目
+	 * @param score	分數
+	 * @param item	項目
+	 * @return 是否被留下來
+	 */
+	public boolean offer(double score, T item) {
+		return insert(score, sequence++, item);
+	}
+	
+	/**
+	 * 加入只用編號代表的項目（例如 term 的順序），留下來的項目最後才用 {@link #toSortedOrds()} 取出來建立物件。
+	 * 分數相同時編號小的排在前面，所以編號要依加入的順序遞增。
+	 * @param score	分數
+	 * @param ord	項目的編號
+	 * @return 是否被留下來
+	 */
+	public boolean offerOrd(double score, long ord) {
+		return insert(score, ord, null);
+	}
+	
+	private boolean insert(double score, long seq, Object item) {
+		if (!wouldAccept(score)) {
+			return false;
+		}
+		if (size < k) {
+			if (size == items.length) {
+				grow();
+			}
+			scores[size] = score;
+			sequences[size] = seq;
+			items[size] = item;
+			siftUp(size++);
+		}
+		else {
+			scores[0] = score;
+			sequences[0] = seq;
+			items[0] = item;
+			siftDown(0);
+		}
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 依分數由高到低傳回留下來的項目（分數相同時依加入的順序）
+	 * @return 排好序的項目
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> toSortedList() {
+		Object[] sorted = new Object[size];
+		sort(sorted, null);
+
+		List<T> list = new ArrayList<T>(size);
+		for (Object item : sorted) {
+			list.add((T) item);
+		}
+		return list;
+	}
+
+	/**
+	 * 依分數由高到低傳回留下來的項目的編號（見 {@link #offerOrd(double, long)}）
+	 * @return 排好序的編號
+	 */
+	public long[] toSortedOrds() {
+		long[] sorted = new long[size];
+		sort(null, sorted);
+		return sorted;
+	}
+
+	/**
+	 * heap 本身不動，用一份複本依序取出最差的項目，從後面往前填
+	 */
+	private void sort(Object[] sortedItems, long[] sortedSequences) {
+		TopKHeap<T> copy = new TopKHeap<T>(0);
+		copy.scores = Arrays.copyOf(scores, size);
+		copy.sequences = Arrays.copyOf(sequences, size);
+		copy.items = Arrays.copyOf(items, size);
+		copy.size = size;
+
+		for (int i = size - 1; i >= 0; i--) {
+			if (sortedItems != null) {
+				sortedItems[i] = copy.items[0];
+			}
+			if (sortedSequences != null) {
+				sortedSequences[i] = copy.sequences[0];
+			}
+			copy.size--;
+			copy.move(copy.size, 0);
+			copy.items[copy.size] = null;
+			copy.siftDown(0);
+		}
+	}
+
+	/**
+	 * a 是否比 b 差（分數較低，或分數相同但比較晚加入）
+	 */
+	private boolean worse(int a, int b) {
+		if (scores[a] != scores[b]) {
+			return scores[a] < scores[b];
+		}
+		return sequences[a] > sequences[b];
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!worse(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= size) {
+				break;
+			}
+			int worst = left;
+			int right = left + 1;
+			if (right < size && worse(right, left)) {
+				worst = right;
+			}
+			if (!worse(worst, i)) {
+				break;
+			}
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void grow() {
+		int capacity = (int) Math.min((long) k, ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+		scores = Arrays.copyOf(scores, capacity);
+		sequences = Arrays.copyOf(sequences, capacity);
+		items = Arrays.copyOf(items, capacity);
+	}
+
+	private void move(int from, int to) {
+		scores[to] = scores[from];
+		sequences[to] = sequences[from];
+		items[to] = items[from];
+	}
+
+	private void swap(int a, int b) {
+		double score = scores[a];
+		long seq = sequences[a];
+		Object item = items[a];
+		move(b, a);
+		scores[b] = score;
+		sequences[b] = seq;
+		items[b] = item;
+	}
+}
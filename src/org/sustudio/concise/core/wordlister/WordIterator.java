@@ -1,21 +1,20 @@
 package org.sustudio.concise.core.wordlister;
 
+import java.util.HashSet;
 import java.util.Iterator;
 
-import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.util.BytesRef;
 import org.sustudio.concise.core.CCPrefs;
-import org.sustudio.concise.core.Config;
 import org.sustudio.concise.core.Workspace;
 import org.sustudio.concise.core.Workspace.INDEX;
-import org.sustudio.concise.core.concordance.AllDocsCollector;
 import org.sustudio.concise.core.corpus.importer.ConciseField;
 
 /**
@@ -46,23 +45,32 @@ public class WordIterator implements Iterator<Word>, Iterable<Word> {
 	 * @throws Exception
 	 */
 	public static long sumTotalTermFreq(Workspace workspace, INDEX indexType, boolean showPartOfSpeech) throws Exception {
-		long sum = 0L;
-		for (Word word : new WordIterator(workspace.getIndexReader(indexType), showPartOfSpeech, true)) {
-			sum += word.getTotalTermFreq();
-		}
-		return sum;
+		return WordListSnapshot.getInstance(workspace, indexType, showPartOfSpeech).getSumTotalTermFreq();
+	}
+	
+	/**
+	 * 僅計算 reader 中全部詞彙的數量（用在 {@link Workspace#acquireSearcher(INDEX)} 取得的 snapshot）
+	 * @param reader
+	 * @param showPartOfSpeech
+	 * @return
+	 * @throws Exception
+	 */
+	public static long sumTotalTermFreq(IndexReader reader, boolean showPartOfSpeech) throws Exception {
+		return WordListSnapshot.getInstance(reader, showPartOfSpeech).getSumTotalTermFreq();
 	}
 	
 	private final IndexReader reader;
 	private final boolean countSumTotalOnly;
 	
-	private TermsEnum termsEnum;
+	private WordListSnapshot snapshot;
+	private int index = -1;
+	private final BytesRef spare = new BytesRef();
 	private Word nextWord;
 	
-	/** 做一個標記，看看 TermsEnum 是不是還在繼續 */
-	private boolean termsEnumContinues = true;
-	
+	/** 使用 lemma 時要過濾掉的 form */
+	private HashSet<String> lemmaForms;
 	private LemmaList lemmaList;
+	private IndexSearcher searcher;
 	
 	/**
 	 * 讀取 {@link Workspace} 索引中的詞彙
@@ -88,8 +96,7 @@ public class WordIterator implements Iterator<Word>, Iterable<Word> {
 		this.reader = reader;
 		this.countSumTotalOnly = countSumTotalOnly;
 		
-		Terms terms = MultiFields.getTerms(reader, ConciseField.CONTENT.field());
-		if (terms != null) 
+		if (reader != null && MultiFields.getTerms(reader, ConciseField.CONTENT.field()) != null) 
 		{
 			if (CCPrefs.LEMMA_ENABLED && CCPrefs.LEMMA_LIST != null) {
 				lemmaList = (LemmaList) CCPrefs.LEMMA_LIST.clone();
@@ -97,42 +104,48 @@ public class WordIterator implements Iterator<Word>, Iterable<Word> {
 				lemmaList = new LemmaList();
 			}
 			
-			
 			boolean lemmatize = countSumTotalOnly ? false : CCPrefs.LEMMA_ENABLED;
-			// ConciseTermsEnum 是過濾後的 TermsEnum
-			termsEnum = new ConciseTermsEnum(terms.iterator(null), showPartOfSpeech, lemmatize);
+			if (lemmatize && CCPrefs.LEMMA_LIST != null) {
+				lemmaForms = new HashSet<String>();
+				for (Lemma lemma : CCPrefs.LEMMA_LIST) {
+					lemmaForms.addAll(lemma.getForms());
+				}
+			}
+			
+			// 詞表快照已經用 ConciseTermsEnum 過濾過了
+			snapshot = WordListSnapshot.getInstance(reader, showPartOfSpeech);
 			nextWord = readNextWord();
 		}
 	}
 
 	private Word readNextWord() throws Exception {
 		nextWord = null;
-		if (termsEnumContinues) {	// 如果 TermsEnum 結束後還繼續，會出現錯誤
-			while (termsEnumContinues = termsEnum.next() != null) {
-				String term = termsEnum.term().utf8ToString();
-				term = CustomPartOfSpeechEncoder.encode(term);
-				
-				long docFreq = termsEnum.docFreq();
-				long totalTermFreq = termsEnum.totalTermFreq();
-				Word word = new Word( term, docFreq, totalTermFreq );
-				
-				if (countSumTotalOnly) {
-					nextWord = word;
-					break;
-				}
-				
-				// build lemma
-				if (CCPrefs.LEMMA_ENABLED && lemmaList != null) {
-					Lemma lemma = CCPrefs.LEMMA_LIST.get(term);
-					lemmaList.remove(lemma);
-					if (lemma != null) {
-						word = buildLemma(word, lemma);
-					}
-				}
-				
+		while (++index < snapshot.size()) {
+			String term = CustomPartOfSpeechEncoder.encode(snapshot.getWord(index));
+			if (lemmaForms != null && lemmaForms.contains(term)) {
+				continue;
+			}
+			
+			long docFreq = snapshot.getDocFreq(index);
+			long totalTermFreq = snapshot.getTotalTermFreq(index);
+			Word word = new Word( term, docFreq, totalTermFreq );
+			
+			if (countSumTotalOnly) {
 				nextWord = word;
 				return nextWord;
 			}
+			
+			// build lemma
+			if (CCPrefs.LEMMA_ENABLED && lemmaList != null) {
+				Lemma lemma = CCPrefs.LEMMA_LIST.get(term);
+				lemmaList.remove(lemma);
+				if (lemma != null) {
+					word = buildLemma(word, lemma);
+				}
+			}
+			
+			nextWord = word;
+			return nextWord;
 		}
 		
 		// 處理沒有在詞彙中的 Lemma
@@ -148,27 +161,39 @@ public class WordIterator implements Iterator<Word>, Iterable<Word> {
 	private Word buildLemma(Word word, Lemma lemma) throws Exception {
 		word.addChild(word.clone());
 		word.setDocFreq(0);
-		StringBuilder queryWords = new StringBuilder();
-		queryWords.append("\"" + word.getWord() + "\"");
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term(ConciseField.CONTENT.field(), 
+										 CustomPartOfSpeechDecoder.decode(word.getWord()))), 
+				  Occur.SHOULD);
 		for (String form : lemma.getForms()) {
 			form = CustomPartOfSpeechDecoder.decode(form);
-			// get frequency
+			// get frequency，先找快照，找不到（被過濾掉的詞）再問 reader
+			long formDocFreq;
+			long formTotalTermFreq;
 			Term formTerm = new Term(ConciseField.CONTENT.field(), form);
-			long formDocFreq = reader.docFreq(formTerm);
-			long formTotalTermFreq = reader.totalTermFreq(formTerm);
+			spare.copyChars(form);
+			int formIndex = snapshot.indexOf(spare);
+			if (formIndex != -1) {
+				formDocFreq = snapshot.getDocFreq(formIndex);
+				formTotalTermFreq = snapshot.getTotalTermFreq(formIndex);
+			}
+			else {
+				formDocFreq = reader.docFreq(formTerm);
+				formTotalTermFreq = reader.totalTermFreq(formTerm);
+			}
 			Word formWord = new Word( CustomPartOfSpeechEncoder.encode(form), formDocFreq, formTotalTermFreq );
 			word.addChild(formWord);
 			word.setTotalTermFreq(word.getTotalTermFreq() + formTotalTermFreq);
-			queryWords.append(" OR \"" + formWord.getWord() + "\"");
+			query.add(new TermQuery(formTerm), Occur.SHOULD);
 		}
 		
 		// query to get total docFreq
-		QueryParser parser = new QueryParser(Config.LUCENE_VERSION, ConciseField.CONTENT.field(), new WhitespaceAnalyzer(Config.LUCENE_VERSION));
-		Query q = parser.parse(queryWords.toString());
-		IndexSearcher searcher = new IndexSearcher(reader);
-		AllDocsCollector allDocs = new AllDocsCollector();
-		searcher.search(q, allDocs);
-		word.setDocFreq(allDocs.allDocs().length);
+		if (searcher == null) {
+			searcher = new IndexSearcher(reader);
+		}
+		TotalHitCountCollector hitCount = new TotalHitCountCollector();
+		searcher.search(query, hitCount);
+		word.setDocFreq(hitCount.getTotalHits());
 		return word;
 	}
 	
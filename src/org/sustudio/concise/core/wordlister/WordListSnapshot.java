@@ -0,0 +1,223 @@
+package org.sustudio.concise.core.wordlister;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+/**
+ * 過濾後詞表的唯讀快照。
+ * <p>詞彙（UTF-8 bytes）、docFreq、totalTermFreq 以平行的 primitive array 儲存，順序與 {@link TermsEnum} 相同，
+ * 另外記錄整個詞表的 sumTotalTermFreq 和 sumDocFreq。</p>
+ * <p>快照依 {@link IndexReader} 和是否顯示詞性分別快取，reader 重新開啟（索引改變）之後自然會重建；
+ * {@link WordFilter} 的設定改變時也會重建。</p>
+ *
+ * @author Kuan-ming Su
+ *
+ */
+public final class WordListSnapshot {
+
+	private static final Map<IndexReader, WordListSnapshot[]> snapshots =
+			Collections.synchronizedMap(new WeakHashMap<IndexReader, WordListSnapshot[]>());
+
+	private static final Comparator<BytesRef> termComparator = BytesRef.getUTF8SortedAsUnicodeComparator();
+
+	/**
+	 * 傳回 {@link Workspace} 索引的詞表快照
+	 * @param workspace
+	 * @param indexType
+	 * @param showPartOfSpeech
+	 * @return 詞表快照
+	 * @throws IOException
+	 */
+	public static WordListSnapshot getInstance(Workspace workspace, INDEX indexType, boolean showPartOfSpeech) throws IOException {
+		return getInstance(workspace.getIndexReader(indexType), showPartOfSpeech);
+	}
+
+	/**
+	 * 傳回 reader 的詞表快照，同一個 reader 只會建立一次（除非 {@link WordFilter} 的設定改變）
+	 * @param reader
+	 * @param showPartOfSpeech
+	 * @return 詞表快照
+	 * @throws IOException
+	 */
+	public static WordListSnapshot getInstance(IndexReader reader, boolean showPartOfSpeech) throws IOException {
+		String filterSignature = filterSignature();
+		if (reader == null) {
+			return new WordListSnapshot(null, showPartOfSpeech, filterSignature);
+		}
+
+		WordListSnapshot[] holder;
+		synchronized (snapshots) {
+			holder = snapshots.get(reader);
+			if (holder == null) {
+				holder = new WordListSnapshot[2];
+				snapshots.put(reader, holder);
+			}
+		}
+
+		int i = showPartOfSpeech ? 1 : 0;
+		synchronized (holder) {
+			if (holder[i] == null || !holder[i].filterSignature.equals(filterSignature)) {
+				holder[i] = new WordListSnapshot(reader, showPartOfSpeech, filterSignature);
+			}
+			return holder[i];
+		}
+	}
+
+	/**
+	 * 快照內容和 {@link WordFilter} 的設定有關，設定改變就得重建
+	 */
+	private static String filterSignature() {
+		StringBuilder sb = new StringBuilder(new WordFilter().toString());
+		if (CCPrefs.STOP_WORDS_ENABLED && CCPrefs.stopWords != null) {
+			sb.append('\u0000');
+			sb.append(Arrays.toString(CCPrefs.stopWords));
+		}
+		return sb.toString();
+	}
+
+
+	private final boolean showPartOfSpeech;
+	private final String filterSignature;
+
+	private byte[] termBytes = new byte[0];
+	private int[] termStarts = new int[] { 0 };
+	private int[] docFreqs = new int[0];
+	private long[] totalTermFreqs = new long[0];
+	private int size = 0;
+
+	private long sumTotalTermFreq = 0L;
+	private long sumDocFreq = 0L;
+
+	private WordListSnapshot(IndexReader reader, boolean showPartOfSpeech, String filterSignature) throws IOException {
+		this.showPartOfSpeech = showPartOfSpeech;
+		this.filterSignature = filterSignature;
+
+		Terms terms = reader == null ? null : MultiFields.getTerms(reader, ConciseField.CONTENT.field());
+		if (terms == null) {
+			return;
+		}
+
+		int bytesUsed = 0;
+		TermsEnum termsEnum = new ConciseTermsEnum(terms.iterator(null), showPartOfSpeech, false);
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			termStarts = ArrayUtil.grow(termStarts, size + 2);
+			docFreqs = ArrayUtil.grow(docFreqs, size + 1);
+			totalTermFreqs = ArrayUtil.grow(totalTermFreqs, size + 1);
+			termBytes = ArrayUtil.grow(termBytes, bytesUsed + term.length);
+			System.arraycopy(term.bytes, term.offset, termBytes, bytesUsed, term.length);
+			bytesUsed += term.length;
+
+			docFreqs[size] = termsEnum.docFreq();
+			totalTermFreqs[size] = termsEnum.totalTermFreq();
+			sumDocFreq += docFreqs[size];
+			sumTotalTermFreq += totalTermFreqs[size];
+			size++;
+			termStarts[size] = bytesUsed;
+		}
+	}
+
+	/** @return 詞彙數量 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isShowPartOfSpeech() {
+		return showPartOfSpeech;
+	}
+
+	/**
+	 * 傳回第 index 個詞彙，不複製 bytes
+	 * @param index
+	 * @param spare	用來指向詞彙的 {@link BytesRef}
+	 * @return spare
+	 */
+	public BytesRef getTerm(int index, BytesRef spare) {
+		spare.bytes = termBytes;
+		spare.offset = termStarts[index];
+		spare.length = termStarts[index + 1] - termStarts[index];
+		return spare;
+	}
+
+	/**
+	 * @param index
+	 * @return 第 index 個詞彙（未經 {@link CustomPartOfSpeechEncoder} 轉換）
+	 */
+	public String getWord(int index) {
+		return getTerm(index, new BytesRef()).utf8ToString();
+	}
+
+	public int getDocFreq(int index) {
+		return docFreqs[index];
+	}
+
+	public long getTotalTermFreq(int index) {
+		return totalTermFreqs[index];
+	}
+
+	/**
+	 * 以二元搜尋找出詞彙的位置
+	 * @param term
+	 * @return 詞彙的位置，找不到則傳回 -1
+	 */
+	public int indexOf(BytesRef term) {
+		BytesRef spare = new BytesRef();
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = termComparator.compare(getTerm(mid, spare), term);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param term
+	 * @return 詞彙的 totalTermFreq，不在詞表中則為 0
+	 */
+	public long totalTermFreq(BytesRef term) {
+		int index = indexOf(term);
+		return index == -1 ? 0L : totalTermFreqs[index];
+	}
+
+	/**
+	 * @param term
+	 * @return 詞彙的 docFreq，不在詞表中則為 0
+	 */
+	public int docFreq(BytesRef term) {
+		int index = indexOf(term);
+		return index == -1 ? 0 : docFreqs[index];
+	}
+
+	/** @return 詞表中所有詞彙的 totalTermFreq 總和 */
+	public long getSumTotalTermFreq() {
+		return sumTotalTermFreq;
+	}
+
+	/** @return 詞表中所有詞彙的 docFreq 總和 */
+	public long getSumDocFreq() {
+		return sumDocFreq;
+	}
+
+}
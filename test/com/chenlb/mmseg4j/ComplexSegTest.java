@@ -0,0 +1,101 @@
+package com.chenlb.mmseg4j;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link ComplexSeg#seg(Sentence)} 邊列舉邊比較的結果要和原來的規則過濾相同
+ */
+public class ComplexSegTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static Dictionary dic;
+	private static List<String> words;
+	private static String chars;
+
+	@BeforeClass
+	public static void loadDictionary() throws Exception {
+		dic = Dictionary.getInstance(folder.newFolder("dic"));
+		words = readLines("words-taiwan-moe.dic", 2);
+		StringBuilder sb = new StringBuilder();
+		for (String line : readLines("chars.dic", 1)) {
+			sb.append(line.charAt(0));
+		}
+		chars = sb.toString();
+	}
+
+	@AfterClass
+	public static void clearDictionary() throws Exception {
+		Dictionary.clear(dic.getDicPath());
+	}
+
+	private static List<String> readLines(String name, int minLength) throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				Dictionary.class.getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/" + name), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() >= minLength && !line.startsWith("#")) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	@Test
+	public void inlineScoringMatchesRules() {
+		Random random = new Random(3);
+		ComplexSeg seg = new ComplexSeg(dic);
+		for (int n = 0; n < 2000; n++) {
+			// 詞和單字混在一起，常常會有好幾種切法
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(40);
+			while (sb.length() < length) {
+				if (random.nextInt(3) == 0) {
+					sb.append(chars.charAt(random.nextInt(chars.length())));
+				}
+				else {
+					String word = words.get(random.nextInt(words.size()));
+					// 有時只取詞的一部分，製造重疊的候選詞
+					sb.append(random.nextInt(4) == 0 ? word.substring(random.nextInt(word.length())) : word);
+				}
+			}
+			String text = sb.toString();
+			assertEquals(text, segment(seg, text, true), segment(seg, text, false));
+		}
+	}
+
+	private static List<String> segment(ComplexSeg seg, String text, boolean withRules) {
+		List<String> chunks = new ArrayList<String>();
+		Sentence sen = new Sentence(text.toCharArray(), 100);
+		Chunk chunk;
+		while ((chunk = withRules ? seg.segWithRules(sen) : seg.seg(sen)) != null) {
+			StringBuilder sb = new StringBuilder();
+			for (Word word : chunk.getWords()) {
+				if (word != null) {
+					sb.append(word.getString()).append('@').append(word.getStartOffset())
+					  .append('/').append(word.getDegree()).append(' ');
+				}
+			}
+			chunks.add(sb.toString() + "| " + sen.getOffset());
+		}
+		return chunks;
+	}
+}
@@ -0,0 +1,125 @@
+package com.chenlb.mmseg4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DictionaryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dicPath;
+	private File compiledPath;
+	private File savedCompiledPath;
+
+	@Before
+	public void setUp() throws Exception {
+		dicPath = folder.newFolder("dic");
+		compiledPath = folder.newFolder("compiled");
+		savedCompiledPath = Dictionary.compiledDicPath;
+		Dictionary.compiledDicPath = compiledPath;
+	}
+
+	@After
+	public void tearDown() {
+		Dictionary.clear(dicPath);
+		Dictionary.compiledDicPath = savedCompiledPath;
+	}
+
+	private static void write(File file, String... lines) throws IOException {
+		long lastModified = file.exists() ? file.lastModified() : 0;
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (String line : lines) {
+				writer.write(line + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		// 確定修改時間有變
+		file.setLastModified(Math.max(file.lastModified(), lastModified + 2000));
+	}
+
+	private static File[] lexiconFiles(File dir) {
+		return dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".lexicon");
+			}
+		});
+	}
+
+	@Test
+	public void compiledLexiconIsCachedOutsideDicPath() throws Exception {
+		File words = new File(dicPath, "words-test.dic");
+		write(words, "天地玄黃");
+		Dictionary dic = Dictionary.getInstance(dicPath);
+		assertTrue(dic.match("天地玄黃"));
+		assertEquals(0, lexiconFiles(dicPath).length);
+		File[] compiled = lexiconFiles(compiledPath);
+		assertEquals(1, compiled.length);
+
+		write(words, "天地玄黃", "宇宙洪荒");
+		assertTrue(dic.reload());
+		assertTrue(dic.match("宇宙洪荒"));
+		File[] recompiled = lexiconFiles(compiledPath);
+		assertEquals("stale compiled lexicon should be deleted", 1, recompiled.length);
+		assertFalse(compiled[0].getName().equals(recompiled[0].getName()));
+	}
+
+	@Test
+	public void editedUserDictIsReloaded() throws Exception {
+		File userDict = new File(folder.getRoot(), "user.dic");
+		write(userDict, "天地玄黃");
+		File[] userDictFiles = new File[] { userDict };
+		Dictionary dic = Dictionary.getInstance(dicPath, userDictFiles);
+		assertTrue(dic.match("天地玄黃"));
+		assertFalse(dic.match("宇宙洪荒"));
+
+		// 一樣的檔案，沒有修改就不重新載入
+		long lastLoadTime = dic.getLastLoadTime();
+		assertFalse(dic.setUserDictFiles(userDictFiles));
+		assertEquals(lastLoadTime, dic.getLastLoadTime());
+
+		write(userDict, "天地玄黃", "宇宙洪荒");
+		assertTrue(dic.wordsFileIsChange());
+		assertTrue(dic.setUserDictFiles(userDictFiles));
+		assertTrue(dic.match("宇宙洪荒"));
+		assertFalse(dic.wordsFileIsChange());
+	}
+
+	@Test
+	public void segKeepsLexiconSnapshot() throws Exception {
+		Dictionary dic = Dictionary.getInstance(dicPath);
+		char[] word = "玄黃宇宙".toCharArray();
+		Seg seg = new SimpleSeg(dic);
+		seg.snapshot();
+		Lexicon before = dic.getLexicon();
+		assertEquals(-1, seg.search(word, 0, 3));
+
+		// 詞庫換掉了，這次 seg 還是用原來的
+		assertTrue(dic.addWords(Arrays.asList("玄黃宇宙")));
+		assertFalse(before == dic.getLexicon());
+		assertEquals(-1, seg.search(word, 0, 3));
+
+		seg.snapshot();
+		assertEquals(1, seg.search(word, 0, 3));
+		assertEquals(3, seg.maxMatch(word, 0));
+	}
+
+}
@@ -0,0 +1,173 @@
+package com.chenlb.mmseg4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 和直接查詞的集合（原來 KeyTree 的行為）比較 {@link Lexicon} 和 {@link CharNode} 的查詢結果
+ */
+@SuppressWarnings("deprecation")
+public class LexiconTest {
+
+	private static final String ALPHABET = "天地玄黃宇宙洪荒日月";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(5);
+
+	private String randomString(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+		}
+		return new String(chars);
+	}
+
+	private Set<String> randomWords(int count) {
+		Set<String> words = new HashSet<String>();
+		while (words.size() < count) {
+			words.add(randomString(2 + random.nextInt(4)));
+		}
+		return words;
+	}
+
+	private static Lexicon build(Set<String> words) {
+		Lexicon.Builder builder = new Lexicon.Builder();
+		for (int i = 0; i < ALPHABET.length(); i += 2) {
+			builder.addChar(ALPHABET.charAt(i), i * 10);
+		}
+		for (String word : words) {
+			builder.addWord(word);
+		}
+		builder.addUnit('日');
+		return builder.build();
+	}
+
+	@Test
+	public void matchesWordSet() {
+		Set<String> words = randomWords(300);
+		assertSameLookups(build(words), words, words);
+	}
+
+	@Test
+	public void userWordsAreLookedUp() {
+		Set<String> words = randomWords(200);
+		Set<String> userWords = randomWords(50);
+		Lexicon lexicon = build(words).withUserWords(userWords);
+
+		Set<String> all = new HashSet<String>(words);
+		all.addAll(userWords);
+		assertSameLookups(lexicon, all, words);
+
+		// 換掉使用者的詞
+		assertSameLookups(lexicon.withUserWords(new ArrayList<String>()), words, words);
+	}
+
+	@Test
+	public void degreesAndUnits() {
+		Lexicon lexicon = build(randomWords(10));
+		assertEquals(0, lexicon.degree('天'));
+		assertEquals(20, lexicon.degree('玄'));
+		assertEquals(-1, lexicon.degree('人'));
+		assertEquals(true, lexicon.isUnit('日'));
+		assertEquals(false, lexicon.isUnit('月'));
+	}
+
+	@Test
+	public void writeAndMap() throws Exception {
+		Set<String> words = randomWords(300);
+		File file = new File(folder.getRoot(), "test.lexicon");
+		build(words).write(file, 42L);
+
+		assertNull(Lexicon.map(file, 43L));
+		Lexicon mapped = Lexicon.map(file, 42L);
+		assertNotNull(mapped);
+		assertSameLookups(mapped, words, words);
+		assertEquals(20, mapped.degree('玄'));
+		assertEquals(true, mapped.isUnit('日'));
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void writeDoesNotOverwrite() throws Exception {
+		File file = new File(folder.getRoot(), "test.lexicon");
+		Lexicon lexicon = build(randomWords(10));
+		lexicon.write(file, 1L);
+		lexicon.write(file, 2L);
+	}
+
+	/**
+	 * @param words		所有的詞
+	 * @param trieWords	主要 trie 裡的詞（不含使用者另外加的）
+	 */
+	private void assertSameLookups(Lexicon lexicon, Set<String> words, Set<String> trieWords) {
+		for (int n = 0; n < 200; n++) {
+			char[] sen = randomString(12).toCharArray();
+			for (int offset = 0; offset < sen.length; offset++) {
+				List<Integer> expected = new ArrayList<Integer>();
+				expected.add(1);
+				for (int length = 2; offset + length <= sen.length; length++) {
+					String word = new String(sen, offset, length);
+					assertEquals(word, words.contains(word), lexicon.isWord(sen, offset, length));
+					if (words.contains(word)) {
+						expected.add(length);
+					}
+				}
+
+				int[] lengths = new int[16];
+				int count = lexicon.matchAll(sen, offset, lengths);
+				assertEquals(expected.toString(), toList(lengths, count).toString());
+				assertEquals(expected.get(expected.size() - 1).intValue(), lexicon.maxMatch(sen, offset));
+
+				// 只放得下兩個長度
+				int[] shortLengths = new int[2];
+				count = lexicon.matchAll(sen, offset, shortLengths);
+				assertEquals(expected.subList(0, Math.min(2, expected.size())), toList(shortLengths, count));
+
+				if (lexicon.getTrie().next(DoubleArrayTrie.ROOT, sen[offset]) != DoubleArrayTrie.NONE) {
+					assertCharNode(lexicon, sen, offset, trieWords);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 舊的 {@link CharNode} 只查主要的 trie
+	 */
+	private static void assertCharNode(Lexicon lexicon, char[] sen, int offset, Set<String> words) {
+		DoubleArrayTrie trie = lexicon.getTrie();
+		CharNode node = new CharNode(lexicon.degree(sen[offset]), trie, trie.next(DoubleArrayTrie.ROOT, sen[offset]));
+		List<Integer> expected = new ArrayList<Integer>();
+		expected.add(0);
+		for (int tailLen = 1; offset + tailLen < sen.length; tailLen++) {
+			boolean isWord = words.contains(new String(sen, offset, tailLen + 1));
+			assertEquals(isWord ? 1 : -1, node.indexOf(sen, offset, tailLen));
+			if (isWord) {
+				expected.add(tailLen);
+			}
+		}
+		assertEquals(expected, node.maxMatch(new ArrayList<Integer>(Arrays.asList(0)), sen, offset + 1));
+		assertEquals(expected.get(expected.size() - 1).intValue(), node.maxMatch(sen, offset + 1));
+	}
+
+	private static List<Integer> toList(int[] values, int count) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			list.add(values[i]);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,143 @@
+package org.sustudio.concise.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.corpus.DocumentWriter;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.corpus.importer.ContentField;
+
+public class AnalysisCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private boolean diskEnabled;
+	private long maxItems;
+
+	@Before
+	public void setUp() {
+		diskEnabled = CCPrefs.ANALYSIS_CACHE_DISK_ENABLED;
+		maxItems = CCPrefs.ANALYSIS_CACHE_MAX_ITEMS;
+	}
+
+	@After
+	public void tearDown() {
+		CCPrefs.ANALYSIS_CACHE_DISK_ENABLED = diskEnabled;
+		CCPrefs.ANALYSIS_CACHE_MAX_ITEMS = maxItems;
+	}
+
+	/**
+	 * 寫入文件時清掉快取，新的 reader 版本重新計算
+	 */
+	@Test
+	public void writingDocumentsInvalidatesResults() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("workspace"));
+		try {
+			AnalysisCache cache = workspace.getAnalysisCache();
+			String word = TestCorpus.generator().getWord(1);
+			Conc conc = new Conc(workspace, word, false);
+			int[] docIds = cache.hitDocIds(conc);
+			assertArrayEquals(docIds, cache.hitDocIds(conc));
+			assertEquals(1, cache.getMisses());
+			assertEquals(1, cache.getHits());
+			assertEquals(1, cache.size());
+			String key = AnalysisCache.key("hitDocIds", conc.reader);
+
+			DocumentWriter writer = new DocumentWriter(workspace);
+			try {
+				Document doc = new Document();
+				doc.add(new StringField(ConciseField.TITLE.field(), "new.txt", Store.YES));
+				doc.add(new ContentField(ConciseField.CONTENT.field(), word, Store.YES));
+				writer.addDocument(doc);
+				writer.commit();
+				assertEquals(0, cache.size());
+				assertEquals(0, cache.getItems());
+			} finally {
+				writer.close();
+			}
+
+			Conc latest = new Conc(workspace, word, false);
+			assertFalse(key.equals(AnalysisCache.key("hitDocIds", latest.reader)));
+			int[] latestDocIds = cache.hitDocIds(latest);
+			assertEquals(docIds.length + 1, latestDocIds.length);
+			assertArrayEquals(latest.hitDocIds(), latestDocIds);
+			assertEquals(2, cache.getMisses());
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * 磁碟上的結果在重新開啟 workspace 之後還能用，invalidate 時一起刪除
+	 */
+	@Test
+	public void diskResultsSurviveReopen() throws Exception {
+		CCPrefs.ANALYSIS_CACHE_DISK_ENABLED = true;
+		File workpath = folder.newFolder("workspace");
+		Workspace workspace = TestCorpus.create(workpath);
+		String word = TestCorpus.generator().getWord(2);
+		int[] docIds;
+		try {
+			docIds = workspace.getAnalysisCache().hitDocIds(new Conc(workspace, word, false));
+		} finally {
+			workspace.close();
+		}
+
+		workspace = new Workspace(workpath);
+		try {
+			AnalysisCache cache = workspace.getAnalysisCache();
+			assertArrayEquals(docIds, cache.hitDocIds(new Conc(workspace, word, false)));
+			assertEquals(1, cache.getHits());
+			assertEquals(0, cache.getMisses());
+
+			String key = AnalysisCache.key("test", workspace.getIndexReader(INDEX.DOCUMENT));
+			cache.put(key, "value");
+			cache.invalidate();
+			assertNull(cache.get(key));
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * 超過 {@link CCPrefs#ANALYSIS_CACHE_MAX_ITEMS} 時丟掉最久沒用到的結果
+	 */
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		CCPrefs.ANALYSIS_CACHE_DISK_ENABLED = false;
+		CCPrefs.ANALYSIS_CACHE_MAX_ITEMS = 5;
+		Workspace workspace = new Workspace(folder.newFolder("workspace"));
+		try {
+			AnalysisCache cache = workspace.getAnalysisCache();
+			cache.put("a", new ArrayList<String>(Arrays.asList("1", "2")));
+			cache.put("b", new ArrayList<String>(Arrays.asList("3", "4")));
+			cache.get("a");
+			cache.put("c", new ArrayList<String>(Arrays.asList("5", "6")));
+			assertNull(cache.get("b"));
+			assertEquals(2, cache.size());
+			assertEquals(4, cache.getItems());
+
+			cache.put("big", new ArrayList<String>(Arrays.asList("1", "2", "3", "4", "5", "6")));
+			assertNull(cache.get("big"));
+		} finally {
+			workspace.close();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.sustudio.concise.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.collocation.SurfaceCollocateIterator;
+import org.sustudio.concise.core.concordance.Conc;
+
+public class TemporaryDirectoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DirectoryEnum tempDirectory;
+	private double tempRamBufferMB;
+
+	@Before
+	public void setUp() {
+		tempDirectory = CCPrefs.TEMP_DIRECTORY;
+		tempRamBufferMB = CCPrefs.TEMP_RAM_BUFFER_MB;
+		CCPrefs.TEMP_DIRECTORY = DirectoryEnum.Auto;
+	}
+
+	@After
+	public void tearDown() {
+		CCPrefs.TEMP_DIRECTORY = tempDirectory;
+		CCPrefs.TEMP_RAM_BUFFER_MB = tempRamBufferMB;
+	}
+
+	/**
+	 * 預算以內的 index 全部留在記憶體，commit 也不會寫到磁碟
+	 */
+	@Test
+	public void smallIndexStaysInMemory() throws Exception {
+		CCPrefs.TEMP_RAM_BUFFER_MB = 64;
+		Workspace workspace = new Workspace(folder.newFolder("workspace"));
+		try {
+			TemporaryDirectory directory = (TemporaryDirectory) workspace.getTempDirectory();
+			writeIndex(directory, 200);
+			assertTrue(directory.listCachedFiles().length > 0);
+			assertEquals(new ArrayList<String>(), filesOnDisk(directory.getFolder()));
+			assertIndexReadable(directory, 200);
+
+			directory.close();
+			assertFalse(directory.getFolder().exists());
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * 超過預算的 segment 寫到暫存資料夾，關閉時刪除
+	 */
+	@Test
+	public void largeIndexSpillsToDisk() throws Exception {
+		CCPrefs.TEMP_RAM_BUFFER_MB = 0.01;
+		Workspace workspace = new Workspace(folder.newFolder("workspace"));
+		try {
+			TemporaryDirectory directory = (TemporaryDirectory) workspace.getTempDirectory();
+			writeIndex(directory, 5000);
+			assertFalse(filesOnDisk(directory.getFolder()).isEmpty());
+			assertIndexReadable(directory, 5000);
+
+			directory.close();
+			assertFalse(directory.getFolder().exists());
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * 沒有讀完的 iterator 可以提早 close；忘了 close 的話 workspace 關閉時刪除暫存資料夾
+	 */
+	@Test
+	public void abandonedIteratorsReleaseTemporaryFolders() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("workspace"));
+		String word = TestCorpus.generator().getWord(1);
+
+		SurfaceCollocateIterator closed = new SurfaceCollocateIterator(new Conc(workspace, word, false));
+		assertTrue(closed.hasNext());
+		closed.next();
+		closed.close();
+		closed.close();
+		assertEquals(0, temporaryFolders(workspace));
+
+		SurfaceCollocateIterator abandoned = new SurfaceCollocateIterator(new Conc(workspace, word, false));
+		assertTrue(abandoned.hasNext());
+		assertEquals(1, temporaryFolders(workspace));
+
+		workspace.close();
+		assertEquals(0, temporaryFolders(workspace));
+	}
+
+	private static void writeIndex(Directory directory, int numDocs) throws IOException {
+		IndexWriterConfig config = new IndexWriterConfig(Config.LUCENE_VERSION, new WhitespaceAnalyzer(Config.LUCENE_VERSION));
+		IndexWriter writer = new IndexWriter(directory, config);
+		try {
+			for (int i = 0; i < numDocs; i++) {
+				Document doc = new Document();
+				doc.add(new TextField("content", "word" + i + " word" + (i % 7) + " word" + (i % 13), Store.YES));
+				writer.addDocument(doc);
+			}
+			writer.commit();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void assertIndexReadable(Directory directory, int numDocs) throws IOException {
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertEquals(numDocs, reader.numDocs());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * 暫存資料夾中的 index 檔案（segments.gen 和 write.lock 一定寫在磁碟上，不算）
+	 */
+	private static List<String> filesOnDisk(File folder) {
+		List<String> files = new ArrayList<String>();
+		for (String name : folder.list()) {
+			if (!name.equals(IndexFileNames.SEGMENTS_GEN) && !name.equals(IndexWriter.WRITE_LOCK_NAME)) {
+				files.add(name);
+			}
+		}
+		return files;
+	}
+
+	private static int temporaryFolders(Workspace workspace) {
+		String[] folders = workspace.getTemporaryDir().list();
+		return folders == null ? 0 : folders.length;
+	}
+}
@@ -0,0 +1,38 @@
+package org.sustudio.concise.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.sustudio.concise.core.corpus.SyntheticCorpusGenerator;
+
+/**
+ * 測試用的小型合成語料庫
+ */
+public class TestCorpus {
+
+	public static final int DOCUMENTS = 60;
+	public static final int REFERENCE_DOCUMENTS = 20;
+
+	/**
+	 * @return 和 {@link #create(File)} 相同設定的 generator，可以用來取得詞彙
+	 */
+	public static SyntheticCorpusGenerator generator() {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator(7L);
+		generator.setVocabularySize(400);
+		generator.setWordsPerDocument(80, 160);
+		generator.setWriteOriginalFiles(false);
+		return generator;
+	}
+
+	/**
+	 * 在 folder 建立 workspace，匯入 {@link #DOCUMENTS} 份文件和 {@link #REFERENCE_DOCUMENTS} 份參照文件
+	 * @param folder
+	 * @return workspace
+	 * @throws IOException
+	 */
+	public static Workspace create(File folder) throws IOException {
+		Workspace workspace = new Workspace(folder);
+		generator().generate(workspace, DOCUMENTS, REFERENCE_DOCUMENTS);
+		return workspace;
+	}
+}
@@ -0,0 +1,147 @@
+package org.sustudio.concise.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.autocompleter.AutoCompleter;
+import org.sustudio.concise.core.concordance.Conc;
+import org.sustudio.concise.core.corpus.DocumentWriter;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.corpus.importer.ContentField;
+
+public class WorkspaceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * 寫入中新取得的 searcher 看得到還沒 commit 的文件，已經取得的 snapshot 不變
+	 */
+	@Test
+	public void acquiredSnapshotIgnoresNearRealTimeDocuments() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("workspace"));
+		try {
+			String word = TestCorpus.generator().getWord(1);
+			IndexSearcher before = workspace.acquireSearcher(INDEX.DOCUMENT);
+			Conc snapshot = new Conc(workspace, word, false, true);
+			int hits = snapshot.hitDocIds().length;
+
+			DocumentWriter writer = new DocumentWriter(workspace);
+			try {
+				Document doc = new Document();
+				doc.add(new StringField(ConciseField.TITLE.field(), "nrt.txt", Store.YES));
+				doc.add(new ContentField(ConciseField.CONTENT.field(), word + " " + word, Store.YES));
+				writer.addDocument(doc);
+				workspace.refreshSearcher(INDEX.DOCUMENT);
+
+				IndexSearcher after = workspace.acquireSearcher(INDEX.DOCUMENT);
+				Conc latest = new Conc(workspace, word, false, true);
+				try {
+					assertEquals(TestCorpus.DOCUMENTS, before.getIndexReader().numDocs());
+					assertEquals(TestCorpus.DOCUMENTS + 1, after.getIndexReader().numDocs());
+					assertEquals(hits, snapshot.hitDocIds().length);
+					assertEquals(hits + 1, latest.hitDocIds().length);
+				} finally {
+					latest.close();
+					workspace.releaseSearcher(after);
+				}
+			} finally {
+				writer.close();
+			}
+
+			// writer 關閉後共用的 reader 換成新的，取得的 snapshot 仍然可以用
+			assertEquals(TestCorpus.DOCUMENTS + 1, workspace.getIndexReader(INDEX.DOCUMENT).numDocs());
+			assertEquals(hits, snapshot.hitDocIds().length);
+			assertEquals(TestCorpus.DOCUMENTS, before.getIndexReader().numDocs());
+			snapshot.close();
+			workspace.releaseSearcher(before);
+			assertEquals(0, before.getIndexReader().getRefCount());
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * {@link Workspace#closeIndexReader(INDEX)} 要等 acquire 的 searcher 都 release 才關閉 directory
+	 */
+	@Test
+	public void closeIndexReaderWaitsForAcquiredSearchers() throws Exception {
+		File workpath = folder.newFolder("workspace");
+		TestCorpus.create(workpath).close();
+
+		final AtomicBoolean directoryClosed = new AtomicBoolean();
+		Workspace workspace = new Workspace(workpath) {
+			@Override
+			public Directory openDirectory(File dir) throws IOException {
+				return new NIOFSDirectory(dir) {
+					@Override
+					public synchronized void close() {
+						directoryClosed.set(true);
+						super.close();
+					}
+				};
+			}
+		};
+		try {
+			IndexSearcher searcher = workspace.acquireSearcher(INDEX.DOCUMENT);
+			workspace.closeIndexReader(INDEX.DOCUMENT);
+			assertFalse(directoryClosed.get());
+
+			String word = TestCorpus.generator().getWord(1);
+			assertTrue(searcher.search(new TermQuery(new Term(ConciseField.CONTENT.field(), word)), 1).totalHits > 0);
+			assertNotNull(searcher.doc(0).get(ConciseField.TITLE.field()));
+
+			workspace.releaseSearcher(searcher);
+			assertTrue(directoryClosed.get());
+		} finally {
+			workspace.close();
+		}
+	}
+
+	/**
+	 * warm-up 建立的 {@link AutoCompleter} 在 reader 換掉或關閉時要移除
+	 */
+	@Test
+	public void autoCompletersAreRemovedWithTheirReader() throws Exception {
+		File workpath = folder.newFolder("workspace");
+		TestCorpus.create(workpath).close();
+		int instances = AutoCompleter.getInstances().length;
+
+		boolean warmUpEnabled = CCPrefs.WARM_UP_ENABLED;
+		CCPrefs.WARM_UP_ENABLED = true;
+		try {
+			Workspace workspace = new Workspace(workpath);
+			try {
+				workspace.getWarmUp().get();
+				assertEquals(instances + 1, AutoCompleter.getInstances().length);
+
+				TestCorpus.generator().generate(workspace, INDEX.DOCUMENT, 5);
+				workspace.getWarmUp().get();
+				assertEquals(instances + 1, AutoCompleter.getInstances().length);
+			} finally {
+				workspace.close();
+			}
+			assertEquals(instances, AutoCompleter.getInstances().length);
+		} finally {
+			CCPrefs.WARM_UP_ENABLED = warmUpEnabled;
+		}
+	}
+}
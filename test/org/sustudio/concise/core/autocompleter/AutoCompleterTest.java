@@ -0,0 +1,81 @@
+package org.sustudio.concise.core.autocompleter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+
+public class AutoCompleterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * 建立中的 AutoCompleter 不會擋住其他 reader，也可以直接移除；同一個 reader 只建立一次
+	 */
+	@Test(timeout = 10000)
+	public void buildingDoesNotBlockOtherReaders() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("workspace"));
+		final CountDownLatch building = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final IndexReader reader = workspace.getIndexReader(INDEX.DOCUMENT);
+		final IndexReader blocking = new FilterAtomicReader(SlowCompositeReaderWrapper.wrap(reader)) {
+			@Override
+			public Fields fields() throws IOException {
+				building.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return super.fields();
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Callable<AutoCompleter> getInstance = new Callable<AutoCompleter>() {
+				@Override
+				public AutoCompleter call() throws Exception {
+					return AutoCompleter.getInstanceFor(blocking, false);
+				}
+			};
+			Future<AutoCompleter> first = executor.submit(getInstance);
+			building.await();
+			Future<AutoCompleter> second = executor.submit(getInstance);
+
+			// 其他 reader 不用等
+			AutoCompleter other = AutoCompleter.getInstanceFor(reader, false);
+			assertFalse(other.lookup(TestCorpus.generator().getWord(1).substring(0, 1), 5).isEmpty());
+
+			// 建立中的 reader 可以直接移除
+			AutoCompleter.removeInstanceFor(blocking);
+			release.countDown();
+
+			AutoCompleter built = first.get();
+			assertSame(built, second.get());
+			assertFalse(Arrays.asList(AutoCompleter.getInstances()).contains(built));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+			workspace.close();
+		}
+	}
+}
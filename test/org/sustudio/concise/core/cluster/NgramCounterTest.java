@@ -0,0 +1,87 @@
+package org.sustudio.concise.core.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+public class NgramCounterTest {
+
+	@Test
+	public void countsAcrossSpilledRuns() throws Exception {
+		RAMDirectory directory = new RAMDirectory();
+		NgramCounter counter = new NgramCounter(directory, "test_", 0.05);
+		TreeMap<String, Long> expected = new TreeMap<String, Long>();
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			String[] ngram = new String[3];
+			for (int j = 0; j < ngram.length; j++) {
+				ngram[j] = "詞" + random.nextInt(random.nextBoolean() ? 20 : 3000);
+			}
+			counter.add(ngram);
+			String key = ngram[0] + " " + ngram[1] + " " + ngram[2];
+			Long freq = expected.get(key);
+			expected.put(key, freq == null ? 1L : freq + 1);
+		}
+		assertTrue("should have spilled", directory.listAll().length > 0);
+
+		assertEquals(expected, toMap(counter.clusters(1)));
+		assertEquals(0, directory.listAll().length);
+		directory.close();
+	}
+
+	@Test
+	public void mergesCountersAndAppliesMinFreq() throws Exception {
+		RAMDirectory directory = new RAMDirectory();
+		NgramCounter first = new NgramCounter(directory, "a_", 16);
+		NgramCounter second = new NgramCounter(directory, "b_", 16);
+		first.add("a", "b");
+		first.add("a", "b");
+		first.add("b", "c");
+		second.add("a", "b");
+		second.add("c", "d");
+		second.add("c", "d");
+		second.sort();
+
+		Map<String, Long> clusters = toMap(NgramCounter.merge(Arrays.asList(first, second), 2));
+		Map<String, Long> expected = new TreeMap<String, Long>();
+		expected.put("a b", 3L);
+		expected.put("c d", 2L);
+		assertEquals(expected, clusters);
+		directory.close();
+	}
+
+	@Test
+	public void ramBytesUsedIncludesTokens() throws Exception {
+		NgramCounter counter = new NgramCounter(new RAMDirectory(), "test_", 16);
+		long before = counter.ramBytesUsed();
+		List<String> tokens = new ArrayList<String>();
+		for (int i = 0; i < 10000; i++) {
+			tokens.add("token" + i);
+		}
+		for (String token : tokens) {
+			counter.tokenId(token);
+		}
+		// 只有詞的編號，hash table 是空的
+		assertTrue(counter.ramBytesUsed() - before > 10000 * "token0000".length());
+		assertEquals(42, counter.tokenId("token42"));
+	}
+
+	private static Map<String, Long> toMap(Iterator<Cluster> clusters) {
+		Map<String, Long> map = new TreeMap<String, Long>();
+		while (clusters.hasNext()) {
+			Cluster cluster = clusters.next();
+			map.put(cluster.getWord(), cluster.getFreq());
+		}
+		return map;
+	}
+}
@@ -0,0 +1,137 @@
+package org.sustudio.concise.core.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.corpus.DocumentWriter;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+public class NgramIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private boolean ngramIndexEnabled;
+
+	@Before
+	public void setUp() {
+		ngramIndexEnabled = CCPrefs.NGRAM_INDEX_ENABLED;
+		CCPrefs.NGRAM_INDEX_ENABLED = true;
+	}
+
+	@After
+	public void tearDown() {
+		CCPrefs.NGRAM_INDEX_ENABLED = ngramIndexEnabled;
+	}
+
+	/**
+	 * {@link DocumentWriter} 加入、刪除文件之後，n-gram 索引仍然和主索引一致，列出的 cluster 和重新計算的相同
+	 */
+	@Test
+	public void incrementalIndexMatchesCounting() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("workspace"));
+		try {
+			assertSideIndexMatchesCounting(workspace);
+
+			TestCorpus.generator().generate(workspace, INDEX.DOCUMENT, 5);
+			assertSideIndexMatchesCounting(workspace);
+
+			// 依 FILENAME 刪除的文件直接從 n-gram 索引刪掉
+			int numDocs = workspace.getIndexReader(INDEX.DOCUMENT).numDocs();
+			String filename = workspace.getIndexReader(INDEX.DOCUMENT).document(0).get(ConciseField.FILENAME.field());
+			DocumentWriter writer = new DocumentWriter(workspace);
+			try {
+				writer.deleteDocuments(new Term(ConciseField.FILENAME.field(), filename));
+			} finally {
+				writer.close();
+			}
+			assertTrue(workspace.getIndexReader(INDEX.DOCUMENT).numDocs() < numDocs);
+			assertSideIndexMatchesCounting(workspace);
+
+			// 其他的刪除在關閉時重建
+			numDocs = workspace.getIndexReader(INDEX.DOCUMENT).numDocs();
+			filename = workspace.getIndexReader(INDEX.DOCUMENT).document(1).get(ConciseField.FILENAME.field());
+			writer = new DocumentWriter(workspace);
+			try {
+				writer.deleteDocuments(new TermQuery(new Term(ConciseField.FILENAME.field(), filename)));
+			} finally {
+				writer.close();
+			}
+			assertTrue(workspace.getIndexReader(INDEX.DOCUMENT).numDocs() < numDocs);
+			assertSideIndexMatchesCounting(workspace);
+		} finally {
+			workspace.close();
+		}
+	}
+
+	private static void assertSideIndexMatchesCounting(Workspace workspace) throws Exception {
+		DirectoryReader reader = NgramIndex.openFreshReader(workspace, INDEX.DOCUMENT);
+		assertNotNull("n-gram index should be fresh", reader);
+		Directory directory = reader.directory();
+		reader.close();
+		directory.close();
+
+		List<List<String>> indexed = new ArrayList<List<String>>();
+		for (int n = 2; n <= 3; n++) {
+			for (boolean showPartOfSpeech : new boolean[] { false, true }) {
+				NgramClusterIterator iterator = new NgramClusterIterator(workspace, n, showPartOfSpeech, 2);
+				// 讀 n-gram 索引用不到暫存目錄
+				assertEquals(0, temporaryFolders(workspace));
+				indexed.add(describe(iterator));
+			}
+		}
+
+		// 把 n-gram 索引移開，重新計算
+		File ngramDir = workspace.getNgramIndexDir(INDEX.DOCUMENT);
+		File movedDir = new File(ngramDir.getParentFile(), ngramDir.getName() + ".moved");
+		assertTrue(ngramDir.renameTo(movedDir));
+		try {
+			int i = 0;
+			for (int n = 2; n <= 3; n++) {
+				for (boolean showPartOfSpeech : new boolean[] { false, true }) {
+					List<String> counted = describe(new NgramClusterIterator(workspace, n, showPartOfSpeech, 2));
+					assertFalse(counted.isEmpty());
+					assertEquals("n=" + n + " pos=" + showPartOfSpeech, counted, indexed.get(i++));
+				}
+			}
+		} finally {
+			assertTrue(movedDir.renameTo(ngramDir));
+		}
+	}
+
+	private static List<String> describe(NgramClusterIterator iterator) throws Exception {
+		List<String> list = new ArrayList<String>();
+		try {
+			for (Cluster cluster : iterator) {
+				list.add(cluster.getWord() + " " + cluster.getFreq());
+			}
+		} finally {
+			iterator.close();
+		}
+		return list;
+	}
+
+	private static int temporaryFolders(Workspace workspace) {
+		String[] folders = workspace.getTemporaryDir().list();
+		return folders == null ? 0 : folders.length;
+	}
+}
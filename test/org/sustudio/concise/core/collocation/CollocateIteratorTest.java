@@ -0,0 +1,156 @@
+package org.sustudio.concise.core.collocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.collocation.TextualCollocateIterator.BOUNDARY;
+import org.sustudio.concise.core.concordance.Conc;
+
+public class CollocateIteratorTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static Workspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = TestCorpus.create(folder.newFolder("workspace"));
+	}
+
+	@AfterClass
+	public static void closeWorkspace() throws Exception {
+		workspace.close();
+	}
+
+	/**
+	 * {@link CollocateIterator#top(int, CollocateMeasurement, long)} 要和全部讀出來再排序的結果相同
+	 */
+	@Test
+	public void topMatchesSortedIteration() throws Exception {
+		Conc conc = new Conc(workspace, TestCorpus.generator().getWord(4), false);
+		try {
+			for (CollocateMeasurement measurement : new CollocateMeasurement[] {
+					CollocateMeasurement.Cooccurrence, CollocateMeasurement.LogLikelihood })
+			{
+				for (int k : new int[] { 10, Integer.MAX_VALUE }) {
+					for (long minFreq : new long[] { 0L, 3L }) {
+						String message = measurement + " k=" + k + " minFreq=" + minFreq;
+						for (int i = 0; i < 3; i++) {
+							List<String> expected = sorted(iterator(conc, i, null), k, measurement, minFreq);
+							List<String> actual = describe(iterator(conc, i, null).top(k, measurement, minFreq));
+							assertFalse(message, expected.isEmpty());
+							assertEquals(message + " (" + i + ")", expected, actual);
+						}
+					}
+				}
+			}
+		} finally {
+			conc.close();
+		}
+	}
+
+	/**
+	 * filters 用 signature 計算，結果要和用 {@link Collocate} 計算的相同
+	 */
+	@Test
+	public void filtersMatchCollocateValues() throws Exception {
+		Map<CollocateMeasurement, Double> filters = new HashMap<CollocateMeasurement, Double>();
+		filters.put(CollocateMeasurement.Cooccurrence, 2d);
+		filters.put(CollocateMeasurement.TScore, 0d);
+		Conc conc = new Conc(workspace, TestCorpus.generator().getWord(4), false);
+		try {
+			for (int i = 0; i < 3; i++) {
+				List<Collocate> expected = new ArrayList<Collocate>();
+				for (Collocate collocate : iterator(conc, i, null)) {
+					if (collocate.getFreq() >= 2 && collocate.getTscore() >= 0) {
+						expected.add(collocate);
+					}
+				}
+				List<Collocate> actual = new ArrayList<Collocate>();
+				for (Collocate collocate : iterator(conc, i, filters)) {
+					actual.add(collocate);
+				}
+				assertFalse(expected.isEmpty());
+				assertEquals(describe(expected), describe(actual));
+				assertEquals(describe(sort(expected, CollocateMeasurement.MI).subList(0, 5)),
+							 describe(iterator(conc, i, filters).top(5, CollocateMeasurement.MI, 0L)));
+			}
+		} finally {
+			conc.close();
+		}
+	}
+
+	private static CollocateIterator iterator(Conc conc, int type, Map<CollocateMeasurement, Double> filters) throws Exception {
+		switch (type) {
+		case 0:		return new SurfaceCollocateIterator(conc, filters);
+		case 1:		return new TermVectorCollocateIterator(conc, filters);
+		default:	return new TextualCollocateIterator(conc, BOUNDARY.SENTENCE, filters);
+		}
+	}
+
+	private static List<Collocate> sort(List<Collocate> collocates, final CollocateMeasurement measurement) {
+		List<Collocate> list = new ArrayList<Collocate>();
+		for (Collocate collocate : collocates) {
+			if (!Double.isNaN(measurement.getValue(collocate))) {
+				list.add(collocate);
+			}
+		}
+		// 穩定排序，分數相同時保留讀出來的順序
+		Collections.sort(list, new Comparator<Collocate>() {
+			@Override
+			public int compare(Collocate a, Collocate b) {
+				return Double.compare(measurement.getValue(b), measurement.getValue(a));
+			}
+		});
+		return list;
+	}
+
+	private static List<String> sorted(CollocateIterator iterator, int k, CollocateMeasurement measurement, long minFreq)
+			throws Exception
+	{
+		List<Collocate> collocates = new ArrayList<Collocate>();
+		try {
+			for (Collocate collocate : iterator) {
+				if (collocate.getFreq() >= minFreq) {
+					collocates.add(collocate);
+				}
+			}
+		} finally {
+			iterator.close();
+		}
+		List<Collocate> list = sort(collocates, measurement);
+		return describe(list.subList(0, Math.min(k, list.size())));
+	}
+
+	private static List<String> describe(List<Collocate> collocates) {
+		List<String> list = new ArrayList<String>();
+		for (Collocate collocate : collocates) {
+			list.add(collocate.getWord()
+					 + " O=" + collocate.getSignatureO()
+					 + " F1=" + collocate.getSignatureF1()
+					 + " F2=" + collocate.getSignatureF2()
+					 + " N=" + collocate.getSignatureN()
+					 + " L=" + collocate.getLeftFreq()
+					 + " R=" + collocate.getRightFreq()
+					 + " node=" + collocate.getNodeFreq()
+					 + " " + new TreeMap<String, Long>(collocate.getPositionVector()));
+		}
+		return list;
+	}
+}
@@ -0,0 +1,110 @@
+package org.sustudio.concise.core.collocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.concordance.Conc;
+
+public class TermVectorCollocateIteratorTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static Workspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = TestCorpus.create(folder.newFolder("workspace"));
+	}
+
+	@AfterClass
+	public static void closeWorkspace() throws Exception {
+		workspace.close();
+	}
+
+	@Test
+	public void matchesSurfaceCollocateIterator() throws Exception {
+		for (boolean showPartOfSpeech : new boolean[] { false, true }) {
+			for (int rank : new int[] { 1, 4, 30, 200 }) {
+				String query = TestCorpus.generator().getWord(rank);
+				Conc conc = new Conc(workspace, query, showPartOfSpeech);
+				try {
+					List<String> expected = describe(new SurfaceCollocateIterator(conc));
+					List<String> actual = describe(new TermVectorCollocateIterator(conc));
+					assertFalse(query, expected.isEmpty());
+					assertEquals(query + " (pos " + showPartOfSpeech + ")", expected, actual);
+				} finally {
+					conc.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void matchesSurfaceCollocateIteratorForBooleanQuery() throws Exception {
+		String query = TestCorpus.generator().getWord(2) + " " + TestCorpus.generator().getWord(9);
+		Conc conc = new Conc(workspace, query, false);
+		try {
+			List<String> expected = describe(new SurfaceCollocateIterator(conc));
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, describe(new TermVectorCollocateIterator(conc)));
+		} finally {
+			conc.close();
+		}
+	}
+
+	@Test
+	public void matchesSurfaceCollocateIteratorForPhraseQuery() throws Exception {
+		String query = "\"" + TestCorpus.generator().getWord(1) + " " + TestCorpus.generator().getWord(1) + "\"";
+		Conc conc = new Conc(workspace, query, false);
+		try {
+			List<String> expected = describe(new SurfaceCollocateIterator(conc));
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, describe(new TermVectorCollocateIterator(conc)));
+		} finally {
+			conc.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSloppyPhraseQuery() throws Exception {
+		String query = "\"" + TestCorpus.generator().getWord(1) + " " + TestCorpus.generator().getWord(2) + "\"~2";
+		Conc conc = new Conc(workspace, query, false);
+		try {
+			new TermVectorCollocateIterator(conc);
+		} finally {
+			conc.close();
+		}
+	}
+
+	private static List<String> describe(CollocateIterator iterator) throws Exception {
+		List<String> list = new ArrayList<String>();
+		try {
+			for (Collocate collocate : iterator) {
+				list.add(collocate.getWord() 
+						 + " O=" + collocate.getSignatureO()
+						 + " F1=" + collocate.getSignatureF1()
+						 + " F2=" + collocate.getSignatureF2()
+						 + " N=" + collocate.getSignatureN()
+						 + " L=" + collocate.getLeftFreq()
+						 + " R=" + collocate.getRightFreq()
+						 + " node=" + collocate.getNodeFreq()
+						 + " " + new TreeMap<String, Long>(collocate.getPositionVector()));
+			}
+		} finally {
+			iterator.close();
+		}
+		return list;
+	}
+}
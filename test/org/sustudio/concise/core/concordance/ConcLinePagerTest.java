@@ -0,0 +1,138 @@
+package org.sustudio.concise.core.concordance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.corpus.DocumentWriter;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+
+public class ConcLinePagerTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static Workspace workspace;
+
+	@BeforeClass
+	public static void createWorkspace() throws Exception {
+		workspace = TestCorpus.create(folder.newFolder("workspace"));
+	}
+
+	@AfterClass
+	public static void closeWorkspace() throws Exception {
+		workspace.close();
+	}
+
+	private static String word(int rank) {
+		return TestCorpus.generator().getWord(rank);
+	}
+
+	@Test
+	public void termQuery() throws Exception {
+		assertSameLines(word(3), false);
+		assertSameLines(word(3), true);
+		assertSameLines(word(50), false);
+	}
+
+	@Test
+	public void booleanQuery() throws Exception {
+		assertSameLines(word(2) + " " + word(9), false);
+		assertSameLines("+" + word(1) + " +" + word(5) + " -" + word(7), false);
+	}
+
+	@Test
+	public void phraseQuery() throws Exception {
+		assertSameLines("\"" + word(1) + " " + word(1) + "\"", false);
+		assertSameLines("\"" + word(1) + " " + word(2) + "\"~2", false);
+		assertSameLines(word(4) + " \"" + word(1) + " " + word(2) + "\"", false);
+	}
+
+	/**
+	 * 沒有 term vector 的文件讀不出行，計算行數時也不能算進去，否則分頁會少行
+	 */
+	@Test
+	public void documentsWithoutTermVectorsHaveNoLines() throws Exception {
+		Workspace workspace = TestCorpus.create(folder.newFolder("noTermVector"));
+		try {
+			DocumentWriter writer = new DocumentWriter(workspace);
+			try {
+				for (int i = 0; i < 3; i++) {
+					Document doc = new Document();
+					doc.add(new StringField(ConciseField.TITLE.field(), "plain" + i + ".txt", Store.YES));
+					doc.add(new TextField(ConciseField.CONTENT.field(), word(3) + " " + word(1) + " " + word(3), Store.YES));
+					writer.addDocument(doc);
+				}
+			} finally {
+				writer.close();
+			}
+
+			Conc conc = new Conc(workspace, word(3), false);
+			try {
+				ConcLinePager pager = new ConcLinePager(conc);
+				List<ConcLine> lines = pager.getLines(0, Integer.MAX_VALUE);
+				assertFalse(lines.isEmpty());
+				assertEquals(lines.size(), pager.getTotalLines());
+
+				// 每一頁都是滿的，只有最後一頁例外
+				int pageSize = 7;
+				for (int from = 0; from < lines.size(); from += pageSize) {
+					assertEquals(Math.min(pageSize, lines.size() - from), new ConcLinePager(conc).getLines(from, pageSize).size());
+				}
+			} finally {
+				conc.close();
+			}
+		} finally {
+			workspace.close();
+		}
+	}
+
+	private static void assertSameLines(String query, boolean showPartOfSpeech) throws Exception {
+		Conc conc = new Conc(workspace, query, showPartOfSpeech);
+		try {
+			List<String> expected = new ArrayList<String>();
+			for (ScoreDoc scoreDoc : conc.hitDocs()) {
+				for (ConcLine line : new ConcLineIterator(conc, scoreDoc)) {
+					expected.add(describe(line));
+				}
+			}
+			assertFalse(query, expected.isEmpty());
+
+			ConcLinePager pager = new ConcLinePager(conc);
+			List<String> actual = new ArrayList<String>();
+			for (ConcLine line : pager.getLines(0, Integer.MAX_VALUE)) {
+				actual.add(describe(line));
+			}
+			assertEquals(query, expected, actual);
+			assertEquals(query, expected.size(), pager.getTotalLines());
+
+			// 任意一頁
+			int from = expected.size() / 3;
+			List<String> page = new ArrayList<String>();
+			for (ConcLine line : new ConcLinePager(conc).getLines(from, 7)) {
+				page.add(describe(line));
+			}
+			assertEquals(query, expected.subList(from, Math.min(from + 7, expected.size())), page);
+		} finally {
+			conc.close();
+		}
+	}
+
+	private static String describe(ConcLine line) {
+		return line.getDocId() + "#" + line.getWordId() + " [" + line.getLeft() + "] <" + line.getNode() + "> [" + line.getRight() + "] " + line.getDocTitle();
+	}
+}
@@ -0,0 +1,127 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.Config;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.concordance.PartOfSpeechAttribute;
+import org.sustudio.concise.core.corpus.importer.Importer.TaggedContent;
+import org.sustudio.concise.core.corpus.importer.MMSegAnalyzer.MMSeg;
+
+public class ImportTokenStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Workspace workspace;
+	private Importer importer;
+
+	@Before
+	public void setUp() throws Exception {
+		workspace = new Workspace(folder.newFolder("workspace"));
+		importer = new Importer(workspace);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		importer.close();
+		workspace.close();
+	}
+
+	/**
+	 * 含詞性、不含詞性、空詞性和空詞的 token 都要和 {@link WhitespaceTokenizer} + {@link ImportPOSFilter} 相同
+	 */
+	@Test
+	public void matchesWhitespaceTokenizerWithPartOfSpeech() throws Exception {
+		String sep = Config.SYSTEM_POS_SEPERATOR;
+		String content = "我" + sep + "Nh 喜歡" + sep + "VK  蘋果" + sep + "Na \n 。" + sep + "PERIODCATEGORY \n"
+				+ "\n Lucene 4.9" + sep + " " + sep + "Neu 2014年" + sep + "Nd" + sep + "x";
+		assertSameTokens(content);
+	}
+
+	/**
+	 * 沒有詞性的大型文件：找詞性分隔符號時不能每個詞都找到文件結尾
+	 */
+	@Test(timeout = 10000)
+	public void largeUntaggedContent() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			sb.append("詞").append(i % 1000).append(i % 50 == 49 ? '\n' : ' ');
+		}
+		assertSameTokens(sb.toString());
+	}
+
+	/**
+	 * 匯入時記錄的 offset 要讓 {@link ImportTokenStream} 產生和重新斷詞相同的 token
+	 */
+	@Test
+	public void matchesReanalyzedImportedContent() throws Exception {
+		File file = folder.newFile("text.txt");
+		FileUtils.write(file, "今天天氣很好，我們去公園散步。\n\nLucene 4.9 在 2014年 發布！\n  第三段　有全形空白。", "UTF-8");
+
+		for (MMSeg mmSeg : new MMSeg[] { MMSeg.Complex, MMSeg.Simple }) {
+			TaggedContent tagged = importer.tagContent(file, new MMSegAnalyzer(mmSeg, null), null);
+			assertTrue(tagged.numWords > 10);
+			assertEquals(tokens(new ImportPOSFilter(new WhitespaceTokenizer(Config.LUCENE_VERSION, new StringReader(tagged.content)))),
+						 tokens(new ImportTokenStream(tagged.content, tagged.tokenOffsets, tagged.numWords)));
+		}
+	}
+
+	private static void assertSameTokens(String content) throws Exception {
+		int[] offsets = new int[16];
+		int numTokens = 0;
+		int start = -1;
+		for (int i = 0; i <= content.length(); i++) {
+			boolean space = i == content.length() || Character.isWhitespace(content.charAt(i));
+			if (!space && start == -1) {
+				start = i;
+			}
+			else if (space && start != -1) {
+				if (offsets.length < numTokens * 2 + 2) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				offsets[numTokens * 2] = start;
+				offsets[numTokens * 2 + 1] = i;
+				numTokens++;
+				start = -1;
+			}
+		}
+		assertEquals(tokens(new ImportPOSFilter(new WhitespaceTokenizer(Config.LUCENE_VERSION, new StringReader(content)))),
+					 tokens(new ImportTokenStream(content, offsets, numTokens)));
+	}
+
+	private static List<String> tokens(TokenStream stream) throws Exception {
+		CharTermAttribute termAttr = stream.addAttribute(CharTermAttribute.class);
+		OffsetAttribute offAttr = stream.addAttribute(OffsetAttribute.class);
+		PositionIncrementAttribute posIncrAttr = stream.addAttribute(PositionIncrementAttribute.class);
+		PartOfSpeechAttribute posAttr = stream.addAttribute(PartOfSpeechAttribute.class);
+		List<String> tokens = new ArrayList<String>();
+		stream.reset();
+		while (stream.incrementToken()) {
+			tokens.add(termAttr.toString() + " " + offAttr.startOffset() + "-" + offAttr.endOffset()
+					+ " +" + posIncrAttr.getPositionIncrement() + " " + posAttr.getPartOfSpeech());
+		}
+		stream.end();
+		tokens.add("end " + offAttr.endOffset());
+		stream.close();
+		return tokens;
+	}
+}
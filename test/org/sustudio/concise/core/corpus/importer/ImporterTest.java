@@ -0,0 +1,103 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.corpus.importer.Importer.TaggedContent;
+import org.sustudio.concise.core.corpus.importer.MMSegAnalyzer.MMSeg;
+
+import com.chenlb.mmseg4j.Dictionary;
+
+public class ImporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Workspace workspace;
+	private Importer importer;
+	private boolean parallelSegmentation;
+
+	@Before
+	public void setUp() throws Exception {
+		workspace = new Workspace(folder.newFolder("workspace"));
+		importer = new Importer(workspace);
+		parallelSegmentation = CCPrefs.PARALLEL_SEGMENTATION_ENABLED;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CCPrefs.PARALLEL_SEGMENTATION_ENABLED = parallelSegmentation;
+		importer.close();
+		workspace.close();
+	}
+
+	/**
+	 * 很大的文件整份交給 {@link ParallelMMSegTokenizer}，結果要和逐段斷詞相同
+	 */
+	@Test
+	public void parallelSegmentationMatchesParagraphs() throws Exception {
+		File file = folder.newFile("large.txt");
+		FileUtils.write(file, randomText(new Random(17), 400000), "UTF-8");
+
+		for (MMSeg mmSeg : new MMSeg[] { MMSeg.Complex, MMSeg.Simple }) {
+			MMSegAnalyzer analyzer = new MMSegAnalyzer(mmSeg, null);
+			CCPrefs.PARALLEL_SEGMENTATION_ENABLED = false;
+			TaggedContent expected = importer.tagContent(file, analyzer, null);
+			CCPrefs.PARALLEL_SEGMENTATION_ENABLED = true;
+			TaggedContent actual = importer.tagContent(file, analyzer, null);
+
+			assertTrue(expected.numParas > 100);
+			assertEquals(expected.content, actual.content);
+			assertEquals(expected.numWords, actual.numWords);
+			assertEquals(expected.numParas, actual.numParas);
+			assertArrayEquals(Arrays.copyOf(expected.tokenOffsets, expected.numWords * 2),
+							  Arrays.copyOf(actual.tokenOffsets, actual.numWords * 2));
+		}
+	}
+
+	private static String randomText(Random random, int length) throws Exception {
+		List<String> words = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				Dictionary.class.getResourceAsStream("/org/sustudio/concise/core/mmseg/dictionary/words-taiwan-moe.dic"), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 1) {
+					words.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		String[] others = { "，", "。", "！", "？", "；", " ", "Lucene", "4.9", "2014年", "ABC123", "\n", "\n\n" };
+		StringBuilder sb = new StringBuilder(length + 100);
+		while (sb.length() < length) {
+			if (random.nextInt(4) == 0) {
+				sb.append(others[random.nextInt(others.length)]);
+			}
+			else {
+				String word = words.get(random.nextInt(words.size()));
+				sb.append(random.nextInt(5) == 0 ? word.substring(1) : word);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package org.sustudio.concise.core.corpus.importer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.corpus.importer.TaggingService.DefaultExecutor;
+
+public class TaggingServiceTest {
+
+	private int threads;
+
+	@Before
+	public void setUp() {
+		threads = CCPrefs.POS_TAGGER_THREADS;
+	}
+
+	@After
+	public void tearDown() {
+		CCPrefs.POS_TAGGER_THREADS = threads;
+	}
+
+	/**
+	 * thread 數改變時，舊的 executor 要等正在使用的呼叫結束才 shutdown
+	 */
+	@Test
+	public void retiredExecutorAcceptsWorkUntilReleased() throws Exception {
+		CCPrefs.POS_TAGGER_THREADS = 2;
+		DefaultExecutor first = TaggingService.acquireDefaultExecutor();
+		DefaultExecutor again = TaggingService.acquireDefaultExecutor();
+		assertSame(first, again);
+		TaggingService.releaseDefaultExecutor(again);
+
+		CCPrefs.POS_TAGGER_THREADS = 3;
+		DefaultExecutor second = TaggingService.acquireDefaultExecutor();
+		try {
+			assertNotSame(first, second);
+			assertFalse(first.service.isShutdown());
+			assertTrue(first.service.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return true;
+				}
+			}).get());
+		} finally {
+			TaggingService.releaseDefaultExecutor(first);
+			TaggingService.releaseDefaultExecutor(second);
+		}
+		assertTrue(first.service.isShutdown());
+		assertFalse(second.service.isShutdown());
+	}
+}
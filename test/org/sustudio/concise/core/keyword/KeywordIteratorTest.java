@@ -0,0 +1,105 @@
+package org.sustudio.concise.core.keyword;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sustudio.concise.core.CCPrefs;
+import org.sustudio.concise.core.TestCorpus;
+import org.sustudio.concise.core.Workspace;
+import org.sustudio.concise.core.Workspace.INDEX;
+import org.sustudio.concise.core.corpus.importer.ConciseField;
+import org.sustudio.concise.core.wordlister.Lemma;
+import org.sustudio.concise.core.wordlister.LemmaList;
+import org.sustudio.concise.core.wordlister.Word;
+import org.sustudio.concise.core.wordlister.WordIterator;
+
+public class KeywordIteratorTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static Workspace workspace;
+
+	private boolean lemmaEnabled;
+	private LemmaList lemmaList;
+	private boolean stopWordsEnabled;
+	private String[] stopWords;
+
+	@BeforeClass
+	public static void createCorpus() throws Exception {
+		workspace = TestCorpus.create(folder.newFolder("workspace"));
+	}
+
+	@AfterClass
+	public static void closeCorpus() throws Exception {
+		workspace.close();
+	}
+
+	@Before
+	public void setUp() {
+		lemmaEnabled = CCPrefs.LEMMA_ENABLED;
+		lemmaList = CCPrefs.LEMMA_LIST;
+		stopWordsEnabled = CCPrefs.STOP_WORDS_ENABLED;
+		stopWords = CCPrefs.stopWords;
+	}
+
+	@After
+	public void tearDown() {
+		CCPrefs.LEMMA_ENABLED = lemmaEnabled;
+		CCPrefs.LEMMA_LIST = lemmaList;
+		CCPrefs.STOP_WORDS_ENABLED = stopWordsEnabled;
+		CCPrefs.stopWords = stopWords;
+	}
+
+	/**
+	 * 被過濾掉（不在詞表快照中）的 form 也要算進 lemma，和 {@link WordIterator} 相同
+	 */
+	@Test
+	public void lemmaCountsFilteredForms() throws Exception {
+		String stopped = TestCorpus.generator().getWord(1);
+		String kept = TestCorpus.generator().getWord(2);
+		Lemma lemma = new Lemma("lemma");
+		lemma.addForm(stopped);
+		lemma.addForm(kept);
+		LemmaList lemmas = new LemmaList();
+		lemmas.add(lemma);
+
+		CCPrefs.LEMMA_ENABLED = true;
+		CCPrefs.LEMMA_LIST = lemmas;
+		CCPrefs.STOP_WORDS_ENABLED = true;
+		CCPrefs.stopWords = new String[] { stopped };
+
+		IndexReader reader = workspace.getIndexReader(INDEX.DOCUMENT);
+		long expected = reader.totalTermFreq(new Term(ConciseField.CONTENT.field(), stopped))
+					  + reader.totalTermFreq(new Term(ConciseField.CONTENT.field(), kept));
+		assertTrue(expected > 0);
+
+		Keyword keyword = null;
+		for (Keyword k : new KeywordIterator(workspace, false)) {
+			if (k.getWord().equals("lemma")) {
+				keyword = k;
+			}
+		}
+		assertNotNull(keyword);
+		assertEquals(expected, keyword.getFreq());
+
+		Word word = null;
+		for (Word w : new WordIterator(workspace, false)) {
+			if (w.getWord().equals("lemma")) {
+				word = w;
+			}
+		}
+		assertNotNull(word);
+		assertEquals(word.getTotalTermFreq(), keyword.getFreq());
+	}
+}
@@ -0,0 +1,102 @@
+package org.sustudio.concise.core.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKHeapTest {
+
+	@Test
+	public void keepsHighestScoresInOrder() {
+		TopKHeap<String> heap = new TopKHeap<String>(3);
+		heap.offer(1.0, "a");
+		heap.offer(5.0, "b");
+		heap.offer(3.0, "c");
+		heap.offer(4.0, "d");
+		heap.offer(0.5, "e");
+		assertEquals(Arrays.asList("b", "d", "c"), heap.toSortedList());
+		// toSortedList 不改變 heap
+		assertEquals(3, heap.size());
+		assertEquals(Arrays.asList("b", "d", "c"), heap.toSortedList());
+	}
+
+	@Test
+	public void tiesKeepInsertionOrder() {
+		TopKHeap<String> heap = new TopKHeap<String>(2);
+		heap.offer(1.0, "first");
+		heap.offer(1.0, "second");
+		heap.offer(1.0, "third");
+		assertEquals(Arrays.asList("first", "second"), heap.toSortedList());
+	}
+
+	@Test
+	public void ordsSortedByScoreThenOrd() {
+		TopKHeap<Object> heap = new TopKHeap<Object>(3);
+		heap.offerOrd(1.0, 0L);
+		heap.offerOrd(5.0, 3L);
+		heap.offerOrd(Double.NaN, 4L);
+		heap.offerOrd(3.0, 7L);
+		heap.offerOrd(3.0, 9L);
+		heap.offerOrd(3.0, 12L);
+		assertArrayEquals(new long[] { 3L, 7L, 9L }, heap.toSortedOrds());
+	}
+
+	@Test
+	public void rejectsNaNAndZeroK() {
+		TopKHeap<String> heap = new TopKHeap<String>(2);
+		assertFalse(heap.offer(Double.NaN, "nan"));
+		assertEquals(0, heap.size());
+
+		TopKHeap<String> empty = new TopKHeap<String>(0);
+		assertFalse(empty.wouldAccept(1.0));
+		assertTrue(empty.toSortedList().isEmpty());
+	}
+
+	@Test
+	public void hugeKGrowsOnDemand() {
+		TopKHeap<Integer> heap = new TopKHeap<Integer>(Integer.MAX_VALUE);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(heap.offer(i, i));
+		}
+		List<Integer> sorted = heap.toSortedList();
+		assertEquals(1000, sorted.size());
+		assertEquals(Integer.valueOf(999), sorted.get(0));
+		assertEquals(Integer.valueOf(0), sorted.get(999));
+	}
+
+	@Test
+	public void matchesFullSort() {
+		Random random = new Random(42);
+		final double[] scores = new double[5000];
+		List<Integer> all = new ArrayList<Integer>();
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = random.nextInt(500);
+			all.add(i);
+		}
+		for (int k : new int[] { 1, 10, 100, 4999, 5000, 10000 }) {
+			TopKHeap<Integer> heap = new TopKHeap<Integer>(k);
+			for (int i = 0; i < scores.length; i++) {
+				heap.offer(scores[i], i);
+			}
+			List<Integer> expected = new ArrayList<Integer>(all);
+			// 穩定排序：分數相同時保持加入順序
+			Collections.sort(expected, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(scores[b], scores[a]);
+				}
+			});
+			assertEquals(expected.subList(0, Math.min(k, expected.size())), heap.toSortedList());
+		}
+	}
+}